@@ -98,6 +98,15 @@ public class Constants {
     public static final String LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE =
             "packages_already_notified_location_access";
 
+    /**
+     * Name of the privacy source state store containing the packages we already showed a
+     * notification for. Replaces {@link #LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE}.
+     *
+     * @see com.android.permissioncontroller.permission.service.LocationAccessCheck
+     */
+    public static final String LOCATION_ACCESS_CHECK_NOTIFIED_PACKAGES_STORE =
+            "location_access_notified_packages";
+
     /**
      * ID for notification shown by
      * {@link com.android.permissioncontroller.permission.service.LocationAccessCheck}.
@@ -207,6 +216,20 @@ public class Constants {
     public static final String KEY_LAST_NOTIFICATION_LISTENER_NOTIFICATION_SHOWN =
             "last_notification_listener_notification_shown";
 
+    /**
+     * Key in the generic shared preferences that stores the boot count at which
+     * {@link SafetyLabelChangesJobService} last recorded the package change sequence numbers.
+     */
+    public static final String KEY_SAFETY_LABEL_CHANGES_BOOT_COUNT =
+            "safety_label_changes_boot_count";
+
+    /**
+     * Prefix of the keys in the generic shared preferences that store, for each user, the last
+     * package change sequence number processed by {@link SafetyLabelChangesJobService}.
+     */
+    public static final String KEY_SAFETY_LABEL_CHANGES_SEQUENCE_NUMBER_PREFIX =
+            "safety_label_changes_sequence_number:";
+
     /**
      * Key in the generic shared preferences that stores if the user manually selected the "none"
      * role holder for a role.
@@ -242,11 +265,17 @@ public class Constants {
             "assistant_record_audio_is_user_sensitive_key";
 
     /**
-     * Name of file containing the permissions that should be restored, but have not been restored
-     * yet.
+     * Name of the legacy file containing the permissions that should be restored, but have not been
+     * restored yet. Replaced by {@link #DELAYED_RESTORE_PERMISSIONS_DIR}.
      */
     public static final String DELAYED_RESTORE_PERMISSIONS_FILE = "delayed_restore_permissions.xml";
 
+    /**
+     * Name of the directory containing, in one file per package, the permissions that should be
+     * restored, but have not been restored yet.
+     */
+    public static final String DELAYED_RESTORE_PERMISSIONS_DIR = "delayed_restore_permissions";
+
     /**
      * Name of file containing the user denied status for requesting roles.
      */
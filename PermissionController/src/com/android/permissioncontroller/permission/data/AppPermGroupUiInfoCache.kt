@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.app.Application
+import android.os.UserHandle
+import android.os.UserManager
+import android.provider.Settings
+import android.util.AtomicFile
+import android.util.Log
+import android.util.Xml
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
+import com.android.permissioncontroller.permission.utils.IPC
+import com.android.permissioncontroller.permission.utils.Utils
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import org.xmlpull.v1.XmlPullParser
+import org.xmlpull.v1.XmlPullParserException
+
+/**
+ * A disk cache of the [AppPermGroupUiInfo] of all packages in a permission group, as computed by
+ * [SinglePermGroupPackagesUiInfoLiveData].
+ *
+ * The cache lets the UI show the last known state of a permission group as soon as the process
+ * starts, instead of waiting for the package and permission state of every installed app to be
+ * loaded. Cached values are always revalidated by the LiveDatas they are served to.
+ *
+ * Every snapshot is stamped with the package change generation (the boot count and the package
+ * change sequence number of every profile) it was computed in. Snapshots whose generation doesn't
+ * match the current one, i.e. that were computed before a reboot or before a package was installed,
+ * updated or removed, are discarded.
+ */
+object AppPermGroupUiInfoCache {
+    private const val LOG_TAG = "AppPermGroupUiInfoCache"
+
+    private const val CACHE_FILE_NAME = "app_perm_group_ui_info_cache.xml"
+    private const val CACHE_VERSION = 1
+    private const val WRITE_DELAY_MILLIS = 5000L
+
+    private const val TAG_CACHE = "ui-info-cache"
+    private const val TAG_GROUP = "group"
+    private const val TAG_APP = "app"
+    private const val ATTR_VERSION = "version"
+    private const val ATTR_GENERATION = "generation"
+    private const val ATTR_NAME = "name"
+    private const val ATTR_PACKAGE_NAME = "package-name"
+    private const val ATTR_USER_ID = "user-id"
+    private const val ATTR_SHOULD_SHOW = "should-show"
+    private const val ATTR_GRANT_STATE = "grant-state"
+    private const val ATTR_IS_SYSTEM = "is-system"
+    private const val ATTR_IS_USER_SET = "is-user-set"
+
+    /** Guards the in-memory state, never held during disk I/O or binder calls. */
+    private val lock = Any()
+    /** Serializes the writes of the cache file. */
+    private val writeLock = Any()
+
+    /** Map<permission group name, snapshot>, or `null` if the cache hasn't been loaded yet. */
+    @GuardedBy("lock") private var snapshots: MutableMap<String, GroupSnapshot>? = null
+    /** The package change generation the cache was last validated against. */
+    @GuardedBy("lock") private var generation: Generation? = null
+    /** Snapshots recorded while the cache was being loaded. */
+    @GuardedBy("lock")
+    private val pendingSnapshots =
+        mutableMapOf<String, Map<Pair<String, UserHandle>, AppPermGroupUiInfo>>()
+    @GuardedBy("lock") private var isWriteScheduled = false
+
+    /**
+     * Returns the cached UI info of all packages in the given permission group, or `null` if there
+     * is no valid snapshot for that group.
+     *
+     * This might read the cache from disk, and must not be called on the main thread.
+     */
+    fun get(
+        app: Application,
+        permGroupName: String
+    ): Map<Pair<String, UserHandle>, AppPermGroupUiInfo>? {
+        synchronized(lock) {
+            snapshots?.let {
+                return it[permGroupName]?.uiInfos
+            }
+        }
+        val loadedCache = load(app)
+        synchronized(lock) {
+            return installLocked(loadedCache)[permGroupName]?.uiInfos
+        }
+    }
+
+    /**
+     * Records the up to date UI info of all packages in the given permission group, and schedules a
+     * write of the cache to disk if it changed.
+     */
+    fun put(
+        app: Application,
+        permGroupName: String,
+        uiInfos: Map<Pair<String, UserHandle>, AppPermGroupUiInfo>
+    ) {
+        synchronized(lock) {
+            val snapshots = snapshots
+            if (snapshots != null) {
+                val snapshot = snapshots[permGroupName]
+                if (snapshot != null && snapshot.uiInfos == uiInfos) {
+                    return
+                }
+                snapshots[permGroupName] = GroupSnapshot(uiInfos, generation)
+            } else {
+                // The cache is still being loaded, remember the snapshot until it is.
+                pendingSnapshots[permGroupName] = uiInfos
+            }
+            scheduleWriteLocked(app)
+        }
+    }
+
+    /** Writes the cache to disk right away, instead of waiting for the scheduled write. */
+    @VisibleForTesting
+    fun writeNow(app: Application) {
+        write(app)
+    }
+
+    /** Forgets the in-memory state of the cache, so that it is loaded from disk again. */
+    @VisibleForTesting
+    fun resetForTests() {
+        synchronized(lock) {
+            snapshots = null
+            generation = null
+            pendingSnapshots.clear()
+        }
+    }
+
+    /** Reads the cache file and validates it against the current package change generation. */
+    private fun load(app: Application): CacheFileContent {
+        val content = readFile(getCacheFile(app))
+        val currentGeneration = getCurrentGeneration(app, content?.generation)
+        return if (content != null && content.generation == currentGeneration) {
+            content
+        } else {
+            CacheFileContent(currentGeneration, mutableMapOf())
+        }
+    }
+
+    /**
+     * Makes the given loaded cache the in-memory state, unless another thread already loaded it,
+     * and returns the in-memory snapshots.
+     */
+    private fun installLocked(loadedCache: CacheFileContent): MutableMap<String, GroupSnapshot> {
+        snapshots?.let {
+            return it
+        }
+
+        val loadedSnapshots = loadedCache.snapshots
+        for ((permGroupName, uiInfos) in pendingSnapshots) {
+            loadedSnapshots[permGroupName] = GroupSnapshot(uiInfos, loadedCache.generation)
+        }
+        pendingSnapshots.clear()
+        generation = loadedCache.generation
+        snapshots = loadedSnapshots
+        return loadedSnapshots
+    }
+
+    private fun scheduleWriteLocked(app: Application) {
+        if (isWriteScheduled) {
+            return
+        }
+        isWriteScheduled = true
+
+        GlobalScope.launch(IPC) {
+            // Batch the updates of all permission groups loaded at the same time.
+            delay(WRITE_DELAY_MILLIS)
+            synchronized(lock) { isWriteScheduled = false }
+            write(app)
+        }
+    }
+
+    private fun write(app: Application) {
+        synchronized(writeLock) {
+            val isLoaded = synchronized(lock) { snapshots != null }
+            if (!isLoaded) {
+                val loadedCache = load(app)
+                synchronized(lock) { installLocked(loadedCache) }
+            }
+            val lastGeneration = synchronized(lock) { generation }
+            val currentGeneration = getCurrentGeneration(app, lastGeneration)
+            val snapshotsToWrite =
+                synchronized(lock) {
+                    val snapshots = snapshots!!
+                    // Snapshots computed before a package change might be out of date.
+                    snapshots.values.removeIf { it.generation != currentGeneration }
+                    generation = currentGeneration
+                    snapshots.toMap()
+                }
+            writeFile(getCacheFile(app), currentGeneration, snapshotsToWrite)
+        }
+    }
+
+    private fun writeFile(
+        cacheFile: File,
+        currentGeneration: Generation,
+        snapshots: Map<String, GroupSnapshot>
+    ) {
+        val file = AtomicFile(cacheFile)
+        var outputStream: FileOutputStream? = null
+        try {
+            outputStream = file.startWrite()
+            val serializer = Xml.newSerializer()
+            serializer.setOutput(outputStream, StandardCharsets.UTF_8.name())
+            serializer.startDocument(null, true)
+            serializer.startTag(null, TAG_CACHE)
+            serializer.attribute(null, ATTR_VERSION, CACHE_VERSION.toString())
+            serializer.attribute(null, ATTR_GENERATION, currentGeneration.encode())
+            for ((permGroupName, snapshot) in snapshots) {
+                serializer.startTag(null, TAG_GROUP)
+                serializer.attribute(null, ATTR_NAME, permGroupName)
+                for ((packageUser, uiInfo) in snapshot.uiInfos) {
+                    serializer.startTag(null, TAG_APP)
+                    serializer.attribute(null, ATTR_PACKAGE_NAME, packageUser.first)
+                    serializer.attribute(
+                        null,
+                        ATTR_USER_ID,
+                        packageUser.second.identifier.toString()
+                    )
+                    serializer.attribute(null, ATTR_SHOULD_SHOW, uiInfo.shouldShow.toString())
+                    serializer.attribute(null, ATTR_GRANT_STATE, uiInfo.permGrantState.name)
+                    serializer.attribute(null, ATTR_IS_SYSTEM, uiInfo.isSystem.toString())
+                    serializer.attribute(null, ATTR_IS_USER_SET, uiInfo.isUserSet.toString())
+                    serializer.endTag(null, TAG_APP)
+                }
+                serializer.endTag(null, TAG_GROUP)
+            }
+            serializer.endTag(null, TAG_CACHE)
+            serializer.endDocument()
+            file.finishWrite(outputStream)
+        } catch (e: Exception) {
+            Log.e(LOG_TAG, "Failed to write ${file.baseFile}", e)
+            file.failWrite(outputStream)
+        }
+    }
+
+    private fun readFile(file: File): CacheFileContent? {
+        try {
+            AtomicFile(file).openRead().use { inputStream ->
+                val parser = Xml.newPullParser()
+                parser.setInput(inputStream, StandardCharsets.UTF_8.name())
+                return parser.parseCache()
+            }
+        } catch (e: FileNotFoundException) {
+            // The cache hasn't been written yet.
+        } catch (e: IOException) {
+            Log.e(LOG_TAG, "Failed to read $file", e)
+        } catch (e: XmlPullParserException) {
+            Log.e(LOG_TAG, "Failed to parse $file", e)
+        } catch (e: RuntimeException) {
+            // A corrupt file can fail in many ways, e.g. with a number or enum value that doesn't
+            // parse, and it is only a cache.
+            Log.e(LOG_TAG, "Failed to parse $file", e)
+        }
+        return null
+    }
+
+    private fun XmlPullParser.parseCache(): CacheFileContent? {
+        var generation: Generation? = null
+        val snapshots = mutableMapOf<String, GroupSnapshot>()
+        var uiInfos: MutableMap<Pair<String, UserHandle>, AppPermGroupUiInfo>? = null
+
+        var eventType = eventType
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                when (name) {
+                    TAG_CACHE -> {
+                        if (getAttributeValue(null, ATTR_VERSION)?.toInt() != CACHE_VERSION) {
+                            return null
+                        }
+                        generation = Generation.decode(getAttributeValue(null, ATTR_GENERATION))
+                    }
+                    TAG_GROUP -> {
+                        val groupUiInfos =
+                            mutableMapOf<Pair<String, UserHandle>, AppPermGroupUiInfo>()
+                        snapshots[getRequiredAttribute(ATTR_NAME)] =
+                            GroupSnapshot(groupUiInfos, generation)
+                        uiInfos = groupUiInfos
+                    }
+                    TAG_APP -> {
+                        val packageName = getRequiredAttribute(ATTR_PACKAGE_NAME)
+                        val user = UserHandle.of(getRequiredAttribute(ATTR_USER_ID).toInt())
+                        uiInfos?.put(
+                            Pair(packageName, user),
+                            AppPermGroupUiInfo(
+                                getRequiredAttribute(ATTR_SHOULD_SHOW).toBoolean(),
+                                PermGrantState.valueOf(getRequiredAttribute(ATTR_GRANT_STATE)),
+                                getRequiredAttribute(ATTR_IS_SYSTEM).toBoolean(),
+                                getRequiredAttribute(ATTR_IS_USER_SET).toBoolean()
+                            )
+                        )
+                    }
+                }
+            }
+            eventType = next()
+        }
+
+        return generation?.let { CacheFileContent(it, snapshots) }
+    }
+
+    private fun XmlPullParser.getRequiredAttribute(name: String): String =
+        getAttributeValue(null, name) ?: throw IllegalArgumentException("Missing attribute $name")
+
+    /**
+     * Returns the current package change generation. Only the packages changed since
+     * [lastGeneration] are queried, so that this is cheap if nothing changed.
+     */
+    private fun getCurrentGeneration(app: Application, lastGeneration: Generation?): Generation {
+        val bootCount = Settings.Global.getInt(app.contentResolver, Settings.Global.BOOT_COUNT, -1)
+        val userManager = Utils.getSystemServiceSafe(app, UserManager::class.java)
+        val sequenceNumbers = mutableMapOf<Int, Int>()
+        for (user in userManager.userProfiles) {
+            // Sequence numbers are reset on reboot.
+            val lastSequenceNumber =
+                if (lastGeneration?.bootCount == bootCount) {
+                    lastGeneration.sequenceNumbers[user.identifier] ?: 0
+                } else {
+                    0
+                }
+            val changedPackages =
+                Utils.getUserContext(app, user)
+                    .packageManager
+                    .getChangedPackages(lastSequenceNumber)
+            sequenceNumbers[user.identifier] =
+                changedPackages?.sequenceNumber ?: lastSequenceNumber
+        }
+        return Generation(bootCount, sequenceNumbers)
+    }
+
+    private fun getCacheFile(app: Application): File = File(app.filesDir, CACHE_FILE_NAME)
+
+    /**
+     * The UI info of all packages in a permission group, and the package change generation it was
+     * computed in, or `null` if it was computed before the cache was loaded.
+     */
+    private class GroupSnapshot(
+        val uiInfos: Map<Pair<String, UserHandle>, AppPermGroupUiInfo>,
+        val generation: Generation?
+    )
+
+    private class CacheFileContent(
+        val generation: Generation,
+        val snapshots: MutableMap<String, GroupSnapshot>
+    )
+
+    /**
+     * A package change generation.
+     *
+     * @param bootCount the boot count of the device
+     * @param sequenceNumbers Map<user id, package change sequence number of that user>
+     */
+    private data class Generation(val bootCount: Int, val sequenceNumbers: Map<Int, Int>) {
+        fun encode(): String =
+            "$bootCount/" +
+                sequenceNumbers.entries.joinToString(",") { (userId, sequenceNumber) ->
+                    "$userId:$sequenceNumber"
+                }
+
+        companion object {
+            fun decode(value: String?): Generation? {
+                val parts = value?.split("/") ?: return null
+                if (parts.size != 2) {
+                    return null
+                }
+                val bootCount = parts[0].toIntOrNull() ?: return null
+                val sequenceNumbers = mutableMapOf<Int, Int>()
+                for (entry in parts[1].split(",")) {
+                    if (entry.isEmpty()) {
+                        continue
+                    }
+                    val userIdAndSequenceNumber = entry.split(":")
+                    if (userIdAndSequenceNumber.size != 2) {
+                        return null
+                    }
+                    val userId = userIdAndSequenceNumber[0].toIntOrNull() ?: return null
+                    sequenceNumbers[userId] =
+                        userIdAndSequenceNumber[1].toIntOrNull() ?: return null
+                }
+                return Generation(bootCount, sequenceNumbers)
+            }
+        }
+    }
+}
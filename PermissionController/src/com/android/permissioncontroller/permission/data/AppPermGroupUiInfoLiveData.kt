@@ -31,6 +31,7 @@ import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGr
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermGroupInfo
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroup
 import com.android.permissioncontroller.permission.model.livedatatypes.PermState
 import com.android.permissioncontroller.permission.utils.LocationUtils
 import com.android.permissioncontroller.permission.utils.PermissionMapping.isPlatformPermissionGroup
@@ -62,8 +63,6 @@ private constructor(
     private val packageInfoLiveData = LightPackageInfoLiveData[packageName, user]
     private val permGroupLiveData = PermGroupLiveData[permGroupName]
     private val permissionStateLiveData = PermStateLiveData[packageName, permGroupName, user]
-    private val isStorage = permGroupName == STORAGE
-    private val isHealth = Utils.isHealthPermissionGroup(permGroupName)
 
     init {
         isSpecialLocation =
@@ -103,14 +102,107 @@ private constructor(
 
         postValue(
             getAppPermGroupUiInfo(
+                app,
+                packageName,
+                permGroupName,
+                user,
                 packageInfo,
-                permissionGroup.groupInfo,
-                permissionGroup.permissionInfos,
+                permissionGroup,
                 permissionState
             )
         )
     }
 
+    override fun onLocationStateChange(enabled: Boolean) {
+        update()
+    }
+
+    override fun onActive() {
+        super.onActive()
+        if (isSpecialLocation) {
+            LocationUtils.addLocationListener(this)
+            update()
+        }
+    }
+
+    override fun onInactive() {
+        super.onInactive()
+
+        if (isSpecialLocation) {
+            LocationUtils.removeLocationListener(this)
+        }
+    }
+
+    /**
+     * Repository for AppPermGroupUiInfoLiveDatas.
+     *
+     * <p> Key value is a triple of string package name, string permission group name, and
+     * UserHandle, value is its corresponding LiveData.
+     */
+    companion object :
+        DataRepositoryForPackage<Triple<String, String, UserHandle>, AppPermGroupUiInfoLiveData>() {
+        override fun newValue(key: Triple<String, String, UserHandle>): AppPermGroupUiInfoLiveData {
+            return AppPermGroupUiInfoLiveData(
+                PermissionControllerApplication.get(),
+                key.first,
+                key.second,
+                key.third
+            )
+        }
+
+        /**
+         * Computes the UI properties of an App Permission Group, without going through a LiveData.
+         *
+         * @param app The current application
+         * @param packageName The name of the package
+         * @param permGroupName The name of the permission group
+         * @param user The user of the package
+         * @param packageInfo The PackageInfo of the package
+         * @param permissionGroup The permission group and all of its permissions
+         * @param permissionState The flags and grant state for all permissions in the permission
+         *   group that this package requests
+         */
+        fun getAppPermGroupUiInfo(
+            app: Application,
+            packageName: String,
+            permGroupName: String,
+            user: UserHandle,
+            packageInfo: LightPackageInfo,
+            permissionGroup: PermGroup,
+            permissionState: Map<String, PermState>
+        ): AppPermGroupUiInfo {
+            return AppPermGroupUiInfoCalculator(app, packageName, permGroupName, user)
+                .getAppPermGroupUiInfo(
+                    packageInfo,
+                    permissionGroup.groupInfo,
+                    permissionGroup.permissionInfos,
+                    permissionState
+                )
+        }
+    }
+}
+
+/**
+ * Computes the UI properties of an App Permission Group from its package, permission group and
+ * permission state.
+ *
+ * @param app The current application
+ * @param packageName The name of the package
+ * @param permGroupName The name of the permission group
+ * @param user The user of the package
+ */
+private class AppPermGroupUiInfoCalculator(
+    private val app: Application,
+    private val packageName: String,
+    private val permGroupName: String,
+    private val user: UserHandle
+) {
+    private val isSpecialLocation =
+        LocationUtils.isLocationGroupAndProvider(app, permGroupName, packageName) ||
+            LocationUtils.isLocationGroupAndControllerExtraPackage(app, permGroupName, packageName)
+    private val isStorage = permGroupName == STORAGE
+    private val isHealth = Utils.isHealthPermissionGroup(permGroupName)
+
     /**
      * Determines if the UI should show a given package, if that package is a system app, and if it
      * has granted permissions in this LiveData's permission group.
@@ -121,7 +213,7 @@ private constructor(
      * @param permissionState The flags and grant state for all permissions in the permission group
      *   that this package requests
      */
-    private fun getAppPermGroupUiInfo(
+    fun getAppPermGroupUiInfo(
         packageInfo: LightPackageInfo,
         groupInfo: LightPermGroupInfo,
         allPermInfos: Map<String, LightPermInfo>,
@@ -376,42 +468,4 @@ private constructor(
         return permGroupName.equals(Manifest.permission_group.CAMERA) ||
             permGroupName.equals(Manifest.permission_group.MICROPHONE)
     }
-
-    override fun onLocationStateChange(enabled: Boolean) {
-        update()
-    }
-
-    override fun onActive() {
-        super.onActive()
-        if (isSpecialLocation) {
-            LocationUtils.addLocationListener(this)
-            update()
-        }
-    }
-
-    override fun onInactive() {
-        super.onInactive()
-
-        if (isSpecialLocation) {
-            LocationUtils.removeLocationListener(this)
-        }
-    }
-
-    /**
-     * Repository for AppPermGroupUiInfoLiveDatas.
-     *
-     * <p> Key value is a triple of string package name, string permission group name, and
-     * UserHandle, value is its corresponding LiveData.
-     */
-    companion object :
-        DataRepositoryForPackage<Triple<String, String, UserHandle>, AppPermGroupUiInfoLiveData>() {
-        override fun newValue(key: Triple<String, String, UserHandle>): AppPermGroupUiInfoLiveData {
-            return AppPermGroupUiInfoLiveData(
-                PermissionControllerApplication.get(),
-                key.first,
-                key.second,
-                key.third
-            )
-        }
-    }
 }
@@ -64,10 +64,46 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
      */
     operator fun get(key: K): V {
         synchronized(lock) {
-            return data.getOrPut(key) { newValue(key) }
+            return getOrPutLocked(key) { newValue(key) }
         }
     }
 
+    /**
+     * Get a value from this repository, creating it with [createValue] if needed
+     *
+     * @param key The key associated with the desired Value
+     * @param createValue Creates the Value if it is not cached yet
+     * @return The cached or newly created Value for the given Key
+     */
+    @GuardedBy("lock")
+    protected fun getOrPutLocked(key: K, createValue: () -> V): V {
+        data[key]?.let {
+            return it
+        }
+        val value = createValue()
+        data[key] = value
+        onKeyAdded(key)
+        return value
+    }
+
+    /**
+     * Remove a value from this repository
+     *
+     * @param key The key associated with the Value to remove
+     */
+    @GuardedBy("lock")
+    private fun removeLocked(key: K) {
+        if (data.remove(key) != null) {
+            onKeyRemoved(key)
+        }
+    }
+
+    /** Called when a value is added to [data] for the given [key] */
+    @GuardedBy("lock") protected open fun onKeyAdded(key: K) {}
+
+    /** Called when the value of the given [key] is removed from [data] */
+    @GuardedBy("lock") protected open fun onKeyRemoved(key: K) {}
+
     /**
      * Generate a new value type from the given data
      *
@@ -111,14 +147,14 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
     }
 
     fun invalidateSingle(key: K) {
-        synchronized(lock) { data.remove(key) }
+        synchronized(lock) { removeLocked(key) }
     }
 
     private fun trimInactiveData(threshold: Long) {
         synchronized(lock) {
             data.keys.toList().forEach { key ->
                 if (data[key]?.timeInactive?.let { it >= threshold } == true) {
-                    data.remove(key)
+                    removeLocked(key)
                 }
             }
         }
@@ -153,10 +189,41 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
  * A DataRepository where all values are contingent on the existence of a package. Supports
  * invalidating all values tied to a package. Expects key to be a pair or triple, with the package
  * name as the first value of the key.
+ *
+ * The keys are indexed by package name, so invalidating a package only touches its own values.
  */
 abstract class DataRepositoryForPackage<K, V : DataRepository.InactiveTimekeeper> :
     DataRepository<K, V>() {
 
+    /** Map<package name, keys of the values tied to that package> */
+    @GuardedBy("lock") private val keysByPackage = mutableMapOf<String, MutableSet<K>>()
+
+    @GuardedBy("lock")
+    override fun onKeyAdded(key: K) {
+        val packageName = getPackageName(key) ?: return
+        keysByPackage.getOrPut(packageName) { mutableSetOf() }.add(key)
+    }
+
+    @GuardedBy("lock")
+    override fun onKeyRemoved(key: K) {
+        val packageName = getPackageName(key) ?: return
+        val keys = keysByPackage[packageName] ?: return
+        keys.remove(key)
+        if (keys.isEmpty()) {
+            keysByPackage.remove(packageName)
+        }
+    }
+
+    /** @return the package name in the key, or `null` if the key is not tied to a package */
+    private fun getPackageName(key: K): String? =
+        when (key) {
+            is Pair<*, *> -> key.first
+            is Triple<*, *, *> -> key.first
+            is KotlinUtils.Quadruple<*, *, *, *> -> key.first
+            else -> null
+        }
+            as? String
+
     /**
      * Invalidates every value with the packageName in the key.
      *
@@ -164,14 +231,9 @@ abstract class DataRepositoryForPackage<K, V : DataRepository.InactiveTimekeeper
      */
     fun invalidateAllForPackage(packageName: String) {
         synchronized(lock) {
-            for (key in data.keys.toSet()) {
-                if (
-                    key is Pair<*, *> ||
-                        key is Triple<*, *, *> ||
-                        key is KotlinUtils.Quadruple<*, *, *, *> && key.first == packageName
-                ) {
-                    data.remove(key)
-                }
+            val keys = keysByPackage.remove(packageName) ?: return
+            for (key in keys) {
+                data.remove(key)
             }
         }
     }
@@ -194,7 +256,7 @@ abstract class DataRepositoryForDevice<K, V : DataRepository.InactiveTimekeeper>
 
     fun getWithDeviceId(key: K, deviceId: Int): V {
         synchronized(lock) {
-            return data.getOrPut(key) { newValue(key, deviceId) }
+            return getOrPutLocked(key) { newValue(key, deviceId) }
         }
     }
 }
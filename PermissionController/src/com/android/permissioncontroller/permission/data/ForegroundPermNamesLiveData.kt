@@ -16,6 +16,7 @@
 
 package com.android.permissioncontroller.permission.data
 
+import android.content.Context
 import android.content.pm.PackageManager
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.utils.PermissionMapping
@@ -36,12 +37,25 @@ object ForegroundPermNamesLiveData : SmartAsyncMediatorLiveData<Map<String, List
     }
 
     override suspend fun loadDataAndPostValue(job: Job) {
+        postValue(loadForegroundPermNames(app))
+    }
+
+    /**
+     * Loads the map of background permission name -> foreground permission names, like this
+     * LiveData does.
+     *
+     * @param context The context to load the permissions with
+     */
+    fun loadForegroundPermNames(context: Context): Map<String, List<String>> {
         val systemGroups = PermissionMapping.getPlatformPermissionGroups()
         val permMap = mutableMapOf<String, MutableList<String>>()
         for (groupName in systemGroups) {
             val permInfos =
                 try {
-                    Utils.getInstalledRuntimePermissionInfosForGroup(app.packageManager, groupName)
+                    Utils.getInstalledRuntimePermissionInfosForGroup(
+                        context.packageManager,
+                        groupName
+                    )
                 } catch (e: PackageManager.NameNotFoundException) {
                     continue
                 }
@@ -53,6 +67,6 @@ object ForegroundPermNamesLiveData : SmartAsyncMediatorLiveData<Map<String, List
                 }
             }
         }
-        postValue(permMap)
+        return permMap
     }
 }
@@ -27,6 +27,8 @@ import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermission
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroup
+import com.android.permissioncontroller.permission.model.livedatatypes.PermState
 import com.android.permissioncontroller.permission.utils.KotlinUtils
 import com.android.permissioncontroller.permission.utils.LocationUtils
 import com.android.permissioncontroller.permission.utils.Utils
@@ -49,8 +51,6 @@ private constructor(
     private val deviceId: Int
 ) : SmartUpdateMediatorLiveData<LightAppPermGroup?>(), LocationUtils.LocationListener {
 
-    private val LOG_TAG = this::class.java.simpleName
-
     private var isSpecialLocation = false
     private val permStateLiveData = PermStateLiveData[packageName, permGroupName, user, deviceId]
     private val permGroupLiveData = PermGroupLiveData[permGroupName]
@@ -104,93 +104,19 @@ private constructor(
         val packageInfo = packageInfoLiveData.value ?: return
         val allForegroundPerms = fgPermNamesLiveData.value ?: return
 
-        // Do not allow toggling pre-M custom perm groups
-        if (
-            packageInfo.targetSdkVersion < Build.VERSION_CODES.M &&
-                permGroup.groupInfo.packageName != OS_PKG
-        ) {
-            value = LightAppPermGroup(packageInfo, permGroup.groupInfo, emptyMap())
-            return
-        }
-
-        val permissionMap = mutableMapOf<String, LightPermission>()
-        for ((permName, permState) in permStates) {
-            val permInfo = permGroup.permissionInfos[permName] ?: continue
-            val foregroundPerms = allForegroundPerms[permName]
-            permissionMap[permName] =
-                LightPermission(packageInfo, permInfo, permState, foregroundPerms)
-        }
-
-        // Determine if this app permission group is a special location package or provider
-        var specialLocationGrant: Boolean? = null
-        val userContext = Utils.getUserContext(app, user)
-        if (LocationUtils.isLocationGroupAndProvider(userContext, permGroupName, packageName)) {
-            specialLocationGrant = LocationUtils.isLocationEnabled(userContext)
-        } else if (
-            LocationUtils.isLocationGroupAndControllerExtraPackage(app, permGroupName, packageName)
-        ) {
-            // The permission of the extra location controller package is determined by the status
-            // of the controller package itself.
-            specialLocationGrant =
-                LocationUtils.isExtraLocationControllerPackageEnabled(userContext)
-        }
-
-        val hasInstallToRuntimeSplit = hasInstallToRuntimeSplit(packageInfo, permissionMap)
         value =
-            LightAppPermGroup(
+            createLightAppPermGroup(
+                app,
+                packageName,
+                permGroupName,
+                user,
                 packageInfo,
-                permGroup.groupInfo,
-                permissionMap,
-                hasInstallToRuntimeSplit,
-                specialLocationGrant
+                permGroup,
+                permStates,
+                allForegroundPerms
             )
     }
 
-    /**
-     * Check if permission group contains a runtime permission that split from an installed
-     * permission and the split happened in an Android version higher than app's targetSdk.
-     *
-     * @return `true` if there is such permission, `false` otherwise
-     */
-    private fun hasInstallToRuntimeSplit(
-        packageInfo: LightPackageInfo,
-        permissionMap: Map<String, LightPermission>
-    ): Boolean {
-        val permissionManager = app.getSystemService(PermissionManager::class.java) ?: return false
-
-        for (spi in permissionManager.splitPermissions) {
-            val splitPerm = spi.splitPermission
-
-            val pi =
-                try {
-                    app.packageManager.getPermissionInfo(splitPerm, 0)
-                } catch (e: PackageManager.NameNotFoundException) {
-                    Log.w(LOG_TAG, "No such permission: $splitPerm", e)
-                    continue
-                }
-
-            // Skip if split permission is not "install" permission.
-            if (pi.protection != PermissionInfo.PROTECTION_NORMAL) {
-                continue
-            }
-
-            val newPerms = spi.newPermissions
-            for (permName in newPerms) {
-                val newPerm = permissionMap[permName]?.permInfo ?: continue
-
-                // Skip if new permission is not "runtime" permission.
-                if (newPerm.protection != PermissionInfo.PROTECTION_DANGEROUS) {
-                    continue
-                }
-
-                if (packageInfo.targetSdkVersion < spi.targetSdk) {
-                    return true
-                }
-            }
-        }
-        return false
-    }
-
     override fun onLocationStateChange(enabled: Boolean) {
         update()
     }
@@ -222,6 +148,8 @@ private constructor(
         DataRepositoryForDevice<
             KotlinUtils.Quadruple<String, String, UserHandle, Int>, LightAppPermGroupLiveData
         >() {
+        private val LOG_TAG = LightAppPermGroupLiveData::class.java.simpleName
+
         override fun newValue(
             key: KotlinUtils.Quadruple<String, String, UserHandle, Int>,
             deviceId: Int
@@ -234,5 +162,120 @@ private constructor(
                 deviceId
             )
         }
+
+        /**
+         * Creates the [LightAppPermGroup] of a package from its package info, permission group and
+         * permission states, like this LiveData does on every update.
+         *
+         * @param app The current application
+         * @param packageName The name of the package
+         * @param permGroupName The name of the permission group
+         * @param user The user of the package
+         * @param packageInfo The package info of the package
+         * @param permGroup The permission group and all of its permissions
+         * @param permStates The flags and grant state of the permissions in the permission group
+         *   that the package requests
+         * @param allForegroundPerms The foreground permissions of every background permission
+         */
+        fun createLightAppPermGroup(
+            app: Application,
+            packageName: String,
+            permGroupName: String,
+            user: UserHandle,
+            packageInfo: LightPackageInfo,
+            permGroup: PermGroup,
+            permStates: Map<String, PermState>,
+            allForegroundPerms: Map<String, List<String>>
+        ): LightAppPermGroup {
+            // Do not allow toggling pre-M custom perm groups
+            if (
+                packageInfo.targetSdkVersion < Build.VERSION_CODES.M &&
+                    permGroup.groupInfo.packageName != OS_PKG
+            ) {
+                return LightAppPermGroup(packageInfo, permGroup.groupInfo, emptyMap())
+            }
+
+            val permissionMap = mutableMapOf<String, LightPermission>()
+            for ((permName, permState) in permStates) {
+                val permInfo = permGroup.permissionInfos[permName] ?: continue
+                val foregroundPerms = allForegroundPerms[permName]
+                permissionMap[permName] =
+                    LightPermission(packageInfo, permInfo, permState, foregroundPerms)
+            }
+
+            // Determine if this app permission group is a special location package or provider
+            var specialLocationGrant: Boolean? = null
+            val userContext = Utils.getUserContext(app, user)
+            if (LocationUtils.isLocationGroupAndProvider(userContext, permGroupName, packageName)) {
+                specialLocationGrant = LocationUtils.isLocationEnabled(userContext)
+            } else if (
+                LocationUtils.isLocationGroupAndControllerExtraPackage(
+                    app,
+                    permGroupName,
+                    packageName
+                )
+            ) {
+                // The permission of the extra location controller package is determined by the
+                // status of the controller package itself.
+                specialLocationGrant =
+                    LocationUtils.isExtraLocationControllerPackageEnabled(userContext)
+            }
+
+            val hasInstallToRuntimeSplit = hasInstallToRuntimeSplit(app, packageInfo, permissionMap)
+            return LightAppPermGroup(
+                packageInfo,
+                permGroup.groupInfo,
+                permissionMap,
+                hasInstallToRuntimeSplit,
+                specialLocationGrant
+            )
+        }
+
+        /**
+         * Check if permission group contains a runtime permission that split from an installed
+         * permission and the split happened in an Android version higher than app's targetSdk.
+         *
+         * @return `true` if there is such permission, `false` otherwise
+         */
+        private fun hasInstallToRuntimeSplit(
+            app: Application,
+            packageInfo: LightPackageInfo,
+            permissionMap: Map<String, LightPermission>
+        ): Boolean {
+            val permissionManager =
+                app.getSystemService(PermissionManager::class.java) ?: return false
+
+            for (spi in permissionManager.splitPermissions) {
+                val splitPerm = spi.splitPermission
+
+                val pi =
+                    try {
+                        app.packageManager.getPermissionInfo(splitPerm, 0)
+                    } catch (e: PackageManager.NameNotFoundException) {
+                        Log.w(LOG_TAG, "No such permission: $splitPerm", e)
+                        continue
+                    }
+
+                // Skip if split permission is not "install" permission.
+                if (pi.protection != PermissionInfo.PROTECTION_NORMAL) {
+                    continue
+                }
+
+                val newPerms = spi.newPermissions
+                for (permName in newPerms) {
+                    val newPerm = permissionMap[permName]?.permInfo ?: continue
+
+                    // Skip if new permission is not "runtime" permission.
+                    if (newPerm.protection != PermissionInfo.PROTECTION_DANGEROUS) {
+                        continue
+                    }
+
+                    if (packageInfo.targetSdkVersion < spi.targetSdk) {
+                        return true
+                    }
+                }
+            }
+            return false
+        }
     }
 }
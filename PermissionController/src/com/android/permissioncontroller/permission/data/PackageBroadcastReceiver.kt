@@ -21,10 +21,14 @@ import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
 import android.content.IntentFilter
+import android.os.Process
+import android.os.UserHandle
 import com.android.modules.utils.build.SdkLevel
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.data.v34.LightInstallSourceInfoLiveData
 import com.android.permissioncontroller.permission.data.v34.SafetyLabelInfoLiveData
+import com.android.permissioncontroller.permission.utils.BadgedIconCache
+import com.android.permissioncontroller.permission.utils.IPC
 import kotlinx.coroutines.Dispatchers.Main
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
@@ -45,6 +49,8 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
     private val changeCallbacks = mutableMapOf<String, MutableSet<PackageBroadcastListener>>()
     /** A list of listener IDs, which listen to all package additions, changes, and removals. */
     private val allCallbacks = mutableSetOf<PackageBroadcastListener>()
+    /** A copy of [allCallbacks], only updated when callbacks are added or removed. */
+    private var allCallbacksSnapshot = emptyList<PackageBroadcastListener>()
 
     /** Add a callback which will be notified when the specified packaged is changed or removed. */
     fun addChangeCallback(packageName: String, listener: PackageBroadcastListener) {
@@ -74,7 +80,9 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
         GlobalScope.launch(Main.immediate) {
             val wasEmpty = hasNoListeners()
 
-            allCallbacks.add(listener)
+            if (allCallbacks.add(listener)) {
+                allCallbacksSnapshot = allCallbacks.toList()
+            }
 
             if (wasEmpty) {
                 app.applicationContext.registerReceiverForAllUsers(
@@ -96,7 +104,12 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
         GlobalScope.launch(Main.immediate) {
             val wasEmpty = hasNoListeners()
 
-            if (allCallbacks.remove(listener) && hasNoListeners() && !wasEmpty) {
+            if (!allCallbacks.remove(listener)) {
+                return@launch
+            }
+            allCallbacksSnapshot = allCallbacks.toList()
+
+            if (hasNoListeners() && !wasEmpty) {
                 app.applicationContext.unregisterReceiver(this@PackageBroadcastReceiver)
             }
         }
@@ -145,7 +158,7 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
     override fun onReceive(context: Context, intent: Intent) {
         val packageName = intent.data?.schemeSpecificPart ?: return
 
-        for (callback in allCallbacks.toList()) {
+        for (callback in allCallbacksSnapshot) {
             callback.onPackageUpdate(packageName)
         }
 
@@ -158,7 +171,8 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
         }
 
         if (intent.action == Intent.ACTION_PACKAGE_REMOVED) {
-            // Invalidate all livedatas associated with this package
+            // Invalidate all livedatas associated with this package right away, so that they are
+            // not served stale. The repositories index their keys by package, so this is cheap.
             LightPackageInfoLiveData.invalidateAllForPackage(packageName)
             PermStateLiveData.invalidateAllForPackage(packageName)
             PackagePermissionsLiveData.invalidateAllForPackage(packageName)
@@ -169,6 +183,15 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
                 SafetyLabelInfoLiveData.invalidateAllForPackage(packageName)
                 LightInstallSourceInfoLiveData.invalidateAllForPackage(packageName)
             }
+            // Updated packages overwrite their icon cache entry on the next lookup
+            val uid = intent.getIntExtra(Intent.EXTRA_UID, Process.INVALID_UID)
+            val replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)
+            if (uid != Process.INVALID_UID && !replacing) {
+                val user = UserHandle.getUserHandleForUid(uid)
+                GlobalScope.launch(IPC) {
+                    BadgedIconCache.removeCachedIcons(context, packageName, user)
+                }
+            }
         }
     }
 
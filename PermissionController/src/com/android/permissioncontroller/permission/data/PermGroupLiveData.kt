@@ -17,7 +17,7 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
-import android.content.pm.PackageItemInfo
+import android.content.Context
 import android.content.pm.PackageManager
 import android.content.pm.PermissionGroupInfo
 import android.content.pm.PermissionInfo
@@ -40,15 +40,11 @@ class PermGroupLiveData
 private constructor(private val app: Application, private val groupName: String) :
     SmartUpdateMediatorLiveData<PermGroup>(), PackageBroadcastReceiver.PackageBroadcastListener {
 
-    private val LOG_TAG = this::class.java.simpleName
-
     private val context = app.applicationContext!!
 
     /** Map<packageName, LiveData<PackageInfo>> */
     private val packageLiveDatas = mutableMapOf<String, LightPackageInfoLiveData>()
 
-    private lateinit var groupInfo: PackageItemInfo
-
     /**
      * Called when a package is installed, changed, or removed.
      *
@@ -63,52 +59,18 @@ private constructor(private val app: Application, private val groupName: String)
      * PackageInfoLiveDatas, then re-adds them.
      */
     override fun onUpdate() {
-        val permissionInfos = mutableMapOf<String, LightPermInfo>()
-
-        groupInfo =
-            Utils.getGroupInfo(groupName, context)
-                ?: run {
-                    Log.e(LOG_TAG, "Invalid permission group $groupName")
-                    invalidateSingle(groupName)
-                    value = null
-                    return
-                }
-
-        when (groupInfo) {
-            is PermissionGroupInfo -> {
-                val permInfos =
-                    try {
-                        Utils.getInstalledRuntimePermissionInfosForGroup(
-                            context.packageManager,
-                            groupName
-                        )
-                    } catch (e: PackageManager.NameNotFoundException) {
-                        Log.e(LOG_TAG, "Invalid permission group $groupName")
-                        invalidateSingle(groupName)
-                        value = null
-                        return
-                    }
-
-                for (permInfo in permInfos) {
-                    permissionInfos[permInfo.name] = LightPermInfo(permInfo)
-                }
-            }
-            is PermissionInfo -> {
-                permissionInfos[groupInfo.name] = LightPermInfo(groupInfo as PermissionInfo)
-            }
-            else -> {
-                value = null
-                return
-            }
+        val permGroup = loadPermGroup(context, groupName)
+        if (permGroup == null) {
+            invalidateSingle(groupName)
+            value = null
+            return
         }
 
-        val permGroup = PermGroup(LightPermGroupInfo(groupInfo), permissionInfos)
-
         value = permGroup
 
         val packageNames =
-            permissionInfos.values.map { permInfo -> permInfo.packageName }.toMutableSet()
-        packageNames.add(groupInfo.packageName)
+            permGroup.permissionInfos.values.map { permInfo -> permInfo.packageName }.toMutableSet()
+        packageNames.add(permGroup.groupInfo.packageName)
 
         // TODO ntmyren: What if the package isn't installed for the system user?
         val getLiveData = { packageName: String ->
@@ -141,8 +103,56 @@ private constructor(private val app: Application, private val groupName: String)
      * <p> Key value is a string permission group name, value is its corresponding LiveData.
      */
     companion object : DataRepository<String, PermGroupLiveData>() {
+        private val LOG_TAG = PermGroupLiveData::class.java.simpleName
+
         override fun newValue(key: String): PermGroupLiveData {
             return PermGroupLiveData(PermissionControllerApplication.get(), key)
         }
+
+        /**
+         * Loads a permission group and its installed runtime permissions, like this LiveData does
+         * on every update.
+         *
+         * @param context The context to load the permission group with
+         * @param groupName The name of the permission group
+         * @return The permission group, or null if it is not a valid permission group
+         */
+        fun loadPermGroup(context: Context, groupName: String): PermGroup? {
+            val permissionInfos = mutableMapOf<String, LightPermInfo>()
+
+            val groupInfo =
+                Utils.getGroupInfo(groupName, context)
+                    ?: run {
+                        Log.e(LOG_TAG, "Invalid permission group $groupName")
+                        return null
+                    }
+
+            when (groupInfo) {
+                is PermissionGroupInfo -> {
+                    val permInfos =
+                        try {
+                            Utils.getInstalledRuntimePermissionInfosForGroup(
+                                context.packageManager,
+                                groupName
+                            )
+                        } catch (e: PackageManager.NameNotFoundException) {
+                            Log.e(LOG_TAG, "Invalid permission group $groupName")
+                            return null
+                        }
+
+                    for (permInfo in permInfos) {
+                        permissionInfos[permInfo.name] = LightPermInfo(permInfo)
+                    }
+                }
+                is PermissionInfo -> {
+                    permissionInfos[groupInfo.name] = LightPermInfo(groupInfo)
+                }
+                else -> {
+                    return null
+                }
+            }
+
+            return PermGroup(LightPermGroupInfo(groupInfo), permissionInfos)
+        }
     }
 }
@@ -17,11 +17,13 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
+import android.content.Context
 import android.content.pm.PackageInfo
 import android.content.pm.PackageManager
 import android.os.UserHandle
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroup
 import com.android.permissioncontroller.permission.model.livedatatypes.PermState
 import com.android.permissioncontroller.permission.utils.ContextCompat
 import com.android.permissioncontroller.permission.utils.KotlinUtils
@@ -86,21 +88,9 @@ private constructor(
             postValue(null)
             return
         }
-        val permissionStates = mutableMapOf<String, PermState>()
-        for ((index, permissionName) in packageInfo.requestedPermissions.withIndex()) {
-            permissionGroup.permissionInfos[permissionName]?.let { permInfo ->
-                val packageFlags = packageInfo.requestedPermissionsFlags[index]
-                val permFlags =
-                    context.packageManager.getPermissionFlags(permInfo.name, packageName, user)
-                val granted =
-                    packageFlags and PackageInfo.REQUESTED_PERMISSION_GRANTED != 0 &&
-                        permFlags and PackageManager.FLAG_PERMISSION_REVOKED_COMPAT == 0
-
-                if (job.isCancelled) {
-                    return
-                }
-                permissionStates[permissionName] = PermState(permFlags, granted)
-            }
+        val permissionStates = loadPermStates(context, packageInfo, permissionGroup, user)
+        if (job.isCancelled) {
+            return
         }
 
         postValue(permissionStates)
@@ -160,5 +150,40 @@ private constructor(
                 deviceId
             )
         }
+
+        /**
+         * Loads the state of the permissions of a group that a package requests, like this LiveData
+         * does on every update.
+         *
+         * @param context The context of the user of the package
+         * @param packageInfo The package info of the package
+         * @param permGroup The permission group and all of its permissions
+         * @param user The user of the package
+         * @return The flags and grant state of the permissions by name
+         */
+        fun loadPermStates(
+            context: Context,
+            packageInfo: LightPackageInfo,
+            permGroup: PermGroup,
+            user: UserHandle
+        ): Map<String, PermState> {
+            val permissionStates = mutableMapOf<String, PermState>()
+            for ((index, permissionName) in packageInfo.requestedPermissions.withIndex()) {
+                permGroup.permissionInfos[permissionName]?.let { permInfo ->
+                    val packageFlags = packageInfo.requestedPermissionsFlags[index]
+                    val permFlags =
+                        context.packageManager.getPermissionFlags(
+                            permInfo.name,
+                            packageInfo.packageName,
+                            user
+                        )
+                    val granted =
+                        packageFlags and PackageInfo.REQUESTED_PERMISSION_GRANTED != 0 &&
+                            permFlags and PackageManager.FLAG_PERMISSION_REVOKED_COMPAT == 0
+                    permissionStates[permissionName] = PermState(permFlags, granted)
+                }
+            }
+            return permissionStates
+        }
     }
 }
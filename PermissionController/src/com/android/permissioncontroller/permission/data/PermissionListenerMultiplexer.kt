@@ -16,23 +16,72 @@
 
 package com.android.permissioncontroller.permission.data
 
-import android.app.Application
 import android.content.pm.PackageManager
+import android.os.Handler
+import android.os.Looper
+import androidx.annotation.VisibleForTesting
 import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.PermissionListenerMultiplexer.PermissionChangeCallback
+import java.util.IdentityHashMap
 
-/** Serves as a single shared Permission Change Listener for all AppPermissionGroupLiveDatas. */
-object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListener {
+/**
+ * Serves as a single shared Permission Change Listener for all AppPermissionGroupLiveDatas.
+ *
+ * @see BasePermissionListenerMultiplexer
+ */
+object PermissionListenerMultiplexer :
+    BasePermissionListenerMultiplexer(
+        PermissionControllerApplication.get().applicationContext.packageManager,
+        Looper.getMainLooper()
+    ) {
+
+    interface PermissionChangeCallback {
+        fun onPermissionChange()
+    }
+}
+
+/**
+ * Dispatches the permission changes of the [PackageManager] to the [PermissionChangeCallback]s of
+ * the changed UID.
+ *
+ * Changes are coalesced: all changes for a UID within [COALESCE_DELAY_MILLIS] of the first one
+ * result in a single [PermissionChangeCallback.onPermissionChange] per callback.
+ *
+ * A callback can be added several times for the same UID, e.g. once per package sharing the UID.
+ * It is notified once per change, and stays registered until it is removed as many times as it
+ * was added.
+ *
+ * Callbacks must be added and removed on the thread of the given [Looper].
+ */
+open class BasePermissionListenerMultiplexer(private val pm: PackageManager, looper: Looper) :
+    PackageManager.OnPermissionsChangedListener {
 
-    private val app: Application = PermissionControllerApplication.get()
     /**
-     * Map<UID, list of PermissionChangeCallbacks that wish to be informed when permissions are
-     * updated for that UID>
+     * Map<UID, map of PermissionChangeCallbacks that wish to be informed when permissions are
+     * updated for that UID to the number of times they were added>
      */
-    private val callbacks = mutableMapOf<Int, MutableList<PermissionChangeCallback>>()
-    private val pm = app.applicationContext.packageManager
+    private val callbacks = mutableMapOf<Int, IdentityHashMap<PermissionChangeCallback, Int>>()
+    private val handler = Handler(looper)
+
+    /** UIDs whose permissions changed since the callbacks were last notified */
+    private val pendingUids = mutableSetOf<Int>()
+    private val dispatchRunnable = Runnable { dispatchPendingUids() }
 
     override fun onPermissionsChanged(uid: Int) {
-        callbacks[uid]?.toList()?.forEach { callback -> callback.onPermissionChange() }
+        handler.post {
+            if (pendingUids.isEmpty()) {
+                handler.postDelayed(dispatchRunnable, COALESCE_DELAY_MILLIS)
+            }
+            pendingUids.add(uid)
+        }
+    }
+
+    private fun dispatchPendingUids() {
+        val uids = pendingUids.toList()
+        pendingUids.clear()
+        for (uid in uids) {
+            callbacks[uid]?.keys?.toList()?.forEach { callback -> callback.onPermissionChange() }
+        }
     }
 
     fun addOrReplaceCallback(oldUid: Int?, newUid: Int, callback: PermissionChangeCallback) {
@@ -45,7 +94,8 @@ object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListen
     fun addCallback(uid: Int, callback: PermissionChangeCallback) {
         val wasEmpty = callbacks.isEmpty()
 
-        callbacks.getOrPut(uid, { mutableListOf() }).add(callback)
+        val uidCallbacks = callbacks.getOrPut(uid) { IdentityHashMap() }
+        uidCallbacks[callback] = (uidCallbacks[callback] ?: 0) + 1
 
         if (wasEmpty) {
             pm.addOnPermissionsChangeListener(this)
@@ -53,15 +103,16 @@ object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListen
     }
 
     fun removeCallback(uid: Int, callback: PermissionChangeCallback) {
-        if (!callbacks.contains(uid)) {
-            return
-        }
+        val uidCallbacks = callbacks[uid] ?: return
+        val count = uidCallbacks[callback] ?: return
 
-        if (!callbacks[uid]!!.remove(callback)) {
+        if (count > 1) {
+            uidCallbacks[callback] = count - 1
             return
         }
+        uidCallbacks.remove(callback)
 
-        if (callbacks[uid]!!.isEmpty()) {
+        if (uidCallbacks.isEmpty()) {
             callbacks.remove(uid)
         }
 
@@ -70,7 +121,8 @@ object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListen
         }
     }
 
-    interface PermissionChangeCallback {
-        fun onPermissionChange()
+    companion object {
+        /** How long to wait for more permission changes before notifying callbacks, ~ 1 frame */
+        @VisibleForTesting const val COALESCE_DELAY_MILLIS = 16L
     }
 }
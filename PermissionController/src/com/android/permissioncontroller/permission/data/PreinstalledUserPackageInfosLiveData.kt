@@ -18,6 +18,7 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
+import android.content.Context
 import android.content.pm.PackageManager.GET_PERMISSIONS
 import android.content.pm.PackageManager.MATCH_FACTORY_ONLY
 import android.content.pm.PackageManager.MATCH_UNINSTALLED_PACKAGES
@@ -45,12 +46,7 @@ private constructor(private val app: Application, private val user: UserHandle)
         if (job.isCancelled) {
             return
         }
-        val packageInfos =
-            app.applicationContext.packageManager.getInstalledPackagesAsUser(
-                GET_PERMISSIONS or MATCH_UNINSTALLED_PACKAGES or MATCH_FACTORY_ONLY,
-                user.identifier
-            )
-        postValue(packageInfos.map { packageInfo -> LightPackageInfo(packageInfo) })
+        postValue(loadPackageInfos(app, user))
     }
 
     override fun onActive() {
@@ -71,5 +67,21 @@ private constructor(private val app: Application, private val user: UserHandle)
         override fun newValue(key: UserHandle): PreinstalledUserPackageInfosLiveData {
             return PreinstalledUserPackageInfosLiveData(PermissionControllerApplication.get(), key)
         }
+
+        /**
+         * Load all of the preinstalled packages of a user, without going through a LiveData.
+         *
+         * @param context The context to use to query the packages
+         * @param user The user whose packages are desired
+         * @return the preinstalled packages of the user
+         */
+        fun loadPackageInfos(context: Context, user: UserHandle): List<LightPackageInfo> {
+            val packageInfos =
+                context.packageManager.getInstalledPackagesAsUser(
+                    GET_PERMISSIONS or MATCH_UNINSTALLED_PACKAGES or MATCH_FACTORY_ONLY,
+                    user.identifier
+                )
+            return packageInfos.map { packageInfo -> LightPackageInfo(packageInfo) }
+        }
     }
 }
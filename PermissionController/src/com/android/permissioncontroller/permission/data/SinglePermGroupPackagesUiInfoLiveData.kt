@@ -20,13 +20,21 @@ import android.app.Application
 import android.os.UserHandle
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
+import com.android.permissioncontroller.permission.utils.IPC
 import com.android.permissioncontroller.permission.utils.PermissionMapping
+import kotlinx.coroutines.Dispatchers.Main
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.withContext
 
 /**
  * LiveData for the UI info for all packages in a single permission group. Tracks which packages
  * have permissions in the given group, which should be shown on the UI, and which are granted or
  * not.
  *
+ * Until the UI info of all packages is loaded, the last value persisted in
+ * [AppPermGroupUiInfoCache] is served as a stale value.
+ *
  * @param app The current application
  * @param permGroupName The name of the permission group this LiveData represents
  */
@@ -56,6 +64,16 @@ private constructor(private val app: Application, private val permGroupName: Str
         }
 
         addSource(permGroupPackagesLiveData) { update() }
+
+        GlobalScope.launch(IPC) {
+            val cachedUiInfos = AppPermGroupUiInfoCache.get(app, permGroupName) ?: return@launch
+            withContext(Main) {
+                // Only serve the cached value while it is stale, so that it is always revalidated.
+                if (!isInitialized && permGroupPackagesLiveData.isStale) {
+                    value = cachedUiInfos
+                }
+            }
+        }
     }
 
     override fun onUpdate() {
@@ -64,7 +82,7 @@ private constructor(private val app: Application, private val permGroupName: Str
             addAndRemoveAppPermGroupLiveDatas(thisPermGroupPackages.toList())
 
             if (thisPermGroupPackages.isEmpty()) {
-                permGroupLiveData.value?.groupInfo?.let { value = emptyMap() }
+                permGroupLiveData.value?.groupInfo?.let { setUiInfos(emptyMap()) }
             }
         }
     }
@@ -93,7 +111,7 @@ private constructor(private val app: Application, private val permGroupName: Str
                 }
 
                 if (appPermGroupLiveDatas.all { entry -> entry.value.isInitialized }) {
-                    permGroupLiveData.value?.groupInfo?.let { value = shownPackages.toMap() }
+                    permGroupLiveData.value?.groupInfo?.let { setUiInfos(shownPackages.toMap()) }
                 }
             }
 
@@ -102,10 +120,15 @@ private constructor(private val app: Application, private val permGroupName: Str
         }
 
         if (appPermGroupLiveDatas.all { entry -> entry.value.isInitialized }) {
-            permGroupLiveData.value?.groupInfo?.let { value = shownPackages.toMap() }
+            permGroupLiveData.value?.groupInfo?.let { setUiInfos(shownPackages.toMap()) }
         }
     }
 
+    private fun setUiInfos(uiInfos: Map<Pair<String, UserHandle>, AppPermGroupUiInfo>) {
+        value = uiInfos
+        AppPermGroupUiInfoCache.put(app, permGroupName, uiInfos)
+    }
+
     /**
      * Repository for SinglePermGroupPackagesUiInfoLiveData objects.
      *
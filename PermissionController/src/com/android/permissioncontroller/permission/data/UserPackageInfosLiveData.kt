@@ -18,6 +18,7 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
+import android.content.Context
 import android.content.pm.PackageManager
 import android.content.pm.PackageManager.GET_ATTRIBUTIONS
 import android.content.pm.PackageManager.GET_ATTRIBUTIONS_LONG
@@ -75,27 +76,7 @@ private constructor(private val app: Application, private val user: UserHandle)
             return
         }
 
-        val packageInfos =
-            if (SdkLevel.isAtLeastU()) {
-                app.applicationContext.packageManager.getInstalledPackagesAsUser(
-                    PackageManager.PackageInfoFlags.of(
-                        GET_PERMISSIONS.toLong() or GET_ATTRIBUTIONS_LONG or MATCH_ALL.toLong()
-                    ),
-                    user.identifier
-                )
-            } else if (SdkLevel.isAtLeastS()) {
-                app.applicationContext.packageManager.getInstalledPackagesAsUser(
-                    GET_PERMISSIONS or GET_ATTRIBUTIONS or MATCH_ALL,
-                    user.identifier
-                )
-            } else {
-                app.applicationContext.packageManager.getInstalledPackagesAsUser(
-                    GET_PERMISSIONS or MATCH_ALL,
-                    user.identifier
-                )
-            }
-
-        postValue(packageInfos.map { packageInfo -> LightPackageInfo(packageInfo) })
+        postValue(loadPackageInfos(app, user))
     }
 
     override fun onActive() {
@@ -127,5 +108,36 @@ private constructor(private val app: Application, private val user: UserHandle)
         override fun newValue(key: UserHandle): UserPackageInfosLiveData {
             return UserPackageInfosLiveData(PermissionControllerApplication.get(), key)
         }
+
+        /**
+         * Load all of the packages of a user, without going through a LiveData.
+         *
+         * @param context The context to use to query the packages
+         * @param user The user whose packages are desired
+         * @return the packages of the user
+         */
+        fun loadPackageInfos(context: Context, user: UserHandle): List<LightPackageInfo> {
+            val packageInfos =
+                if (SdkLevel.isAtLeastU()) {
+                    context.packageManager.getInstalledPackagesAsUser(
+                        PackageManager.PackageInfoFlags.of(
+                            GET_PERMISSIONS.toLong() or GET_ATTRIBUTIONS_LONG or MATCH_ALL.toLong()
+                        ),
+                        user.identifier
+                    )
+                } else if (SdkLevel.isAtLeastS()) {
+                    context.packageManager.getInstalledPackagesAsUser(
+                        GET_PERMISSIONS or GET_ATTRIBUTIONS or MATCH_ALL,
+                        user.identifier
+                    )
+                } else {
+                    context.packageManager.getInstalledPackagesAsUser(
+                        GET_PERMISSIONS or MATCH_ALL,
+                        user.identifier
+                    )
+                }
+
+            return packageInfos.map { packageInfo -> LightPackageInfo(packageInfo) }
+        }
     }
 }
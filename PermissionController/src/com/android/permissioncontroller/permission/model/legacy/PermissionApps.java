@@ -29,6 +29,7 @@ import android.os.UserHandle;
 import android.os.UserManager;
 import android.text.TextUtils;
 import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -209,6 +210,48 @@ public class PermissionApps {
         }
     }
 
+    /**
+     * Get the packages of a user that request at least one of the given permissions.
+     *
+     * <p>If a {@link PmCache} is available, the packages are looked up in its shared requested
+     * permission index instead of scanning all packages for every permission group.
+     */
+    private @NonNull List<PackageInfo> getPackageInfosRequestingAny(@NonNull UserHandle user,
+            @NonNull ArraySet<String> permNames) {
+        if (mPmCache != null && mPackageName == null) {
+            ArrayMap<String, List<PackageInfo>> packagesByPerm =
+                    mPmCache.getPackagesByRequestedPermission(user.getIdentifier());
+            // A package can request several permissions of the group, but must only be returned
+            // once
+            ArraySet<PackageInfo> requestingApps = new ArraySet<>();
+            final int permCount = permNames.size();
+            for (int i = 0; i < permCount; i++) {
+                List<PackageInfo> apps = packagesByPerm.get(permNames.valueAt(i));
+                if (apps != null) {
+                    requestingApps.addAll(apps);
+                }
+            }
+            return new ArrayList<>(requestingApps);
+        }
+
+        List<PackageInfo> apps = getPackageInfos(user);
+        List<PackageInfo> requestingApps = new ArrayList<>();
+        final int appCount = apps.size();
+        for (int i = 0; i < appCount; i++) {
+            PackageInfo app = apps.get(i);
+            if (app.requestedPermissions == null) {
+                continue;
+            }
+            for (String requestedPerm : app.requestedPermissions) {
+                if (permNames.contains(requestedPerm)) {
+                    requestingApps.add(app);
+                    break;
+                }
+            }
+        }
+        return requestingApps;
+    }
+
     private List<PermissionApp> loadPermissionApps() {
         PackageItemInfo groupInfo = Utils.getGroupInfo(mGroupName, mContext);
         if (groupInfo == null) {
@@ -219,14 +262,14 @@ public class PermissionApps {
         if (groupPermInfos == null) {
             return Collections.emptyList();
         }
-        List<PermissionInfo> targetPermInfos = new ArrayList<PermissionInfo>(groupPermInfos.size());
+        ArraySet<String> targetPermNames = new ArraySet<>(groupPermInfos.size());
         for (int i = 0; i < groupPermInfos.size(); i++) {
             PermissionInfo permInfo = groupPermInfos.get(i);
             if ((permInfo.protectionLevel & PermissionInfo.PROTECTION_MASK_BASE)
                     == PermissionInfo.PROTECTION_DANGEROUS
                     && (permInfo.flags & PermissionInfo.FLAG_INSTALLED) != 0
                     && (permInfo.flags & PermissionInfo.FLAG_REMOVED) == 0) {
-                targetPermInfos.add(permInfo);
+                targetPermNames.add(permInfo.name);
             }
         }
 
@@ -239,76 +282,54 @@ public class PermissionApps {
 
         UserManager userManager = mContext.getSystemService(UserManager.class);
         for (UserHandle user : userManager.getUserProfiles()) {
-            List<PackageInfo> apps = getPackageInfos(user);
+            List<PackageInfo> apps = getPackageInfosRequestingAny(user, targetPermNames);
             final int N = apps.size();
             for (int i = 0; i < N; i++) {
                 PackageInfo app = apps.get(i);
-                if (app.requestedPermissions == null) {
+                AppPermissionGroup group = AppPermissionGroup.create(mContext,
+                        app, groupInfo, groupPermInfos, groupLabel, fullGroupLabel, false);
+
+                if (group == null) {
                     continue;
                 }
 
-                for (int j = 0; j < app.requestedPermissions.length; j++) {
-                    String requestedPerm = app.requestedPermissions[j];
-
-                    PermissionInfo requestedPermissionInfo = null;
-
-                    for (PermissionInfo groupPermInfo : targetPermInfos) {
-                        if (requestedPerm.equals(groupPermInfo.name)) {
-                            requestedPermissionInfo = groupPermInfo;
-                            break;
-                        }
-                    }
-
-                    if (requestedPermissionInfo == null) {
-                        continue;
-                    }
-
-                    AppPermissionGroup group = AppPermissionGroup.create(mContext,
-                            app, groupInfo, groupPermInfos, groupLabel, fullGroupLabel, false);
-
-                    if (group == null) {
-                        continue;
-                    }
+                AppDataCache.AppData appData = null;
+                if (mAppDataCache != null && !mSkipUi) {
+                    appData = mAppDataCache.getAppData(user.getIdentifier(),
+                            app.applicationInfo);
+                }
 
-                    AppDataCache.AppData appData = null;
-                    if (mAppDataCache != null && !mSkipUi) {
-                        appData = mAppDataCache.getAppData(user.getIdentifier(),
-                                app.applicationInfo);
-                    }
+                String label;
+                if (mSkipUi) {
+                    label = app.packageName;
+                } else if (appData != null) {
+                    label = appData.getLabel();
+                } else {
+                    label = app.applicationInfo.loadLabel(mPm).toString();
+                }
 
-                    String label;
-                    if (mSkipUi) {
-                        label = app.packageName;
-                    } else if (appData != null) {
-                        label = appData.getLabel();
+                Drawable icon = null;
+                if (!mSkipUi) {
+                    if (appData != null) {
+                        icon = appData.getIcon();
                     } else {
-                        label = app.applicationInfo.loadLabel(mPm).toString();
-                    }
-
-                    Drawable icon = null;
-                    if (!mSkipUi) {
-                        if (appData != null) {
-                            icon = appData.getIcon();
-                        } else {
-                            icon = Utils.getBadgedIcon(mContext, app.applicationInfo);
-                        }
+                        icon = Utils.getBadgedIcon(mContext, app.applicationInfo);
                     }
+                }
 
-                    Map<Integer, String> attributionLabels = null;
-                    if (!mSkipUi) {
-                        if (appData != null) {
-                            attributionLabels = appData.getAttributionLabels();
-                        } else {
-                            attributionLabels = SubattributionUtils.getAttributionLabels(mContext,
-                                    app);
-                        }
+                Map<Integer, String> attributionLabels = null;
+                if (!mSkipUi) {
+                    if (appData != null) {
+                        attributionLabels = appData.getAttributionLabels();
+                    } else {
+                        attributionLabels = SubattributionUtils.getAttributionLabels(mContext,
+                                app);
                     }
-                    PermissionApp permApp = new PermissionApp(app.packageName, group, label, icon,
-                            app.applicationInfo, attributionLabels);
-
-                    permApps.add(permApp);
-                    break; // move to the next app.
                 }
+                PermissionApp permApp = new PermissionApp(app.packageName, group, label, icon,
+                        app.applicationInfo, attributionLabels);
+
+                permApps.add(permApp);
             }
         }
 
@@ -493,6 +514,8 @@ public class PermissionApps {
      */
     public static class PmCache {
         private final SparseArray<List<PackageInfo>> mPackageInfoCache = new SparseArray<>();
+        private final SparseArray<ArrayMap<String, List<PackageInfo>>> mRequestedPermissionIndex =
+                new SparseArray<>();
         private final PackageManager mPm;
 
         public PmCache(PackageManager pm) {
@@ -507,6 +530,43 @@ public class PermissionApps {
             }
             return ret;
         }
+
+        /**
+         * Get the packages of a user indexed by the permissions they request.
+         *
+         * <p>The index is built in a single pass over the packages of the user and then shared by
+         * all {@link PermissionApps} using this cache, so that each permission group only needs
+         * to look up its own permissions.
+         *
+         * @param userId the user id
+         *
+         * @return a map of requested permission name to the packages requesting it
+         */
+        public synchronized @NonNull ArrayMap<String, List<PackageInfo>>
+                getPackagesByRequestedPermission(int userId) {
+            ArrayMap<String, List<PackageInfo>> ret = mRequestedPermissionIndex.get(userId);
+            if (ret == null) {
+                ret = new ArrayMap<>();
+                List<PackageInfo> apps = getPackages(userId);
+                final int appCount = apps.size();
+                for (int i = 0; i < appCount; i++) {
+                    PackageInfo app = apps.get(i);
+                    if (app.requestedPermissions == null) {
+                        continue;
+                    }
+                    for (String requestedPerm : app.requestedPermissions) {
+                        List<PackageInfo> requestingApps = ret.get(requestedPerm);
+                        if (requestingApps == null) {
+                            requestingApps = new ArrayList<>();
+                            ret.put(requestedPerm, requestingApps);
+                        }
+                        requestingApps.add(app);
+                    }
+                }
+                mRequestedPermissionIndex.put(userId, ret);
+            }
+            return ret;
+        }
     }
 
     /**
@@ -33,6 +33,7 @@ import android.content.pm.PermissionInfo;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Process;
 import android.util.ArraySet;
 
 import androidx.annotation.NonNull;
@@ -233,20 +234,12 @@ public final class PermissionGroups implements LoaderCallbacks<List<PermissionGr
 
 
         // Make sure we add groups for lone runtime permissions.
-        List<PackageInfo> installedPackages = context.getPackageManager()
-                .getInstalledPackages(PackageManager.GET_PERMISSIONS);
-
+        int userId = Process.myUserHandle().getIdentifier();
+        List<PackageInfo> installedPackages = pmCache.getPackages(userId);
 
         // We will filter out permissions that no package requests.
-        Set<String> requestedPermissions = new ArraySet<>();
-        for (PackageInfo installedPackage : installedPackages) {
-            if (installedPackage.requestedPermissions == null) {
-                continue;
-            }
-            for (String permission : installedPackage.requestedPermissions) {
-                requestedPermissions.add(permission);
-            }
-        }
+        Set<String> requestedPermissions =
+                pmCache.getPackagesByRequestedPermission(userId).keySet();
 
         for (PackageInfo installedPackage : installedPackages) {
             if (installedPackage.permissions == null) {
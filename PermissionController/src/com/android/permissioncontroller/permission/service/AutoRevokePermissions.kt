@@ -42,8 +42,6 @@ import com.android.permissioncontroller.permission.utils.KotlinUtils
 import com.android.permissioncontroller.permission.utils.PermissionMapping
 import com.android.permissioncontroller.permission.utils.application
 import com.android.permissioncontroller.permission.utils.forEachInParallel
-import com.android.permissioncontroller.permission.utils.updatePermissionFlags
-import java.util.concurrent.atomic.AtomicBoolean
 import kotlinx.coroutines.Dispatchers.Main
 
 private const val LOG_TAG = "AutoRevokePermissions"
@@ -80,6 +78,8 @@ suspend fun revokeAppPermissions(
 
         val pkgPermChanges =
             PermissionChangeStorageImpl.getInstance().loadEvents().associateBy { it.packageName }
+        /** Map<group to revoke, permissions to revoke> */
+        val groupsToRevoke = mutableMapOf<LightAppPermGroup, List<String>>()
         // For each autorevoke-eligible app...
         userApps.forEachInParallel(Main) forEachInParallelOuter@{ pkg: LightPackageInfo ->
             if (pkg.grantedPermissions.isEmpty()) {
@@ -175,8 +175,7 @@ suspend fun revokeAppPermissions(
             if (DEBUG_AUTO_REVOKE) {
                 DumpableLog.i(LOG_TAG, "$packageName: final revocable groups: $revocableGroups")
             }
-            // For each revocable group, revoke all of its permissions
-            val anyPermsRevoked = AtomicBoolean(false)
+            // For each revocable group, plan the revocation of all of its permissions
             pkgPermGroups.entries
                 .filter { revocableGroups.contains(it.key) }
                 .forEachInParallel(Main) forEachInParallelInner@{ (groupName, _) ->
@@ -197,68 +196,50 @@ suspend fun revokeAppPermissions(
                         DumpableLog.i(LOG_TAG, "revokeUnused $packageName - $revocablePermissions")
                     }
 
-                    val uid = group.packageInfo.uid
-                    for (permName in revocablePermissions) {
-                        PermissionControllerStatsLog.write(
-                            PERMISSION_GRANT_REQUEST_RESULT_REPORTED,
-                            sessionId,
-                            uid,
-                            packageName,
-                            permName,
-                            false,
-                            SERVER_LOG_ID,
-                            /* permission_rationale_shown = */ false
-                        )
-                    }
-
-                    if (DEBUG_AUTO_REVOKE) {
-                        DumpableLog.i(LOG_TAG, "revoking $packageName - $revocablePermissions")
-                        DumpableLog.i(LOG_TAG, "State pre revocation: ${group.allPermissions}")
-                    }
-                    anyPermsRevoked.compareAndSet(false, true)
-
-                    val bgRevokedState =
-                        KotlinUtils.revokeBackgroundRuntimePermissions(
-                            context.application,
-                            group,
-                            userFixed = false,
-                            oneTime = false,
-                            filterPermissions = revocablePermissions
-                        )
-                    if (DEBUG_AUTO_REVOKE) {
-                        DumpableLog.i(
-                            LOG_TAG,
-                            "Bg state post revocation: ${bgRevokedState.allPermissions}"
-                        )
-                    }
-                    val fgRevokedState =
-                        KotlinUtils.revokeForegroundRuntimePermissions(
-                            context.application,
-                            group,
-                            userFixed = false,
-                            oneTime = false,
-                            filterPermissions = revocablePermissions
-                        )
-                    if (DEBUG_AUTO_REVOKE) {
-                        DumpableLog.i(
-                            LOG_TAG,
-                            "Fg state post revocation: ${fgRevokedState.allPermissions}"
-                        )
-                    }
-
-                    for (permission in revocablePermissions) {
-                        context.packageManager.updatePermissionFlags(
-                            permission,
-                            packageName,
-                            user,
-                            FLAG_PERMISSION_AUTO_REVOKED to true,
-                            FLAG_PERMISSION_USER_SET to false
-                        )
-                    }
+                    synchronized(groupsToRevoke) { groupsToRevoke[group] = revocablePermissions }
                 }
+        }
+
+        // Revoke the permissions of all apps of the user at once, so that each app is killed at
+        // most once
+        for ((group, revocablePermissions) in groupsToRevoke) {
+            val packageName = group.packageName
+            val uid = group.packageInfo.uid
+            for (permName in revocablePermissions) {
+                PermissionControllerStatsLog.write(
+                    PERMISSION_GRANT_REQUEST_RESULT_REPORTED,
+                    sessionId,
+                    uid,
+                    packageName,
+                    permName,
+                    false,
+                    SERVER_LOG_ID,
+                    /* permission_rationale_shown = */ false
+                )
+            }
 
-            if (anyPermsRevoked.get()) {
-                synchronized(revokedApps) { revokedApps.add(packageName to user) }
+            if (DEBUG_AUTO_REVOKE) {
+                DumpableLog.i(LOG_TAG, "revoking $packageName - $revocablePermissions")
+                DumpableLog.i(LOG_TAG, "State pre revocation: ${group.allPermissions}")
+            }
+            revokedApps.add(packageName to user)
+        }
+        val revokedGroups =
+            KotlinUtils.revokeRuntimePermissions(
+                context.application,
+                groupsToRevoke,
+                userFixed = false,
+                oneTime = false,
+                flagsToSet = FLAG_PERMISSION_AUTO_REVOKED,
+                flagsToClear = FLAG_PERMISSION_USER_SET
+            )
+        if (DEBUG_AUTO_REVOKE) {
+            for (revokedGroup in revokedGroups) {
+                DumpableLog.i(
+                    LOG_TAG,
+                    "State post revocation of ${revokedGroup.packageName}: " +
+                        "${revokedGroup.allPermissions}"
+                )
             }
         }
 
@@ -16,13 +16,13 @@
 
 package com.android.permissioncontroller.permission.service;
 
-import static android.content.Context.MODE_PRIVATE;
 import static android.content.pm.PackageManager.FLAG_PERMISSION_POLICY_FIXED;
 import static android.content.pm.PackageManager.FLAG_PERMISSION_SYSTEM_FIXED;
 import static android.content.pm.PackageManager.GET_PERMISSIONS;
 import static android.content.pm.PackageManager.GET_SIGNING_CERTIFICATES;
 import static android.util.Xml.newSerializer;
 
+import static com.android.permissioncontroller.Constants.DELAYED_RESTORE_PERMISSIONS_DIR;
 import static com.android.permissioncontroller.Constants.DELAYED_RESTORE_PERMISSIONS_FILE;
 
 import static org.xmlpull.v1.XmlPullParser.END_DOCUMENT;
@@ -41,13 +41,16 @@ import android.os.Build;
 import android.os.UserHandle;
 import android.permission.PermissionManager;
 import android.permission.PermissionManager.SplitPermissionInfo;
+import android.util.ArrayMap;
 import android.util.ArraySet;
+import android.util.AtomicFile;
 import android.util.Base64;
 import android.util.Log;
 import android.util.Xml;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.os.BuildCompat;
 
 import com.android.permissioncontroller.Constants;
@@ -60,9 +63,10 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -70,6 +74,8 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Helper for creating and restoring permission backups.
@@ -106,6 +112,9 @@ public class BackupHelper {
 
     private final Context mContext;
 
+    /** The certificate digests computed while backing up or restoring with this helper */
+    private final CertificateDigests mCertificateDigests = new CertificateDigests();
+
     /**
      * Create a new backup utils for a user.
      *
@@ -166,16 +175,15 @@ public class BackupHelper {
     }
 
     /**
-     * Read a XML file and return the packages stored in it.
+     * Read a XML file and pass the packages stored in it to {@code pkgStateConsumer}, one at a
+     * time, as they are parsed.
      *
      * @param parser The file to read
-     *
-     * @return The packages in this file
+     * @param pkgStateConsumer Called for each package in the file
      */
-    private @NonNull ArrayList<BackupPackageState> parseFromXml(@NonNull XmlPullParser parser)
+    private void parseFromXml(@NonNull XmlPullParser parser,
+            @NonNull Consumer<BackupPackageState> pkgStateConsumer)
             throws IOException, XmlPullParserException {
-        ArrayList<BackupPackageState> pkgStates = new ArrayList<>();
-
         skipToTag(parser, TAG_PERMISSION_BACKUP);
 
         int backupPlatformVersion;
@@ -203,13 +211,16 @@ public class BackupHelper {
                 case START_TAG:
                     switch (parser.getName()) {
                         case TAG_GRANT:
+                            BackupPackageState pkgState;
                             try {
-                                pkgStates.add(BackupPackageState.parseFromXml(parser, mContext,
-                                        backupPlatformVersion));
+                                pkgState = BackupPackageState.parseFromXml(parser, mContext,
+                                        backupPlatformVersion);
                             } catch (XmlPullParserException e) {
                                 Log.e(LOG_TAG, "Could not parse permissions ", e);
                                 skipToEndOfTag(parser);
+                                break;
                             }
+                            pkgStateConsumer.accept(pkgState);
                             break;
                         default:
                             // ignore tag
@@ -219,48 +230,62 @@ public class BackupHelper {
                     }
             }
         } while (type != END_DOCUMENT);
-
-        return pkgStates;
     }
 
     /**
      * Try to restore the permission state from XML.
      *
-     * <p>If some apps could not be restored, the leftover apps are written to
-     * {@link Constants#DELAYED_RESTORE_PERMISSIONS_FILE}.
+     * <p>Each package is restored as soon as it is parsed. The packages staged by the previous
+     * restore are only cleared once the first package of the backup was parsed, or once the backup
+     * was fully parsed if it contains no package, so that a malformed backup does not drop them. If
+     * some apps could not be restored, the leftover apps are each written to their own file in
+     * {@link Constants#DELAYED_RESTORE_PERMISSIONS_DIR}.
      *
      * @param parser The xml to read
      */
-    void restoreState(@NonNull XmlPullParser parser) throws IOException, XmlPullParserException {
-        ArrayList<BackupPackageState> pkgStates = parseFromXml(parser);
-
-        ArrayList<BackupPackageState> packagesToRestoreLater = new ArrayList<>();
-        int numPkgStates = pkgStates.size();
-        if (numPkgStates > 0) {
-            // Try to restore packages
-            for (int i = 0; i < numPkgStates; i++) {
-                BackupPackageState pkgState = pkgStates.get(i);
-
-                PackageInfo pkgInfo;
-                try {
-                    pkgInfo = mContext.getPackageManager().getPackageInfo(pkgState.mPackageName,
-                            GET_PERMISSIONS | GET_SIGNING_CERTIFICATES);
-                } catch (PackageManager.NameNotFoundException ignored) {
-                    packagesToRestoreLater.add(pkgState);
-                    continue;
+    @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
+    public void restoreState(@NonNull XmlPullParser parser)
+            throws IOException, XmlPullParserException {
+        AtomicBoolean clearedDelayedRestore = new AtomicBoolean(false);
+        parseFromXml(parser, pkgState -> {
+            if (!clearedDelayedRestore.getAndSet(true)) {
+                synchronized (sLock) {
+                    clearDelayedRestoreLocked();
                 }
+            }
+            restorePackageState(pkgState);
+        });
 
-                if (!checkCertificateDigestsMatch(pkgInfo, pkgState)) {
-                    continue;
-                }
+        if (!clearedDelayedRestore.get()) {
+            synchronized (sLock) {
+                clearDelayedRestoreLocked();
+            }
+        }
+    }
 
-                pkgState.restore(mContext, pkgInfo);
+    /**
+     * Restore the permission state of a package parsed from a backup, or stage it to be restored
+     * later if it is not installed yet.
+     *
+     * @param pkgState The package state to restore
+     */
+    private void restorePackageState(@NonNull BackupPackageState pkgState) {
+        PackageInfo pkgInfo;
+        try {
+            pkgInfo = mContext.getPackageManager().getPackageInfo(pkgState.mPackageName,
+                    GET_PERMISSIONS | GET_SIGNING_CERTIFICATES);
+        } catch (PackageManager.NameNotFoundException ignored) {
+            synchronized (sLock) {
+                writeDelayedRestorePkgLocked(pkgState);
             }
+            return;
         }
 
-        synchronized (sLock) {
-            writeDelayedStorePkgsLocked(packagesToRestoreLater);
+        if (!checkCertificateDigestsMatch(pkgInfo, pkgState)) {
+            return;
         }
+
+        pkgState.restore(mContext, pkgInfo);
     }
 
     /**
@@ -314,13 +339,12 @@ public class BackupHelper {
     }
 
     /**
-     * Write a xml file for the given packages.
+     * Start a xml file of packages, to be followed by the packages and
+     * {@link #endPkgsXml(XmlSerializer)}.
      *
      * @param serializer The file to write to
-     * @param pkgs The packages to write
      */
-    private static void writePkgsAsXml(@NonNull XmlSerializer serializer,
-            @NonNull ArrayList<BackupPackageState> pkgs) throws IOException {
+    private static void startPkgsXml(@NonNull XmlSerializer serializer) throws IOException {
         serializer.startDocument(null, true);
 
         serializer.startTag(null, TAG_PERMISSION_BACKUP);
@@ -335,16 +359,14 @@ public class BackupHelper {
         }
 
         serializer.startTag(null, TAG_ALL_GRANTS);
+    }
 
-        int numPkgs = pkgs.size();
-        for (int i = 0; i < numPkgs; i++) {
-            BackupPackageState packageState = pkgs.get(i);
-
-            if (packageState != null) {
-                packageState.writeAsXml(serializer);
-            }
-        }
-
+    /**
+     * End a xml file of packages started with {@link #startPkgsXml(XmlSerializer)}.
+     *
+     * @param serializer The file to write to
+     */
+    private static void endPkgsXml(@NonNull XmlSerializer serializer) throws IOException {
         serializer.endTag(null, TAG_ALL_GRANTS);
         serializer.endTag(null, TAG_PERMISSION_BACKUP);
 
@@ -352,96 +374,213 @@ public class BackupHelper {
     }
 
     /**
-     * Update the {@link Constants#DELAYED_RESTORE_PERMISSIONS_FILE} to contain the
-     * {@code packagesToRestoreLater}.
+     * Get the file in {@link Constants#DELAYED_RESTORE_PERMISSIONS_DIR} that stores the delayed
+     * restore state of a package.
+     *
+     * @param packageName The package
      *
-     * @param packagesToRestoreLater The new pkgs in the delayed restore file
+     * @return The file, or {@code null} if the package name cannot be used as a file name
      */
-    private void writeDelayedStorePkgsLocked(
-            @NonNull ArrayList<BackupPackageState> packagesToRestoreLater) {
-        try (OutputStream delayedRestoreData = mContext.openFileOutput(
-                DELAYED_RESTORE_PERMISSIONS_FILE, MODE_PRIVATE)) {
-            XmlSerializer serializer = newSerializer();
-            serializer.setOutput(delayedRestoreData, UTF_8.name());
+    @Nullable
+    private File getDelayedRestoreFile(@NonNull String packageName) {
+        if (packageName.isEmpty() || packageName.startsWith(".")
+                || packageName.indexOf(File.separatorChar) >= 0) {
+            return null;
+        }
+        return new File(new File(mContext.getFilesDir(), DELAYED_RESTORE_PERMISSIONS_DIR),
+                packageName);
+    }
+
+    /**
+     * Add a package to the {@link Constants#DELAYED_RESTORE_PERMISSIONS_DIR}, replacing any
+     * existing state for it.
+     *
+     * @param pkgState The package to restore later
+     *
+     * @return {@code false} if the package could not be written
+     */
+    private boolean writeDelayedRestorePkgLocked(@NonNull BackupPackageState pkgState) {
+        if (pkgState.mPermissionsToRestore.isEmpty()) {
+            // Nothing to restore, and a file without any package would never be deleted
+            return true;
+        }
+        File file = getDelayedRestoreFile(pkgState.mPackageName);
+        if (file == null) {
+            Log.w(LOG_TAG, "Cannot delay restore of " + pkgState.mPackageName);
+            return true;
+        }
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create " + dir);
+            return false;
+        }
+
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream out = null;
+        try {
+            out = atomicFile.startWrite();
 
-            writePkgsAsXml(serializer, packagesToRestoreLater);
+            XmlSerializer serializer = newSerializer();
+            serializer.setOutput(out, UTF_8.name());
+            startPkgsXml(serializer);
+            pkgState.writeAsXml(serializer);
+            endPkgsXml(serializer);
             serializer.flush();
+
+            atomicFile.finishWrite(out);
+            return true;
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Could not remember which packages still need to be restored", e);
+            Log.e(LOG_TAG, "Could not remember that " + pkgState.mPackageName
+                    + " still needs to be restored", e);
+            atomicFile.failWrite(out);
+            return false;
         }
     }
 
+    /**
+     * Move the packages of the legacy {@link Constants#DELAYED_RESTORE_PERMISSIONS_FILE} to their
+     * own files in {@link Constants#DELAYED_RESTORE_PERMISSIONS_DIR}.
+     *
+     * <p>The legacy file is only deleted once all of its packages have been written, so that the
+     * staged packages are not lost if it cannot be parsed or written.
+     */
+    private void migrateDelayedRestoreFileLocked() {
+        File legacyFile = mContext.getFileStreamPath(DELAYED_RESTORE_PERMISSIONS_FILE);
+        if (!legacyFile.exists()) {
+            return;
+        }
+
+        ArrayList<BackupPackageState> pkgStates = new ArrayList<>();
+        try (FileInputStream delayedRestoreData = new FileInputStream(legacyFile)) {
+            XmlPullParser parser = Xml.newPullParser();
+            parser.setInput(delayedRestoreData, UTF_8.name());
+
+            parseFromXml(parser, pkgStates::add);
+        } catch (IOException | XmlPullParserException e) {
+            Log.e(LOG_TAG, "Could not parse delayed permissions", e);
+            return;
+        }
+
+        boolean written = true;
+        int numPkgStates = pkgStates.size();
+        for (int i = 0; i < numPkgStates; i++) {
+            written &= writeDelayedRestorePkgLocked(pkgStates.get(i));
+        }
+        if (!written) {
+            return;
+        }
+
+        if (!legacyFile.delete()) {
+            Log.e(LOG_TAG, "Could not delete " + legacyFile);
+        }
+    }
+
+    /** Forget all packages that still needed to be restored. */
+    private void clearDelayedRestoreLocked() {
+        File legacyFile = mContext.getFileStreamPath(DELAYED_RESTORE_PERMISSIONS_FILE);
+        if (legacyFile.exists() && !legacyFile.delete()) {
+            Log.e(LOG_TAG, "Could not delete " + legacyFile);
+        }
+
+        File[] files = new File(mContext.getFilesDir(), DELAYED_RESTORE_PERMISSIONS_DIR)
+                .listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                Log.e(LOG_TAG, "Could not delete " + file);
+            }
+        }
+    }
+
+    /** @return whether any package still needs to be restored */
+    private boolean hasDelayedRestoreLocked() {
+        String[] fileNames = new File(mContext.getFilesDir(), DELAYED_RESTORE_PERMISSIONS_DIR)
+                .list();
+        return fileNames != null && fileNames.length > 0;
+    }
+
     /**
      * Write the state of all packages as XML.
      *
+     * <p>Each package is written as soon as its state is collected, so the state of all packages
+     * is never held in memory at once.
+     *
      * @param serializer The xml to write to
      */
-    void writeState(@NonNull XmlSerializer serializer) throws IOException {
+    @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
+    public void writeState(@NonNull XmlSerializer serializer) throws IOException {
         List<PackageInfo> pkgs = mContext.getPackageManager().getInstalledPackages(
                 GET_PERMISSIONS | GET_SIGNING_CERTIFICATES);
-        ArrayList<BackupPackageState> backupPkgs = new ArrayList<>();
+
+        startPkgsXml(serializer);
 
         int numPkgs = pkgs.size();
         for (int i = 0; i < numPkgs; i++) {
             BackupPackageState packageState = BackupPackageState.fromAppPermissions(mContext,
-                    pkgs.get(i));
+                    pkgs.get(i), mCertificateDigests);
 
             if (packageState != null) {
-                backupPkgs.add(packageState);
+                packageState.writeAsXml(serializer);
             }
         }
 
-        writePkgsAsXml(serializer, backupPkgs);
+        endPkgsXml(serializer);
     }
 
     /**
      * Restore delayed permission state for a package (if delayed during {@link #restoreState}).
      *
+     * <p>Only the file of the package in {@link Constants#DELAYED_RESTORE_PERMISSIONS_DIR} is read
+     * and deleted.
+     *
      * @param packageName The package to be restored
      *
      * @return {@code true} if there is still delayed backup left
      */
-    boolean restoreDelayedState(@NonNull String packageName) {
+    @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
+    public boolean restoreDelayedState(@NonNull String packageName) {
         synchronized (sLock) {
-            ArrayList<BackupPackageState> packagesToRestoreLater;
+            migrateDelayedRestoreFileLocked();
 
-            try (FileInputStream delayedRestoreData =
-                         mContext.openFileInput(DELAYED_RESTORE_PERMISSIONS_FILE)) {
-                XmlPullParser parser = Xml.newPullParser();
-                parser.setInput(delayedRestoreData, UTF_8.name());
-
-                packagesToRestoreLater = parseFromXml(parser);
-            } catch (IOException | XmlPullParserException e) {
-                Log.e(LOG_TAG, "Could not parse delayed permissions", e);
-                return false;
+            File file = getDelayedRestoreFile(packageName);
+            if (file == null || !file.exists()) {
+                return hasDelayedRestoreLocked();
             }
 
-            PackageInfo pkgInfo = null;
+            PackageInfo pkgInfo;
             try {
                 pkgInfo = mContext.getPackageManager().getPackageInfo(
                         packageName, GET_PERMISSIONS | GET_SIGNING_CERTIFICATES);
             } catch (PackageManager.NameNotFoundException e) {
                 Log.e(LOG_TAG, "Could not restore delayed permissions for " + packageName, e);
+                return true;
             }
 
-            if (pkgInfo != null) {
-                int numPkgs = packagesToRestoreLater.size();
-                for (int i = 0; i < numPkgs; i++) {
-                    BackupPackageState pkgState = packagesToRestoreLater.get(i);
+            boolean[] restored = new boolean[1];
+            try (FileInputStream delayedRestoreData = new AtomicFile(file).openRead()) {
+                XmlPullParser parser = Xml.newPullParser();
+                parser.setInput(delayedRestoreData, UTF_8.name());
 
-                    if (pkgState.mPackageName.equals(packageName) && checkCertificateDigestsMatch(
-                            pkgInfo, pkgState)) {
+                parseFromXml(parser, pkgState -> {
+                    if (!restored[0] && pkgState.mPackageName.equals(packageName)
+                            && checkCertificateDigestsMatch(pkgInfo, pkgState)) {
                         pkgState.restore(mContext, pkgInfo);
-                        packagesToRestoreLater.remove(i);
-
-                        writeDelayedStorePkgsLocked(packagesToRestoreLater);
-
-                        break;
+                        restored[0] = true;
                     }
-                }
+                });
+            } catch (IOException | XmlPullParserException e) {
+                Log.e(LOG_TAG, "Could not parse delayed permissions for " + packageName, e);
+                // The file cannot be used anymore
+                restored[0] = true;
+            }
+
+            if (restored[0]) {
+                new AtomicFile(file).delete();
             }
 
-            return packagesToRestoreLater.size() > 0;
+            return hasDelayedRestoreLocked();
         }
     }
 
@@ -771,25 +910,25 @@ public class BackupHelper {
          * Construct the signing information state from a {@link SigningInfo} instance.
          *
          * @param signingInfo the {@link SigningInfo} instance
+         * @param certificateDigests the cache of certificate digests to use
          *
          * @return the state
          */
         @NonNull
-        static BackupSigningInfoState fromSigningInfo(@NonNull SigningInfo signingInfo) {
+        static BackupSigningInfoState fromSigningInfo(@NonNull SigningInfo signingInfo,
+                @NonNull CertificateDigests certificateDigests) {
             Set<byte[]> currentCertDigests = new HashSet<>();
             Set<byte[]> pastCertDigests = new HashSet<>();
 
             Signature[] apkContentsSigners = signingInfo.getApkContentsSigners();
             for (int i = 0; i < apkContentsSigners.length; i++) {
-                currentCertDigests.add(
-                        computeSha256DigestBytes(apkContentsSigners[i].toByteArray()));
+                currentCertDigests.add(certificateDigests.get(apkContentsSigners[i]));
             }
 
             if (signingInfo.hasPastSigningCertificates()) {
                 Signature[] signingCertificateHistory = signingInfo.getSigningCertificateHistory();
                 for (int i = 0; i < signingCertificateHistory.length; i++) {
-                    pastCertDigests.add(
-                            computeSha256DigestBytes(signingCertificateHistory[i].toByteArray()));
+                    pastCertDigests.add(certificateDigests.get(signingCertificateHistory[i]));
                 }
             }
 
@@ -890,13 +1029,14 @@ public class BackupHelper {
          *
          * @param context A context to use
          * @param pkgInfo The package to back up.
+         * @param certificateDigests The cache of certificate digests to use
          *
          * @return The state to back up or {@code null} if no permission of the package need to be
          * backed up.
          */
         @Nullable
         static BackupPackageState fromAppPermissions(@NonNull Context context,
-                @NonNull PackageInfo pkgInfo) {
+                @NonNull PackageInfo pkgInfo, @NonNull CertificateDigests certificateDigests) {
             AppPermissions appPerms = new AppPermissions(context, pkgInfo, false, null);
 
             ArrayList<BackupPermissionState> permissionsToRestore = new ArrayList<>();
@@ -923,7 +1063,8 @@ public class BackupHelper {
             BackupSigningInfoState signingInfoState = null;
 
             if (pkgInfo.signingInfo != null) {
-                signingInfoState = BackupSigningInfoState.fromSigningInfo(pkgInfo.signingInfo);
+                signingInfoState = BackupSigningInfoState.fromSigningInfo(pkgInfo.signingInfo,
+                        certificateDigests);
             }
 
             return new BackupPackageState(
@@ -1029,7 +1170,7 @@ public class BackupHelper {
 
         Set<byte[]> restoredCertDigests = new HashSet<>();
         for (Signature signature: restoredSignatures) {
-            restoredCertDigests.add(computeSha256DigestBytes(signature.toByteArray()));
+            restoredCertDigests.add(mCertificateDigests.get(signature));
         }
 
         // If the backed up app has multiple signing certificates, the restored app should be
@@ -1069,8 +1210,8 @@ public class BackupHelper {
             // since that was verified above, just check all the signers in the lineage.
             for (int i = 0; i < restoredSigningInfo.getSigningCertificateHistory().length - 1;
                     i++) {
-                restoredPastCertDigest = computeSha256DigestBytes(
-                        restoredSigningInfo.getSigningCertificateHistory()[i].toByteArray());
+                restoredPastCertDigest = mCertificateDigests.get(
+                        restoredSigningInfo.getSigningCertificateHistory()[i]);
                 if (Arrays.equals(backupCertDigest, restoredPastCertDigest)) {
                     return true;
                 }
@@ -1079,6 +1220,36 @@ public class BackupHelper {
         return false;
     }
 
+    /**
+     * The SHA256 digests of signing certificates, computed at most once per certificate.
+     *
+     * <p>Many packages share the same certificates, e.g. the platform certificate, so a backup or
+     * restore session only needs to compute each digest once.
+     */
+    private static class CertificateDigests {
+        private final ArrayMap<Signature, byte[]> mDigests = new ArrayMap<>();
+
+        /**
+         * Get the SHA256 digest of a certificate.
+         *
+         * @param signature The certificate
+         *
+         * @return The digest
+         */
+        @Nullable
+        byte[] get(@NonNull Signature signature) {
+            synchronized (mDigests) {
+                int index = mDigests.indexOfKey(signature);
+                if (index >= 0) {
+                    return mDigests.valueAt(index);
+                }
+                byte[] digest = computeSha256DigestBytes(signature.toByteArray());
+                mDigests.put(signature, digest);
+                return digest;
+            }
+        }
+    }
+
     /** Computes the SHA256 digest of the provided {@code byte} array. */
     @Nullable
     private static byte[] computeSha256DigestBytes(@NonNull byte[] data) {
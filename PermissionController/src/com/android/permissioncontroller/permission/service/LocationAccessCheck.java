@@ -51,6 +51,7 @@ import static com.android.permissioncontroller.Constants.KEY_LAST_LOCATION_ACCES
 import static com.android.permissioncontroller.Constants.KEY_LOCATION_ACCESS_CHECK_ENABLED_TIME;
 import static com.android.permissioncontroller.Constants.LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE;
 import static com.android.permissioncontroller.Constants.LOCATION_ACCESS_CHECK_JOB_ID;
+import static com.android.permissioncontroller.Constants.LOCATION_ACCESS_CHECK_NOTIFIED_PACKAGES_STORE;
 import static com.android.permissioncontroller.Constants.LOCATION_ACCESS_CHECK_NOTIFICATION_ID;
 import static com.android.permissioncontroller.Constants.PERIODIC_LOCATION_ACCESS_CHECK_JOB_ID;
 import static com.android.permissioncontroller.Constants.PERMISSION_REMINDER_CHANNEL_ID;
@@ -111,6 +112,7 @@ import android.provider.Settings;
 import android.safetycenter.SafetyCenterManager;
 import android.safetycenter.SafetyEvent;
 import android.safetycenter.SafetySourceData;
+import android.safetycenter.SafetySourceDataBatch;
 import android.safetycenter.SafetySourceIssue;
 import android.safetycenter.SafetySourceIssue.Action;
 import android.service.notification.StatusBarNotification;
@@ -118,6 +120,7 @@ import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import androidx.annotation.ChecksSdkIntAtLeast;
 import androidx.annotation.NonNull;
@@ -134,14 +137,14 @@ import com.android.permissioncontroller.R;
 import com.android.permissioncontroller.permission.model.AppPermissionGroup;
 import com.android.permissioncontroller.permission.utils.KotlinUtils;
 import com.android.permissioncontroller.permission.utils.Utils;
+import com.android.permissioncontroller.privacysources.PrivacyChecksStats;
+import com.android.permissioncontroller.privacysources.PrivacySourceStateStore;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -208,6 +211,14 @@ public class LocationAccessCheck {
     private final @NonNull PackageManager mPackageManager;
     private final @NonNull UserManager mUserManager;
     private final @NonNull SharedPreferences mSharedPrefs;
+    private final @NonNull PrivacySourceStateStore mNotifiedPackagesStore;
+
+    /**
+     * Serial numbers of users, cached as every persisted package refers to its user by serial
+     */
+    private final @NonNull ArrayMap<UserHandle, Long> mUserSerialNumbers = new ArrayMap<>();
+    private final @NonNull LongSparseArray<UserHandle> mUsersBySerialNumber =
+            new LongSparseArray<>();
 
     /**
      * If the current long running operation should be canceled
@@ -270,9 +281,42 @@ public class LocationAccessCheck {
      * @return The list of packages we already shown a notification for.
      */
     private @NonNull ArraySet<UserPackage> loadAlreadyNotifiedPackagesLocked() {
+        Map<String, String> entries = mNotifiedPackagesStore.getAll();
+        ArraySet<UserPackage> packages = new ArraySet<>(entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            // The key is <package> <serial of user>, the value <dismissed in safety center>
+            String[] keyComponents = entry.getKey().split(" ");
+            if (keyComponents.length != 2) {
+                Log.w(LOG_TAG, "Not restoring corrupted state \"" + entry.getKey() + "\"");
+                continue;
+            }
+            UserHandle user;
+            try {
+                user = getUserForSerialNumber(Long.parseLong(keyComponents[1]));
+            } catch (NumberFormatException e) {
+                Log.w(LOG_TAG, "Not restoring corrupted state \"" + entry.getKey() + "\"", e);
+                continue;
+            }
+            if (user != null) {
+                packages.add(new UserPackage(mContext, keyComponents[0], user,
+                        Boolean.parseBoolean(entry.getValue())));
+            } else {
+                Log.i(LOG_TAG, "Not restoring state \"" + entry.getKey() + "\" as user is unknown");
+            }
+        }
+        return packages;
+    }
+
+    /**
+     * Load the packages persisted in {@link Constants#LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE}
+     * before the {@link PrivacySourceStateStore} existed.
+     *
+     * @return The store entries of the packages we already shown a notification for.
+     */
+    private @NonNull Map<String, String> importLegacyAlreadyNotifiedPackages() {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(
             mContext.openFileInput(LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE)))) {
-            ArraySet<UserPackage> packages = new ArraySet<>();
+            ArrayMap<String, String> entries = new ArrayMap<>();
 
             /*
              * The format of the file is <package> <serial of user> <dismissed in safety center>,
@@ -290,58 +334,62 @@ public class LocationAccessCheck {
                     break;
                 }
                 String[] lineComponents = line.split(" ");
-                String pkg = lineComponents[0];
-                UserHandle user = mUserManager.getUserForSerialNumber(
-                        Long.valueOf(lineComponents[1]));
-                boolean dismissedInSafetyCenter = lineComponents.length == 3
-                        ? Boolean.valueOf(lineComponents[2]) : false;
-                if (user != null) {
-                    UserPackage userPkg = new UserPackage(mContext, pkg, user,
-                            dismissedInSafetyCenter);
-                    packages.add(userPkg);
-                } else {
-                    Log.i(LOG_TAG, "Not restoring state \"" + line + "\" as user is unknown");
+                if (lineComponents.length < 2) {
+                    continue;
                 }
+                entries.put(getStoreKey(lineComponents[0], lineComponents[1]),
+                        lineComponents.length == 3 ? lineComponents[2] : Boolean.toString(false));
             }
-            return packages;
+            return entries;
         } catch (FileNotFoundException ignored) {
-            return new ArraySet<>();
+            return Collections.emptyMap();
         } catch (Exception e) {
             Log.w(LOG_TAG, "Could not read " + LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE, e);
-            return new ArraySet<>();
+            return Collections.emptyMap();
         }
     }
 
     /**
-     * Persist the list of {@link UserPackage packages} we have already shown a notification for.
+     * Get the key of a {@link UserPackage} in {@link #mNotifiedPackagesStore}.
      *
-     * @param packages The list of packages we already shown a notification for.
+     * @param pkg  The name of the package
+     * @param user The user the package belongs to
+     *
+     * @return The key, <package> <serial of user>
      */
-    private void persistAlreadyNotifiedPackagesLocked(@NonNull ArraySet<UserPackage> packages) {
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
-                mContext.openFileOutput(LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE,
-                        MODE_PRIVATE)))) {
-            /*
-             * The format of the file is <package> <serial of user> <dismissed in safety center>,
-             * e.g.
-             * com.one.package 5630633845 true
-             * com.two.package 5630633853 false
-             * com.three.package 5630633853 false
-             */
-            int numPkgs = packages.size();
-            for (int i = 0; i < numPkgs; i++) {
-                UserPackage userPkg = packages.valueAt(i);
-                writer.append(userPkg.pkg);
-                writer.append(' ');
-                writer.append(
-                        Long.valueOf(mUserManager.getSerialNumberForUser(userPkg.user)).toString());
-                writer.append(' ');
-                writer.append(Boolean.toString(userPkg.dismissedInSafetyCenter));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Could not write " + LOCATION_ACCESS_CHECK_ALREADY_NOTIFIED_FILE, e);
+    private @NonNull String getStoreKey(@NonNull String pkg, @NonNull UserHandle user) {
+        return getStoreKey(pkg, Long.toString(getSerialNumberForUser(user)));
+    }
+
+    private static @NonNull String getStoreKey(@NonNull String pkg, @NonNull String userSerial) {
+        return pkg + ' ' + userSerial;
+    }
+
+    /**
+     * Get the serial number of a user, caching the result for this check.
+     */
+    private long getSerialNumberForUser(@NonNull UserHandle user) {
+        Long serial = mUserSerialNumbers.get(user);
+        if (serial == null) {
+            serial = mUserManager.getSerialNumberForUser(user);
+            mUserSerialNumbers.put(user, serial);
+        }
+        return serial;
+    }
+
+    /**
+     * Get the user of a serial number, caching the result for this check.
+     *
+     * @return The user or {@code null} if the user is unknown
+     */
+    private @Nullable UserHandle getUserForSerialNumber(long serial) {
+        int index = mUsersBySerialNumber.indexOfKey(serial);
+        if (index >= 0) {
+            return mUsersBySerialNumber.valueAt(index);
         }
+        UserHandle user = mUserManager.getUserForSerialNumber(serial);
+        mUsersBySerialNumber.put(serial, user);
+        return user;
     }
 
     /**
@@ -355,13 +403,8 @@ public class LocationAccessCheck {
     private void markAsNotified(@NonNull String pkg, @NonNull UserHandle user,
             boolean dismissedInSafetyCenter) {
         synchronized (sLock) {
-            ArraySet<UserPackage> alreadyNotifiedPackages = loadAlreadyNotifiedPackagesLocked();
-            UserPackage userPackage = new UserPackage(mContext, pkg, user, dismissedInSafetyCenter);
-            // Remove stale persisted info
-            alreadyNotifiedPackages.remove(userPackage);
-            // Persist new info about the package
-            alreadyNotifiedPackages.add(userPackage);
-            persistAlreadyNotifiedPackagesLocked(alreadyNotifiedPackages);
+            mNotifiedPackagesStore.upsert(getStoreKey(pkg, user),
+                    Boolean.toString(dismissedInSafetyCenter));
         }
     }
 
@@ -402,6 +445,9 @@ public class LocationAccessCheck {
         mPackageManager = mContext.getPackageManager();
         mUserManager = getSystemServiceSafe(mContext, UserManager.class);
         mSharedPrefs = mContext.getSharedPreferences(PREFERENCES_FILE, MODE_PRIVATE);
+        mNotifiedPackagesStore = PrivacySourceStateStore.forSource(mContext,
+                LOCATION_ACCESS_CHECK_NOTIFIED_PACKAGES_STORE,
+                this::importLegacyAlreadyNotifiedPackages);
         mContentResolver = mContext.getContentResolver();
         mShouldCancel = shouldCancel;
     }
@@ -416,6 +462,7 @@ public class LocationAccessCheck {
     private void addLocationNotificationIfNeeded(@NonNull JobParameters params,
             @NonNull LocationAccessCheckJobService service) {
         synchronized (sLock) {
+            PrivacyChecksStats.startCheck(mContext, LOG_TAG);
             try {
                 if (currentTimeMillis() - mSharedPrefs.getLong(
                         KEY_LAST_LOCATION_ACCESS_NOTIFICATION_SHOWN, 0)
@@ -438,6 +485,7 @@ public class LocationAccessCheck {
                 Log.e(LOG_TAG, "Could not check for location access", e);
                 service.jobFinished(params, true);
             } finally {
+                PrivacyChecksStats.finishCheck(mContext, LOG_TAG);
                 synchronized (sLock) {
                     service.mAddLocationNotificationIfNeededTask = null;
                 }
@@ -789,7 +837,14 @@ public class LocationAccessCheck {
 
         if (!packagesToRemove.isEmpty()) {
             alreadyNotifiedPkgs.removeAll(packagesToRemove);
-            persistAlreadyNotifiedPackagesLocked(alreadyNotifiedPkgs);
+            mNotifiedPackagesStore.batch(store -> {
+                int numPkgs = packagesToRemove.size();
+                for (int i = 0; i < numPkgs; i++) {
+                    UserPackage userPkg = packagesToRemove.get(i);
+                    store.remove(getStoreKey(userPkg.pkg, userPkg.user));
+                }
+                return null;
+            });
             throwInterruptedExceptionIfTaskIsCanceled();
         }
     }
@@ -809,9 +864,7 @@ public class LocationAccessCheck {
                         pkg, LOCATION_ACCESS_CHECK_NOTIFICATION_ID);
             }
 
-            ArraySet<UserPackage> packages = loadAlreadyNotifiedPackagesLocked();
-            packages.remove(new UserPackage(mContext, pkg, user, false));
-            persistAlreadyNotifiedPackagesLocked(packages);
+            mNotifiedPackagesStore.remove(getStoreKey(pkg, user));
         }
     }
 
@@ -899,16 +952,29 @@ public class LocationAccessCheck {
             Map<UserHandle, List<UserPackage>> userHandleToUserPackagesMap =
                     splitUserPackageByUserHandle(filteredPackages);
 
+            List<UserHandle> users;
             if (user == null) {
                 // Get all the user profiles
-                List<UserHandle> userProfiles = mUserManager.getUserProfiles();
-                for (UserHandle userProfile : userProfiles) {
-                    sendUserDataToSafetyCenter(userHandleToUserPackagesMap.getOrDefault(userProfile,
-                            new ArrayList<>()), safetyEvent, userProfile);
+                users = mUserManager.getUserProfiles();
+            } else {
+                users = Collections.singletonList(user);
+            }
+
+            if (SdkLevel.isAtLeastV()) {
+                // Send the data of all profiles with a single call
+                SafetySourceDataBatch.Builder batchBuilder = new SafetySourceDataBatch.Builder();
+                for (UserHandle userHandle : users) {
+                    batchBuilder.addSafetySourceData(BG_LOCATION_SOURCE_ID, userHandle,
+                            createUserSafetySourceData(userHandleToUserPackagesMap.getOrDefault(
+                                    userHandle, new ArrayList<>())));
                 }
+                getSystemServiceSafe(mContext, SafetyCenterManager.class)
+                        .setSafetySourceDataBatch(batchBuilder.build(), safetyEvent);
             } else {
-                sendUserDataToSafetyCenter(userHandleToUserPackagesMap.getOrDefault(user,
-                        new ArrayList<>()), safetyEvent, user);
+                for (UserHandle userHandle : users) {
+                    sendUserDataToSafetyCenter(userHandleToUserPackagesMap.getOrDefault(
+                            userHandle, new ArrayList<>()), safetyEvent, userHandle);
+                }
             }
 
         } catch (Exception e) {
@@ -941,28 +1007,26 @@ public class LocationAccessCheck {
 
     @RequiresApi(Build.VERSION_CODES.TIRAMISU)
     private void sendUserDataToSafetyCenter(List<UserPackage> userPackages,
-            SafetyEvent safetyEvent, @Nullable UserHandle user) {
+            SafetyEvent safetyEvent, @NonNull UserHandle user) {
+        Context userContext = userPackages.isEmpty() ? mContext.createContextAsUser(user, 0)
+                : userPackages.get(0).mContext;
+        getSystemServiceSafe(userContext, SafetyCenterManager.class).setSafetySourceData(
+                BG_LOCATION_SOURCE_ID,
+                createUserSafetySourceData(userPackages),
+                safetyEvent
+        );
+    }
+
+    @RequiresApi(Build.VERSION_CODES.TIRAMISU)
+    private SafetySourceData createUserSafetySourceData(List<UserPackage> userPackages) {
         SafetySourceData.Builder safetySourceDataBuilder = new SafetySourceData.Builder();
-        Context userContext = null;
         for (UserPackage userPkg : userPackages) {
-            if (userContext == null) {
-                userContext = userPkg.mContext;
-            }
             SafetySourceIssue sourceIssue = createSafetySourceIssue(userPkg);
             if (sourceIssue != null) {
                 safetySourceDataBuilder.addIssue(sourceIssue);
             }
         }
-        if (userContext == null && user != null) {
-            userContext = mContext.createContextAsUser(user, 0);
-        }
-        if (userContext != null) {
-            getSystemServiceSafe(userContext, SafetyCenterManager.class).setSafetySourceData(
-                    BG_LOCATION_SOURCE_ID,
-                    safetySourceDataBuilder.build(),
-                    safetyEvent
-            );
-        }
+        return safetySourceDataBuilder.build();
     }
 
     @RequiresApi(Build.VERSION_CODES.TIRAMISU)
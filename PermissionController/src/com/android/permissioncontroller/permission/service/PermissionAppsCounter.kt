@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.service
+
+import android.Manifest.permission_group.STORAGE
+import android.content.pm.PackageInfo.REQUESTED_PERMISSION_GRANTED
+import android.content.pm.PackageManager
+import android.content.pm.PackageManager.FLAG_PERMISSION_REVOKED_COMPAT
+import android.os.Handler
+import android.os.Looper
+import android.os.Process
+import android.permission.PermissionControllerManager.COUNT_ONLY_WHEN_GRANTED
+import android.permission.PermissionControllerManager.COUNT_WHEN_SYSTEM
+import android.util.Log
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.AppPermGroupUiInfoLiveData
+import com.android.permissioncontroller.permission.data.PackageBroadcastReceiver
+import com.android.permissioncontroller.permission.data.PermGroupLiveData
+import com.android.permissioncontroller.permission.data.UserPackageInfosLiveData
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroup
+import com.android.permissioncontroller.permission.model.livedatatypes.PermState
+import com.android.permissioncontroller.permission.utils.LocationUtils
+import com.android.permissioncontroller.permission.utils.PermissionMapping
+import com.android.permissioncontroller.permission.utils.Utils
+import java.util.concurrent.TimeUnit
+
+/**
+ * Counts the apps that have at least one of a list of permissions.
+ *
+ * All counts are derived from one snapshot of the packages of the user. The UI info of each app
+ * permission group is computed directly, without creating an [AppPermGroupUiInfoLiveData] per
+ * package. The snapshot, the permission groups and the UI infos are cached until a permission or a
+ * package changes, so the calls Settings makes for each of its permission summaries are answered
+ * from memory.
+ *
+ * The permission and package listeners are only registered while something is cached. The cache is
+ * cleared, and the listeners removed, on the first change or after [IDLE_TIMEOUT_MILLIS] without
+ * any count.
+ */
+object PermissionAppsCounter :
+    PackageManager.OnPermissionsChangedListener, PackageBroadcastReceiver.PackageBroadcastListener {
+    private val LOG_TAG = PermissionAppsCounter::class.java.simpleName
+
+    /** How long the cache is kept without any count */
+    private val IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1)
+
+    private val app = PermissionControllerApplication.get()
+    private val user = Process.myUserHandle()
+    private val handler = Handler(Looper.getMainLooper())
+    private val invalidateRunnable = Runnable { invalidate() }
+
+    private val lock = Any()
+    @GuardedBy("lock") private var isListening = false
+    /** Incremented on every invalidation, so stale results are not cached */
+    @GuardedBy("lock") private var generation = 0
+    @GuardedBy("lock") private var packageInfos: List<LightPackageInfo>? = null
+    /** Map<permission name, group of the permission if it is an installed runtime permission> */
+    @GuardedBy("lock") private val permToGroup = mutableMapOf<String, String?>()
+    /** Map<permission group name, permission group> */
+    @GuardedBy("lock") private val permGroups = mutableMapOf<String, PermGroup?>()
+    /** Map<(package name, permission group name), UI info of the app permission group> */
+    @GuardedBy("lock")
+    private val uiInfos = mutableMapOf<Pair<String, String>, AppPermGroupUiInfo?>()
+
+    /**
+     * Counts the number of apps that have at least one of a provided list of permissions, subject
+     * to the options specified in flags.
+     *
+     * @param permissionNames The list of permission names whose apps we want to count
+     * @param flags Flags specifying if we want to count system apps, and count only granted apps
+     * @return the number of apps
+     */
+    suspend fun countPermissionApps(permissionNames: List<String>, flags: Int): Int {
+        handler.removeCallbacks(invalidateRunnable)
+        handler.postDelayed(invalidateRunnable, IDLE_TIMEOUT_MILLIS)
+
+        val groupOfPermission = permissionNames.associateWith { getGroupOfPermission(it) }
+        if (groupOfPermission.values.all { it == null }) {
+            return 0
+        }
+
+        val uiInfosPerPackage = mutableListOf<List<AppPermGroupUiInfo>>()
+        for (packageInfo in getPackageInfos()) {
+            val groupNames =
+                packageInfo.requestedPermissions.mapNotNullTo(mutableSetOf()) {
+                    groupOfPermission[it]
+                }
+            if (groupNames.isNotEmpty()) {
+                uiInfosPerPackage.add(groupNames.mapNotNull { getUiInfo(packageInfo, it) })
+            }
+        }
+        return countPermissionAppsFromUiInfos(uiInfosPerPackage, flags)
+    }
+
+    override fun onPermissionsChanged(uid: Int) {
+        invalidate()
+    }
+
+    override fun onPackageUpdate(packageName: String) {
+        invalidate()
+    }
+
+    private fun invalidate() {
+        synchronized(lock) {
+            generation++
+            packageInfos = null
+            permToGroup.clear()
+            permGroups.clear()
+            uiInfos.clear()
+            // Nothing is cached anymore, so there is nothing left to invalidate
+            if (isListening) {
+                app.packageManager.removeOnPermissionsChangeListener(this)
+                PackageBroadcastReceiver.removeAllCallback(this)
+                isListening = false
+            }
+        }
+    }
+
+    /**
+     * Get a value from the cache, loading it with [load] if needed. The loaded value is only cached
+     * if nothing was invalidated while it was loaded.
+     */
+    private inline fun <T> getOrLoad(
+        getCached: () -> T?,
+        isCached: () -> Boolean,
+        load: () -> T,
+        putCached: (T) -> Unit
+    ): T {
+        val loadGeneration: Int
+        synchronized(lock) {
+            if (!isListening) {
+                app.packageManager.addOnPermissionsChangeListener(this)
+                PackageBroadcastReceiver.addAllCallback(this)
+                isListening = true
+            }
+            if (isCached()) {
+                @Suppress("UNCHECKED_CAST")
+                return getCached() as T
+            }
+            loadGeneration = generation
+        }
+        val value = load()
+        synchronized(lock) {
+            if (loadGeneration == generation) {
+                putCached(value)
+            }
+        }
+        return value
+    }
+
+    private fun getPackageInfos(): List<LightPackageInfo> =
+        getOrLoad(
+            getCached = { packageInfos },
+            isCached = { packageInfos != null },
+            load = { UserPackageInfosLiveData.loadPackageInfos(app, user) },
+            putCached = { packageInfos = it }
+        )
+
+    private fun getGroupOfPermission(permName: String): String? =
+        getOrLoad(
+            getCached = { permToGroup[permName] },
+            isCached = { permToGroup.containsKey(permName) },
+            load = {
+                try {
+                    val permInfo = app.packageManager.getPermissionInfo(permName, 0)
+                    if (Utils.isPermissionDangerousInstalledNotRemoved(permInfo)) {
+                        PermissionMapping.getGroupOfPermission(permInfo)
+                    } else {
+                        null
+                    }
+                } catch (e: PackageManager.NameNotFoundException) {
+                    null
+                }
+            },
+            putCached = { permToGroup[permName] = it }
+        )
+
+    private suspend fun getPermGroup(groupName: String): PermGroup? =
+        getOrLoad(
+            getCached = { permGroups[groupName] },
+            isCached = { permGroups.containsKey(groupName) },
+            load = { PermGroupLiveData[groupName].getInitializedValue() as PermGroup? },
+            putCached = { permGroups[groupName] = it }
+        )
+
+    private suspend fun getUiInfo(
+        packageInfo: LightPackageInfo,
+        groupName: String
+    ): AppPermGroupUiInfo? {
+        val packageName = packageInfo.packageName
+        val key = packageName to groupName
+        val permGroup = getPermGroup(groupName) ?: return null
+
+        return getOrLoad(
+            getCached = { uiInfos[key] },
+            isCached = { uiInfos.containsKey(key) },
+            load = { loadUiInfo(packageInfo, permGroup) },
+            putCached = {
+                // The state of these groups also depends on the location and app op state, which
+                // do not invalidate the cache
+                if (
+                    groupName != STORAGE &&
+                        !LocationUtils.isLocationGroupAndProvider(app, groupName, packageName) &&
+                        !LocationUtils.isLocationGroupAndControllerExtraPackage(
+                            app,
+                            groupName,
+                            packageName
+                        )
+                ) {
+                    uiInfos[key] = it
+                }
+            }
+        )
+    }
+
+    private fun loadUiInfo(
+        packageInfo: LightPackageInfo,
+        permGroup: PermGroup
+    ): AppPermGroupUiInfo? {
+        val packageName = packageInfo.packageName
+        val permissionState = mutableMapOf<String, PermState>()
+        try {
+            for ((index, permissionName) in packageInfo.requestedPermissions.withIndex()) {
+                if (!permGroup.permissionInfos.containsKey(permissionName)) {
+                    continue
+                }
+                val permFlags =
+                    app.packageManager.getPermissionFlags(permissionName, packageName, user)
+                val granted =
+                    packageInfo.requestedPermissionsFlags[index] and
+                        REQUESTED_PERMISSION_GRANTED != 0 &&
+                        permFlags and FLAG_PERMISSION_REVOKED_COMPAT == 0
+                permissionState[permissionName] = PermState(permFlags, granted)
+            }
+        } catch (e: IllegalArgumentException) {
+            Log.w(LOG_TAG, "Could not get the permission flags of $packageName", e)
+            return null
+        }
+
+        return AppPermGroupUiInfoLiveData.getAppPermGroupUiInfo(
+            app,
+            packageName,
+            permGroup.name,
+            user,
+            packageInfo,
+            permGroup,
+            permissionState
+        )
+    }
+}
+
+/**
+ * Counts the apps that have at least one of a list of permissions from the UI infos of their
+ * permission groups.
+ *
+ * Every granted group counts, so an app with several granted groups is counted once per granted
+ * group. An app whose groups are all not granted is counted once, unless only granted apps should
+ * be counted.
+ *
+ * @param uiInfosPerPackage The UI infos of the groups of the permissions, per package
+ * @param flags Flags specifying if we want to count system apps, and count only granted apps
+ * @return the number of apps
+ */
+@VisibleForTesting
+fun countPermissionAppsFromUiInfos(
+    uiInfosPerPackage: List<List<AppPermGroupUiInfo>>,
+    flags: Int
+): Int {
+    val countSystem = flags and COUNT_WHEN_SYSTEM != 0
+    val countOnlyGranted = flags and COUNT_ONLY_WHEN_GRANTED != 0
+
+    var packagesWithPermission = 0
+    for (uiInfos in uiInfosPerPackage) {
+        var packageAdded = false
+        for (uiInfo in uiInfos) {
+            if (!uiInfo.shouldShow || (uiInfo.isSystem && !countSystem)) {
+                continue
+            }
+            val granted =
+                uiInfo.permGrantState != PermGrantState.PERMS_DENIED &&
+                    uiInfo.permGrantState != PermGrantState.PERMS_ASK
+            if (granted || !countOnlyGranted && !packageAdded) {
+                // The permission might not be granted, but some permissions of the group are
+                // granted. In this case the permission is granted silently when the app asks for
+                // it. Hence this is as-good-as-granted and we count it.
+                packageAdded = true
+                packagesWithPermission++
+            }
+        }
+    }
+    return packagesWithPermission
+}
@@ -20,23 +20,26 @@ import android.Manifest.permission
 import android.Manifest.permission_group
 import android.content.Context
 import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
 import android.content.pm.PackageManager.FLAG_PERMISSION_RESTRICTION_UPGRADE_EXEMPT
 import android.content.pm.PackageManager.FLAG_PERMISSION_WHITELIST_UPGRADE
 import android.content.pm.PermissionInfo
 import android.os.Build
 import android.os.Process.myUserHandle
+import android.os.SystemClock
 import android.permission.PermissionManager
 import android.util.Log
+import androidx.annotation.VisibleForTesting
 import com.android.modules.utils.build.SdkLevel
 import com.android.permissioncontroller.DeviceUtils
 import com.android.permissioncontroller.PermissionControllerStatsLog
 import com.android.permissioncontroller.PermissionControllerStatsLog.RUNTIME_PERMISSIONS_UPGRADE_RESULT
+import com.android.permissioncontroller.permission.data.ForegroundPermNamesLiveData
 import com.android.permissioncontroller.permission.data.LightAppPermGroupLiveData
-import com.android.permissioncontroller.permission.data.LightPermInfoLiveData
+import com.android.permissioncontroller.permission.data.PermGroupLiveData
+import com.android.permissioncontroller.permission.data.PermStateLiveData
 import com.android.permissioncontroller.permission.data.PreinstalledUserPackageInfosLiveData
-import com.android.permissioncontroller.permission.data.SmartUpdateMediatorLiveData
 import com.android.permissioncontroller.permission.data.UserPackageInfosLiveData
-import com.android.permissioncontroller.permission.data.get
 import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermission
@@ -49,6 +52,9 @@ import com.android.permissioncontroller.permission.utils.PermissionMapping.getRu
 import com.android.permissioncontroller.permission.utils.Utils.FLAGS_PERMISSION_RESTRICTION_ANY_EXEMPT
 import com.android.permissioncontroller.permission.utils.application
 import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.launch
 
 /** This class handles upgrading the runtime permissions database */
@@ -146,281 +152,309 @@ object RuntimePermissionsUpgradeController {
         // All data needed by this method.
         //
         // All data is loaded once and then not updated.
-        val upgradeDataProvider =
-            object : SmartUpdateMediatorLiveData<UpgradeData>() {
-                /** Provides all preinstalled packages in the system */
-                private val preinstalledPkgInfoProvider =
-                    PreinstalledUserPackageInfosLiveData[myUserHandle()]
-
-                /** Provides all platform runtime permission infos */
-                private val platformRuntimePermissionInfoProviders =
-                    mutableListOf<LightPermInfoLiveData>()
-
-                /** {@link #platformRuntimePermissionInfoProvider} that already provided a result */
-                private val platformRuntimePermissionInfoProvidersDone =
-                    mutableSetOf<LightPermInfoLiveData>()
-
-                /** Provides all packages in the system */
-                private val pkgInfoProvider = UserPackageInfosLiveData[myUserHandle()]
-
-                /** Provides all {@link LightAppPermGroup} this upgrade needs */
-                private var permGroupProviders: MutableSet<LightAppPermGroupLiveData>? = null
-
-                /** {@link #permGroupProviders} that already provided a result */
-                private val permGroupProvidersDone = mutableSetOf<LightAppPermGroupLiveData>()
-
-                init {
-                    // First step: Load packages + perm infos
-                    addSource(pkgInfoProvider) { pkgInfos ->
-                        if (pkgInfos != null) {
-                            removeSource(pkgInfoProvider)
-
-                            addSource(preinstalledPkgInfoProvider) { preinstalledPkgInfos ->
-                                if (preinstalledPkgInfos != null) {
-                                    removeSource(preinstalledPkgInfoProvider)
-
-                                    update()
-                                }
-                            }
-                        }
-                    }
+        val upgradeData =
+            loadUpgradeData(
+                context,
+                needBackgroundAppPermGroups,
+                needAccessMediaAppPermGroups,
+                needGrantedExternalStorage,
+                needGrantedReadMediaVisual,
+                needBodySensorsAppPermGroups
+            )
+
+        // Only exempt permissions that are in the OTA. Apps that are updated via OTAs are never
+        // installed. Hence their permission are never exempted. This code replaces that by
+        // always exempting them. For non-OTA updates the installer should do the exemption.
+        // If a restricted permission can't be exempted by the installer then it should be filtered
+        // out here.
+        val preinstalledAppExemptions =
+            getExemptions(upgradeData.restrictedPermissions, upgradeData.preinstalledPkgs)
+
+        val (newVersion, upgradeExemptions, grants) =
+            logTiming("Computing upgrade steps") {
+                onUpgradeLockedDataLoaded(
+                    currentVersion,
+                    upgradeData.pkgs,
+                    upgradeData.restrictedPermissions,
+                    upgradeData.bgGroups,
+                    upgradeData.storageGroups,
+                    upgradeData.bgSensorsGroups,
+                    isDeviceUpgrading
+                )
+            }
 
-                    for (platformRuntimePermission in getRuntimePlatformPermissionNames()) {
-                        val permProvider = LightPermInfoLiveData[platformRuntimePermission]
-                        platformRuntimePermissionInfoProviders.add(permProvider)
+        // Do not run in parallel. Measurements have shown that this is slower than sequential
+        logTiming("Applying exemptions") {
+            for (exemption in (preinstalledAppExemptions union upgradeExemptions)) {
+                exemption.applyToPlatform(context)
+            }
+        }
 
-                        addSource(permProvider) { permInfo ->
-                            if (permInfo != null) {
-                                platformRuntimePermissionInfoProvidersDone.add(permProvider)
-                                removeSource(permProvider)
+        logTiming("Applying grants") {
+            for (grant in grants) {
+                grant.applyToPlatform(context)
+            }
+        }
 
-                                update()
-                            }
-                        }
-                    }
+        return newVersion
+    }
+
+    /**
+     * Load all data needed by {@link #onUpgradeLocked}.
+     *
+     * The packages, the preinstalled packages and the platform permission infos are loaded in
+     * parallel. The {@link LightAppPermGroup}s needed by the upgrade steps are then created from
+     * the loaded packages as soon as they are known.
+     */
+    private suspend fun loadUpgradeData(
+        context: Context,
+        needBackgroundAppPermGroups: Boolean,
+        needAccessMediaAppPermGroups: Boolean,
+        needGrantedExternalStorage: Boolean,
+        needGrantedReadMediaVisual: Boolean,
+        needBodySensorsAppPermGroups: Boolean
+    ): UpgradeData = coroutineScope {
+        val user = myUserHandle()
+        val preinstalledPkgs =
+            async(IPC) {
+                logTiming("Loading preinstalled packages") {
+                    PreinstalledUserPackageInfosLiveData.loadPackageInfos(context, user)
+                }
+            }
+        val restrictedPermissions =
+            async(IPC) {
+                logTiming("Loading platform permissions") {
+                    getRestrictedPlatformPermissions(context)
                 }
+            }
+        val pkgs =
+            logTiming("Loading packages") {
+                UserPackageInfosLiveData.loadPackageInfos(context, user)
+            }
 
-                override fun onUpdate() {
-                    if (permGroupProviders == null && pkgInfoProvider.value != null) {
-                        // Second step: Trigger load of app-perm-groups
-
-                        permGroupProviders = mutableSetOf()
-
-                        // Only load app-perm-groups needed for this upgrade
-                        if (
-                            needBackgroundAppPermGroups ||
-                                needAccessMediaAppPermGroups ||
-                                needGrantedExternalStorage ||
-                                needGrantedReadMediaVisual ||
-                                needBodySensorsAppPermGroups
-                        ) {
-                            for ((pkgName, _, requestedPerms, requestedPermFlags) in
-                                pkgInfoProvider.value!!) {
-                                var requestsAccessMediaLocation = false
-                                var hasGrantedExternalStorage = false
-                                var hasGrantedReadMediaVisual = false
-
-                                for ((perm, flags) in requestedPerms.zip(requestedPermFlags)) {
-                                    if (
-                                        needBackgroundAppPermGroups &&
-                                            perm == permission.ACCESS_BACKGROUND_LOCATION
-                                    ) {
-                                        permGroupProviders!!.add(
-                                            LightAppPermGroupLiveData[
-                                                pkgName, permission_group.LOCATION, myUserHandle()]
-                                        )
-                                    }
-
-                                    if (
-                                        needAccessMediaAppPermGroups ||
-                                            needGrantedExternalStorage ||
-                                            needGrantedReadMediaVisual
-                                    ) {
-                                        if (
-                                            needAccessMediaAppPermGroups &&
-                                                perm == permission.ACCESS_MEDIA_LOCATION
-                                        ) {
-                                            requestsAccessMediaLocation = true
-                                        }
-
-                                        val isGranted =
-                                            flags and PackageInfo.REQUESTED_PERMISSION_GRANTED != 0
-                                        if (perm == permission.READ_EXTERNAL_STORAGE && isGranted) {
-                                            hasGrantedExternalStorage = true
-                                        }
-                                        if (
-                                            PermissionMapping.getGroupOfPlatformPermission(perm) ==
-                                                permission_group.READ_MEDIA_VISUAL && isGranted
-                                        ) {
-                                            hasGrantedReadMediaVisual = true
-                                        }
-                                    }
-
-                                    if (
-                                        needBodySensorsAppPermGroups &&
-                                            perm == permission.BODY_SENSORS_BACKGROUND
-                                    ) {
-                                        permGroupProviders!!.add(
-                                            LightAppPermGroupLiveData[
-                                                pkgName, permission_group.SENSORS, myUserHandle()]
-                                        )
-                                    }
-                                }
-
-                                val accessMediaLocationPermGroup =
-                                    if (SdkLevel.isAtLeastT()) permission_group.READ_MEDIA_VISUAL
-                                    else permission_group.STORAGE
-
-                                if (hasGrantedExternalStorage) {
-                                    if (needGrantedExternalStorage) {
-                                        permGroupProviders!!.add(
-                                            LightAppPermGroupLiveData[
-                                                pkgName, permission_group.STORAGE, myUserHandle()]
-                                        )
-                                        if (SdkLevel.isAtLeastT()) {
-                                            permGroupProviders!!.add(
-                                                LightAppPermGroupLiveData[
-                                                    pkgName,
-                                                    permission_group.READ_MEDIA_VISUAL,
-                                                    myUserHandle()]
-                                            )
-                                            permGroupProviders!!.add(
-                                                LightAppPermGroupLiveData[
-                                                    pkgName,
-                                                    permission_group.READ_MEDIA_AURAL,
-                                                    myUserHandle()]
-                                            )
-                                        }
-                                    } else if (requestsAccessMediaLocation) {
-                                        permGroupProviders!!.add(
-                                            LightAppPermGroupLiveData[
-                                                pkgName,
-                                                accessMediaLocationPermGroup,
-                                                myUserHandle()]
-                                        )
-                                    }
-                                }
-                                if (hasGrantedReadMediaVisual && needGrantedReadMediaVisual) {
-                                    permGroupProviders!!.add(
-                                        LightAppPermGroupLiveData[
-                                            pkgName,
-                                            permission_group.READ_MEDIA_VISUAL,
-                                            myUserHandle()]
-                                    )
-                                }
-                            }
-                        }
+        val neededAppPermGroups =
+            getNeededAppPermGroups(
+                pkgs,
+                needBackgroundAppPermGroups,
+                needAccessMediaAppPermGroups,
+                needGrantedExternalStorage,
+                needGrantedReadMediaVisual,
+                needBodySensorsAppPermGroups
+            )
+        val permGroups =
+            logTiming("Loading app permission groups") {
+                loadAppPermGroups(context, pkgs, neededAppPermGroups)
+            }
 
-                        // Wait until groups are loaded and then trigger third step
-                        for (permGroupProvider in permGroupProviders!!) {
-                            addSource(permGroupProvider) { group ->
-                                if (group != null) {
-                                    permGroupProvidersDone.add(permGroupProvider)
-                                    removeSource(permGroupProvider)
+        val bgGroups = mutableListOf<LightAppPermGroup>()
+        val storageGroups = mutableListOf<LightAppPermGroup>()
+        val bgSensorsGroups = mutableListOf<LightAppPermGroup>()
 
-                                    update()
-                                }
-                            }
-                        }
+        for (group in permGroups) {
+            when (group.permGroupName) {
+                permission_group.LOCATION -> {
+                    bgGroups.add(group)
+                }
+                permission_group.STORAGE -> {
+                    storageGroups.add(group)
+                }
+                permission_group.READ_MEDIA_AURAL -> {
+                    storageGroups.add(group)
+                }
+                permission_group.READ_MEDIA_VISUAL -> {
+                    storageGroups.add(group)
+                }
+                permission_group.SENSORS -> {
+                    bgSensorsGroups.add(group)
+                }
+            }
+        }
 
-                        // If no group need to be loaded, directly switch to third step
-                        if (permGroupProviders!!.isEmpty()) {
-                            update()
-                        }
-                    } else if (
-                        permGroupProviders != null &&
-                            permGroupProvidersDone.size == permGroupProviders!!.size &&
-                            preinstalledPkgInfoProvider.value != null &&
-                            platformRuntimePermissionInfoProviders.size ==
-                                platformRuntimePermissionInfoProvidersDone.size
-                    ) {
-                        // Third step: All packages, perm infos and perm groups are loaded, set
-                        // value
-
-                        val bgGroups = mutableListOf<LightAppPermGroup>()
-                        val storageGroups = mutableListOf<LightAppPermGroup>()
-                        val bgSensorsGroups = mutableListOf<LightAppPermGroup>()
-
-                        for (group in permGroupProviders!!.mapNotNull { it.value }) {
-                            when (group.permGroupName) {
-                                permission_group.LOCATION -> {
-                                    bgGroups.add(group)
-                                }
-                                permission_group.STORAGE -> {
-                                    storageGroups.add(group)
-                                }
-                                permission_group.READ_MEDIA_AURAL -> {
-                                    storageGroups.add(group)
-                                }
-                                permission_group.READ_MEDIA_VISUAL -> {
-                                    storageGroups.add(group)
-                                }
-                                permission_group.SENSORS -> {
-                                    bgSensorsGroups.add(group)
-                                }
-                            }
-                        }
+        UpgradeData(
+            preinstalledPkgs.await(),
+            restrictedPermissions.await(),
+            pkgs,
+            bgGroups,
+            storageGroups,
+            bgSensorsGroups
+        )
+    }
 
-                        val restrictedPermissions = mutableSetOf<String>()
-                        for (permInfoLiveDt in platformRuntimePermissionInfoProviders) {
-                            val permInfo = permInfoLiveDt.value!!
+    /**
+     * Create the {@link LightAppPermGroup}s of already loaded packages, like {@link
+     * LightAppPermGroupLiveData} does.
+     *
+     * Every permission group is only loaded once, and no LiveData is created. The permission states
+     * of the app permission groups are loaded in parallel.
+     *
+     * @param context The current context
+     * @param pkgs The packages of the current user
+     * @param appPermGroups The (package name, permission group name) pairs to create
+     * @return the app permission groups of packages and permission groups that still exist
+     */
+    @VisibleForTesting
+    suspend fun loadAppPermGroups(
+        context: Context,
+        pkgs: List<LightPackageInfo>,
+        appPermGroups: Set<Pair<String, String>>
+    ): List<LightAppPermGroup> = coroutineScope {
+        if (appPermGroups.isEmpty()) {
+            return@coroutineScope emptyList()
+        }
 
-                            if (
-                                permInfo.flags and
-                                    (PermissionInfo.FLAG_HARD_RESTRICTED or
-                                        PermissionInfo.FLAG_SOFT_RESTRICTED) == 0
-                            ) {
-                                continue
-                            }
+        val user = myUserHandle()
+        val app = context.application
+        val pkgsByName = pkgs.associateBy { it.packageName }
+        val permGroups =
+            appPermGroups
+                .mapTo(mutableSetOf()) { (_, permGroupName) -> permGroupName }
+                .associateWith { PermGroupLiveData.loadPermGroup(app, it) }
+        val foregroundPermNames = ForegroundPermNamesLiveData.loadForegroundPermNames(app)
+
+        appPermGroups
+            .map { (pkgName, permGroupName) ->
+                async(IPC) {
+                    val pkg = pkgsByName[pkgName] ?: return@async null
+                    val permGroup = permGroups[permGroupName] ?: return@async null
+                    LightAppPermGroupLiveData.createLightAppPermGroup(
+                        app,
+                        pkgName,
+                        permGroupName,
+                        user,
+                        pkg,
+                        permGroup,
+                        PermStateLiveData.loadPermStates(context, pkg, permGroup, user),
+                        foregroundPermNames
+                    )
+                }
+            }
+            .awaitAll()
+            .filterNotNull()
+    }
 
-                            restrictedPermissions.add(permInfo.name)
+    /**
+     * Get the platform runtime permissions that are hard or soft restricted.
+     *
+     * @param context The current context
+     * @return the names of the restricted platform runtime permissions
+     */
+    private suspend fun getRestrictedPlatformPermissions(context: Context): Set<String> =
+        coroutineScope {
+            getRuntimePlatformPermissionNames()
+                .map { permissionName ->
+                    async(IPC) {
+                        try {
+                            context.packageManager.getPermissionInfo(permissionName, 0)
+                        } catch (e: PackageManager.NameNotFoundException) {
+                            Log.w(LOG_TAG, "Permission \"$permissionName\" not found")
+                            null
                         }
-
-                        value =
-                            UpgradeData(
-                                preinstalledPkgInfoProvider.value!!,
-                                restrictedPermissions,
-                                pkgInfoProvider.value!!,
-                                bgGroups,
-                                storageGroups,
-                                bgSensorsGroups
-                            )
                     }
                 }
-            }
+                .awaitAll()
+                .filterNotNull()
+                .filter {
+                    it.flags and
+                        (PermissionInfo.FLAG_HARD_RESTRICTED or
+                            PermissionInfo.FLAG_SOFT_RESTRICTED) != 0
+                }
+                .mapTo(mutableSetOf()) { it.name }
+        }
 
-        // Trigger loading of data and wait until data is loaded
-        val upgradeData = upgradeDataProvider.getInitializedValue(forceUpdate = true)
+    /**
+     * Get the app permission groups the upgrade steps need to inspect.
+     *
+     * @param pkgs All packages in the system
+     * @return the (package name, permission group name) of the groups to load
+     */
+    private fun getNeededAppPermGroups(
+        pkgs: List<LightPackageInfo>,
+        needBackgroundAppPermGroups: Boolean,
+        needAccessMediaAppPermGroups: Boolean,
+        needGrantedExternalStorage: Boolean,
+        needGrantedReadMediaVisual: Boolean,
+        needBodySensorsAppPermGroups: Boolean
+    ): Set<Pair<String, String>> {
+        val permGroups = mutableSetOf<Pair<String, String>>()
+
+        // Only load app-perm-groups needed for this upgrade
+        if (
+            !needBackgroundAppPermGroups &&
+                !needAccessMediaAppPermGroups &&
+                !needGrantedExternalStorage &&
+                !needGrantedReadMediaVisual &&
+                !needBodySensorsAppPermGroups
+        ) {
+            return permGroups
+        }
 
-        // Only exempt permissions that are in the OTA. Apps that are updated via OTAs are never
-        // installed. Hence their permission are never exempted. This code replaces that by
-        // always exempting them. For non-OTA updates the installer should do the exemption.
-        // If a restricted permission can't be exempted by the installer then it should be filtered
-        // out here.
-        val preinstalledAppExemptions =
-            getExemptions(upgradeData.restrictedPermissions, upgradeData.preinstalledPkgs)
+        for ((pkgName, _, requestedPerms, requestedPermFlags) in pkgs) {
+            var requestsAccessMediaLocation = false
+            var hasGrantedExternalStorage = false
+            var hasGrantedReadMediaVisual = false
 
-        val (newVersion, upgradeExemptions, grants) =
-            onUpgradeLockedDataLoaded(
-                currentVersion,
-                upgradeData.pkgs,
-                upgradeData.restrictedPermissions,
-                upgradeData.bgGroups,
-                upgradeData.storageGroups,
-                upgradeData.bgSensorsGroups,
-                isDeviceUpgrading
-            )
+            for ((perm, flags) in requestedPerms.zip(requestedPermFlags)) {
+                if (needBackgroundAppPermGroups && perm == permission.ACCESS_BACKGROUND_LOCATION) {
+                    permGroups.add(pkgName to permission_group.LOCATION)
+                }
 
-        // Do not run in parallel. Measurements have shown that this is slower than sequential
-        for (exemption in (preinstalledAppExemptions union upgradeExemptions)) {
-            exemption.applyToPlatform(context)
-        }
+                if (
+                    needAccessMediaAppPermGroups ||
+                        needGrantedExternalStorage ||
+                        needGrantedReadMediaVisual
+                ) {
+                    if (needAccessMediaAppPermGroups && perm == permission.ACCESS_MEDIA_LOCATION) {
+                        requestsAccessMediaLocation = true
+                    }
+
+                    val isGranted = flags and PackageInfo.REQUESTED_PERMISSION_GRANTED != 0
+                    if (perm == permission.READ_EXTERNAL_STORAGE && isGranted) {
+                        hasGrantedExternalStorage = true
+                    }
+                    if (
+                        PermissionMapping.getGroupOfPlatformPermission(perm) ==
+                            permission_group.READ_MEDIA_VISUAL && isGranted
+                    ) {
+                        hasGrantedReadMediaVisual = true
+                    }
+                }
 
-        for (grant in grants) {
-            grant.applyToPlatform(context)
+                if (needBodySensorsAppPermGroups && perm == permission.BODY_SENSORS_BACKGROUND) {
+                    permGroups.add(pkgName to permission_group.SENSORS)
+                }
+            }
+
+            val accessMediaLocationPermGroup =
+                if (SdkLevel.isAtLeastT()) permission_group.READ_MEDIA_VISUAL
+                else permission_group.STORAGE
+
+            if (hasGrantedExternalStorage) {
+                if (needGrantedExternalStorage) {
+                    permGroups.add(pkgName to permission_group.STORAGE)
+                    if (SdkLevel.isAtLeastT()) {
+                        permGroups.add(pkgName to permission_group.READ_MEDIA_VISUAL)
+                        permGroups.add(pkgName to permission_group.READ_MEDIA_AURAL)
+                    }
+                } else if (requestsAccessMediaLocation) {
+                    permGroups.add(pkgName to accessMediaLocationPermGroup)
+                }
+            }
+            if (hasGrantedReadMediaVisual && needGrantedReadMediaVisual) {
+                permGroups.add(pkgName to permission_group.READ_MEDIA_VISUAL)
+            }
         }
 
-        return newVersion
+        return permGroups
+    }
+
+    /** Run the given {@code block} and log how long it took. */
+    private inline fun <T> logTiming(step: String, block: () -> T): T {
+        val startMillis = SystemClock.elapsedRealtime()
+        try {
+            return block()
+        } finally {
+            Log.i(LOG_TAG, "$step took ${SystemClock.elapsedRealtime() - startMillis} ms")
+        }
     }
 
     private fun onUpgradeLockedDataLoaded(
@@ -30,6 +30,7 @@ import android.content.ComponentName
 import android.content.Context
 import android.content.Intent
 import android.content.Intent.ACTION_BOOT_COMPLETED
+import android.content.SharedPreferences
 import android.content.pm.PackageManager
 import android.os.Build
 import android.os.Bundle
@@ -38,15 +39,20 @@ import android.os.Process
 import android.os.UserHandle
 import android.os.UserManager
 import android.provider.DeviceConfig
+import android.provider.Settings
 import android.util.Log
 import androidx.annotation.RequiresApi
+import androidx.annotation.VisibleForTesting
 import androidx.core.app.NotificationCompat
 import androidx.core.graphics.drawable.IconCompat
 import com.android.permission.safetylabel.DataCategoryConstants.CATEGORY_LOCATION
 import com.android.permission.safetylabel.SafetyLabel as AppMetadataSafetyLabel
 import com.android.permissioncontroller.Constants.EXTRA_SESSION_ID
 import com.android.permissioncontroller.Constants.INVALID_SESSION_ID
+import com.android.permissioncontroller.Constants.KEY_SAFETY_LABEL_CHANGES_BOOT_COUNT
+import com.android.permissioncontroller.Constants.KEY_SAFETY_LABEL_CHANGES_SEQUENCE_NUMBER_PREFIX
 import com.android.permissioncontroller.Constants.PERMISSION_REMINDER_CHANNEL_ID
+import com.android.permissioncontroller.Constants.PREFERENCES_FILE
 import com.android.permissioncontroller.Constants.SAFETY_LABEL_CHANGES_DETECT_UPDATES_JOB_ID
 import com.android.permissioncontroller.Constants.SAFETY_LABEL_CHANGES_NOTIFICATION_ID
 import com.android.permissioncontroller.Constants.SAFETY_LABEL_CHANGES_PERIODIC_NOTIFICATION_JOB_ID
@@ -67,6 +73,7 @@ import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGr
 import com.android.permissioncontroller.permission.model.v34.AppDataSharingUpdate
 import com.android.permissioncontroller.permission.utils.KotlinUtils
 import com.android.permissioncontroller.permission.utils.Utils.getSystemServiceSafe
+import com.android.permissioncontroller.privacysources.PrivacyChecksStats
 import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory
 import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.AppInfo
 import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.SafetyLabel as SafetyLabelForPersistence
@@ -230,9 +237,11 @@ class SafetyLabelChangesJobService : JobService() {
 
     private suspend fun runNotificationJob() {
         mutex.withLock {
-            recordSafetyLabelsIfMissing()
-            deleteSafetyLabelsNoLongerNeeded()
-            postSafetyLabelChangedNotification()
+            PrivacyChecksStats.runCheck(this, LOG_TAG) {
+                recordSafetyLabelsIfMissing()
+                deleteSafetyLabelsNoLongerNeeded()
+                postSafetyLabelChangedNotification()
+            }
         }
     }
 
@@ -240,13 +249,140 @@ class SafetyLabelChangesJobService : JobService() {
      * Records safety labels for apps that may not have propagated their safety labels to
      * persistence through [SafetyLabelChangedBroadcastReceiver].
      *
+     * Only the packages that changed since the last run are inspected, based on the package change
+     * sequence numbers reported by [PackageManager.getChangedPackages]. All relevant packages are
+     * inspected on the first run, after a reboot, or when a new profile is added.
+     */
+    private suspend fun recordSafetyLabelsIfMissing() {
+        // Capture the current package change cursor before inspecting any package, so that changes
+        // happening while the job runs are picked up by the next run.
+        val currentCursor = getCurrentPackageChangeCursor()
+        val lastCursor = loadPackageChangeCursor()
+        val changedPackages =
+            if (
+                lastCursor != null && KotlinUtils.isSafetyLabelChangesIncrementalDetectionEnabled()
+            ) {
+                getPackagesChangedSince(lastCursor, currentCursor) { user, sequenceNumber ->
+                    getPackageManagerForUser(user).getChangedPackages(sequenceNumber)?.packageNames
+                }
+            } else {
+                null
+            }
+
+        if (changedPackages == null) {
+            recordSafetyLabelsIfMissingForAllPackages()
+        } else if (changedPackages.isEmpty()) {
+            Log.i(LOG_TAG, "No package changed since last run, not recording safety labels")
+        } else {
+            recordSafetyLabelsIfMissingForPackages(changedPackages)
+        }
+        savePackageChangeCursor(currentCursor)
+    }
+
+    /**
+     * Records safety labels for the provided packages, which changed since the last time the
+     * safety labels were recorded, if they are relevant and may not have propagated their safety
+     * labels to persistence through [SafetyLabelChangedBroadcastReceiver].
+     */
+    private suspend fun recordSafetyLabelsIfMissingForPackages(
+        changedPackages: Set<Pair<String, UserHandle>>
+    ) {
+        val historyFile = AppsSafetyLabelHistoryPersistence.getSafetyLabelHistoryFile(context)
+        val safetyLabelsLastUpdatedTimes: Map<AppInfo, Instant> =
+            AppsSafetyLabelHistoryPersistence.getSafetyLabelsLastUpdatedTimes(historyFile)
+        // Use the same set of relevant packages as when inspecting all packages, so that both paths
+        // record safety labels for the same packages.
+        val changedPackagesRequestingLocation =
+            changedPackages.intersect(getAllStoreInstalledPackagesRequestingLocation())
+        val packageNamesWithPersistedSafetyLabels =
+            safetyLabelsLastUpdatedTimes.keys.map { it.packageName }.toSet()
+
+        val (packagesToConsiderUpdate, packagesToInitialize) =
+            changedPackagesRequestingLocation.partition { (packageName, _) ->
+                packageName in packageNamesWithPersistedSafetyLabels
+            }
+        if (DEBUG) {
+            Log.d(
+                LOG_TAG,
+                "recording safety labels if missing for changed packages:" +
+                    " changedPackages: $changedPackages," +
+                    " changedPackagesRequestingLocation: $changedPackagesRequestingLocation"
+            )
+        }
+        val safetyLabelsToRecord = mutableSetOf<SafetyLabelForPersistence>()
+        safetyLabelsToRecord.addAll(getSafetyLabels(packagesToInitialize))
+        safetyLabelsToRecord.addAll(
+            getSafetyLabelsIfUpdatesMissed(packagesToConsiderUpdate, safetyLabelsLastUpdatedTimes)
+        )
+
+        AppsSafetyLabelHistoryPersistence.recordSafetyLabels(safetyLabelsToRecord, historyFile)
+    }
+
+    private fun getCurrentPackageChangeCursor(): PackageChangeCursor {
+        val bootCount = Settings.Global.getInt(contentResolver, Settings.Global.BOOT_COUNT, -1)
+        val userManager = getSystemServiceSafe(context, UserManager::class.java)
+        val sequenceNumbers =
+            userManager.userProfiles.associateWith {
+                getPackageManagerForUser(it).getChangedPackages(0)?.sequenceNumber ?: 0
+            }
+        return PackageChangeCursor(bootCount, sequenceNumbers)
+    }
+
+    private fun loadPackageChangeCursor(): PackageChangeCursor? {
+        val sharedPreferences = getSharedPreferences()
+        if (!sharedPreferences.contains(KEY_SAFETY_LABEL_CHANGES_BOOT_COUNT)) {
+            return null
+        }
+        val bootCount = sharedPreferences.getInt(KEY_SAFETY_LABEL_CHANGES_BOOT_COUNT, -1)
+        val userManager = getSystemServiceSafe(context, UserManager::class.java)
+        val sequenceNumbers = mutableMapOf<UserHandle, Int>()
+        for (user in userManager.userProfiles) {
+            val key = KEY_SAFETY_LABEL_CHANGES_SEQUENCE_NUMBER_PREFIX + user.identifier
+            if (sharedPreferences.contains(key)) {
+                sequenceNumbers[user] = sharedPreferences.getInt(key, 0)
+            }
+        }
+        return PackageChangeCursor(bootCount, sequenceNumbers)
+    }
+
+    private fun savePackageChangeCursor(cursor: PackageChangeCursor) {
+        val sharedPreferences = getSharedPreferences()
+        val editor = sharedPreferences.edit()
+        // Drop the sequence numbers of profiles that no longer exist.
+        sharedPreferences.all.keys
+            .filter { it.startsWith(KEY_SAFETY_LABEL_CHANGES_SEQUENCE_NUMBER_PREFIX) }
+            .forEach { editor.remove(it) }
+        editor.putInt(KEY_SAFETY_LABEL_CHANGES_BOOT_COUNT, cursor.bootCount)
+        for ((user, sequenceNumber) in cursor.sequenceNumbers) {
+            editor.putInt(
+                KEY_SAFETY_LABEL_CHANGES_SEQUENCE_NUMBER_PREFIX + user.identifier,
+                sequenceNumber
+            )
+        }
+        editor.apply()
+    }
+
+    private fun getSharedPreferences(): SharedPreferences =
+        context.getSharedPreferences(PREFERENCES_FILE, Context.MODE_PRIVATE)
+
+    private fun getPackageManagerForUser(user: UserHandle): PackageManager =
+        if (user == Process.myUserHandle()) {
+            context.packageManager
+        } else {
+            context.createContextAsUser(user, 0).packageManager
+        }
+
+    /**
+     * Records safety labels for all relevant apps that may not have propagated their safety labels
+     * to persistence through [SafetyLabelChangedBroadcastReceiver].
+     *
      * This is done by:
      * 1. Initializing safety labels for apps that are relevant, but have no persisted safety labels
      *    yet.
      * 2. Update safety labels for apps that are relevant and have persisted safety labels, if we
      *    identify that we have missed an update for them.
      */
-    private suspend fun recordSafetyLabelsIfMissing() {
+    private suspend fun recordSafetyLabelsIfMissingForAllPackages() {
         val historyFile = AppsSafetyLabelHistoryPersistence.getSafetyLabelHistoryFile(context)
         val safetyLabelsLastUpdatedTimes: Map<AppInfo, Instant> =
             AppsSafetyLabelHistoryPersistence.getSafetyLabelsLastUpdatedTimes(historyFile)
@@ -622,6 +758,13 @@ class SafetyLabelChangesJobService : JobService() {
         notificationManager.createNotificationChannel(notificationChannel)
     }
 
+    /** The package change sequence number of each profile, at a given boot count. */
+    @VisibleForTesting
+    data class PackageChangeCursor(
+        val bootCount: Int,
+        val sequenceNumbers: Map<UserHandle, Int>
+    )
+
     companion object {
         private val LOG_TAG = SafetyLabelChangesJobService::class.java.simpleName
         private const val DEBUG = true
@@ -634,6 +777,34 @@ class SafetyLabelChangesJobService : JobService() {
         private const val DATA_SHARING_UPDATE_PERIOD_PROPERTY = "data_sharing_update_period_millis"
         private const val DEFAULT_DATA_SHARING_UPDATE_PERIOD_DAYS: Long = 30
 
+        /**
+         * Returns the packages that changed between the provided cursors, or `null` if the changes
+         * cannot be determined incrementally and all packages must be inspected.
+         *
+         * @param getChangedPackageNames returns the names of the packages of the given user that
+         *   changed since the given sequence number, or `null` if none changed
+         */
+        @VisibleForTesting
+        fun getPackagesChangedSince(
+            lastCursor: PackageChangeCursor,
+            currentCursor: PackageChangeCursor,
+            getChangedPackageNames: (UserHandle, Int) -> List<String>?
+        ): Set<Pair<String, UserHandle>>? {
+            // Sequence numbers are reset on reboot.
+            if (lastCursor.bootCount != currentCursor.bootCount) {
+                return null
+            }
+
+            val changedPackages = mutableSetOf<Pair<String, UserHandle>>()
+            for (user in currentCursor.sequenceNumbers.keys) {
+                // A new profile needs all its packages to be inspected.
+                val lastSequenceNumber = lastCursor.sequenceNumbers[user] ?: return null
+                val packageNames = getChangedPackageNames(user, lastSequenceNumber) ?: continue
+                packageNames.forEach { changedPackages.add(Pair(it, user)) }
+            }
+            return changedPackages
+        }
+
         private fun scheduleDetectUpdatesJob(context: Context) {
             try {
                 val jobScheduler = getSystemServiceSafe(context, JobScheduler::class.java)
@@ -80,7 +80,6 @@ class PermissionUsageDetailsViewModel(
     val showSystemLiveData = state.getLiveData(SHOULD_SHOW_SYSTEM_KEY, false)
     val show7DaysLiveData = state.getLiveData(SHOULD_SHOW_7_DAYS_KEY, false)
 
-    private val packageIconCache: MutableMap<Pair<String, UserHandle>, Drawable> = mutableMapOf()
     private val packageLabelCache: MutableMap<String, String> = mutableMapOf()
 
     private val roleManager =
@@ -409,7 +408,11 @@ class PermissionUsageDetailsViewModel(
             summary,
             showingSubAttribution,
             ArrayList(this.attributionTags),
-            getBadgedPackageIcon(this.appPermissionId.packageName, this.appPermissionId.userHandle)
+            KotlinUtils.getBadgedPackageIcon(
+                application,
+                this.appPermissionId.packageName,
+                this.appPermissionId.userHandle
+            )
         )
     }
 
@@ -643,21 +646,6 @@ class PermissionUsageDetailsViewModel(
             }
         }
 
-    /**
-     * Returns the icon for the provided package name and user, by first searching the cache
-     * otherwise retrieving it from the app's [android.content.pm.ApplicationInfo].
-     */
-    private fun getBadgedPackageIcon(packageName: String, userHandle: UserHandle): Drawable? {
-        val packageNameWithUser: Pair<String, UserHandle> = Pair(packageName, userHandle)
-        if (packageIconCache.containsKey(packageNameWithUser)) {
-            return requireNotNull(packageIconCache[packageNameWithUser])
-        }
-        val packageIcon = KotlinUtils.getBadgedPackageIcon(application, packageName, userHandle)
-        if (packageIcon != null) packageIconCache[packageNameWithUser] = packageIcon
-
-        return packageIcon
-    }
-
     /**
      * Returns the label for the provided package name, by first searching the cache otherwise
      * retrieving it from the app's [android.content.pm.ApplicationInfo].
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.utils
+
+import android.content.ComponentName
+import android.content.Context
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import android.database.Cursor
+import android.database.sqlite.SQLiteException
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Drawable
+import android.os.Build
+import android.os.HandlerThread
+import android.os.Looper
+import android.os.UserHandle
+import android.os.UserManager
+import android.util.Log
+import android.util.LruCache
+import androidx.annotation.VisibleForTesting
+import com.android.launcher3.icons.BitmapInfo
+import com.android.launcher3.icons.R as IconR
+import com.android.launcher3.icons.SimpleIconCache
+import com.android.launcher3.icons.cache.BaseIconCache.IconDB
+import com.android.launcher3.icons.cache.CachingLogic
+import com.android.permissioncontroller.permission.data.PackageBroadcastReceiver
+
+/**
+ * Process-wide cache of badged package icons.
+ *
+ * Rendered icons are kept in a bounded in-memory cache and persisted in the iconloaderlib
+ * [IconDB], so that an icon is badged at most once per (package, user, version, system state). The
+ * system state covers the locale list, the SDK level and the display density.
+ *
+ * Icons are rendered with [Utils.getBadgedIconBitmapInfo], like [Utils.getBadgedIcon]. The
+ * database is only read and written on the background looper: persisted icons are loaded into
+ * memory by [loadPersistedIcons], and an icon missing from memory is rendered right away.
+ */
+class BadgedIconCache
+@VisibleForTesting
+constructor(context: Context, dbFileName: String, bgLooper: Looper) :
+    SimpleIconCache(
+        context,
+        dbFileName,
+        bgLooper,
+        context.resources.configuration.densityDpi,
+        context.resources.getDimensionPixelSize(IconR.dimen.default_icon_bitmap_size),
+        // The base class memory cache may only be read on the background looper, icons are
+        // requested from arbitrary threads, hence keep our own memory cache instead.
+        false
+    ),
+    PackageBroadcastReceiver.PackageBroadcastListener {
+
+    private val userManager = Utils.getSystemServiceSafe(context, UserManager::class.java)
+
+    private val memoryCache =
+        object : LruCache<IconKey, BitmapInfo>(MEMORY_CACHE_SIZE_BYTES) {
+            override fun sizeOf(key: IconKey, value: BitmapInfo): Int =
+                value.icon.allocationByteCount
+        }
+
+    /**
+     * Gets the badged icon of a package, rendering it and persisting it in the background if it is
+     * not cached yet.
+     *
+     * @param packageName The name of the package whose icon we want
+     * @param user The user for whom we want the package icon
+     * @return The package's icon, or null, if the package does not exist
+     */
+    fun getBadgedIcon(packageName: String, user: UserHandle): Drawable? {
+        val key = IconKey(packageName, user, getIconSystemState(packageName))
+        val cachedBitmapInfo = memoryCache.get(key)
+        if (cachedBitmapInfo != null) {
+            return BitmapDrawable(mContext.resources, cachedBitmapInfo.icon)
+        }
+
+        val packageInfo =
+            try {
+                getPackageManager(user).getPackageInfo(packageName, 0)
+            } catch (e: PackageManager.NameNotFoundException) {
+                return null
+            }
+        val appInfo = packageInfo.applicationInfo ?: return null
+        val bitmapInfo = Utils.getBadgedIconBitmapInfo(mContext, appInfo)
+        memoryCache.put(key, bitmapInfo)
+        mWorkerHandler.post { persistIcon(packageInfo, user, bitmapInfo) }
+        return BitmapDrawable(mContext.resources, bitmapInfo.icon)
+    }
+
+    /** Whether the badged icon of a package is in memory, and can be served without rendering. */
+    @VisibleForTesting
+    fun isIconInMemory(packageName: String, user: UserHandle): Boolean =
+        memoryCache.get(IconKey(packageName, user, getIconSystemState(packageName))) != null
+
+    /**
+     * Loads the icons persisted by a previous process into memory, on the background looper.
+     *
+     * Icons of packages that were updated since they were persisted are skipped.
+     */
+    fun loadPersistedIcons() {
+        mWorkerHandler.post { loadPersistedIconsInBackground() }
+    }
+
+    /** Drops all cached icons of a package, e.g. after it was removed. */
+    fun removeIcons(packageName: String, user: UserHandle) {
+        for (key in memoryCache.snapshot().keys) {
+            if (key.packageName == packageName && key.user == user) {
+                memoryCache.remove(key)
+            }
+        }
+        removeIconsForPkg(packageName, user)
+    }
+
+    /**
+     * Drops the in-memory icons of a package for all users, so that they are rendered again if the
+     * package was updated. The persisted icons are overwritten on the next render.
+     */
+    override fun onPackageUpdate(packageName: String) {
+        for (key in memoryCache.snapshot().keys) {
+            if (key.packageName == packageName) {
+                memoryCache.remove(key)
+            }
+        }
+    }
+
+    override fun getIconSystemState(packageName: String?): String {
+        val configuration = mContext.resources.configuration
+        return "${configuration.locales.toLanguageTags()},${Build.VERSION.SDK_INT}," +
+            "${configuration.densityDpi}"
+    }
+
+    private fun loadPersistedIconsInBackground() {
+        val systemState = getIconSystemState(null)
+        try {
+            queryCacheDb(DB_COLUMNS, "${IconDB.COLUMN_SYSTEM_STATE} = ?", arrayOf(systemState))
+                .use { cursor ->
+                    while (cursor.moveToNext() && memoryCache.size() < memoryCache.maxSize()) {
+                        loadPersistedIcon(cursor, systemState)
+                    }
+                }
+        } catch (e: SQLiteException) {
+            Log.w(LOG_TAG, "Could not read persisted icons", e)
+        } catch (e: RuntimeException) {
+            // Corrupted blob
+            Log.w(LOG_TAG, "Could not decode persisted icons", e)
+        }
+    }
+
+    private fun loadPersistedIcon(cursor: Cursor, systemState: String) {
+        val packageName =
+            ComponentName.unflattenFromString(cursor.getString(0))?.packageName ?: return
+        val user = userManager.getUserForSerialNumber(cursor.getLong(1)) ?: return
+        val key = IconKey(packageName, user, systemState)
+        if (memoryCache.get(key) != null) {
+            return
+        }
+        val packageInfo =
+            try {
+                getPackageManager(user).getPackageInfo(packageName, 0)
+            } catch (e: PackageManager.NameNotFoundException) {
+                return
+            }
+        if (
+            cursor.getInt(2) != packageInfo.longVersionCode.toInt() ||
+                cursor.getLong(3) != packageInfo.lastUpdateTime
+        ) {
+            // The package was updated since its icon was persisted
+            return
+        }
+        val bitmapInfo =
+            BitmapInfo.fromByteArray(cursor.getBlob(5), cursor.getInt(4), user, this, mContext)
+        if (bitmapInfo != null && !bitmapInfo.isNullOrLowRes()) {
+            memoryCache.put(key, bitmapInfo)
+        }
+    }
+
+    private fun persistIcon(packageInfo: PackageInfo, user: UserHandle, bitmapInfo: BitmapInfo) {
+        try {
+            addIconToDBAndMemCache(
+                RenderedIcon(packageInfo.packageName, user, bitmapInfo),
+                RenderedIconCachingLogic,
+                packageInfo,
+                getSerialNumberForUser(user),
+                true
+            )
+        } catch (e: SQLiteException) {
+            Log.w(LOG_TAG, "Could not persist icon of ${packageInfo.packageName}", e)
+        }
+    }
+
+    private fun getPackageManager(user: UserHandle): PackageManager =
+        Utils.getUserContext(mContext, user).packageManager
+
+    private data class IconKey(
+        val packageName: String,
+        val user: UserHandle,
+        val systemState: String
+    )
+
+    /** An icon that was already rendered, so that [CachingLogic.loadIcon] does not render again */
+    private class RenderedIcon(
+        val packageName: String,
+        val user: UserHandle,
+        val bitmapInfo: BitmapInfo
+    )
+
+    private object RenderedIconCachingLogic : CachingLogic<RenderedIcon> {
+        override fun getComponent(icon: RenderedIcon) = getPackageComponent(icon.packageName)
+
+        override fun getUser(icon: RenderedIcon) = icon.user
+
+        // Labels are not served from this cache, avoid loading them just to persist them
+        override fun getLabel(icon: RenderedIcon): CharSequence = icon.packageName
+
+        override fun loadIcon(context: Context, icon: RenderedIcon) = icon.bitmapInfo
+
+        override fun addToMemCache() = false
+    }
+
+    companion object {
+        private val LOG_TAG = BadgedIconCache::class.java.simpleName
+
+        private const val DB_FILE_NAME = "badged_app_icons.db"
+        private val MEMORY_CACHE_SIZE_BYTES = (Runtime.getRuntime().maxMemory() / 32).toInt()
+        private val DB_COLUMNS =
+            arrayOf(
+                IconDB.COLUMN_COMPONENT,
+                IconDB.COLUMN_USER,
+                IconDB.COLUMN_VERSION,
+                IconDB.COLUMN_LAST_UPDATED,
+                IconDB.COLUMN_ICON_COLOR,
+                IconDB.COLUMN_ICON
+            )
+
+        @Volatile private var instance: BadgedIconCache? = null
+
+        /**
+         * Gets the process-wide icon cache, creating it if needed.
+         *
+         * A newly created cache starts loading the persisted icons in the background, and drops
+         * the in-memory icons of packages as they change.
+         */
+        @JvmStatic
+        fun get(context: Context): BadgedIconCache {
+            return instance
+                ?: synchronized(this) {
+                    instance
+                        ?: run {
+                            val bgThread = HandlerThread(LOG_TAG).apply { start() }
+                            BadgedIconCache(
+                                    context.applicationContext,
+                                    DB_FILE_NAME,
+                                    bgThread.looper
+                                )
+                                .also {
+                                    it.loadPersistedIcons()
+                                    PackageBroadcastReceiver.addAllCallback(it)
+                                    instance = it
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Drops the cached icons of a package, e.g. after it was removed.
+         *
+         * The icons persisted by a previous process are dropped too, but the cache is not created
+         * just for this if nothing was persisted yet.
+         */
+        @JvmStatic
+        fun removeCachedIcons(context: Context, packageName: String, user: UserHandle) {
+            val cache =
+                instance
+                    ?: if (context.getDatabasePath(DB_FILE_NAME).exists()) get(context) else null
+            cache?.removeIcons(packageName, user)
+        }
+
+        private fun getPackageComponent(packageName: String) =
+            ComponentName(packageName, packageName + EMPTY_CLASS_NAME)
+    }
+}
@@ -168,6 +168,13 @@ object KotlinUtils {
     private const val PROPERTY_SAFETY_LABEL_CHANGES_JOB_SERVICE_KILL_SWITCH =
         "safety_label_changes_job_service_kill_switch"
 
+    /**
+     * Whether the safety label changes job should only inspect packages that changed since its last
+     * run, rather than every package requesting location.
+     */
+    private const val PROPERTY_SAFETY_LABEL_CHANGES_INCREMENTAL_DETECTION_ENABLED =
+        "safety_label_changes_incremental_detection_enabled"
+
     data class Quadruple<out A, out B, out C, out D>(
         val first: A,
         val second: B,
@@ -312,6 +319,18 @@ object KotlinUtils {
         )
     }
 
+    /**
+     * Whether the safety label changes job should only inspect packages that changed since its last
+     * run, as reported by [PackageManager.getChangedPackages].
+     */
+    fun isSafetyLabelChangesIncrementalDetectionEnabled(): Boolean {
+        return DeviceConfig.getBoolean(
+            DeviceConfig.NAMESPACE_PRIVACY,
+            PROPERTY_SAFETY_LABEL_CHANGES_INCREMENTAL_DETECTION_ENABLED,
+            true
+        )
+    }
+
     /**
      * Given a Map, and a List, determines which elements are in the list, but not the map, and vice
      * versa. Used primarily for determining which liveDatas are already being watched, and which
@@ -529,7 +548,7 @@ object KotlinUtils {
     }
 
     /**
-     * Gets a package's badged icon from the system.
+     * Gets a package's badged icon, from the shared [BadgedIconCache] if possible.
      *
      * @param app The current application
      * @param packageName The name of the package whose icon we want
@@ -537,13 +556,7 @@ object KotlinUtils {
      * @return The package's icon, or null, if the package does not exist
      */
     fun getBadgedPackageIcon(app: Application, packageName: String, user: UserHandle): Drawable? {
-        return try {
-            val userContext = Utils.getUserContext(app, user)
-            val appInfo = userContext.packageManager.getApplicationInfo(packageName, 0)
-            Utils.getBadgedIcon(app, appInfo)
-        } catch (e: PackageManager.NameNotFoundException) {
-            null
-        }
+        return BadgedIconCache.get(app).getBadgedIcon(packageName, user)
     }
 
     /**
@@ -843,7 +856,56 @@ object KotlinUtils {
         )
     }
 
-    @SuppressLint("MissingPermission")
+    /**
+     * Grant the foreground and background runtime permissions of several LightAppPermGroups, which
+     * can belong to different packages, at once.
+     *
+     * <p>This is equivalent to calling [grantForegroundRuntimePermissions] and
+     * [grantBackgroundRuntimePermissions] for every group, except that all changes are planned
+     * before being applied, so that each permission flag and app op is only updated once, and each
+     * affected app is killed at most once. All permission changes are applied before any app op
+     * change.
+     *
+     * @param app The current application
+     * @param groups Map<group whose permissions should be granted, permissions to grant>
+     * @param isOneTime Whether this is a one-time permission grant
+     * @param userFixed Whether to mark the permissions as user fixed when granted
+     * @return the new LightAppPermGroups, reflecting the new state, in the order of [groups]
+     */
+    @JvmOverloads
+    fun grantRuntimePermissions(
+        app: Application,
+        groups: Map<LightAppPermGroup, Collection<String>>,
+        isOneTime: Boolean = false,
+        userFixed: Boolean = false
+    ): List<LightAppPermGroup> {
+        val batch = PermissionChangeBatch(app)
+        val newGroups =
+            groups.map { (group, filterPermissions) ->
+                val fgGrantedGroup =
+                    grantRuntimePermissions(
+                        batch,
+                        group,
+                        grantBackground = false,
+                        isOneTime,
+                        userFixed,
+                        withoutAppOps = false,
+                        filterPermissions
+                    )
+                grantRuntimePermissions(
+                    batch,
+                    fgGrantedGroup,
+                    grantBackground = true,
+                    isOneTime,
+                    userFixed,
+                    withoutAppOps = false,
+                    filterPermissions
+                )
+            }
+        batch.apply()
+        return newGroups
+    }
+
     private fun grantRuntimePermissions(
         app: Application,
         group: LightAppPermGroup,
@@ -853,7 +915,30 @@ object KotlinUtils {
         withoutAppOps: Boolean = false,
         filterPermissions: Collection<String> = group.permissions.keys
     ): LightAppPermGroup {
-        val deviceId = group.deviceId
+        val batch = PermissionChangeBatch(app)
+        val newGroup =
+            grantRuntimePermissions(
+                batch,
+                group,
+                grantBackground,
+                isOneTime,
+                userFixed,
+                withoutAppOps,
+                filterPermissions
+            )
+        batch.apply()
+        return newGroup
+    }
+
+    private fun grantRuntimePermissions(
+        batch: PermissionChangeBatch,
+        group: LightAppPermGroup,
+        grantBackground: Boolean,
+        isOneTime: Boolean,
+        userFixed: Boolean,
+        withoutAppOps: Boolean,
+        filterPermissions: Collection<String>
+    ): LightAppPermGroup {
         val newPerms = group.permissions.toMutableMap()
         var shouldKillForAnyPermission = false
         for (permName in filterPermissions) {
@@ -861,38 +946,23 @@ object KotlinUtils {
             val isBackgroundPerm = permName in group.backgroundPermNames
             if (isBackgroundPerm == grantBackground) {
                 val (newPerm, shouldKill) =
-                    grantRuntimePermission(app, perm, group, isOneTime, userFixed, withoutAppOps)
+                    grantRuntimePermission(batch, perm, group, isOneTime, userFixed, withoutAppOps)
                 newPerms[newPerm.name] = newPerm
                 shouldKillForAnyPermission = shouldKillForAnyPermission || shouldKill
             }
         }
 
-        // Create a new context with the given deviceId so that permission updates will be bound
-        // to the device
-        val context = ContextCompat.createDeviceContext(app.applicationContext, deviceId)
-
-        if (!newPerms.isEmpty()) {
-            val user = UserHandle.getUserHandleForUid(group.packageInfo.uid)
-            for (groupPerm in group.allPermissions.values) {
-                var permFlags = groupPerm.flags
-                permFlags = permFlags.clearFlag(FLAG_PERMISSION_AUTO_REVOKED)
-                if (groupPerm.flags != permFlags) {
-                    context.packageManager.updatePermissionFlags(
-                        groupPerm.name,
-                        group.packageInfo.packageName,
-                        PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
-                        permFlags,
-                        user
-                    )
-                }
-            }
+        for (groupPerm in group.allPermissions.values) {
+            val permFlags = batch.getPermissionFlags(group, groupPerm)
+            batch.updatePermissionFlags(
+                group,
+                groupPerm,
+                permFlags.clearFlag(FLAG_PERMISSION_AUTO_REVOKED)
+            )
         }
 
         if (shouldKillForAnyPermission) {
-            (app.getSystemService(ActivityManager::class.java) as ActivityManager).killUid(
-                group.packageInfo.uid,
-                KILL_REASON_APP_OP_CHANGE
-            )
+            batch.killUid(group.packageInfo.uid)
         }
         val newGroup =
             LightAppPermGroup(
@@ -904,26 +974,7 @@ object KotlinUtils {
             )
         // If any permission in the group is one time granted, start one time permission session.
         if (newGroup.permissions.any { it.value.isOneTime && it.value.isGrantedIncludingAppOp }) {
-            if (SdkLevel.isAtLeastT()) {
-                context
-                    .getSystemService(PermissionManager::class.java)!!
-                    .startOneTimePermissionSession(
-                        group.packageName,
-                        Utils.getOneTimePermissionsTimeout(),
-                        Utils.getOneTimePermissionsKilledDelay(false),
-                        ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_RESET_TIMER,
-                        ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_KEEP_SESSION_ALIVE
-                    )
-            } else {
-                context
-                    .getSystemService(PermissionManager::class.java)!!
-                    .startOneTimePermissionSession(
-                        group.packageName,
-                        Utils.getOneTimePermissionsTimeout(),
-                        ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_RESET_TIMER,
-                        ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_KEEP_SESSION_ALIVE
-                    )
-            }
+            batch.startOneTimePermissionSession(newGroup)
         }
         return newGroup
     }
@@ -931,7 +982,7 @@ object KotlinUtils {
     /**
      * Grants a single runtime permission
      *
-     * @param app The current application
+     * @param batch The batch in which to record the permission, flag and app op changes
      * @param perm The permission which should be granted.
      * @param group An app permission group in which to look for background or foreground
      * @param isOneTime Whether this is a one-time permission grant permissions
@@ -943,7 +994,7 @@ object KotlinUtils {
      *   state, if it wasn't changed), should kill app>
      */
     private fun grantRuntimePermission(
-        app: Application,
+        batch: PermissionChangeBatch,
         perm: LightPermission,
         group: LightAppPermGroup,
         isOneTime: Boolean,
@@ -951,8 +1002,6 @@ object KotlinUtils {
         withoutAppOps: Boolean = false
     ): Pair<LightPermission, Boolean> {
         val pkgInfo = group.packageInfo
-        val user = UserHandle.getUserHandleForUid(pkgInfo.uid)
-        val deviceId = group.deviceId
         val supportsRuntime = pkgInfo.targetSdkVersion >= Build.VERSION_CODES.M
         val isGrantingAllowed =
             (!pkgInfo.isInstantApp || perm.isInstantPerm) &&
@@ -962,36 +1011,25 @@ object KotlinUtils {
             return perm to false
         }
 
+        val app = batch.app
         var newFlags = perm.flags
-        var oldFlags = perm.flags
         var isGranted = perm.isGrantedIncludingAppOp
         var shouldKill = false
 
-        // Create a new context with the given deviceId so that permission updates will be bound
-        // to the device
-        val context = ContextCompat.createDeviceContext(app.applicationContext, deviceId)
-
         // Grant the permission if needed.
         if (!perm.isGrantedIncludingAppOp) {
             val affectsAppOp = permissionToOp(perm.name) != null || perm.isBackgroundPermission
 
             // TODO 195016052: investigate adding split permission handling
             if (supportsRuntime) {
-                // If granting without app ops, explicitly disallow app op first, while setting the
-                // flag, so that the PermissionPolicyService doesn't reset the app op state
+                // If granting without app ops, explicitly disallow the app op. The batch sets the
+                // REVOKED_COMPAT flag below before granting the permission, so that the
+                // PermissionPolicyService doesn't reset the app op state in between.
                 if (affectsAppOp && withoutAppOps) {
-                    oldFlags = oldFlags.setFlag(PackageManager.FLAG_PERMISSION_REVOKED_COMPAT)
-                    context.packageManager.updatePermissionFlags(
-                        perm.name,
-                        group.packageName,
-                        PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
-                        oldFlags,
-                        user
-                    )
                     // TODO: Update this method once AppOp is device aware
-                    disallowAppOp(app, perm, group)
+                    disallowAppOp(batch, perm, group)
                 }
-                context.packageManager.grantRuntimePermission(group.packageName, perm.name, user)
+                batch.grantRuntimePermission(group, perm)
                 isGranted = true
             } else if (affectsAppOp) {
                 // Legacy apps do not know that they have to retry access to a
@@ -1010,10 +1048,10 @@ object KotlinUtils {
             newFlags = newFlags.clearFlag(PackageManager.FLAG_PERMISSION_REVOKE_WHEN_REQUESTED)
 
             // If this permission affects an app op, ensure the permission app op is enabled
-            // before the permission grant.
+            // along with the permission grant.
             if (affectsAppOp && !withoutAppOps) {
                 // TODO: Update this method once AppOp is device aware
-                allowAppOp(app, perm, group)
+                allowAppOp(batch, perm, group)
             }
         }
 
@@ -1056,15 +1094,7 @@ object KotlinUtils {
             }
         }
 
-        if (oldFlags != newFlags) {
-            context.packageManager.updatePermissionFlags(
-                perm.name,
-                group.packageInfo.packageName,
-                PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
-                newFlags,
-                user
-            )
-        }
+        batch.updatePermissionFlags(group, perm, newFlags)
 
         val newState = PermState(newFlags, isGranted)
         return LightPermission(perm.pkgInfo, perm.permInfo, newState, perm.foregroundPerms) to
@@ -1136,6 +1166,92 @@ object KotlinUtils {
         )
     }
 
+    /**
+     * Revoke the foreground and background runtime permissions of several LightAppPermGroups,
+     * which can belong to different packages, at once.
+     *
+     * <p>This is equivalent to calling [revokeBackgroundRuntimePermissions] and
+     * [revokeForegroundRuntimePermissions] for every group, and then updating the flags of the
+     * revoked permissions, except that all changes are planned before being applied, so that each
+     * permission flag and app op is only updated once, and each affected app is killed at most
+     * once. All permission changes are applied before any app op change.
+     *
+     * @param app The current application
+     * @param groups Map<group whose permissions should be revoked, permissions to revoke>
+     * @param userFixed If the user requested that they do not want to be asked again
+     * @param oneTime If the permission should be mark as one-time
+     * @param flagsToSet Additional flags to set on the permissions to revoke
+     * @param flagsToClear Additional flags to clear on the permissions to revoke
+     * @return the new LightAppPermGroups, reflecting the new state, in the order of [groups]
+     * @throws IllegalArgumentException if [flagsToSet] or [flagsToClear] contain flags that the
+     *   permission controller doesn't change
+     */
+    @JvmOverloads
+    fun revokeRuntimePermissions(
+        app: Application,
+        groups: Map<LightAppPermGroup, Collection<String>>,
+        userFixed: Boolean = false,
+        oneTime: Boolean = false,
+        flagsToSet: Int = 0,
+        flagsToClear: Int = 0
+    ): List<LightAppPermGroup> {
+        val unsupportedFlags =
+            (flagsToSet or flagsToClear) and PERMISSION_CONTROLLER_CHANGED_FLAG_MASK.inv()
+        require(unsupportedFlags == 0) {
+            "Unsupported permission flags ${Integer.toHexString(unsupportedFlags)}"
+        }
+        val batch = PermissionChangeBatch(app)
+        val newGroups =
+            groups.map { (group, filterPermissions) ->
+                val bgRevokedGroup =
+                    revokeRuntimePermissions(
+                        batch,
+                        group,
+                        revokeBackground = true,
+                        userFixed,
+                        oneTime,
+                        forceRemoveRevokedCompat = false,
+                        filterPermissions
+                    )
+                val revokedGroup =
+                    revokeRuntimePermissions(
+                        batch,
+                        bgRevokedGroup,
+                        revokeBackground = false,
+                        userFixed,
+                        oneTime,
+                        forceRemoveRevokedCompat = false,
+                        filterPermissions
+                    )
+                if (flagsToSet == 0 && flagsToClear == 0) {
+                    return@map revokedGroup
+                }
+
+                val newPerms = revokedGroup.permissions.toMutableMap()
+                for (permName in filterPermissions) {
+                    val perm = revokedGroup.permissions[permName] ?: continue
+                    val newFlags = perm.flags.setFlag(flagsToSet).clearFlag(flagsToClear)
+                    batch.updatePermissionFlags(revokedGroup, perm, newFlags)
+                    newPerms[permName] =
+                        LightPermission(
+                            perm.pkgInfo,
+                            perm.permInfo,
+                            PermState(newFlags, perm.isGrantedIncludingAppOp),
+                            perm.foregroundPerms
+                        )
+                }
+                LightAppPermGroup(
+                    revokedGroup.packageInfo,
+                    revokedGroup.permGroupInfo,
+                    newPerms,
+                    revokedGroup.hasInstallToRuntimeSplit,
+                    revokedGroup.specialLocationGrant
+                )
+            }
+        batch.apply()
+        return newGroups
+    }
+
     private fun revokeRuntimePermissions(
         app: Application,
         group: LightAppPermGroup,
@@ -1145,7 +1261,30 @@ object KotlinUtils {
         forceRemoveRevokedCompat: Boolean = false,
         filterPermissions: Collection<String>
     ): LightAppPermGroup {
-        val deviceId = group.deviceId
+        val batch = PermissionChangeBatch(app)
+        val newGroup =
+            revokeRuntimePermissions(
+                batch,
+                group,
+                revokeBackground,
+                userFixed,
+                oneTime,
+                forceRemoveRevokedCompat,
+                filterPermissions
+            )
+        batch.apply()
+        return newGroup
+    }
+
+    private fun revokeRuntimePermissions(
+        batch: PermissionChangeBatch,
+        group: LightAppPermGroup,
+        revokeBackground: Boolean,
+        userFixed: Boolean,
+        oneTime: Boolean,
+        forceRemoveRevokedCompat: Boolean,
+        filterPermissions: Collection<String>
+    ): LightAppPermGroup {
         val wasOneTime = group.isOneTime
         val newPerms = group.permissions.toMutableMap()
         var shouldKillForAnyPermission = false
@@ -1155,7 +1294,7 @@ object KotlinUtils {
             if (isBackgroundPerm == revokeBackground) {
                 val (newPerm, shouldKill) =
                     revokeRuntimePermission(
-                        app,
+                        batch,
                         perm,
                         userFixed,
                         oneTime,
@@ -1167,11 +1306,8 @@ object KotlinUtils {
             }
         }
 
-        if (shouldKillForAnyPermission && !shouldSkipKillForGroup(app, group)) {
-            (app.getSystemService(ActivityManager::class.java) as ActivityManager).killUid(
-                group.packageInfo.uid,
-                KILL_REASON_APP_OP_CHANGE
-            )
+        if (shouldKillForAnyPermission && !shouldSkipKillForGroup(batch.app, group)) {
+            batch.killUid(group.packageInfo.uid)
         }
 
         val newGroup =
@@ -1183,13 +1319,8 @@ object KotlinUtils {
                 group.specialLocationGrant
             )
 
-        if (wasOneTime && !anyPermsOfPackageOneTimeGranted(app, newGroup.packageInfo, newGroup)) {
-            // Create a new context with the given deviceId so that permission updates will be bound
-            // to the device
-            val context = ContextCompat.createDeviceContext(app.applicationContext, deviceId)
-            context
-                .getSystemService(PermissionManager::class.java)!!
-                .stopOneTimePermissionSession(group.packageName)
+        if (wasOneTime) {
+            batch.stopOneTimePermissionSessionIfNeeded(newGroup)
         }
         return newGroup
     }
@@ -1259,7 +1390,7 @@ object KotlinUtils {
     /**
      * Revokes a single runtime permission.
      *
-     * @param app The current application
+     * @param batch The batch in which to record the permission, flag and app op changes
      * @param perm The permission which should be revoked.
      * @param userFixed If the user requested that they do not want to be asked again
      * @param group An optional app permission group in which to look for background or foreground
@@ -1268,7 +1399,7 @@ object KotlinUtils {
      *   state, if it wasn't changed), should kill app>
      */
     private fun revokeRuntimePermission(
-        app: Application,
+        batch: PermissionChangeBatch,
         perm: LightPermission,
         userFixed: Boolean,
         oneTime: Boolean,
@@ -1280,19 +1411,15 @@ object KotlinUtils {
             return perm to false
         }
 
+        val app = batch.app
         val user = UserHandle.getUserHandleForUid(group.packageInfo.uid)
         var newFlags = perm.flags
-        val deviceId = group.deviceId
         var isGranted = perm.isGrantedIncludingAppOp
         val supportsRuntime = group.packageInfo.targetSdkVersion >= Build.VERSION_CODES.M
         var shouldKill = false
 
         val affectsAppOp = permissionToOp(perm.name) != null || perm.isBackgroundPermission
 
-        // Create a new context with the given deviceId so that permission updates will be bound
-        // to the device
-        val context = ContextCompat.createDeviceContext(app.applicationContext, deviceId)
-
         if (perm.isGrantedIncludingAppOp || (perm.isCompatRevoked && forceRemoveRevokedCompat)) {
             if (
                 supportsRuntime &&
@@ -1303,11 +1430,7 @@ object KotlinUtils {
                     )
             ) {
                 // Revoke the permission if needed.
-                context.packageManager.revokeRuntimePermission(
-                    group.packageInfo.packageName,
-                    perm.name,
-                    user
-                )
+                batch.revokeRuntimePermission(group, perm)
                 isGranted = false
                 if (forceRemoveRevokedCompat) {
                     newFlags = newFlags.clearFlag(PackageManager.FLAG_PERMISSION_REVOKED_COMPAT)
@@ -1327,7 +1450,7 @@ object KotlinUtils {
             newFlags = newFlags.clearFlag(PackageManager.FLAG_PERMISSION_REVOKE_WHEN_REQUESTED)
             if (affectsAppOp) {
                 // TODO: Update this method once AppOp is device aware
-                disallowAppOp(app, perm, group)
+                disallowAppOp(batch, perm, group)
             }
         }
 
@@ -1345,15 +1468,7 @@ object KotlinUtils {
         newFlags = newFlags.clearFlag(PackageManager.FLAG_PERMISSION_AUTO_REVOKED)
         newFlags = newFlags.clearFlag(PackageManager.FLAG_PERMISSION_REVIEW_REQUIRED)
 
-        if (perm.flags != newFlags) {
-            context.packageManager.updatePermissionFlags(
-                perm.name,
-                group.packageInfo.packageName,
-                PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
-                newFlags,
-                user
-            )
-        }
+        batch.updatePermissionFlags(group, perm, newFlags)
 
         // If we revoke background access to the fine location, we trigger a check to remove
         // notification warning about background location access
@@ -1403,21 +1518,18 @@ object KotlinUtils {
      * background permission:</dt> <dd>All granted foreground permissions for this background
      * permission will be set to {@link AppOpsManager#MODE_ALLOWED}</dd> </dl>
      *
-     * @param app The current application
+     * @param batch The batch in which to record the app op changes
      * @param perm The LightPermission whose app op should be allowed
      * @param group The LightAppPermGroup which will be looked in for foreground or background
      *   LightPermission objects
-     * @return {@code true} iff app-op was changed
      */
     private fun allowAppOp(
-        app: Application,
+        batch: PermissionChangeBatch,
         perm: LightPermission,
         group: LightAppPermGroup
-    ): Boolean {
+    ) {
         val packageName = group.packageInfo.packageName
         val uid = group.packageInfo.uid
-        val appOpsManager = app.getSystemService(AppOpsManager::class.java) as AppOpsManager
-        var wasChanged = false
 
         if (perm.isBackgroundPermission && perm.foregroundPerms != null) {
             for (foregroundPermName in perm.foregroundPerms) {
@@ -1425,34 +1537,29 @@ object KotlinUtils {
                 val appOpName = permissionToOp(foregroundPermName) ?: continue
 
                 if (fgPerm != null && fgPerm.isGrantedIncludingAppOp) {
-                    wasChanged =
-                        setOpMode(appOpName, uid, packageName, MODE_ALLOWED, appOpsManager) ||
-                            wasChanged
+                    batch.setOpMode(appOpName, uid, packageName, MODE_ALLOWED)
                 }
             }
         } else {
-            val appOpName = permissionToOp(perm.name) ?: return false
+            val appOpName = permissionToOp(perm.name) ?: return
             if (perm.backgroundPermission != null) {
-                wasChanged =
-                    if (group.permissions.containsKey(perm.backgroundPermission)) {
-                        val bgPerm = group.permissions[perm.backgroundPermission]
-                        val mode =
-                            if (bgPerm != null && bgPerm.isGrantedIncludingAppOp) MODE_ALLOWED
-                            else MODE_FOREGROUND
-
-                        setOpMode(appOpName, uid, packageName, mode, appOpsManager)
-                    } else {
-                        // The app requested a permission that has a background permission but it
-                        // did
-                        // not request the background permission, hence it can never get background
-                        // access
-                        setOpMode(appOpName, uid, packageName, MODE_FOREGROUND, appOpsManager)
-                    }
+                if (group.permissions.containsKey(perm.backgroundPermission)) {
+                    val bgPerm = group.permissions[perm.backgroundPermission]
+                    val mode =
+                        if (bgPerm != null && bgPerm.isGrantedIncludingAppOp) MODE_ALLOWED
+                        else MODE_FOREGROUND
+
+                    batch.setOpMode(appOpName, uid, packageName, mode)
+                } else {
+                    // The app requested a permission that has a background permission but it did
+                    // not request the background permission, hence it can never get background
+                    // access
+                    batch.setOpMode(appOpName, uid, packageName, MODE_FOREGROUND)
+                }
             } else {
-                wasChanged = setOpMode(appOpName, uid, packageName, MODE_ALLOWED, appOpsManager)
+                batch.setOpMode(appOpName, uid, packageName, MODE_ALLOWED)
             }
         }
-        return wasChanged
     }
 
     /**
@@ -1465,37 +1572,31 @@ object KotlinUtils {
      * permission is a background permission:</dt> <dd>All granted foreground permissions for this
      * background permission will be set to {@link AppOpsManager#MODE_FOREGROUND}</dd> </dl>
      *
-     * @param app The current application
-     * @param perm The LightPermission whose app op should be allowed
+     * @param batch The batch in which to record the app op changes
+     * @param perm The LightPermission whose app op should be disallowed
      * @param group The LightAppPermGroup which will be looked in for foreground or background
      *   LightPermission objects
-     * @return {@code true} iff app-op was changed
      */
     private fun disallowAppOp(
-        app: Application,
+        batch: PermissionChangeBatch,
         perm: LightPermission,
         group: LightAppPermGroup
-    ): Boolean {
+    ) {
         val packageName = group.packageInfo.packageName
         val uid = group.packageInfo.uid
-        val appOpsManager = app.getSystemService(AppOpsManager::class.java) as AppOpsManager
-        var wasChanged = false
 
         if (perm.isBackgroundPermission && perm.foregroundPerms != null) {
             for (foregroundPermName in perm.foregroundPerms) {
                 val fgPerm = group.permissions[foregroundPermName]
                 if (fgPerm != null && fgPerm.isGrantedIncludingAppOp) {
-                    val appOpName = permissionToOp(foregroundPermName) ?: return false
-                    wasChanged =
-                        wasChanged ||
-                            setOpMode(appOpName, uid, packageName, MODE_FOREGROUND, appOpsManager)
+                    val appOpName = permissionToOp(foregroundPermName) ?: return
+                    batch.setOpMode(appOpName, uid, packageName, MODE_FOREGROUND)
                 }
             }
         } else {
-            val appOpName = permissionToOp(perm.name) ?: return false
-            wasChanged = setOpMode(appOpName, uid, packageName, MODE_IGNORED, appOpsManager)
+            val appOpName = permissionToOp(perm.name) ?: return
+            batch.setOpMode(appOpName, uid, packageName, MODE_IGNORED)
         }
-        return wasChanged
     }
 
     /**
@@ -1523,6 +1624,191 @@ object KotlinUtils {
         return true
     }
 
+    /**
+     * Permission grant, flag, app op, kill and one-time permission session changes of one or more
+     * app permission groups, possibly of different packages.
+     *
+     * Changes are only recorded until [apply] is called, so that a permission flag or app op
+     * changed several times is only updated once, and an app is killed at most once.
+     */
+    private class PermissionChangeBatch(val app: Application) {
+        /** Map<permission, Pair<current flags, new flags>> */
+        private val flagChanges = mutableMapOf<PermissionFlagsKey, Pair<Int, Int>>()
+        /** Map<permission, whether to grant or revoke it> */
+        private val grantChanges = mutableMapOf<PermissionFlagsKey, Boolean>()
+        /** Map<Triple<op, uid, packageName>, new mode> */
+        private val opModes = mutableMapOf<Triple<String, Int, String>, Int>()
+        private val uidsToKill = mutableSetOf<Int>()
+        /** Map<Pair<packageName, deviceId>, Pair<group, whether to start the session>> */
+        private val oneTimePermissionSessions =
+            mutableMapOf<Pair<String, Int>, Pair<LightAppPermGroup, Boolean>>()
+
+        /** Returns the flags of a permission, including the changes recorded in this batch. */
+        fun getPermissionFlags(group: LightAppPermGroup, perm: LightPermission): Int {
+            return flagChanges[PermissionFlagsKey(group, perm.name)]?.second ?: perm.flags
+        }
+
+        /**
+         * Records a change of the flags of a permission.
+         *
+         * @param currentFlags The flags the permission currently has on the platform
+         */
+        fun updatePermissionFlags(
+            group: LightAppPermGroup,
+            perm: LightPermission,
+            newFlags: Int,
+            currentFlags: Int = perm.flags
+        ) {
+            val key = PermissionFlagsKey(group, perm.name)
+            val platformFlags = flagChanges[key]?.first ?: currentFlags
+            val unsupportedChanges =
+                (platformFlags xor newFlags) and PERMISSION_CONTROLLER_CHANGED_FLAG_MASK.inv()
+            if (unsupportedChanges != 0) {
+                // Only the flags in the mask are written, the other changes would be lost.
+                Log.w(
+                    LOG_TAG,
+                    "Ignoring changes of flags ${Integer.toHexString(unsupportedChanges)} of " +
+                        "${perm.name} for ${group.packageName}"
+                )
+            }
+            flagChanges[key] = platformFlags to newFlags
+        }
+
+        fun grantRuntimePermission(group: LightAppPermGroup, perm: LightPermission) {
+            grantChanges[PermissionFlagsKey(group, perm.name)] = true
+        }
+
+        fun revokeRuntimePermission(group: LightAppPermGroup, perm: LightPermission) {
+            grantChanges[PermissionFlagsKey(group, perm.name)] = false
+        }
+
+        fun setOpMode(op: String, uid: Int, packageName: String, mode: Int) {
+            opModes[Triple(op, uid, packageName)] = mode
+        }
+
+        fun killUid(uid: Int) {
+            uidsToKill.add(uid)
+        }
+
+        fun startOneTimePermissionSession(group: LightAppPermGroup) {
+            oneTimePermissionSessions[group.packageName to group.deviceId] = group to true
+        }
+
+        fun stopOneTimePermissionSessionIfNeeded(group: LightAppPermGroup) {
+            oneTimePermissionSessions[group.packageName to group.deviceId] = group to false
+        }
+
+        /**
+         * Applies all the changes recorded in this batch.
+         *
+         * All permission changes are applied first, and then all app op changes. The flags are
+         * written before the permissions are granted, so that a permission granted without its
+         * app op already has the REVOKED_COMPAT flag when the PermissionPolicyService syncs it.
+         */
+        fun apply() {
+            for ((key, flags) in flagChanges) {
+                val (currentFlags, newFlags) = flags
+                if (currentFlags == newFlags) {
+                    continue
+                }
+                // Create a new context with the given deviceId so that permission updates will be
+                // bound to the device
+                val context =
+                    ContextCompat.createDeviceContext(app.applicationContext, key.deviceId)
+                context.packageManager.updatePermissionFlags(
+                    key.permName,
+                    key.packageName,
+                    PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
+                    newFlags,
+                    key.user
+                )
+            }
+            flagChanges.clear()
+
+            for ((key, grant) in grantChanges) {
+                val context =
+                    ContextCompat.createDeviceContext(app.applicationContext, key.deviceId)
+                if (grant) {
+                    context.packageManager.grantRuntimePermission(
+                        key.packageName,
+                        key.permName,
+                        key.user
+                    )
+                } else {
+                    context.packageManager.revokeRuntimePermission(
+                        key.packageName,
+                        key.permName,
+                        key.user
+                    )
+                }
+            }
+            grantChanges.clear()
+
+            if (opModes.isNotEmpty()) {
+                val appOpsManager =
+                    app.getSystemService(AppOpsManager::class.java) as AppOpsManager
+                for ((opUidPackage, mode) in opModes) {
+                    val (op, uid, packageName) = opUidPackage
+                    setOpMode(op, uid, packageName, mode, appOpsManager)
+                }
+                opModes.clear()
+            }
+
+            if (uidsToKill.isNotEmpty()) {
+                val activityManager =
+                    app.getSystemService(ActivityManager::class.java) as ActivityManager
+                for (uid in uidsToKill) {
+                    activityManager.killUid(uid, KILL_REASON_APP_OP_CHANGE)
+                }
+                uidsToKill.clear()
+            }
+
+            for ((group, start) in oneTimePermissionSessions.values) {
+                val context =
+                    ContextCompat.createDeviceContext(app.applicationContext, group.deviceId)
+                val permissionManager = context.getSystemService(PermissionManager::class.java)!!
+                if (start) {
+                    if (SdkLevel.isAtLeastT()) {
+                        permissionManager.startOneTimePermissionSession(
+                            group.packageName,
+                            Utils.getOneTimePermissionsTimeout(),
+                            Utils.getOneTimePermissionsKilledDelay(false),
+                            ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_RESET_TIMER,
+                            ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_KEEP_SESSION_ALIVE
+                        )
+                    } else {
+                        permissionManager.startOneTimePermissionSession(
+                            group.packageName,
+                            Utils.getOneTimePermissionsTimeout(),
+                            ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_RESET_TIMER,
+                            ONE_TIME_PACKAGE_IMPORTANCE_LEVEL_TO_KEEP_SESSION_ALIVE
+                        )
+                    }
+                } else if (!anyPermsOfPackageOneTimeGranted(app, group.packageInfo, group)) {
+                    permissionManager.stopOneTimePermissionSession(group.packageName)
+                }
+            }
+            oneTimePermissionSessions.clear()
+        }
+    }
+
+    private data class PermissionFlagsKey(
+        val deviceId: Int,
+        val packageName: String,
+        val user: UserHandle,
+        val permName: String
+    ) {
+        constructor(
+            group: LightAppPermGroup,
+            permName: String
+        ) : this(
+            group.deviceId,
+            group.packageInfo.packageName,
+            UserHandle.getUserHandleForUid(group.packageInfo.uid),
+            permName
+        )
+    }
+
     private fun shouldSkipKillForGroup(app: Application, group: LightAppPermGroup): Boolean {
         if (group.permGroupName != NOTIFICATIONS) {
             return false
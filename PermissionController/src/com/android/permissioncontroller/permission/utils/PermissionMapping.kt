@@ -23,8 +23,11 @@ import android.content.pm.PackageManager
 import android.content.pm.PermissionInfo
 import android.health.connect.HealthPermissions.HEALTH_PERMISSION_GROUP
 import android.util.Log
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
 import com.android.modules.utils.build.SdkLevel
 import com.android.permission.safetylabel.DataCategoryConstants
+import com.android.permissioncontroller.permission.data.PackageBroadcastReceiver
 import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
 
 /**
@@ -69,6 +72,47 @@ object PermissionMapping {
 
     private val HEALTH_PERMISSIONS_SET: MutableSet<String> = mutableSetOf()
 
+    private val platformPermissionInfosLock = Any()
+
+    /**
+     * Mapping group -> infos of the platform permissions of the group, loaded on demand.
+     *
+     * Platform permissions are defined by [Utils.OS_PKG] and mainline modules, which can be updated
+     * without a reboot, so the infos are dropped when a package defining one of them changes.
+     */
+    @GuardedBy("platformPermissionInfosLock")
+    private val PLATFORM_PERMISSION_INFOS: MutableMap<String, List<PermissionInfo>> =
+        mutableMapOf()
+
+    /** Packages defining the cached platform permissions */
+    @GuardedBy("platformPermissionInfosLock")
+    private val PERMISSION_DEFINING_PACKAGES: MutableSet<String> = mutableSetOf()
+
+    /** Whether [permissionDefiningPackageListener] was registered, it is never unregistered */
+    @GuardedBy("platformPermissionInfosLock")
+    private var isListeningToPermissionDefiningPackages = false
+
+    /** Incremented on every invalidation, so that stale permission infos are not cached */
+    @GuardedBy("platformPermissionInfosLock") private var platformPermissionInfosGeneration = 0
+
+    /**
+     * Clears the cached platform permission infos when a package defining one of them changes.
+     *
+     * A single listener is registered for all packages the first time infos are cached, rather
+     * than one per defining package.
+     */
+    @VisibleForTesting
+    val permissionDefiningPackageListener =
+        object : PackageBroadcastReceiver.PackageBroadcastListener {
+            override fun onPackageUpdate(packageName: String) {
+                synchronized(platformPermissionInfosLock) {
+                    if (packageName in PERMISSION_DEFINING_PACKAGES) {
+                        clearPlatformPermissionInfos()
+                    }
+                }
+            }
+        }
+
     init {
         PLATFORM_PERMISSIONS[Manifest.permission.READ_CONTACTS] = Manifest.permission_group.CONTACTS
         PLATFORM_PERMISSIONS[Manifest.permission.WRITE_CONTACTS] =
@@ -240,13 +284,46 @@ object PermissionMapping {
     /**
      * Get the [infos][PermissionInfo] for all platform permissions belonging to a group.
      *
-     * @param pm Package manager to use to resolve permission infos
+     * The infos are only resolved the first time a group is requested, and then until a package
+     * defining one of them changes. The cache is keyed by group only: platform permission
+     * definitions are the same for all users, so the infos resolved through the first [pm] are
+     * shared by every caller.
+     *
+     * @param pm Package manager to use to resolve permission infos if they are not cached yet
      * @param group the group
      * @return The infos for platform permissions belonging to the group or an empty list if the
      *   group does not have platform runtime permissions
      */
     @JvmStatic
     fun getPlatformPermissionsOfGroup(pm: PackageManager, group: String): List<PermissionInfo> {
+        val generation =
+            synchronized(platformPermissionInfosLock) {
+                val cachedPermInfos = PLATFORM_PERMISSION_INFOS[group]
+                if (cachedPermInfos != null) {
+                    // PermissionInfo is mutable, so hand out copies like the package manager does
+                    return cachedPermInfos.map { PermissionInfo(it) }
+                }
+                platformPermissionInfosGeneration
+            }
+
+        val permInfos = loadPlatformPermissionsOfGroup(pm, group)
+        synchronized(platformPermissionInfosLock) {
+            if (generation == platformPermissionInfosGeneration) {
+                PLATFORM_PERMISSION_INFOS[group] = permInfos.map { PermissionInfo(it) }
+                permInfos.mapTo(PERMISSION_DEFINING_PACKAGES) { it.packageName }
+                if (!isListeningToPermissionDefiningPackages) {
+                    isListeningToPermissionDefiningPackages = true
+                    PackageBroadcastReceiver.addAllCallback(permissionDefiningPackageListener)
+                }
+            }
+        }
+        return permInfos
+    }
+
+    private fun loadPlatformPermissionsOfGroup(
+        pm: PackageManager,
+        group: String
+    ): List<PermissionInfo> {
         val permInfos = mutableListOf<PermissionInfo>()
         for (permName in PLATFORM_PERMISSION_GROUPS[group] ?: emptyList()) {
             val permInfo: PermissionInfo =
@@ -321,6 +398,16 @@ object PermissionMapping {
             PLATFORM_PERMISSION_GROUPS[HEALTH_PERMISSION_GROUP]?.add(permission)
             HEALTH_PERMISSIONS_SET.add(permission)
         }
+        clearPlatformPermissionInfos()
+    }
+
+    /** Clears the cached [infos][PermissionInfo] of the platform permissions. */
+    private fun clearPlatformPermissionInfos() {
+        synchronized(platformPermissionInfosLock) {
+            platformPermissionInfosGeneration++
+            PLATFORM_PERMISSION_INFOS.clear()
+            PERMISSION_DEFINING_PACKAGES.clear()
+        }
     }
 
     /**
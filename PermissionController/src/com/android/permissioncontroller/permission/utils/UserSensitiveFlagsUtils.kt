@@ -19,11 +19,15 @@
 package com.android.permissioncontroller.permission.utils
 
 import android.content.pm.PackageManager
+import android.os.SystemClock
 import android.os.UserHandle
 import android.util.Log
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.data.UserSensitivityLiveData
 import com.android.permissioncontroller.permission.model.livedatatypes.UidSensitivityState
+import com.android.permissioncontroller.permission.utils.UserSensitiveFlagsProto.UserSensitiveFlagsDumpProto
 import com.android.permissioncontroller.permission.utils.Utils.FLAGS_ALWAYS_USER_SENSITIVE
 import java.lang.IllegalStateException
 import kotlinx.coroutines.GlobalScope
@@ -31,6 +35,12 @@ import kotlinx.coroutines.launch
 
 private const val LOG_TAG = "UserSensitiveFlagsUtils"
 
+private val statsLock = Any()
+@GuardedBy("statsLock") private var passes = 0
+@GuardedBy("statsLock") private var permissionFlagsReads = 0L
+@GuardedBy("statsLock") private var permissionFlagsUpdates = 0L
+@GuardedBy("statsLock") private var timeMillis = 0L
+
 /**
  * Update the [PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED] and
  * [PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED] for all apps of this user.
@@ -49,28 +59,49 @@ fun updateUserSensitiveForUser(user: UserHandle, callback: Runnable) {
                 "All uids sensitivity liveData should not be null if initialized"
             )
         }
-        updateUserSensitiveForUidsInternal(uidUserSensitivity, user, callback)
+
+        updateUserSensitiveForUidsInternal(
+            uidUserSensitivity,
+            user,
+            Utils.getUserContext(PermissionControllerApplication.get(), user).packageManager
+        )
+        callback.run()
     }
 }
 
-private fun updateUserSensitiveForUidsInternal(
+/**
+ * Reads the current flags of every requested permission of the given uids and updates only the
+ * ones that differ.
+ *
+ * [PackageManager] has no bulk API for permission flags, so every read and update is a separate
+ * call.
+ *
+ * @param uidsUserSensitivity A map of <uid, uid state> of the uids to update
+ * @param user The user of the uids
+ * @param pm The [PackageManager] of this user
+ */
+@VisibleForTesting
+fun updateUserSensitiveForUidsInternal(
     uidsUserSensitivity: Map<Int, UidSensitivityState>,
     user: UserHandle,
-    callback: Runnable?
+    pm: PackageManager
 ) {
-    val userContext = Utils.getUserContext(PermissionControllerApplication.get(), user)
-    val pm = userContext.packageManager
+    val startMillis = SystemClock.elapsedRealtime()
+    var reads = 0L
+    var updates = 0L
 
     for ((uid, uidState) in uidsUserSensitivity) {
         for (pkg in uidState.packages) {
             for (perm in pkg.requestedPermissions) {
-                var flags = uidState.permStates[perm] ?: continue
+                val flags = uidState.permStates[perm] ?: continue
 
                 try {
+                    reads++
                     val oldFlags =
                         pm.getPermissionFlags(perm, pkg.packageName, user) and
                             FLAGS_ALWAYS_USER_SENSITIVE
                     if (flags != oldFlags) {
+                        updates++
                         pm.updatePermissionFlags(
                             perm,
                             pkg.packageName,
@@ -94,7 +125,13 @@ private fun updateUserSensitiveForUidsInternal(
             }
         }
     }
-    callback?.run()
+
+    synchronized(statsLock) {
+        passes++
+        permissionFlagsReads += reads
+        permissionFlagsUpdates += updates
+        timeMillis += SystemClock.elapsedRealtime() - startMillis
+    }
 }
 
 /**
@@ -108,14 +145,31 @@ fun updateUserSensitiveForUid(uid: Int, callback: Runnable? = null) {
     GlobalScope.launch(IPC) {
         val uidSensitivityState = UserSensitivityLiveData[uid].getInitializedValue()
         if (uidSensitivityState != null) {
+            val user = UserHandle.getUserHandleForUid(uid)
             updateUserSensitiveForUidsInternal(
                 uidSensitivityState,
-                UserHandle.getUserHandleForUid(uid),
-                callback
+                user,
+                Utils.getUserContext(PermissionControllerApplication.get(), user).packageManager
             )
         } else {
             Log.e(LOG_TAG, "No packages associated with uid $uid, not updating flags")
-            callback?.run()
         }
+        callback?.run()
+    }
+}
+
+/**
+ * Dump the number of user sensitive flags reconciliation passes and the work they did
+ *
+ * @return the dump state as a proto
+ */
+fun dumpUserSensitiveFlags(): UserSensitiveFlagsDumpProto {
+    synchronized(statsLock) {
+        return UserSensitiveFlagsDumpProto.newBuilder()
+            .setPasses(passes)
+            .setPermissionFlagsReads(permissionFlagsReads)
+            .setPermissionFlagsUpdates(permissionFlagsUpdates)
+            .setTimeMillis(timeMillis)
+            .build()
     }
 }
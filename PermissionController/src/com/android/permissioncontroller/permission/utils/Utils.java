@@ -101,6 +101,7 @@ import androidx.annotation.StringRes;
 import androidx.core.text.BidiFormatter;
 import androidx.core.util.Preconditions;
 
+import com.android.launcher3.icons.BitmapInfo;
 import com.android.launcher3.icons.IconFactory;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.permissioncontroller.Constants;
@@ -975,11 +976,24 @@ public final class Utils {
      */
     public static @NonNull Drawable getBadgedIcon(@NonNull Context context,
             @NonNull ApplicationInfo appInfo) {
+        Bitmap iconBmp = getBadgedIconBitmapInfo(context, appInfo).icon;
+        return new BitmapDrawable(context.getResources(), iconBmp);
+    }
+
+    /**
+     * Get badged app icon if necessary, as rendered by {@link #getBadgedIcon}.
+     *
+     * @param context The context to use
+     * @param appInfo The app the icon belong to
+     *
+     * @return The rendered icon, along with its color
+     */
+    public static @NonNull BitmapInfo getBadgedIconBitmapInfo(@NonNull Context context,
+            @NonNull ApplicationInfo appInfo) {
         UserHandle user = UserHandle.getUserHandleForUid(appInfo.uid);
         try (IconFactory iconFactory = IconFactory.obtain(context)) {
-            Bitmap iconBmp = iconFactory.createBadgedIconBitmap(
-                    appInfo.loadUnbadgedIcon(context.getPackageManager()), user, false).icon;
-            return new BitmapDrawable(context.getResources(), iconBmp);
+            return iconFactory.createBadgedIconBitmap(
+                    appInfo.loadUnbadgedIcon(context.getPackageManager()), user, false);
         }
     }
 
@@ -118,6 +118,13 @@ class AccessibilitySourceService(val context: Context, val random: Random = Rand
     private val packageManager = parentUserContext.packageManager
     private val sharedPrefs: SharedPreferences =
         parentUserContext.getSharedPreferences(ACCESSIBILITY_PREFERENCES_FILE, Context.MODE_PRIVATE)
+    private val notifiedServicesStore =
+        PrivacySourceStateStore.forSource(parentUserContext, NOTIFIED_SERVICES_STORE_NAME) {
+            // Import the services notified before the store existed
+            sharedPrefs
+                .getStringSet(KEY_ALREADY_NOTIFIED_SERVICES, emptySet())!!
+                .associateWith { "" }
+        }
     private val notificationsManager =
         getSystemServiceSafe(parentUserContext, NotificationManager::class.java)
     private val safetyCenterManager =
@@ -130,58 +137,60 @@ class AccessibilitySourceService(val context: Context, val random: Random = Rand
         cancel: BooleanSupplier?
     ) {
         lock.withLock {
-            try {
-                var sessionId = Constants.INVALID_SESSION_ID
-                while (sessionId == Constants.INVALID_SESSION_ID) {
-                    sessionId = random.nextLong()
-                }
-                if (DEBUG) {
-                    Log.d(LOG_TAG, "safety center accessibility privacy job started.")
-                }
-                interruptJobIfCanceled(cancel)
-                val a11yServiceList = getEnabledAccessibilityServices()
-                if (a11yServiceList.isEmpty()) {
-                    Log.d(LOG_TAG, "accessibility services not enabled, job completed.")
-                    jobService.jobFinished(params, false)
-                    jobService.clearJob()
-                    return
-                }
+            PrivacyChecksStats.runCheck(parentUserContext, LOG_TAG) {
+                try {
+                    var sessionId = Constants.INVALID_SESSION_ID
+                    while (sessionId == Constants.INVALID_SESSION_ID) {
+                        sessionId = random.nextLong()
+                    }
+                    if (DEBUG) {
+                        Log.d(LOG_TAG, "safety center accessibility privacy job started.")
+                    }
+                    interruptJobIfCanceled(cancel)
+                    val a11yServiceList = getEnabledAccessibilityServices()
+                    if (a11yServiceList.isEmpty()) {
+                        Log.d(LOG_TAG, "accessibility services not enabled, job completed.")
+                        jobService.jobFinished(params, false)
+                        jobService.clearJob()
+                        return
+                    }
 
-                val lastShownNotification =
-                    sharedPrefs.getLong(KEY_LAST_ACCESSIBILITY_NOTIFICATION_SHOWN, 0)
-                val showNotification =
-                    ((System.currentTimeMillis() - lastShownNotification) >
-                        getNotificationsIntervalMillis()) && getCurrentNotification() == null
+                    val lastShownNotification =
+                        sharedPrefs.getLong(KEY_LAST_ACCESSIBILITY_NOTIFICATION_SHOWN, 0)
+                    val showNotification =
+                        ((System.currentTimeMillis() - lastShownNotification) >
+                            getNotificationsIntervalMillis()) && getCurrentNotification() == null
 
-                if (showNotification) {
-                    val alreadyNotifiedServices = getNotifiedServices()
+                    if (showNotification) {
+                        val alreadyNotifiedServices = getNotifiedServices()
 
-                    val toBeNotifiedServices =
-                        a11yServiceList.filter { !alreadyNotifiedServices.contains(it.id) }
+                        val toBeNotifiedServices =
+                            a11yServiceList.filter { !alreadyNotifiedServices.contains(it.id) }
 
-                    if (toBeNotifiedServices.isNotEmpty()) {
-                        if (DEBUG) {
-                            Log.d(LOG_TAG, "sending an accessibility service notification")
+                        if (toBeNotifiedServices.isNotEmpty()) {
+                            if (DEBUG) {
+                                Log.d(LOG_TAG, "sending an accessibility service notification")
+                            }
+                            val serviceToBeNotified: AccessibilityServiceInfo =
+                                toBeNotifiedServices[random.nextInt(toBeNotifiedServices.size)]
+                            createPermissionReminderChannel()
+                            interruptJobIfCanceled(cancel)
+                            sendNotification(serviceToBeNotified, sessionId)
                         }
-                        val serviceToBeNotified: AccessibilityServiceInfo =
-                            toBeNotifiedServices[random.nextInt(toBeNotifiedServices.size)]
-                        createPermissionReminderChannel()
-                        interruptJobIfCanceled(cancel)
-                        sendNotification(serviceToBeNotified, sessionId)
                     }
-                }
 
-                interruptJobIfCanceled(cancel)
-                sendIssuesToSafetyCenter(a11yServiceList, sessionId)
-                jobService.jobFinished(params, false)
-            } catch (ex: InterruptedException) {
-                Log.w(LOG_TAG, "cancel request for safety center accessibility job received.")
-                jobService.jobFinished(params, true)
-            } catch (ex: Exception) {
-                Log.w(LOG_TAG, "could not process safety center accessibility job", ex)
-                jobService.jobFinished(params, false)
-            } finally {
-                jobService.clearJob()
+                    interruptJobIfCanceled(cancel)
+                    sendIssuesToSafetyCenter(a11yServiceList, sessionId)
+                    jobService.jobFinished(params, false)
+                } catch (ex: InterruptedException) {
+                    Log.w(LOG_TAG, "cancel request for safety center accessibility job received.")
+                    jobService.jobFinished(params, true)
+                } catch (ex: Exception) {
+                    Log.w(LOG_TAG, "could not process safety center accessibility job", ex)
+                    jobService.jobFinished(params, false)
+                } finally {
+                    jobService.clearJob()
+                }
             }
         }
     }
@@ -518,47 +527,20 @@ class AccessibilitySourceService(val context: Context, val random: Random = Rand
         return notifications.firstOrNull { it.id == Constants.ACCESSIBILITY_CHECK_NOTIFICATION_ID }
     }
 
-    suspend fun removeFromNotifiedServices(a11Service: ComponentName) {
-        sharedPrefsLock.withLock {
-            val notifiedServices = getNotifiedServices()
-            val filteredServices =
-                notifiedServices.filter { it != a11Service.flattenToShortString() }.toSet()
-
-            if (filteredServices.size < notifiedServices.size) {
-                sharedPrefs
-                    .edit()
-                    .putStringSet(KEY_ALREADY_NOTIFIED_SERVICES, filteredServices)
-                    .apply()
-            }
-        }
+    fun removeFromNotifiedServices(a11Service: ComponentName) {
+        notifiedServicesStore.remove(a11Service.flattenToShortString())
     }
 
-    suspend fun markServiceAsNotified(a11Service: ComponentName) {
-        sharedPrefsLock.withLock {
-            val alreadyNotifiedServices = getNotifiedServices()
-            alreadyNotifiedServices.add(a11Service.flattenToShortString())
-            sharedPrefs
-                .edit()
-                .putStringSet(KEY_ALREADY_NOTIFIED_SERVICES, alreadyNotifiedServices)
-                .apply()
-        }
+    fun markServiceAsNotified(a11Service: ComponentName) {
+        notifiedServicesStore.upsert(a11Service.flattenToShortString())
     }
 
-    internal suspend fun updateServiceAsNotified(enabledA11yServices: Set<String>) {
-        sharedPrefsLock.withLock {
-            val alreadyNotifiedServices = getNotifiedServices()
-            val services = alreadyNotifiedServices.filter { enabledA11yServices.contains(it) }
-            if (services.size < alreadyNotifiedServices.size) {
-                sharedPrefs
-                    .edit()
-                    .putStringSet(KEY_ALREADY_NOTIFIED_SERVICES, services.toSet())
-                    .apply()
-            }
-        }
+    internal fun updateServiceAsNotified(enabledA11yServices: Set<String>) {
+        notifiedServicesStore.retainKeys(enabledA11yServices)
     }
 
-    private fun getNotifiedServices(): MutableSet<String> {
-        return sharedPrefs.getStringSet(KEY_ALREADY_NOTIFIED_SERVICES, mutableSetOf<String>())!!
+    private fun getNotifiedServices(): Set<String> {
+        return notifiedServicesStore.getKeys()
     }
 
     @VisibleForTesting
@@ -566,6 +548,11 @@ class AccessibilitySourceService(val context: Context, val random: Random = Rand
         return sharedPrefs
     }
 
+    @VisibleForTesting
+    fun getNotifiedServicesStore(): PrivacySourceStateStore {
+        return notifiedServicesStore
+    }
+
     /** Remove notification when safety center feature is turned off */
     private fun removeAccessibilityNotification() {
         val notification: StatusBarNotification = getCurrentNotification() ?: return
@@ -604,23 +591,10 @@ class AccessibilitySourceService(val context: Context, val random: Random = Rand
             .cancel(notificationTag, Constants.ACCESSIBILITY_CHECK_NOTIFICATION_ID)
     }
 
-    suspend fun removePackageState(pkg: String) {
-        sharedPrefsLock.withLock {
-            removeAccessibilityNotification(pkg)
-            val notifiedServices =
-                getNotifiedServices().mapNotNull { ComponentName.unflattenFromString(it) }
-
-            val filteredServices =
-                notifiedServices
-                    .filterNot { it.packageName == pkg }
-                    .map { it.flattenToShortString() }
-                    .toSet()
-            if (filteredServices.size < notifiedServices.size) {
-                sharedPrefs
-                    .edit()
-                    .putStringSet(KEY_ALREADY_NOTIFIED_SERVICES, filteredServices)
-                    .apply()
-            }
+    fun removePackageState(pkg: String) {
+        removeAccessibilityNotification(pkg)
+        notifiedServicesStore.removeIf { service, _ ->
+            ComponentName.unflattenFromString(service)?.packageName == pkg
         }
     }
 
@@ -631,6 +605,7 @@ class AccessibilitySourceService(val context: Context, val random: Random = Rand
             "last_accessibility_notification_shown"
         const val KEY_ALREADY_NOTIFIED_SERVICES = "already_notified_a11y_services"
         private const val ACCESSIBILITY_PREFERENCES_FILE = "a11y_preferences"
+        private const val NOTIFIED_SERVICES_STORE_NAME = "a11y_notified_services"
         private const val SC_ACCESSIBILITY_SHOW_ACCESSIBILITY_ACTIVITY_ACTION_ID =
             "show_accessibility_apps"
         private const val PROPERTY_SC_ACCESSIBILITY_JOB_INTERVAL_MILLIS =
@@ -198,6 +198,13 @@ class NotificationListenerCheckInternal(
     private val random = Random()
     private val sharedPrefs: SharedPreferences =
         parentUserContext.getSharedPreferences(NLS_PREFERENCE_FILE, MODE_PRIVATE)
+    private val notifiedComponentsStore =
+        PrivacySourceStateStore.forSource(parentUserContext, NOTIFIED_COMPONENTS_STORE_NAME) {
+            // Import the components notified before the store existed
+            sharedPrefs
+                .getStringSet(KEY_ALREADY_NOTIFIED_COMPONENTS, emptySet())!!
+                .associateWith { "" }
+        }
 
     // Don't initialize until used. Delegate used for testing
     @VisibleForTesting
@@ -212,6 +219,7 @@ class NotificationListenerCheckInternal(
     companion object {
         @VisibleForTesting const val NLS_PREFERENCE_FILE = "nls_preference"
         private const val KEY_ALREADY_NOTIFIED_COMPONENTS = "already_notified_services"
+        @VisibleForTesting const val NOTIFIED_COMPONENTS_STORE_NAME = "nls_notified_components"
 
         @VisibleForTesting const val SC_NLS_ISSUE_TYPE_ID = "notification_listener_privacy_issue"
         @VisibleForTesting
@@ -261,7 +269,9 @@ class NotificationListenerCheckInternal(
     ) {
         nlsLock.withLock {
             try {
-                getEnabledNotificationListenersAndNotifyIfNeededLocked()
+                PrivacyChecksStats.runCheck(parentUserContext, TAG) {
+                    getEnabledNotificationListenersAndNotifyIfNeededLocked()
+                }
                 service.jobFinished(params, false)
             } catch (e: Exception) {
                 Log.e(TAG, "Could not check for notification listeners", e)
@@ -343,69 +353,31 @@ class NotificationListenerCheckInternal(
     }
 
     @VisibleForTesting
-    fun getNotifiedComponents(): MutableSet<String> {
-        return sharedPrefs.getStringSet(KEY_ALREADY_NOTIFIED_COMPONENTS, mutableSetOf<String>())!!
+    fun getNotifiedComponents(): Set<String> {
+        return notifiedComponentsStore.getKeys()
     }
 
-    suspend fun removeDisabledComponentsFromNotifiedComponents(
+    fun removeDisabledComponentsFromNotifiedComponents(
         enabledComponents: Collection<ComponentName>
     ) {
-        sharedPrefsLock.withLock {
-            val enabledComponentsStringSet =
-                enabledComponents.map { it.flattenToShortString() }.toSet()
-            val notifiedComponents = getNotifiedComponents()
-            // Filter to only components that have enabled listeners
-            val enabledNotifiedComponents =
-                notifiedComponents.filter { enabledComponentsStringSet.contains(it) }.toSet()
-            sharedPrefs
-                .edit()
-                .putStringSet(KEY_ALREADY_NOTIFIED_COMPONENTS, enabledNotifiedComponents)
-                .apply()
-        }
+        // Filter to only components that have enabled listeners
+        notifiedComponentsStore.retainKeys(
+            enabledComponents.map { it.flattenToShortString() }.toSet()
+        )
     }
 
-    suspend fun markComponentAsNotified(component: ComponentName) {
-        sharedPrefsLock.withLock {
-            val notifiedComponents = getNotifiedComponents()
-            notifiedComponents.add(component.flattenToShortString())
-            sharedPrefs
-                .edit()
-                .putStringSet(KEY_ALREADY_NOTIFIED_COMPONENTS, notifiedComponents)
-                .apply()
-        }
+    fun markComponentAsNotified(component: ComponentName) {
+        notifiedComponentsStore.upsert(component.flattenToShortString())
     }
 
-    suspend fun removeFromNotifiedComponents(packageName: String) {
-        sharedPrefsLock.withLock {
-            val notifiedComponents = getNotifiedComponents()
-            val filteredServices =
-                notifiedComponents
-                    .filter {
-                        val notifiedComponentName = ComponentName.unflattenFromString(it)
-                        return@filter notifiedComponentName?.packageName != packageName
-                    }
-                    .toSet()
-            if (filteredServices.size < notifiedComponents.size) {
-                sharedPrefs
-                    .edit()
-                    .putStringSet(KEY_ALREADY_NOTIFIED_COMPONENTS, filteredServices)
-                    .apply()
-            }
+    fun removeFromNotifiedComponents(packageName: String) {
+        notifiedComponentsStore.removeIf { component, _ ->
+            ComponentName.unflattenFromString(component)?.packageName == packageName
         }
     }
 
-    suspend fun removeFromNotifiedComponents(component: ComponentName) {
-        val componentNameShortString = component.flattenToShortString()
-        sharedPrefsLock.withLock {
-            val notifiedComponents = getNotifiedComponents()
-            val componentRemoved = notifiedComponents.remove(componentNameShortString)
-            if (componentRemoved) {
-                sharedPrefs
-                    .edit()
-                    .putStringSet(KEY_ALREADY_NOTIFIED_COMPONENTS, notifiedComponents)
-                    .apply()
-            }
-        }
+    fun removeFromNotifiedComponents(component: ComponentName) {
+        notifiedComponentsStore.remove(component.flattenToShortString())
     }
 
     private fun getLastNotificationShownTimeMillis(): Long {
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.privacysources
+
+import android.content.Context
+import android.os.Process
+import android.util.Log
+import androidx.annotation.GuardedBy
+import com.android.permissioncontroller.permission.utils.IPC
+import com.android.permissioncontroller.privacysources.PrivacyChecksProto.PrivacyChecksDayProto
+import com.android.permissioncontroller.privacysources.PrivacyChecksProto.PrivacyChecksDumpProto
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+
+/**
+ * Records the runs of the periodic privacy checks (notification listeners, accessibility services,
+ * background location, ...).
+ *
+ * The number of check runs and the CPU time used by the process while checks are running are
+ * recorded per day and reported in the dump.
+ *
+ * Checks are coroutines that may move between threads, so the CPU time is measured for the whole
+ * process rather than per check. Stats are kept in memory and persisted in batches, so that
+ * starting and finishing a check never waits for disk I/O.
+ */
+object PrivacyChecksStats {
+    private val LOG_TAG = PrivacyChecksStats::class.java.simpleName
+
+    private val DAY_MILLIS = TimeUnit.DAYS.toMillis(1)
+    private val WRITE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30)
+    private const val DAYS_TO_KEEP = 7
+    private const val STATS_STORE_NAME = "privacy_checks_stats"
+
+    private val lock = Any()
+    /** Serializes the writes of the stats. */
+    private val writeLock = Any()
+
+    @GuardedBy("lock") private var runningChecks = 0
+    @GuardedBy("lock") private var processCpuMarkMillis = 0L
+    /** Map<day, stats recorded on that day but not persisted yet> */
+    @GuardedBy("lock") private val pendingStats = mutableMapOf<Long, Stats>()
+    @GuardedBy("lock") private var isWriteScheduled = false
+
+    /**
+     * Marks the start of a check. Every call must be followed by a call to [finishCheck].
+     *
+     * @param context The context of the parent user
+     * @param checkName The name of the check, for logging
+     */
+    @JvmStatic
+    fun startCheck(context: Context, checkName: String) {
+        synchronized(lock) {
+            if (runningChecks++ == 0) {
+                processCpuMarkMillis = Process.getElapsedCpuTime()
+            }
+            recordStatsLocked(context, Stats(0, 1))
+
+            Log.v(LOG_TAG, "Starting $checkName")
+        }
+    }
+
+    /**
+     * Marks the end of a check started with [startCheck].
+     *
+     * @param context The context of the parent user
+     * @param checkName The name of the check, for logging
+     */
+    @JvmStatic
+    fun finishCheck(context: Context, checkName: String) {
+        synchronized(lock) {
+            if (runningChecks == 0) {
+                Log.w(LOG_TAG, "$checkName finished without being started")
+                return
+            }
+            if (--runningChecks == 0) {
+                val processCpuMillis = Process.getElapsedCpuTime() - processCpuMarkMillis
+                recordStatsLocked(context, Stats(processCpuMillis, 0))
+            }
+            Log.v(LOG_TAG, "Finished $checkName")
+        }
+    }
+
+    /** Runs a check between [startCheck] and [finishCheck]. */
+    inline fun <R> runCheck(context: Context, checkName: String, block: () -> R): R {
+        startCheck(context, checkName)
+        try {
+            return block()
+        } finally {
+            finishCheck(context, checkName)
+        }
+    }
+
+    /**
+     * Dump the per-day stats of the privacy checks
+     *
+     * @param context The context of the parent user
+     * @return the dump state as a proto
+     */
+    fun dump(context: Context): PrivacyChecksDumpProto {
+        writeStats(context)
+        val stats = getStatsStore(context).getAll()
+        return PrivacyChecksDumpProto.newBuilder()
+            .addAllDays(
+                stats.keys
+                    .mapNotNull { it.toLongOrNull() }
+                    .sorted()
+                    .map { day ->
+                        val dayStats = Stats.parse(stats[day.toString()])
+                        PrivacyChecksDayProto.newBuilder()
+                            .setDayStartMillis(day * DAY_MILLIS)
+                            .setProcessCpuTimeMillis(dayStats.processCpuMillis)
+                            .setCheckRuns(dayStats.checkRuns.toInt())
+                            .build()
+                    }
+            )
+            .build()
+    }
+
+    private fun getStatsStore(context: Context) =
+        PrivacySourceStateStore.forSource(context, STATS_STORE_NAME)
+
+    @GuardedBy("lock")
+    private fun recordStatsLocked(context: Context, stats: Stats) {
+        val today = System.currentTimeMillis() / DAY_MILLIS
+        pendingStats[today] = (pendingStats[today] ?: Stats(0, 0)) + stats
+        if (isWriteScheduled) {
+            return
+        }
+        isWriteScheduled = true
+
+        GlobalScope.launch(IPC) {
+            // Batch the stats of all checks running around the same time.
+            delay(WRITE_DELAY_MILLIS)
+            synchronized(lock) { isWriteScheduled = false }
+            writeStats(context)
+        }
+    }
+
+    /** Persists the stats recorded since the last call. */
+    private fun writeStats(context: Context) {
+        synchronized(writeLock) {
+            val stats = synchronized(lock) { pendingStats.toMap().also { pendingStats.clear() } }
+            if (stats.isEmpty()) {
+                return
+            }
+            val today = System.currentTimeMillis() / DAY_MILLIS
+            getStatsStore(context).batch {
+                for ((day, dayStats) in stats) {
+                    val key = day.toString()
+                    upsert(key, (Stats.parse(get(key)) + dayStats).encode())
+                }
+                removeIf { day, _ -> (day.toLongOrNull() ?: 0) <= today - DAYS_TO_KEEP }
+            }
+        }
+    }
+
+    /** The stats of the privacy checks of a day. */
+    private data class Stats(val processCpuMillis: Long, val checkRuns: Long) {
+        operator fun plus(other: Stats) =
+            Stats(processCpuMillis + other.processCpuMillis, checkRuns + other.checkRuns)
+
+        fun encode() = "$processCpuMillis $checkRuns"
+
+        companion object {
+            /** @return the stats stored in a stats entry */
+            fun parse(value: String?): Stats {
+                val parts = value?.split(' ')?.mapNotNull { it.toLongOrNull() }
+                return if (parts?.size == 2) Stats(parts[0], parts[1]) else Stats(0, 0)
+            }
+        }
+    }
+}
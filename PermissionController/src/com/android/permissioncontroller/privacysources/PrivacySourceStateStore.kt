@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.privacysources
+
+import android.content.Context
+import android.util.ArrayMap
+import androidx.annotation.GuardedBy
+import androidx.annotation.VisibleForTesting
+import java.io.File
+
+/**
+ * Keyed state a privacy source persists, e.g. the components it already notified the user about.
+ *
+ * The state is loaded once into an in-memory mirror and written back through a
+ * [PrivacySourceStorageRepository] only when it changed. All changes made inside one [batch] are
+ * committed with a single durable write.
+ *
+ * @param repository The durable storage of the entries
+ * @param legacyImporter Provides the entries stored in a previous format, called once if the
+ *   [repository] never had any data persisted
+ */
+class PrivacySourceStateStore(
+    private val repository: PrivacySourceStorageRepository,
+    private val legacyImporter: (() -> Map<String, String>)? = null
+) {
+    private val lock = Any()
+
+    @GuardedBy("lock") private var entries: ArrayMap<String, String>? = null
+    @GuardedBy("lock") private var batchDepth = 0
+    @GuardedBy("lock") private var dirty = false
+
+    /** @return the value stored for a key, or `null` if there is none */
+    fun get(key: String): String? = synchronized(lock) { getEntriesLocked()[key] }
+
+    /** @return a copy of all stored entries */
+    fun getAll(): Map<String, String> = synchronized(lock) { ArrayMap(getEntriesLocked()) }
+
+    /** @return a copy of all stored keys */
+    fun getKeys(): Set<String> = synchronized(lock) { getEntriesLocked().keys.toSet() }
+
+    /** Adds an entry, or updates the value if the key is already stored. */
+    fun upsert(key: String, value: String = "") {
+        synchronized(lock) {
+            if (getEntriesLocked().put(key, value) != value) {
+                onChangedLocked()
+            }
+        }
+    }
+
+    /** Removes the entry stored for a key, if any. */
+    fun remove(key: String) {
+        synchronized(lock) {
+            if (getEntriesLocked().remove(key) != null) {
+                onChangedLocked()
+            }
+        }
+    }
+
+    /** Removes all entries matching the predicate. */
+    fun removeIf(predicate: (key: String, value: String) -> Boolean) {
+        synchronized(lock) {
+            val entries = getEntriesLocked()
+            var removed = false
+            for (i in entries.size - 1 downTo 0) {
+                if (predicate(entries.keyAt(i), entries.valueAt(i))) {
+                    entries.removeAt(i)
+                    removed = true
+                }
+            }
+            if (removed) {
+                onChangedLocked()
+            }
+        }
+    }
+
+    /** Removes all entries whose key is not in [keys]. */
+    fun retainKeys(keys: Set<String>) = removeIf { key, _ -> key !in keys }
+
+    /** Removes all entries. */
+    @VisibleForTesting fun clear() = removeIf { _, _ -> true }
+
+    /**
+     * Runs [block] and commits all changes it made to the store with a single write. Other callers
+     * cannot observe or change the store while the batch runs.
+     */
+    fun <R> batch(block: PrivacySourceStateStore.() -> R): R {
+        synchronized(lock) {
+            batchDepth++
+            try {
+                return block()
+            } finally {
+                batchDepth--
+                if (batchDepth == 0 && dirty) {
+                    commitLocked()
+                }
+            }
+        }
+    }
+
+    @GuardedBy("lock")
+    private fun getEntriesLocked(): ArrayMap<String, String> {
+        entries?.let {
+            return it
+        }
+
+        val loaded = ArrayMap<String, String>()
+        if (repository.hasData()) {
+            repository.readData(StateEntry).forEach { loaded[it.key] = it.value }
+            entries = loaded
+        } else {
+            legacyImporter?.invoke()?.let { loaded.putAll(it) }
+            entries = loaded
+            // Persist even if nothing was imported so the legacy state is never imported again
+            commitLocked()
+        }
+        return loaded
+    }
+
+    @GuardedBy("lock")
+    private fun onChangedLocked() {
+        if (batchDepth > 0) {
+            dirty = true
+        } else {
+            commitLocked()
+        }
+    }
+
+    @GuardedBy("lock")
+    private fun commitLocked() {
+        val entries = entries ?: return
+        repository.persistData(
+            List(entries.size) { StateEntry(entries.keyAt(it), entries.valueAt(it)) }
+        )
+        dirty = false
+    }
+
+    /** A single entry, stored as one line of `<key>\t<value>`. */
+    private class StateEntry(val key: String, val value: String) : PrivacySourceData {
+        override fun toStorageData(): String = "$key$SEPARATOR$value"
+
+        companion object : PrivacySourceData.Creator<StateEntry> {
+            override fun fromStorageData(data: String): StateEntry {
+                val separatorIndex = data.indexOf(SEPARATOR)
+                require(separatorIndex > 0) { "Missing key" }
+                return StateEntry(
+                    data.substring(0, separatorIndex),
+                    data.substring(separatorIndex + 1)
+                )
+            }
+        }
+    }
+
+    companion object {
+        private const val SEPARATOR = '\t'
+        private const val FILE_NAME_PREFIX = "privacy_source_state_"
+
+        private val stores = ArrayMap<String, PrivacySourceStateStore>()
+
+        /**
+         * Gets the process-wide store of a privacy source.
+         *
+         * @param context A context of the parent user
+         * @param sourceName The name of the source, used as file name suffix
+         * @param legacyImporter Provides the entries stored in a previous format, called once if
+         *   the store was never persisted
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun forSource(
+            context: Context,
+            sourceName: String,
+            legacyImporter: (() -> Map<String, String>)? = null
+        ): PrivacySourceStateStore {
+            synchronized(stores) {
+                return stores.getOrPut(sourceName) {
+                    val file = File(context.filesDir, FILE_NAME_PREFIX + sourceName)
+                    PrivacySourceStateStore(TextStorageRepository(file), legacyImporter)
+                }
+            }
+        }
+    }
+}
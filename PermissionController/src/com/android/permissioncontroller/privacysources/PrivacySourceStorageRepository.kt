@@ -21,4 +21,7 @@ interface PrivacySourceStorageRepository {
     fun persistData(dataList: List<PrivacySourceData>)
 
     fun <T> readData(creator: PrivacySourceData.Creator<T>): List<T>
+
+    /** Whether any data was ever persisted to this repository, even an empty list. */
+    fun hasData(): Boolean
 }
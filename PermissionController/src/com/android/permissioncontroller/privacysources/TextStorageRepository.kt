@@ -16,30 +16,29 @@
 
 package com.android.permissioncontroller.privacysources
 
+import android.util.AtomicFile
 import android.util.Log
-import java.io.BufferedReader
-import java.io.BufferedWriter
 import java.io.File
 import java.io.FileNotFoundException
-import java.io.FileReader
-import java.io.FileWriter
 import java.io.IOException
 
 class TextStorageRepository(private val file: File) : PrivacySourceStorageRepository {
 
     val LOG_TAG = TextStorageRepository::class.java.simpleName
 
+    private val atomicFile = AtomicFile(file)
+
     override fun persistData(dataList: List<PrivacySourceData>) {
         try {
             writeLines(dataList.map { it.toStorageData() })
         } catch (ex: IOException) {
-            Log.e(LOG_TAG, "Could not read ${file.absolutePath}", ex)
+            Log.e(LOG_TAG, "Could not write ${file.absolutePath}", ex)
         }
     }
 
     override fun <T> readData(creator: PrivacySourceData.Creator<T>): List<T> {
         try {
-            BufferedReader(FileReader(file)).useLines { lines ->
+            atomicFile.openRead().bufferedReader().useLines { lines ->
                 return lines
                     .mapNotNull {
                         try {
@@ -60,12 +59,21 @@ class TextStorageRepository(private val file: File) : PrivacySourceStorageReposi
         }
     }
 
+    override fun hasData(): Boolean = atomicFile.exists()
+
     private fun writeLines(lines: List<String>) {
-        BufferedWriter(FileWriter(file)).use { writer ->
+        val stream = atomicFile.startWrite()
+        try {
+            val writer = stream.bufferedWriter()
             lines.forEach {
                 writer.write(it)
                 writer.newLine()
             }
+            writer.flush()
+            atomicFile.finishWrite(stream)
+        } catch (ex: IOException) {
+            atomicFile.failWrite(stream)
+            throw ex
         }
     }
 }
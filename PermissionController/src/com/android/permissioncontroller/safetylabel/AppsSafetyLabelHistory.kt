@@ -134,11 +134,7 @@ data class AppsSafetyLabelHistory(val appSafetyLabelHistories: List<AppSafetyLab
             fun fromAppMetadataDataCategory(
                 appMetadataDataCategory: AppMetadataDataCategory
             ): DataCategory =
-                DataCategory(
-                    appMetadataDataCategory.dataTypes.values.any {
-                        it.purposeSet.contains(PURPOSE_ADVERTISING)
-                    }
-                )
+                DataCategory(appMetadataDataCategory.hasPurpose(PURPOSE_ADVERTISING))
         }
     }
 
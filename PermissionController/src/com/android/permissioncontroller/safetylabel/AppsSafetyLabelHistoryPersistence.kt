@@ -39,7 +39,17 @@ import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
 import org.xmlpull.v1.XmlSerializer
 
-/** Persists safety label history to disk and allows reading from and writing to this storage */
+/**
+ * Persists safety label history to disk and allows reading from and writing to this storage.
+ *
+ * The history of each app is stored in its own file, inside a directory next to the file returned
+ * by [getSafetyLabelHistoryFile]. A small index file in the same directory records, for each app,
+ * its latest safety label and the receipt times of its oldest and latest safety labels. The index
+ * is mirrored in memory, so that recording or querying the safety label of an app only reads and
+ * writes the data of that app, and older safety labels are only loaded when they are needed.
+ *
+ * History persisted in the legacy single-file format is migrated automatically on first access.
+ */
 @RequiresApi(Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
 object AppsSafetyLabelHistoryPersistence {
     private const val TAG_DATA_SHARED_MAP = "shared"
@@ -49,22 +59,36 @@ object AppsSafetyLabelHistoryPersistence {
     private const val TAG_SAFETY_LABEL = "sfty-lbl"
     private const val TAG_APP_SAFETY_LABEL_HISTORY = "app-hstry"
     private const val TAG_APPS_SAFETY_LABEL_HISTORY = "apps-hstry"
+    private const val TAG_APPS_INDEX = "apps-idx"
+    private const val TAG_APP_INDEX_ENTRY = "app-idx"
     private const val ATTRIBUTE_VERSION = "vrs"
     private const val ATTRIBUTE_PACKAGE_NAME = "pkg-name"
     private const val ATTRIBUTE_RECEIVED_AT = "rcvd"
     private const val ATTRIBUTE_CATEGORY = "cat"
     private const val ATTRIBUTE_CONTAINS_ADS = "ads"
+    private const val ATTRIBUTE_COUNT = "cnt"
+    private const val ATTRIBUTE_OLDEST_RECEIVED_AT = "oldest"
     private const val CURRENT_VERSION = 0
     private const val INITIAL_VERSION = 0
 
     /** The name of the file used to persist Safety Label history. */
     private const val APPS_SAFETY_LABEL_HISTORY_PERSISTENCE_FILE_NAME =
         "apps_safety_label_history_persistence.xml"
+    /** The suffix of the directory holding the per-app files for a Safety Label history file. */
+    private const val APPS_DIRECTORY_SUFFIX = ".d"
+    /** The name of the index file, inside the per-app directory. */
+    private const val INDEX_FILE_NAME = "index.xml"
+    /** The prefix of the per-app files, inside the per-app directory. */
+    private const val APP_FILE_PREFIX = "app_"
+    private const val APP_FILE_SUFFIX = ".xml"
     private val LOG_TAG = "AppsSafetyLabelHistoryPersistence".take(23)
     private val readWriteLock = Any()
 
     private var listeners = mutableSetOf<ChangeListener>()
 
+    /** In-memory mirror of the index of each history file, guarded by [readWriteLock]. */
+    private val indexes = mutableMapOf<File, HistoryIndex>()
+
     /** Adds a listener to listen for changes to persisted safety labels. */
     fun addListener(listener: ChangeListener) {
         synchronized(readWriteLock) { listeners.add(listener) }
@@ -76,44 +100,38 @@ object AppsSafetyLabelHistoryPersistence {
     }
 
     /**
-     * Reads the provided file storing safety label history and returns the parsed
+     * Reads the safety label history stored for the provided file and returns the parsed
      * [AppsSafetyLabelHistoryFileContent].
+     *
+     * This loads the full history of every app, and should only be used when the full history is
+     * required.
      */
     fun read(file: File): AppsSafetyLabelHistoryFileContent {
-        val parser = Xml.newPullParser()
-        try {
-            AtomicFile(file).openRead().let { inputStream ->
-                parser.setInput(inputStream, StandardCharsets.UTF_8.name())
-                return parser.parseHistoryFile()
-            }
-        } catch (e: FileNotFoundException) {
-            Log.e(LOG_TAG, "File not found: $file")
-        } catch (e: IOException) {
-            Log.e(
-                LOG_TAG,
-                "Failed to read file: $file, encountered exception ${e.localizedMessage}"
-            )
-        } catch (e: XmlPullParserException) {
-            Log.e(
-                LOG_TAG,
-                "Failed to parse file: $file, encountered exception ${e.localizedMessage}"
+        synchronized(readWriteLock) {
+            val index =
+                getIndexLocked(file)
+                    ?: return AppsSafetyLabelHistoryFileContent(
+                        appsSafetyLabelHistory = null,
+                        INITIAL_VERSION
+                    )
+            val appHistories = index.entries.values.map { readAppHistoryLocked(file, it.appInfo) }
+            return AppsSafetyLabelHistoryFileContent(
+                AppsSafetyLabelHistory(appHistories),
+                index.version
             )
         }
-
-        return AppsSafetyLabelHistoryFileContent(appsSafetyLabelHistory = null, INITIAL_VERSION)
     }
 
     /** Returns the last updated time for each stored [AppSafetyLabelHistory]. */
     fun getSafetyLabelsLastUpdatedTimes(file: File): Map<AppInfo, Instant> {
         synchronized(readWriteLock) {
-            val appHistories =
-                read(file).appsSafetyLabelHistory?.appSafetyLabelHistories ?: return emptyMap()
+            val index = getIndexLocked(file) ?: return emptyMap()
 
             val lastUpdatedTimes = mutableMapOf<AppInfo, Instant>()
-            for (appHistory in appHistories) {
-                val lastSafetyLabelReceiptTime: Instant? = appHistory.getLastReceiptTime()
+            for (entry in index.entries.values) {
+                val lastSafetyLabelReceiptTime: Instant? = entry.latestSafetyLabel?.receivedAt
                 if (lastSafetyLabelReceiptTime != null) {
-                    lastUpdatedTimes[appHistory.appInfo] = lastSafetyLabelReceiptTime
+                    lastUpdatedTimes[entry.appInfo] = lastSafetyLabelReceiptTime
                 }
             }
 
@@ -126,75 +144,53 @@ object AppsSafetyLabelHistoryPersistence {
      * the last recorded.
      */
     fun recordSafetyLabel(safetyLabel: SafetyLabel, file: File) {
-        synchronized(readWriteLock) {
-            val currentAppsSafetyLabelHistory =
-                read(file).appsSafetyLabelHistory ?: AppsSafetyLabelHistory(listOf())
-            val appInfo = safetyLabel.appInfo
-            val currentHistories = currentAppsSafetyLabelHistory.appSafetyLabelHistories
-
-            val updatedAppsSafetyLabelHistory: AppsSafetyLabelHistory =
-                if (currentHistories.all { it.appInfo != appInfo }) {
-                    AppsSafetyLabelHistory(
-                        currentHistories.toMutableList().apply {
-                            add(AppSafetyLabelHistory(appInfo, listOf(safetyLabel)))
-                        }
-                    )
-                } else {
-                    AppsSafetyLabelHistory(
-                        currentHistories.map {
-                            if (it.appInfo != appInfo) it
-                            else it.addSafetyLabelIfChanged(safetyLabel)
-                        }
-                    )
-                }
-
-            write(file, updatedAppsSafetyLabelHistory)
-        }
+        recordSafetyLabels(setOf(safetyLabel), file)
     }
 
     /**
      * Writes new safety labels to the provided file, if the provided safety labels have changed
      * from the last recorded (when considered in order of [SafetyLabel.receivedAt]).
+     *
+     * Only the apps whose safety label has changed are read from and written to disk.
      */
     fun recordSafetyLabels(safetyLabelsToAdd: Set<SafetyLabel>, file: File) {
         if (safetyLabelsToAdd.isEmpty()) return
 
         synchronized(readWriteLock) {
-            val currentAppsSafetyLabelHistory =
-                read(file).appsSafetyLabelHistory ?: AppsSafetyLabelHistory(listOf())
+            val index = getIndexLocked(file) ?: createIndexLocked(file)
             val appInfoToOrderedSafetyLabels =
                 safetyLabelsToAdd
                     .groupBy { it.appInfo }
                     .mapValues { (_, safetyLabels) -> safetyLabels.sortedBy { it.receivedAt } }
-            val currentAppHistories = currentAppsSafetyLabelHistory.appSafetyLabelHistories
-            val newApps =
-                appInfoToOrderedSafetyLabels.keys - currentAppHistories.map { it.appInfo }.toSet()
-
-            // For apps that already have some safety labels persisted, add the provided safety
-            // labels to the history.
-            var updatedAppHistories: List<AppSafetyLabelHistory> =
-                currentAppHistories.map { currentAppHistory: AppSafetyLabelHistory ->
-                    val safetyLabels = appInfoToOrderedSafetyLabels[currentAppHistory.appInfo]
-                    if (safetyLabels != null) {
-                        currentAppHistory.addSafetyLabelsIfChanged(safetyLabels)
-                    } else {
-                        currentAppHistory
+
+            var changed = false
+            for ((appInfo, safetyLabels) in appInfoToOrderedSafetyLabels) {
+                val entry = index.entries[appInfo.packageName]
+                // Fast path: the latest safety label is mirrored in the index, so labels that
+                // match it can be dropped without loading the history of the app.
+                val safetyLabelsToRecord =
+                    safetyLabels.dropWhile {
+                        it.dataLabel == entry?.latestSafetyLabel?.dataLabel
                     }
+                if (safetyLabelsToRecord.isEmpty()) {
+                    continue
                 }
 
-            // For apps that don't already have some safety labels persisted, add new
-            // AppSafetyLabelHistory instances for them with the provided safety labels.
-            updatedAppHistories =
-                updatedAppHistories.toMutableList().apply {
-                    newApps.forEach { newAppInfo ->
-                        val safetyLabelsForNewApp = appInfoToOrderedSafetyLabels[newAppInfo]
-                        if (safetyLabelsForNewApp != null) {
-                            add(AppSafetyLabelHistory(newAppInfo, safetyLabelsForNewApp))
-                        }
-                    }
+                val currentAppHistory =
+                    if (entry == null) AppSafetyLabelHistory(appInfo, listOf())
+                    else readAppHistoryLocked(file, appInfo)
+                val updatedAppHistory =
+                    currentAppHistory.addSafetyLabelsIfChanged(safetyLabelsToRecord)
+                if (updatedAppHistory != currentAppHistory) {
+                    writeAppHistoryLocked(file, index, updatedAppHistory)
+                    changed = true
                 }
+            }
 
-            write(file, AppsSafetyLabelHistory(updatedAppHistories))
+            if (changed) {
+                writeIndexLocked(file, index)
+                notifyListenersLocked()
+            }
         }
     }
 
@@ -203,14 +199,19 @@ object AppsSafetyLabelHistoryPersistence {
         if (appInfosToRemove.isEmpty()) return
 
         synchronized(readWriteLock) {
-            val currentAppsSafetyLabelHistory =
-                read(file).appsSafetyLabelHistory ?: AppsSafetyLabelHistory(listOf())
-            val historiesWithAppsRemoved =
-                currentAppsSafetyLabelHistory.appSafetyLabelHistories.filter {
-                    it.appInfo !in appInfosToRemove
+            val index = getIndexLocked(file) ?: return
+            var changed = false
+            for (appInfo in appInfosToRemove) {
+                if (index.entries.remove(appInfo.packageName) != null) {
+                    AtomicFile(getAppFile(file, appInfo)).delete()
+                    changed = true
                 }
+            }
 
-            write(file, AppsSafetyLabelHistory(historiesWithAppsRemoved))
+            if (changed) {
+                writeIndexLocked(file, index)
+                notifyListenersLocked()
+            }
         }
     }
 
@@ -220,30 +221,42 @@ object AppsSafetyLabelHistoryPersistence {
      */
     fun deleteSafetyLabelsOlderThan(startTime: Instant, file: File) {
         synchronized(readWriteLock) {
-            val currentAppsSafetyLabelHistory =
-                read(file).appsSafetyLabelHistory ?: AppsSafetyLabelHistory(listOf())
-            val updatedAppHistories =
-                currentAppsSafetyLabelHistory.appSafetyLabelHistories.map { appHistory ->
-                    val history = appHistory.safetyLabelHistory
-                    // Retrieve the last safety label that was received prior to startTime.
-                    val last =
-                        history.indexOfLast { safetyLabels -> safetyLabels.receivedAt <= startTime }
-                    if (last <= 0) {
-                        // If there is only one or no safety labels received prior to startTime,
-                        // then return the history as is.
-                        appHistory
-                    } else {
-                        // Else, discard all safety labels other than the last safety label prior
-                        // to startTime. The aim is retain one safety label prior to start time to
-                        // be used as the "before" safety label when determining updates.
+            val index = getIndexLocked(file) ?: return
+            var changed = false
+            for (entry in index.entries.values.toList()) {
+                // Apps with a single safety label, or whose oldest safety label was received after
+                // startTime, cannot have anything to delete.
+                val oldestReceivedAt = entry.oldestReceivedAt
+                if (entry.count <= 1 || oldestReceivedAt == null || oldestReceivedAt > startTime) {
+                    continue
+                }
+
+                val appHistory = readAppHistoryLocked(file, entry.appInfo)
+                val history = appHistory.safetyLabelHistory
+                // Retrieve the last safety label that was received prior to startTime.
+                val last =
+                    history.indexOfLast { safetyLabels -> safetyLabels.receivedAt <= startTime }
+                // If there is only one or no safety labels received prior to startTime, then keep
+                // the history as is. Else, discard all safety labels other than the last safety
+                // label prior to startTime. The aim is retain one safety label prior to start time
+                // to be used as the "before" safety label when determining updates.
+                if (last > 0) {
+                    writeAppHistoryLocked(
+                        file,
+                        index,
                         AppSafetyLabelHistory(
                             appHistory.appInfo,
                             history.subList(last, history.size)
                         )
-                    }
+                    )
+                    changed = true
                 }
+            }
 
-            write(file, AppsSafetyLabelHistory(updatedAppHistories))
+            if (changed) {
+                writeIndexLocked(file, index)
+                notifyListenersLocked()
+            }
         }
     }
 
@@ -256,9 +269,272 @@ object AppsSafetyLabelHistoryPersistence {
     }
 
     /**
-     * Serializes and writes the provided [AppsSafetyLabelHistoryFileContent] to the provided file.
+     * Serializes and writes the provided [AppsSafetyLabelHistoryFileContent] to the provided file,
+     * replacing any history previously stored.
      */
     fun write(file: File, fileContent: AppsSafetyLabelHistoryFileContent) {
+        synchronized(readWriteLock) {
+            writeAllLocked(file, fileContent)
+            notifyListenersLocked()
+        }
+    }
+
+    /** Reads the provided history file and returns all safety label changes since [startTime]. */
+    fun getAppSafetyLabelDiffs(startTime: Instant, file: File): List<AppSafetyLabelDiff> {
+        synchronized(readWriteLock) {
+            val index = getIndexLocked(file) ?: return emptyList()
+
+            return index.entries.values.mapNotNull { entry ->
+                val latestSafetyLabel = entry.latestSafetyLabel
+                // Fast path: if the latest safety label was received before startTime, it is also
+                // the safety label at startTime, so there is no diff and no need to load the
+                // history of the app.
+                if (latestSafetyLabel == null || latestSafetyLabel.receivedAt <= startTime) {
+                    return@mapNotNull null
+                }
+
+                val appHistory = readAppHistoryLocked(file, entry.appInfo)
+                val before = appHistory.getSafetyLabelAt(startTime)
+                val after = appHistory.getLatestSafetyLabel()
+                if (
+                    before == null ||
+                        after == null ||
+                        before == after ||
+                        before.receivedAt.isAfter(after.receivedAt)
+                )
+                    null
+                else AppSafetyLabelDiff(before, after)
+            }
+        }
+    }
+
+    /** Clears the file. */
+    fun clear(file: File) {
+        synchronized(readWriteLock) {
+            AtomicFile(file).delete()
+            deleteAppsDirectoryLocked(file)
+            indexes.remove(file)
+        }
+    }
+
+    /** Returns the file persisting safety label history for installed apps. */
+    fun getSafetyLabelHistoryFile(context: Context): File =
+        File(context.filesDir, APPS_SAFETY_LABEL_HISTORY_PERSISTENCE_FILE_NAME)
+
+    private fun getAppsDirectory(file: File): File =
+        File(file.parentFile, file.name + APPS_DIRECTORY_SUFFIX)
+
+    private fun getIndexFile(file: File): File = File(getAppsDirectory(file), INDEX_FILE_NAME)
+
+    private fun getAppFile(file: File, appInfo: AppInfo): File =
+        File(getAppsDirectory(file), APP_FILE_PREFIX + appInfo.packageName + APP_FILE_SUFFIX)
+
+    /**
+     * Returns the [HistoryIndex] of the provided file, or `null` if there is no history stored.
+     *
+     * The in-memory index is reused as long as the index file hasn't been modified on disk, and
+     * legacy history is migrated before the index is read for the first time.
+     */
+    private fun getIndexLocked(file: File): HistoryIndex? {
+        migrateLegacyFileLocked(file)
+
+        val indexFile = AtomicFile(getIndexFile(file))
+        if (!indexFile.exists()) {
+            indexes.remove(file)
+            return null
+        }
+        val lastModifiedTime = indexFile.lastModifiedTime
+        val cachedIndex = indexes[file]
+        if (cachedIndex != null && cachedIndex.lastModifiedTime == lastModifiedTime) {
+            return cachedIndex
+        }
+
+        val index = readIndex(indexFile) ?: rebuildIndexLocked(file)
+        index.lastModifiedTime = lastModifiedTime
+        indexes[file] = index
+        return index
+    }
+
+    private fun createIndexLocked(file: File): HistoryIndex {
+        val index = HistoryIndex(CURRENT_VERSION)
+        indexes[file] = index
+        return index
+    }
+
+    /**
+     * Migrates history persisted in the legacy single-file format, if any, to the per-app format.
+     *
+     * The legacy file is only deleted once all the per-app files and the index are written, so
+     * that a failed migration is retried on the next access instead of losing the history.
+     */
+    private fun migrateLegacyFileLocked(file: File) {
+        val legacyFile = AtomicFile(file)
+        if (!legacyFile.exists()) {
+            return
+        }
+
+        Log.i(LOG_TAG, "Migrating $file to per-app storage")
+        if (!writeAllLocked(file, readHistoryFile(file))) {
+            Log.e(LOG_TAG, "Failed to migrate $file to per-app storage, will retry")
+            deleteAppsDirectoryLocked(file)
+            indexes.remove(file)
+            return
+        }
+        legacyFile.delete()
+    }
+
+    /**
+     * Rebuilds the index of the provided file from the per-app files, used when the index file is
+     * corrupted.
+     */
+    private fun rebuildIndexLocked(file: File): HistoryIndex {
+        Log.w(LOG_TAG, "Rebuilding index of $file")
+        val index = HistoryIndex(CURRENT_VERSION)
+        val appFiles =
+            getAppsDirectory(file).listFiles { _, name ->
+                name.startsWith(APP_FILE_PREFIX) && name.endsWith(APP_FILE_SUFFIX)
+            }
+                ?: emptyArray()
+        for (appFile in appFiles) {
+            readHistoryFile(appFile).appsSafetyLabelHistory?.appSafetyLabelHistories?.forEach {
+                index.entries[it.appInfo.packageName] = IndexEntry.of(it)
+            }
+        }
+        writeIndexLocked(file, index)
+        return index
+    }
+
+    /**
+     * Replaces all the history stored for the provided file with the provided content.
+     *
+     * @return whether all the per-app files and the index were written
+     */
+    private fun writeAllLocked(
+        file: File,
+        fileContent: AppsSafetyLabelHistoryFileContent
+    ): Boolean {
+        deleteAppsDirectoryLocked(file)
+        val index = createIndexLocked(file)
+        index.version = fileContent.version
+        var written = true
+        fileContent.appsSafetyLabelHistory?.appSafetyLabelHistories?.forEach {
+            written = writeAppHistoryLocked(file, index, it) && written
+        }
+        return writeIndexLocked(file, index) && written
+    }
+
+    private fun deleteAppsDirectoryLocked(file: File) {
+        getAppsDirectory(file).listFiles()?.forEach { it.delete() }
+        getAppsDirectory(file).delete()
+    }
+
+    private fun readAppHistoryLocked(file: File, appInfo: AppInfo): AppSafetyLabelHistory =
+        readHistoryFile(getAppFile(file, appInfo))
+            .appsSafetyLabelHistory
+            ?.appSafetyLabelHistories
+            ?.firstOrNull { it.appInfo == appInfo }
+            ?: AppSafetyLabelHistory(appInfo, listOf())
+
+    /**
+     * Writes the provided [AppSafetyLabelHistory] to its own file and updates its entry in the
+     * provided in-memory index.
+     *
+     * The index itself is not written to disk, see [writeIndexLocked].
+     *
+     * @return whether the file of the app was written
+     */
+    private fun writeAppHistoryLocked(
+        file: File,
+        index: HistoryIndex,
+        appHistory: AppSafetyLabelHistory
+    ): Boolean {
+        val appsDirectory = getAppsDirectory(file)
+        if (!appsDirectory.isDirectory && !appsDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Failed to create $appsDirectory")
+            return false
+        }
+        val written =
+            writeToFile(getAppFile(file, appHistory.appInfo)) {
+                serializeAllAppSafetyLabelHistory(
+                    AppsSafetyLabelHistoryFileContent(
+                        AppsSafetyLabelHistory(listOf(appHistory)),
+                        index.version
+                    )
+                )
+            }
+        if (written) {
+            index.entries[appHistory.appInfo.packageName] = IndexEntry.of(appHistory)
+        }
+        return written
+    }
+
+    /** @return whether the index was written */
+    private fun writeIndexLocked(file: File, index: HistoryIndex): Boolean {
+        val appsDirectory = getAppsDirectory(file)
+        if (!appsDirectory.isDirectory && !appsDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Failed to create $appsDirectory")
+            return false
+        }
+        val indexFile = getIndexFile(file)
+        val written = writeToFile(indexFile) { serializeIndex(index) }
+        index.lastModifiedTime = AtomicFile(indexFile).lastModifiedTime
+        return written
+    }
+
+    private fun notifyListenersLocked() {
+        listeners.forEach { it.onSafetyLabelHistoryChanged() }
+    }
+
+    /**
+     * Reads the provided file storing safety label history in the single-file format, and returns
+     * the parsed [AppsSafetyLabelHistoryFileContent].
+     */
+    private fun readHistoryFile(file: File): AppsSafetyLabelHistoryFileContent {
+        val parser = Xml.newPullParser()
+        try {
+            AtomicFile(file).openRead().use { inputStream ->
+                parser.setInput(inputStream, StandardCharsets.UTF_8.name())
+                return parser.parseHistoryFile()
+            }
+        } catch (e: FileNotFoundException) {
+            Log.e(LOG_TAG, "File not found: $file")
+        } catch (e: IOException) {
+            Log.e(
+                LOG_TAG,
+                "Failed to read file: $file, encountered exception ${e.localizedMessage}"
+            )
+        } catch (e: XmlPullParserException) {
+            Log.e(
+                LOG_TAG,
+                "Failed to parse file: $file, encountered exception ${e.localizedMessage}"
+            )
+        }
+
+        return AppsSafetyLabelHistoryFileContent(appsSafetyLabelHistory = null, INITIAL_VERSION)
+    }
+
+    private fun readIndex(indexFile: AtomicFile): HistoryIndex? {
+        val parser = Xml.newPullParser()
+        try {
+            indexFile.openRead().use { inputStream ->
+                parser.setInput(inputStream, StandardCharsets.UTF_8.name())
+                return parser.parseIndexFile()
+            }
+        } catch (e: Exception) {
+            Log.e(
+                LOG_TAG,
+                "Failed to read index: ${indexFile.baseFile}, encountered exception" +
+                    " ${e.localizedMessage}"
+            )
+        }
+        return null
+    }
+
+    /**
+     * Atomically writes the provided file using [serialize], returning whether the write
+     * succeeded. If the write fails, the previous version of the file is restored.
+     */
+    private fun writeToFile(file: File, serialize: XmlSerializer.() -> Unit): Boolean {
         val atomicFile = AtomicFile(file)
         var outputStream: FileOutputStream? = null
 
@@ -267,10 +543,10 @@ object AppsSafetyLabelHistoryPersistence {
             val serializer = Xml.newSerializer()
             serializer.setOutput(outputStream, StandardCharsets.UTF_8.name())
             serializer.startDocument(null, true)
-            serializer.serializeAllAppSafetyLabelHistory(fileContent)
+            serializer.serialize()
             serializer.endDocument()
             atomicFile.finishWrite(outputStream)
-            listeners.forEach { it.onSafetyLabelHistoryChanged() }
+            return true
         } catch (e: Exception) {
             Log.i(
                 LOG_TAG,
@@ -285,39 +561,9 @@ object AppsSafetyLabelHistoryPersistence {
                 Log.e(LOG_TAG, "Failed to close $file.", e)
             }
         }
+        return false
     }
 
-    /** Reads the provided history file and returns all safety label changes since [startTime]. */
-    fun getAppSafetyLabelDiffs(startTime: Instant, file: File): List<AppSafetyLabelDiff> {
-        val currentAppsSafetyLabelHistory =
-            read(file).appsSafetyLabelHistory ?: AppsSafetyLabelHistory(listOf())
-
-        return currentAppsSafetyLabelHistory.appSafetyLabelHistories.mapNotNull {
-            val before = it.getSafetyLabelAt(startTime)
-            val after = it.getLatestSafetyLabel()
-            if (
-                before == null ||
-                    after == null ||
-                    before == after ||
-                    before.receivedAt.isAfter(after.receivedAt)
-            )
-                null
-            else AppSafetyLabelDiff(before, after)
-        }
-    }
-
-    /** Clears the file. */
-    fun clear(file: File) {
-        AtomicFile(file).delete()
-    }
-
-    /** Returns the file persisting safety label history for installed apps. */
-    fun getSafetyLabelHistoryFile(context: Context): File =
-        File(context.filesDir, APPS_SAFETY_LABEL_HISTORY_PERSISTENCE_FILE_NAME)
-
-    private fun AppSafetyLabelHistory.getLastReceiptTime(): Instant? =
-        this.safetyLabelHistory.lastOrNull()?.receivedAt
-
     private fun XmlPullParser.parseHistoryFile(): AppsSafetyLabelHistoryFileContent {
         if (eventType != XmlPullParser.START_DOCUMENT) {
             throw IllegalArgumentException()
@@ -565,12 +811,106 @@ object AppsSafetyLabelHistoryPersistence {
         endTag(null, TAG_DATA_SHARED_ENTRY)
     }
 
-    private fun AppSafetyLabelHistory.addSafetyLabelIfChanged(
-        safetyLabel: SafetyLabel
-    ): AppSafetyLabelHistory {
-        val latestSafetyLabel = safetyLabelHistory.lastOrNull()
-        return if (latestSafetyLabel?.dataLabel == safetyLabel.dataLabel) this
-        else this.withSafetyLabel(safetyLabel, getMaxSafetyLabelsToPersist())
+    private fun XmlPullParser.parseIndexFile(): HistoryIndex {
+        if (eventType != XmlPullParser.START_DOCUMENT) {
+            throw IllegalArgumentException()
+        }
+        nextTag()
+
+        checkTagStart(TAG_APPS_INDEX)
+        var version: Int? = null
+        for (i in 0 until attributeCount) {
+            when (getAttributeName(i)) {
+                ATTRIBUTE_VERSION -> version = getAttributeValue(i).toInt()
+                else ->
+                    throw IllegalArgumentException(
+                        "Unexpected attribute ${getAttributeName(i)} in tag $TAG_APPS_INDEX"
+                    )
+            }
+        }
+        if (version == null) {
+            throw IllegalArgumentException("Missing $ATTRIBUTE_VERSION in $TAG_APPS_INDEX")
+        }
+        nextTag()
+
+        val index = HistoryIndex(version)
+        while (eventType == XmlPullParser.START_TAG && name == TAG_APP_INDEX_ENTRY) {
+            val entry = parseIndexEntry()
+            index.entries[entry.appInfo.packageName] = entry
+        }
+
+        checkTagEnd(TAG_APPS_INDEX)
+        next()
+
+        while (eventType == XmlPullParser.TEXT && isWhitespace) {
+            next()
+        }
+        if (eventType != XmlPullParser.END_DOCUMENT) {
+            throw IllegalArgumentException("Unexpected extra element")
+        }
+
+        return index
+    }
+
+    private fun XmlPullParser.parseIndexEntry(): IndexEntry {
+        checkTagStart(TAG_APP_INDEX_ENTRY)
+        var packageName: String? = null
+        var count: Int? = null
+        var oldestReceivedAt: Instant? = null
+        for (i in 0 until attributeCount) {
+            when (getAttributeName(i)) {
+                ATTRIBUTE_PACKAGE_NAME -> packageName = getAttributeValue(i)
+                ATTRIBUTE_COUNT -> count = getAttributeValue(i).toInt()
+                ATTRIBUTE_OLDEST_RECEIVED_AT ->
+                    oldestReceivedAt = parseInstant(getAttributeValue(i))
+                else ->
+                    throw IllegalArgumentException(
+                        "Unexpected attribute ${getAttributeName(i)} in tag $TAG_APP_INDEX_ENTRY"
+                    )
+            }
+        }
+        if (packageName == null) {
+            throw IllegalArgumentException(
+                "Missing $ATTRIBUTE_PACKAGE_NAME in $TAG_APP_INDEX_ENTRY"
+            )
+        }
+        if (count == null) {
+            throw IllegalArgumentException("Missing $ATTRIBUTE_COUNT in $TAG_APP_INDEX_ENTRY")
+        }
+        nextTag()
+
+        val appInfo = AppInfo(packageName)
+        var latestSafetyLabel: SafetyLabel? = null
+        if (eventType == XmlPullParser.START_TAG && name == TAG_SAFETY_LABEL) {
+            latestSafetyLabel = parseSafetyLabel(appInfo)
+        }
+
+        checkTagEnd(TAG_APP_INDEX_ENTRY)
+        nextTag()
+
+        return IndexEntry(appInfo, latestSafetyLabel, oldestReceivedAt, count)
+    }
+
+    private fun XmlSerializer.serializeIndex(index: HistoryIndex) {
+        startTag(null, TAG_APPS_INDEX)
+        attribute(null, ATTRIBUTE_VERSION, index.version.toString())
+        index.entries.values.forEach { serializeIndexEntry(it) }
+        endTag(null, TAG_APPS_INDEX)
+    }
+
+    private fun XmlSerializer.serializeIndexEntry(entry: IndexEntry) {
+        startTag(null, TAG_APP_INDEX_ENTRY)
+        attribute(null, ATTRIBUTE_PACKAGE_NAME, entry.appInfo.packageName)
+        attribute(null, ATTRIBUTE_COUNT, entry.count.toString())
+        if (entry.oldestReceivedAt != null) {
+            attribute(
+                null,
+                ATTRIBUTE_OLDEST_RECEIVED_AT,
+                entry.oldestReceivedAt.toEpochMilli().toString()
+            )
+        }
+        entry.latestSafetyLabel?.let { serializeSafetyLabel(it) }
+        endTag(null, TAG_APP_INDEX_ENTRY)
     }
 
     private fun AppSafetyLabelHistory.addSafetyLabelsIfChanged(
@@ -629,4 +969,37 @@ object AppsSafetyLabelHistoryPersistence {
         val appsSafetyLabelHistory: AppsSafetyLabelHistory?,
         val version: Int,
     )
+
+    /** In-memory index of the safety label history stored for a file. */
+    private class HistoryIndex(
+        /** The schema version of the stored history. */
+        var version: Int,
+    ) {
+        /** The [IndexEntry] of each app, keyed by package name, in insertion order. */
+        val entries = LinkedHashMap<String, IndexEntry>()
+
+        /** The last modified time of the index file this index was read from or written to. */
+        var lastModifiedTime = 0L
+    }
+
+    /** Entry of a [HistoryIndex], summarizing the stored safety label history of an app. */
+    private data class IndexEntry(
+        val appInfo: AppInfo,
+        /** The latest safety label of the app, or `null` if its history is empty. */
+        val latestSafetyLabel: SafetyLabel?,
+        /** The receipt time of the oldest safety label of the app. */
+        val oldestReceivedAt: Instant?,
+        /** The number of safety labels stored for the app. */
+        val count: Int,
+    ) {
+        companion object {
+            fun of(appHistory: AppSafetyLabelHistory): IndexEntry =
+                IndexEntry(
+                    appHistory.appInfo,
+                    appHistory.safetyLabelHistory.lastOrNull(),
+                    appHistory.safetyLabelHistory.firstOrNull()?.receivedAt,
+                    appHistory.safetyLabelHistory.size
+                )
+        }
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.benchmark.permission
+
+import android.app.ActivityManager
+import android.app.AppOpsManager
+import android.app.Application
+import android.content.Context
+import android.content.pm.PackageManager
+import android.content.pm.PermissionInfo
+import android.location.LocationManager
+import android.os.UserHandle
+import android.test.mock.MockPackageManager
+import androidx.test.core.app.ApplicationProvider
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.withSettings
+
+/**
+ * An [Application] that keeps the permission state changes of PermissionController in process, so
+ * that benchmarks measure the work done in PermissionController and not the binder calls to the
+ * system server.
+ *
+ * The [PackageManager] is a [FakePackageManager]. [AppOpsManager], [ActivityManager] and
+ * [LocationManager] cannot be subclassed outside of the platform, so they are stub only mocks
+ * that report every app op as [AppOpsManager.MODE_IGNORED] and no location provider. All other
+ * calls go to the real context of the benchmark.
+ *
+ * @param base The context to delegate to
+ */
+class FakeApplication(base: Context = ApplicationProvider.getApplicationContext()) :
+    Application() {
+    private val packageManager = FakePackageManager(base.packageManager)
+    private val appOpsManager = stubOnlyMock(AppOpsManager::class.java)
+    private val activityManager = stubOnlyMock(ActivityManager::class.java)
+    private val locationManager = stubOnlyMock(LocationManager::class.java)
+
+    init {
+        attachBaseContext(base)
+        `when`(appOpsManager.unsafeCheckOpRaw(anyString(), anyInt(), anyString()))
+            .thenReturn(AppOpsManager.MODE_IGNORED)
+    }
+
+    override fun getApplicationContext(): Context = this
+
+    override fun createContextAsUser(user: UserHandle, flags: Int): Context = this
+
+    override fun getPackageManager(): PackageManager = packageManager
+
+    override fun getSystemService(name: String): Any? =
+        when (name) {
+            Context.APP_OPS_SERVICE -> appOpsManager
+            Context.ACTIVITY_SERVICE -> activityManager
+            Context.LOCATION_SERVICE -> locationManager
+            else -> super.getSystemService(name)
+        }
+
+    private fun <T> stubOnlyMock(clazz: Class<T>): T = mock(clazz, withSettings().stubOnly())
+}
+
+/**
+ * A [PackageManager] that drops permission grants, revocations and flag updates, and reads every
+ * [PermissionInfo] once from the real package manager.
+ *
+ * Any other call throws [UnsupportedOperationException], so that a benchmark cannot silently
+ * start measuring binder calls.
+ *
+ * @param base The package manager to read the [PermissionInfo]s from
+ */
+private class FakePackageManager(private val base: PackageManager) : MockPackageManager() {
+    /** Map<permission name, info>, `null` if the permission does not exist */
+    private val permissionInfos = mutableMapOf<String, PermissionInfo?>()
+
+    override fun getPermissionInfo(permName: String, flags: Int): PermissionInfo {
+        val permissionInfo =
+            permissionInfos.getOrPut(permName) {
+                try {
+                    base.getPermissionInfo(permName, 0)
+                } catch (e: PackageManager.NameNotFoundException) {
+                    null
+                }
+            }
+        return permissionInfo ?: throw PackageManager.NameNotFoundException(permName)
+    }
+
+    override fun getPermissionFlags(
+        permName: String,
+        packageName: String,
+        user: UserHandle
+    ): Int = 0
+
+    override fun grantRuntimePermission(packageName: String, permName: String, user: UserHandle) {}
+
+    override fun revokeRuntimePermission(packageName: String, permName: String, user: UserHandle) {}
+
+    override fun updatePermissionFlags(
+        permName: String,
+        packageName: String,
+        flagMask: Int,
+        flagValues: Int,
+        user: UserHandle
+    ) {}
+}
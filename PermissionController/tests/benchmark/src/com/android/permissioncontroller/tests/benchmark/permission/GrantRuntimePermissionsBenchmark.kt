@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.permissioncontroller.tests.benchmark.permission
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import com.android.permissioncontroller.permission.utils.KotlinUtils
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for the permission grants of [KotlinUtils], against system services that do nothing.
+ */
+@RunWith(Parameterized::class)
+class GrantRuntimePermissionsBenchmark(appCount: Int) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val app = FakeApplication()
+    private val groups = SyntheticPackages(appCount).createAppPermGroups()
+
+    @Test
+    fun grantForegroundRuntimePermissions_allGroups() {
+        benchmarkRule.measureRepeated {
+            for (group in groups) {
+                KotlinUtils.grantForegroundRuntimePermissions(app, group)
+            }
+        }
+    }
+
+    @Test
+    fun revokeForegroundRuntimePermissions_allGroups() {
+        benchmarkRule.measureRepeated {
+            for (group in groups) {
+                KotlinUtils.revokeForegroundRuntimePermissions(app, group)
+            }
+        }
+    }
+
+    companion object {
+        @JvmStatic
+        @Parameterized.Parameters(name = "appCount={0}")
+        fun appCounts() = SyntheticPackages.APP_COUNTS
+    }
+}
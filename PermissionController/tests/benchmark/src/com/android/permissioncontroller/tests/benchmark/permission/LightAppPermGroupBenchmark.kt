@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.permissioncontroller.tests.benchmark.permission
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import com.android.permissioncontroller.permission.data.LightAppPermGroupLiveData
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for the creation of the
+ * [com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup]s of
+ * [LightAppPermGroupLiveData].
+ */
+@RunWith(Parameterized::class)
+class LightAppPermGroupBenchmark(appCount: Int) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val app = FakeApplication()
+    private val packages = SyntheticPackages(appCount)
+
+    @Test
+    fun createLightAppPermGroup_allPackagesAndGroups() {
+        benchmarkRule.measureRepeated {
+            for (pkg in packages.packages) {
+                for ((permGroupName, permStates) in pkg.permStates) {
+                    LightAppPermGroupLiveData.createLightAppPermGroup(
+                        app,
+                        pkg.packageInfo.packageName,
+                        permGroupName,
+                        packages.user,
+                        pkg.packageInfo,
+                        packages.permGroups.getValue(permGroupName),
+                        permStates,
+                        packages.foregroundPerms
+                    )
+                }
+            }
+        }
+    }
+
+    companion object {
+        @JvmStatic
+        @Parameterized.Parameters(name = "appCount={0}")
+        fun appCounts() = SyntheticPackages.APP_COUNTS
+    }
+}
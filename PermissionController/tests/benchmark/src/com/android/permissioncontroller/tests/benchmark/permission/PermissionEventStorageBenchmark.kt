@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.permissioncontroller.tests.benchmark.permission
+
+import android.Manifest.permission.READ_DEVICE_CONFIG
+import android.app.Application
+import android.app.Instrumentation
+import android.app.job.JobScheduler
+import android.content.Context
+import android.util.AtomicFile
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.permissioncontroller.Constants
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.PermissionChange
+import com.android.permissioncontroller.permission.service.BasePermissionEventStorage
+import com.android.permissioncontroller.permission.service.PermissionChangeStorageImpl
+import java.io.File
+import java.util.concurrent.TimeUnit
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for the reads and writes of [BasePermissionEventStorage], using
+ * [PermissionChangeStorageImpl] with one event per package.
+ *
+ * The storage logs to [com.android.permissioncontroller.DumpableLog], which needs a
+ * [PermissionControllerApplication]. One is attached to the context of the benchmark without being
+ * created, so none of its start up work runs.
+ */
+@RunWith(Parameterized::class)
+class PermissionEventStorageBenchmark(private val appCount: Int) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val uiAutomation = InstrumentationRegistry.getInstrumentation().uiAutomation
+
+    private lateinit var storage: PermissionChangeStorageImpl
+    private lateinit var events: List<PermissionChange>
+
+    @Before
+    fun setup() {
+        setPermissionControllerApplication(
+            Instrumentation.newApplication(PermissionControllerApplication::class.java, context)
+        )
+        // The storage reads its configuration from DeviceConfig
+        uiAutomation.adoptShellPermissionIdentity(READ_DEVICE_CONFIG)
+
+        // This schedules the real cleanup job of the storage, it is cancelled in cleanup()
+        storage = PermissionChangeStorageImpl(context)
+        events =
+            SyntheticPackages(appCount).packages.map {
+                PermissionChange(it.packageInfo.packageName, EVENT_TIME)
+            }
+        // Write all the events at once, storing them one by one rewrites the file every time
+        val dbFile = AtomicFile(File(context.filesDir, storage.getDatabaseFileName()))
+        val stream = dbFile.startWrite()
+        try {
+            storage.serialize(stream, events)
+            dbFile.finishWrite(stream)
+        } catch (e: Exception) {
+            dbFile.failWrite(stream)
+            throw e
+        }
+    }
+
+    @After
+    fun cleanup() = runBlocking {
+        storage.clearEvents()
+        context
+            .getSystemService(JobScheduler::class.java)!!
+            .cancel(Constants.OLD_PERMISSION_EVENT_CLEANUP_JOB_ID)
+
+        uiAutomation.dropShellPermissionIdentity()
+        File(context.filesDir, Constants.LOGS_TO_DUMP_FILE).delete()
+        setPermissionControllerApplication(null)
+    }
+
+    @Test
+    fun loadEvents_oneEventPerPackage() = runBlocking {
+        benchmarkRule.measureRepeated { storage.loadEvents() }
+    }
+
+    @Test
+    fun storeEvent_replacesEventOfPackage() = runBlocking {
+        var i = 0
+        benchmarkRule.measureRepeated {
+            // Alternate between two days, so that every event changes the stored data
+            val event = events[i % appCount]
+            val dayOffset = (i / appCount + 1) % 2 * DAY
+            storage.storeEvent(event.copy(eventTime = event.eventTime + dayOffset))
+            i++
+        }
+    }
+
+    /** Sets the instance returned by [PermissionControllerApplication.get]. */
+    private fun setPermissionControllerApplication(app: Application?) {
+        PermissionControllerApplication::class
+            .java
+            .getDeclaredField("sInstance")
+            .apply { isAccessible = true }
+            .set(null, app)
+    }
+
+    companion object {
+        private val DAY = TimeUnit.DAYS.toMillis(1)
+        private val EVENT_TIME = System.currentTimeMillis() - DAY
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "appCount={0}")
+        fun appCounts() = SyntheticPackages.APP_COUNTS
+    }
+}
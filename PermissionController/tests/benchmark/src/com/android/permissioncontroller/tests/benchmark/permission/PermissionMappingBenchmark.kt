@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.permissioncontroller.tests.benchmark.permission
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import com.android.permissioncontroller.permission.utils.PermissionMapping
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/** Benchmarks for [PermissionMapping]. */
+@RunWith(Parameterized::class)
+class PermissionMappingBenchmark(appCount: Int) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val packages = SyntheticPackages(appCount)
+
+    @Test
+    fun getGroupOfPermission_allRequestedAndDefinedPermissions() {
+        val permissionInfos = packages.permissionInfos
+        benchmarkRule.measureRepeated {
+            for (permissionInfo in permissionInfos) {
+                PermissionMapping.getGroupOfPermission(permissionInfo)
+            }
+        }
+    }
+
+    companion object {
+        @JvmStatic
+        @Parameterized.Parameters(name = "appCount={0}")
+        fun appCounts() = SyntheticPackages.APP_COUNTS
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.benchmark.permission
+
+import android.Manifest.permission.ACCESS_BACKGROUND_LOCATION
+import android.Manifest.permission.ACCESS_COARSE_LOCATION
+import android.Manifest.permission.ACCESS_FINE_LOCATION
+import android.Manifest.permission.CAMERA
+import android.Manifest.permission.GET_ACCOUNTS
+import android.Manifest.permission.READ_CALENDAR
+import android.Manifest.permission.READ_CONTACTS
+import android.Manifest.permission.READ_SMS
+import android.Manifest.permission.RECEIVE_SMS
+import android.Manifest.permission.RECORD_AUDIO
+import android.Manifest.permission.SEND_SMS
+import android.Manifest.permission.WRITE_CALENDAR
+import android.Manifest.permission.WRITE_CONTACTS
+import android.Manifest.permission_group.CALENDAR
+import android.Manifest.permission_group.CONTACTS
+import android.Manifest.permission_group.LOCATION
+import android.Manifest.permission_group.MICROPHONE
+import android.Manifest.permission_group.SMS
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SET
+import android.content.pm.PermissionInfo
+import android.os.Build
+import android.os.Process
+import android.os.UserHandle
+import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermGroupInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermission
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroup
+import com.android.permissioncontroller.permission.model.livedatatypes.PermState
+import com.android.permissioncontroller.permission.utils.ContextCompat
+import com.android.permissioncontroller.permission.utils.Utils.OS_PKG
+
+/**
+ * A deterministic set of installed packages, for benchmarks that need a realistic amount of
+ * permission state without installing any app.
+ *
+ * Every package defines one custom permission and requests the permissions of a few platform
+ * permission groups, with a mix of granted, denied, user set and system (not user sensitive)
+ * permissions.
+ *
+ * @param appCount The number of packages in the set
+ */
+class SyntheticPackages(val appCount: Int) {
+
+    /** The user of all the packages */
+    val user: UserHandle = Process.myUserHandle()
+
+    private val userUidBase = Process.myUid() - UserHandle.getAppId(Process.myUid())
+
+    /** The platform permission groups requested by the packages, by name */
+    val permGroups: Map<String, PermGroup> =
+        PLATFORM_PERMISSIONS.mapValues { (groupName, permNames) ->
+            PermGroup(
+                LightPermGroupInfo(groupName, OS_PKG, 0, 0, 0, false),
+                permNames.associateWith { permName -> createPermInfo(permName, groupName) }
+            )
+        }
+
+    /** The foreground permissions of every background permission */
+    val foregroundPerms: Map<String, List<String>> =
+        mapOf(ACCESS_BACKGROUND_LOCATION to listOf(ACCESS_FINE_LOCATION, ACCESS_COARSE_LOCATION))
+
+    /** The packages of the set */
+    val packages: List<SyntheticPackage> = List(appCount) { createPackage(it) }
+
+    /**
+     * The [PermissionInfo]s of the permissions requested or defined by every package, so that a
+     * permission requested by several packages appears once per package.
+     */
+    val permissionInfos: List<PermissionInfo> by lazy {
+        val platformPermissionInfos =
+            permGroups.values
+                .flatMap { it.permissionInfos.values }
+                .associate { it.name to it.toPermissionInfo() }
+        packages.flatMap { pkg ->
+            pkg.packageInfo.requestedPermissions.map { platformPermissionInfos.getValue(it) } +
+                pkg.packageInfo.permissions.map { it.toPermissionInfo() }
+        }
+    }
+
+    /** Creates the [LightAppPermGroup]s of every package and requested permission group. */
+    fun createAppPermGroups(): List<LightAppPermGroup> =
+        packages.flatMap { pkg ->
+            pkg.permStates.map { (groupName, permStates) ->
+                val permGroup = permGroups.getValue(groupName)
+                val permissions =
+                    permStates.mapValues { (permName, permState) ->
+                        LightPermission(
+                            pkg.packageInfo,
+                            permGroup.permissionInfos.getValue(permName),
+                            permState,
+                            foregroundPerms[permName]
+                        )
+                    }
+                LightAppPermGroup(pkg.packageInfo, permGroup.groupInfo, permissions, false, null)
+            }
+        }
+
+    private fun createPackage(index: Int): SyntheticPackage {
+        val packageName = "$PACKAGE_NAME_PREFIX$index"
+        val groupNames = PLATFORM_PERMISSIONS.keys.filterIndexed { i, _ -> (index + i) % 3 != 0 }
+        val isSystem = index % 10 == 0
+        val permStates =
+            groupNames.associateWith { groupName ->
+                val isGranted = (index + groupName.length) % 2 == 0
+                var flags =
+                    if (isSystem) {
+                        0
+                    } else {
+                        FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED or
+                            FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED
+                    }
+                if (index % 4 == 0) {
+                    flags = flags or FLAG_PERMISSION_USER_SET
+                }
+                val permState = PermState(flags, isGranted)
+                PLATFORM_PERMISSIONS.getValue(groupName).associateWith { permState }
+            }
+        val requestedPermissions = permStates.values.flatMap { it.keys }
+        val requestedPermissionsFlags =
+            permStates.values.flatMap { groupPermStates ->
+                groupPermStates.values.map {
+                    if (it.granted) PackageInfo.REQUESTED_PERMISSION_GRANTED else 0
+                }
+            }
+        val customPermInfo =
+            LightPermInfo(
+                "$packageName.permission.CUSTOM",
+                packageName,
+                "$packageName.permission-group.CUSTOM",
+                null,
+                PermissionInfo.PROTECTION_DANGEROUS,
+                0,
+                0
+            )
+        val packageInfo =
+            LightPackageInfo(
+                packageName,
+                listOf(customPermInfo),
+                requestedPermissions,
+                requestedPermissionsFlags,
+                userUidBase + Process.FIRST_APPLICATION_UID + index,
+                Build.VERSION.SDK_INT,
+                false,
+                true,
+                0,
+                FIRST_INSTALL_TIME + index,
+                FIRST_INSTALL_TIME + index,
+                false,
+                emptyMap(),
+                ContextCompat.DEVICE_ID_DEFAULT
+            )
+        return SyntheticPackage(packageInfo, permStates)
+    }
+
+    private fun createPermInfo(permName: String, groupName: String): LightPermInfo =
+        LightPermInfo(
+            permName,
+            OS_PKG,
+            groupName,
+            if (permName == ACCESS_FINE_LOCATION || permName == ACCESS_COARSE_LOCATION) {
+                ACCESS_BACKGROUND_LOCATION
+            } else {
+                null
+            },
+            PermissionInfo.PROTECTION_DANGEROUS,
+            0,
+            0
+        )
+
+    private fun LightPermInfo.toPermissionInfo(): PermissionInfo =
+        PermissionInfo().also {
+            it.name = name
+            it.packageName = packageName
+            it.group = group
+            it.backgroundPermission = backgroundPermission
+            it.protectionLevel = protection or protectionFlags
+            it.flags = flags
+        }
+
+    /**
+     * A package of a [SyntheticPackages] set.
+     *
+     * @param packageInfo The package info of the package
+     * @param permStates The state of the requested permissions, by permission group name
+     */
+    data class SyntheticPackage(
+        val packageInfo: LightPackageInfo,
+        val permStates: Map<String, Map<String, PermState>>
+    )
+
+    companion object {
+        /** The sizes of the package sets used by the benchmarks */
+        val APP_COUNTS = listOf(100, 500, 2000)
+
+        private const val PACKAGE_NAME_PREFIX = "com.android.permissioncontroller.benchmark.app"
+        private const val FIRST_INSTALL_TIME = 1_700_000_000_000L
+
+        private val PLATFORM_PERMISSIONS =
+            mapOf(
+                android.Manifest.permission_group.CAMERA to listOf(CAMERA),
+                MICROPHONE to listOf(RECORD_AUDIO),
+                CONTACTS to listOf(READ_CONTACTS, WRITE_CONTACTS, GET_ACCOUNTS),
+                CALENDAR to listOf(READ_CALENDAR, WRITE_CALENDAR),
+                LOCATION to
+                    listOf(
+                        ACCESS_FINE_LOCATION,
+                        ACCESS_COARSE_LOCATION,
+                        ACCESS_BACKGROUND_LOCATION
+                    ),
+                SMS to listOf(SEND_SMS, RECEIVE_SMS, READ_SMS)
+            )
+    }
+}
@@ -18,15 +18,26 @@ package com.android.permissioncontroller.permission.util
 
 import android.Manifest
 import android.app.AppOpsManager
+import android.content.pm.PackageManager
 import android.health.connect.HealthPermissions
 import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
 import com.android.permissioncontroller.permission.utils.PermissionMapping
 import com.google.common.truth.Truth.assertThat
 import org.junit.Test
 import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.verifyNoMoreInteractions
+import org.mockito.Mockito.`when`
 
 @RunWith(AndroidJUnit4::class)
 class PermissionMappingTest {
+    private val packageManager =
+        InstrumentationRegistry.getInstrumentation().targetContext.packageManager
+
     @Test
     fun testGetPlatformPermissionGroupForOp_healthPermissionGroup() {
         assertThat(
@@ -66,4 +77,110 @@ class PermissionMappingTest {
                 PermissionMapping.getGroupOfPlatformPermission(Manifest.permission.READ_CONTACTS)
             )
     }
+
+    @Test
+    fun testGetPlatformPermissionsOfGroup_contacts() {
+        val permissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                packageManager,
+                Manifest.permission_group.CONTACTS
+            )
+
+        assertThat(permissionInfos.map { it.name })
+            .containsExactlyElementsIn(
+                PermissionMapping.getPlatformPermissionNamesOfGroup(
+                    Manifest.permission_group.CONTACTS
+                )
+            )
+    }
+
+    @Test
+    fun testGetPlatformPermissionsOfGroup_calledTwice_returnsEqualCopies() {
+        val permissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                packageManager,
+                Manifest.permission_group.CALENDAR
+            )
+        val cachedPermissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                packageManager,
+                Manifest.permission_group.CALENDAR
+            )
+
+        assertThat(cachedPermissionInfos.map { it.name })
+            .containsExactlyElementsIn(permissionInfos.map { it.name })
+            .inOrder()
+        for (i in permissionInfos.indices) {
+            assertThat(cachedPermissionInfos[i]).isNotSameInstanceAs(permissionInfos[i])
+            assertThat(cachedPermissionInfos[i].protectionLevel)
+                .isEqualTo(permissionInfos[i].protectionLevel)
+        }
+    }
+
+    @Test
+    fun testGetPlatformPermissionsOfGroup_cached_doesntUseOtherPackageManager() {
+        val permissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                packageManager,
+                Manifest.permission_group.CAMERA
+            )
+        val otherPackageManager = mock(PackageManager::class.java)
+
+        val cachedPermissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                otherPackageManager,
+                Manifest.permission_group.CAMERA
+            )
+
+        assertThat(cachedPermissionInfos.map { it.name })
+            .containsExactlyElementsIn(permissionInfos.map { it.name })
+        verifyNoMoreInteractions(otherPackageManager)
+    }
+
+    @Test
+    fun testGetPlatformPermissionsOfGroup_definingPackageUpdated_usesOtherPackageManager() {
+        val permissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                packageManager,
+                Manifest.permission_group.CAMERA
+            )
+        val otherPackageManager = mock(PackageManager::class.java)
+        `when`(otherPackageManager.getPermissionInfo(anyString(), anyInt())).thenAnswer {
+            packageManager.getPermissionInfo(it.getArgument(0), it.getArgument(1))
+        }
+
+        PermissionMapping.permissionDefiningPackageListener.onPackageUpdate(
+            permissionInfos.first().packageName
+        )
+        val reloadedPermissionInfos =
+            PermissionMapping.getPlatformPermissionsOfGroup(
+                otherPackageManager,
+                Manifest.permission_group.CAMERA
+            )
+
+        assertThat(reloadedPermissionInfos.map { it.name })
+            .containsExactlyElementsIn(permissionInfos.map { it.name })
+        verify(otherPackageManager).getPermissionInfo(Manifest.permission.CAMERA, 0)
+    }
+
+    @Test
+    fun testGetPlatformPermissionsOfGroup_otherPackageUpdated_doesntUseOtherPackageManager() {
+        PermissionMapping.getPlatformPermissionsOfGroup(
+            packageManager,
+            Manifest.permission_group.CAMERA
+        )
+        val otherPackageManager = mock(PackageManager::class.java)
+
+        PermissionMapping.permissionDefiningPackageListener.onPackageUpdate(OTHER_PACKAGE_NAME)
+        PermissionMapping.getPlatformPermissionsOfGroup(
+            otherPackageManager,
+            Manifest.permission_group.CAMERA
+        )
+
+        verifyNoMoreInteractions(otherPackageManager)
+    }
+
+    companion object {
+        private const val OTHER_PACKAGE_NAME = "com.android.permissioncontroller.other"
+    }
 }
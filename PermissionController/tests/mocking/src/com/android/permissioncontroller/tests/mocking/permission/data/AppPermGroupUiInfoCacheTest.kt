@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.data
+
+import android.app.Application
+import android.os.UserHandle
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.data.AppPermGroupUiInfoCache
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class AppPermGroupUiInfoCacheTest {
+    private val app: Application = ApplicationProvider.getApplicationContext()
+    private val cacheFile = File(app.filesDir, "app_perm_group_ui_info_cache.xml")
+
+    @Before
+    fun setup() {
+        cacheFile.delete()
+        AppPermGroupUiInfoCache.resetForTests()
+    }
+
+    @After
+    fun cleanup() {
+        cacheFile.delete()
+        AppPermGroupUiInfoCache.resetForTests()
+    }
+
+    @Test
+    fun get_noCacheFile_returnsNull() {
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isNull()
+    }
+
+    @Test
+    fun get_afterPut_returnsUiInfos() {
+        AppPermGroupUiInfoCache.put(app, PERM_GROUP, UI_INFOS)
+
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isEqualTo(UI_INFOS)
+    }
+
+    @Test
+    fun get_afterWriteAndReload_returnsUiInfos() {
+        AppPermGroupUiInfoCache.put(app, PERM_GROUP, UI_INFOS)
+        AppPermGroupUiInfoCache.writeNow(app)
+        AppPermGroupUiInfoCache.resetForTests()
+
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isEqualTo(UI_INFOS)
+        assertThat(AppPermGroupUiInfoCache.get(app, OTHER_PERM_GROUP)).isNull()
+    }
+
+    @Test
+    fun get_corruptCacheFile_returnsNull() {
+        cacheFile.writeText("<ui-info-cache version=\"1\" generation=\"0/\"><group name=")
+
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isNull()
+    }
+
+    @Test
+    fun get_invalidValueInCacheFile_returnsNull() {
+        AppPermGroupUiInfoCache.put(app, PERM_GROUP, UI_INFOS)
+        AppPermGroupUiInfoCache.writeNow(app)
+        AppPermGroupUiInfoCache.resetForTests()
+        cacheFile.writeText(cacheFile.readText().replace("PERMS_ALLOWED", "NOT_A_GRANT_STATE"))
+
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isNull()
+    }
+
+    @Test
+    fun get_outdatedGeneration_returnsNull() {
+        AppPermGroupUiInfoCache.put(app, PERM_GROUP, UI_INFOS)
+        AppPermGroupUiInfoCache.writeNow(app)
+        AppPermGroupUiInfoCache.resetForTests()
+        cacheFile.writeText(
+            cacheFile.readText().replace(Regex("generation=\"[^\"]*\""), "generation=\"-2/\"")
+        )
+
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isNull()
+    }
+
+    @Test
+    fun put_whileCacheFileIsCorrupt_overwritesCacheFile() {
+        cacheFile.writeText("not xml")
+
+        AppPermGroupUiInfoCache.put(app, PERM_GROUP, UI_INFOS)
+        AppPermGroupUiInfoCache.writeNow(app)
+        AppPermGroupUiInfoCache.resetForTests()
+
+        assertThat(AppPermGroupUiInfoCache.get(app, PERM_GROUP)).isEqualTo(UI_INFOS)
+    }
+
+    companion object {
+        private const val PERM_GROUP = "android.permission-group.CAMERA"
+        private const val OTHER_PERM_GROUP = "android.permission-group.MICROPHONE"
+        private val UI_INFOS =
+            mapOf(
+                Pair("com.example.app", UserHandle.of(0)) to
+                    AppPermGroupUiInfo(true, PermGrantState.PERMS_ALLOWED, false, true),
+                Pair("com.example.other", UserHandle.of(10)) to
+                    AppPermGroupUiInfo(false, PermGrantState.PERMS_DENIED, true, false)
+            )
+    }
+}
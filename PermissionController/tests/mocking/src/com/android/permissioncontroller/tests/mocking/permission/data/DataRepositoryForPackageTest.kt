@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.data
+
+import android.content.ComponentCallbacks2
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.DataRepository
+import com.android.permissioncontroller.permission.data.DataRepositoryForPackage
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.mockito.MockitoSession
+import org.mockito.quality.Strictness
+
+@RunWith(AndroidJUnit4::class)
+class DataRepositoryForPackageTest {
+    private lateinit var mockitoSession: MockitoSession
+    private lateinit var repository: FakeRepository
+
+    @Before
+    fun setup() {
+        mockitoSession =
+            mockitoSession()
+                .mockStatic(PermissionControllerApplication::class.java)
+                .strictness(Strictness.LENIENT)
+                .startMocking()
+        `when`(PermissionControllerApplication.get()).thenReturn(application)
+        repository = FakeRepository()
+    }
+
+    @After
+    fun finishMocking() {
+        mockitoSession.finishMocking()
+    }
+
+    @Test
+    fun invalidateAllForPackage_invalidatesKeysOfPackage() {
+        val pairValue = repository[Pair(PACKAGE_NAME, 0)]
+        val tripleValue = repository[Triple(PACKAGE_NAME, "group", 0)]
+
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+
+        assertThat(repository[Pair(PACKAGE_NAME, 0)]).isNotSameInstanceAs(pairValue)
+        assertThat(repository[Triple(PACKAGE_NAME, "group", 0)]).isNotSameInstanceAs(tripleValue)
+    }
+
+    @Test
+    fun invalidateAllForPackage_keepsKeysOfOtherPackages() {
+        val pairValue = repository[Pair(OTHER_PACKAGE_NAME, 0)]
+        val tripleValue = repository[Triple(OTHER_PACKAGE_NAME, "group", 0)]
+
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+
+        assertThat(repository[Pair(OTHER_PACKAGE_NAME, 0)]).isSameInstanceAs(pairValue)
+        assertThat(repository[Triple(OTHER_PACKAGE_NAME, "group", 0)])
+            .isSameInstanceAs(tripleValue)
+    }
+
+    @Test
+    fun invalidateAllForPackage_keepsKeysNotTiedToPackage() {
+        val value = repository[NON_PACKAGE_KEY]
+
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+
+        assertThat(repository[NON_PACKAGE_KEY]).isSameInstanceAs(value)
+    }
+
+    @Test
+    fun invalidateAllForPackage_valueAddedAfterInvalidation_invalidatesIt() {
+        repository[Pair(PACKAGE_NAME, 0)]
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+        val value = repository[Pair(PACKAGE_NAME, 0)]
+
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+
+        assertThat(repository[Pair(PACKAGE_NAME, 0)]).isNotSameInstanceAs(value)
+    }
+
+    @Test
+    fun invalidateAllForPackage_afterInvalidateSingle_invalidatesNewValue() {
+        repository[Pair(PACKAGE_NAME, 0)]
+        repository.invalidateSingle(Pair(PACKAGE_NAME, 0))
+        val value = repository[Pair(PACKAGE_NAME, 0)]
+
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+
+        assertThat(repository[Pair(PACKAGE_NAME, 0)]).isNotSameInstanceAs(value)
+    }
+
+    @Test
+    fun invalidateAllForPackage_afterTrim_invalidatesNewValue() {
+        repository[Pair(PACKAGE_NAME, 0)].timeWentInactive = 0
+        repository.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE)
+        val value = repository[Pair(PACKAGE_NAME, 0)]
+
+        repository.invalidateAllForPackage(PACKAGE_NAME)
+
+        assertThat(repository[Pair(PACKAGE_NAME, 0)]).isNotSameInstanceAs(value)
+    }
+
+    @Test
+    fun onTrimMemory_removesInactiveValue() {
+        val value = repository[Pair(PACKAGE_NAME, 0)]
+        value.timeWentInactive = 0
+
+        repository.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE)
+
+        assertThat(repository[Pair(PACKAGE_NAME, 0)]).isNotSameInstanceAs(value)
+    }
+
+    @Test
+    fun invalidateAllForPackage_unknownPackage_keepsAllKeys() {
+        val value = repository[Pair(PACKAGE_NAME, 0)]
+
+        repository.invalidateAllForPackage("com.unknown")
+
+        assertThat(repository[Pair(PACKAGE_NAME, 0)]).isSameInstanceAs(value)
+    }
+
+    private class FakeValue : DataRepository.InactiveTimekeeper {
+        override var timeWentInactive: Long? = null
+    }
+
+    private class FakeRepository : DataRepositoryForPackage<Any, FakeValue>() {
+        override fun newValue(key: Any): FakeValue = FakeValue()
+    }
+
+    companion object {
+        /** Reuse application mock as we otherwise end up with multiple applications */
+        private val application = mock(PermissionControllerApplication::class.java)
+
+        private const val PACKAGE_NAME = "com.example.app"
+        private const val OTHER_PACKAGE_NAME = "com.example.other"
+        private const val NON_PACKAGE_KEY = "not_a_package_key"
+    }
+}
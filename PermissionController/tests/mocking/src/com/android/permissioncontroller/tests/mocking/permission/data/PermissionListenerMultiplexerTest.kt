@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.data
+
+import android.content.pm.PackageManager
+import android.os.Handler
+import android.os.HandlerThread
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.data.BasePermissionListenerMultiplexer
+import com.android.permissioncontroller.permission.data.BasePermissionListenerMultiplexer.Companion.COALESCE_DELAY_MILLIS
+import com.android.permissioncontroller.permission.data.PermissionListenerMultiplexer.PermissionChangeCallback
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+
+@RunWith(AndroidJUnit4::class)
+class PermissionListenerMultiplexerTest {
+    private val packageManager = mock(PackageManager::class.java)
+    private val thread = HandlerThread(TAG)
+
+    private lateinit var multiplexer: BasePermissionListenerMultiplexer
+
+    @Before
+    fun setup() {
+        thread.start()
+        multiplexer = BasePermissionListenerMultiplexer(packageManager, thread.looper)
+    }
+
+    @After
+    fun cleanup() {
+        thread.quitSafely()
+        thread.join()
+    }
+
+    @Test
+    fun onPermissionsChanged_notifiesCallbacksOfUid() {
+        val callback = CountingCallback()
+        val otherCallback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+        multiplexer.addCallback(OTHER_UID, otherCallback)
+
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(1)
+        assertThat(otherCallback.count).isEqualTo(0)
+    }
+
+    @Test
+    fun onPermissionsChanged_severalChangesForUid_notifiesOnce() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+
+        multiplexer.onPermissionsChanged(UID)
+        multiplexer.onPermissionsChanged(UID)
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(1)
+    }
+
+    @Test
+    fun onPermissionsChanged_changesForSeveralUids_notifiesEachOnce() {
+        val callback = CountingCallback()
+        val otherCallback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+        multiplexer.addCallback(OTHER_UID, otherCallback)
+
+        multiplexer.onPermissionsChanged(UID)
+        multiplexer.onPermissionsChanged(OTHER_UID)
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(1)
+        assertThat(otherCallback.count).isEqualTo(1)
+    }
+
+    @Test
+    fun onPermissionsChanged_changeAfterDispatch_notifiesAgain() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(2)
+    }
+
+    @Test
+    fun onPermissionsChanged_callbackRemovedBeforeDispatch_doesntNotify() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+
+        multiplexer.onPermissionsChanged(UID)
+        multiplexer.removeCallback(UID, callback)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(0)
+    }
+
+    @Test
+    fun onPermissionsChanged_callbackAddedTwice_notifiesOnce() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+        multiplexer.addCallback(UID, callback)
+
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(1)
+    }
+
+    @Test
+    fun removeCallback_callbackAddedTwiceRemovedOnce_stillNotifies() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+        multiplexer.addCallback(UID, callback)
+
+        multiplexer.removeCallback(UID, callback)
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(1)
+        verify(packageManager, never()).removeOnPermissionsChangeListener(multiplexer)
+    }
+
+    @Test
+    fun removeCallback_callbackAddedTwiceRemovedTwice_removesListener() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+        multiplexer.addCallback(UID, callback)
+
+        multiplexer.removeCallback(UID, callback)
+        multiplexer.removeCallback(UID, callback)
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(0)
+        verify(packageManager).removeOnPermissionsChangeListener(multiplexer)
+    }
+
+    @Test
+    fun addCallback_addsListenerOnce() {
+        multiplexer.addCallback(UID, CountingCallback())
+        multiplexer.addCallback(OTHER_UID, CountingCallback())
+
+        verify(packageManager).addOnPermissionsChangeListener(multiplexer)
+    }
+
+    @Test
+    fun removeCallback_notAdded_doesntRemoveListener() {
+        multiplexer.addCallback(UID, CountingCallback())
+
+        multiplexer.removeCallback(UID, CountingCallback())
+        multiplexer.removeCallback(OTHER_UID, CountingCallback())
+
+        verify(packageManager, never()).removeOnPermissionsChangeListener(multiplexer)
+    }
+
+    @Test
+    fun addOrReplaceCallback_movesCallbackToNewUid() {
+        val callback = CountingCallback()
+        multiplexer.addCallback(UID, callback)
+
+        multiplexer.addOrReplaceCallback(UID, OTHER_UID, callback)
+        multiplexer.onPermissionsChanged(UID)
+        waitForDispatch()
+        multiplexer.onPermissionsChanged(OTHER_UID)
+        waitForDispatch()
+
+        assertThat(callback.count).isEqualTo(1)
+    }
+
+    /** Waits for the changes reported so far to be dispatched. */
+    private fun waitForDispatch() {
+        val latch = CountDownLatch(1)
+        Handler(thread.looper).postDelayed({ latch.countDown() }, COALESCE_DELAY_MILLIS * 4)
+        assertThat(latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue()
+    }
+
+    private class CountingCallback : PermissionChangeCallback {
+        @Volatile var count = 0
+
+        override fun onPermissionChange() {
+            count++
+        }
+    }
+
+    companion object {
+        private const val TAG = "PermissionListenerMultiplexerTest"
+        private const val TIMEOUT_MILLIS = 5000L
+        private const val UID = 10001
+        private const val OTHER_UID = 10002
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.model.legacy
+
+import android.Manifest.permission.ACCESS_BACKGROUND_LOCATION
+import android.Manifest.permission.ACCESS_COARSE_LOCATION
+import android.Manifest.permission.ACCESS_FINE_LOCATION
+import android.Manifest.permission.CAMERA
+import android.Manifest.permission.INTERNET
+import android.Manifest.permission.READ_CONTACTS
+import android.Manifest.permission.RECORD_AUDIO
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.model.legacy.PermissionApps.PmCache
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+@Suppress("DEPRECATION")
+@RunWith(AndroidJUnit4::class)
+class PmCacheTest {
+    private val packageManager = mock(PackageManager::class.java)
+
+    @Test
+    fun getPackagesByRequestedPermission_sameAsScanOfInstalledPackages() {
+        setInstalledPackages(INSTALLED_PACKAGES)
+
+        val pmCache = PmCache(packageManager)
+
+        assertIndexSameAsScan(pmCache)
+    }
+
+    @Test
+    fun getPackagesByRequestedPermission_calledTwice_queriesPackagesOnce() {
+        setInstalledPackages(INSTALLED_PACKAGES)
+        val pmCache = PmCache(packageManager)
+
+        val index = pmCache.getPackagesByRequestedPermission(USER_ID)
+        val cachedIndex = pmCache.getPackagesByRequestedPermission(USER_ID)
+
+        assertThat(cachedIndex).isSameInstanceAs(index)
+        verify(packageManager, times(1)).getInstalledPackagesAsUser(anyInt(), eq(USER_ID))
+    }
+
+    @Test
+    fun getPackagesByRequestedPermission_afterRefresh_sameAsScanOfUpdatedPackages() {
+        setInstalledPackages(INSTALLED_PACKAGES)
+        val pmCache = PmCache(packageManager)
+        val index = pmCache.getPackagesByRequestedPermission(USER_ID)
+        setInstalledPackages(UPDATED_PACKAGES)
+
+        // PermissionGroups creates a new PmCache on every refresh
+        val refreshedPmCache = PmCache(packageManager)
+
+        assertIndexSameAsScan(refreshedPmCache)
+        assertThat(pmCache.getPackagesByRequestedPermission(USER_ID)).isSameInstanceAs(index)
+    }
+
+    private fun setInstalledPackages(packages: List<PackageInfo>) {
+        `when`(packageManager.getInstalledPackagesAsUser(anyInt(), eq(USER_ID)))
+            .thenReturn(packages)
+    }
+
+    private fun assertIndexSameAsScan(pmCache: PmCache) {
+        val index = pmCache.getPackagesByRequestedPermission(USER_ID)
+        for (permNames in PERMISSION_GROUPS) {
+            val indexedPackages = permNames.flatMap { index[it] ?: emptyList() }.toSet()
+
+            assertThat(indexedPackages.map { it.packageName })
+                .containsExactlyElementsIn(scanInstalledPackages(permNames))
+        }
+    }
+
+    /** Finds the packages requesting any of the given permissions the way it was done before. */
+    private fun scanInstalledPackages(permNames: Set<String>): List<String> {
+        val requestingPackages = mutableListOf<String>()
+        for (app in packageManager.getInstalledPackagesAsUser(0, USER_ID)) {
+            val requestedPerms = app.requestedPermissions ?: continue
+            if (requestedPerms.any { it in permNames }) {
+                requestingPackages.add(app.packageName)
+            }
+        }
+        return requestingPackages
+    }
+
+    companion object {
+        private const val USER_ID = 0
+
+        private val PERMISSION_GROUPS =
+            listOf(
+                setOf(ACCESS_FINE_LOCATION, ACCESS_COARSE_LOCATION, ACCESS_BACKGROUND_LOCATION),
+                setOf(CAMERA),
+                setOf(RECORD_AUDIO),
+                setOf(READ_CONTACTS)
+            )
+
+        private val INSTALLED_PACKAGES =
+            listOf(
+                createPackage("com.example.maps", ACCESS_FINE_LOCATION, ACCESS_COARSE_LOCATION),
+                createPackage("com.example.camera", CAMERA, RECORD_AUDIO, ACCESS_FINE_LOCATION),
+                createPackage("com.example.browser", INTERNET),
+                createPackage("com.example.nopermissions")
+            )
+
+        private val UPDATED_PACKAGES =
+            listOf(
+                createPackage("com.example.maps", ACCESS_BACKGROUND_LOCATION, READ_CONTACTS),
+                createPackage("com.example.camera", CAMERA),
+                createPackage("com.example.recorder", RECORD_AUDIO)
+            )
+
+        private fun createPackage(packageName: String, vararg permNames: String): PackageInfo =
+            PackageInfo().apply {
+                this.packageName = packageName
+                requestedPermissions =
+                    if (permNames.isEmpty()) {
+                        null
+                    } else {
+                        arrayOf(*permNames)
+                    }
+            }
+    }
+}
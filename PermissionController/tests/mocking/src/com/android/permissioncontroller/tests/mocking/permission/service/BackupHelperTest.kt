@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.service
+
+import android.content.Context
+import android.content.ContextWrapper
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageInfo
+import android.content.pm.PackageInfo.REQUESTED_PERMISSION_GRANTED
+import android.content.pm.PackageManager
+import android.content.pm.PermissionInfo
+import android.os.Build
+import android.os.Process
+import android.os.UserHandle
+import android.util.Xml
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.Constants.DELAYED_RESTORE_PERMISSIONS_DIR
+import com.android.permissioncontroller.Constants.DELAYED_RESTORE_PERMISSIONS_FILE
+import com.android.permissioncontroller.permission.service.BackupHelper
+import com.google.common.truth.Truth.assertThat
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.charset.StandardCharsets.UTF_8
+import org.junit.After
+import org.junit.Assert.assertThrows
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.Mockito.doReturn
+import org.mockito.Mockito.doThrow
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import org.xmlpull.v1.XmlPullParserException
+
+@RunWith(AndroidJUnit4::class)
+class BackupHelperTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val packageManager = mock(PackageManager::class.java)
+    private val user = Process.myUserHandle()
+    private val filesDir = File(context.cacheDir, "backup_helper_test")
+    private val testContext = TestContext(context, filesDir, packageManager)
+
+    private val stagedFile: File
+        get() = File(File(filesDir, DELAYED_RESTORE_PERMISSIONS_DIR), PACKAGE_NAME)
+
+    private val legacyFile: File
+        get() = File(filesDir, DELAYED_RESTORE_PERMISSIONS_FILE)
+
+    @Before
+    fun setup() {
+        filesDir.deleteRecursively()
+        assertThat(filesDir.mkdirs()).isTrue()
+
+        val permissionInfo =
+            PermissionInfo().apply {
+                name = PERMISSION
+                packageName = DEFINING_PACKAGE_NAME
+                nonLocalizedLabel = PERMISSION
+                protectionLevel = PermissionInfo.PROTECTION_DANGEROUS
+                flags = PermissionInfo.FLAG_INSTALLED
+            }
+        `when`(packageManager.getPermissionInfo(PERMISSION, 0)).thenReturn(permissionInfo)
+        `when`(packageManager.getInstalledPackages(anyInt()))
+            .thenReturn(listOf(packageInfo(granted = true)))
+    }
+
+    @After
+    fun cleanup() {
+        filesDir.deleteRecursively()
+    }
+
+    @Test
+    fun restoreState_packageInstalled_restoresPermission() {
+        val backup = writeState()
+        setPackageInstalled(true)
+
+        restoreState(backup)
+
+        verify(packageManager).grantRuntimePermission(PACKAGE_NAME, PERMISSION, user)
+        assertThat(stagedFile.exists()).isFalse()
+    }
+
+    @Test
+    fun restoreState_packageNotInstalled_stagesPackage() {
+        val backup = writeState()
+        setPackageInstalled(false)
+
+        restoreState(backup)
+
+        verify(packageManager, never()).grantRuntimePermission(PACKAGE_NAME, PERMISSION, user)
+        assertThat(stagedFile.exists()).isTrue()
+    }
+
+    @Test
+    fun restoreDelayedState_packageInstalledAfterRestore_restoresPermission() {
+        val backup = writeState()
+        setPackageInstalled(false)
+        restoreState(backup)
+        setPackageInstalled(true)
+
+        val hasDelayedRestore = BackupHelper(testContext, user).restoreDelayedState(PACKAGE_NAME)
+
+        assertThat(hasDelayedRestore).isFalse()
+        verify(packageManager).grantRuntimePermission(PACKAGE_NAME, PERMISSION, user)
+        assertThat(stagedFile.exists()).isFalse()
+    }
+
+    @Test
+    fun restoreDelayedState_packageStillNotInstalled_keepsStagedPackage() {
+        val backup = writeState()
+        setPackageInstalled(false)
+        restoreState(backup)
+
+        val hasDelayedRestore = BackupHelper(testContext, user).restoreDelayedState(PACKAGE_NAME)
+
+        assertThat(hasDelayedRestore).isTrue()
+        assertThat(stagedFile.exists()).isTrue()
+    }
+
+    @Test
+    fun restoreDelayedState_otherPackage_keepsStagedPackage() {
+        val backup = writeState()
+        setPackageInstalled(false)
+        restoreState(backup)
+
+        val hasDelayedRestore =
+            BackupHelper(testContext, user).restoreDelayedState(OTHER_PACKAGE_NAME)
+
+        assertThat(hasDelayedRestore).isTrue()
+        assertThat(stagedFile.exists()).isTrue()
+    }
+
+    @Test
+    fun restoreState_newBackup_clearsStagedPackages() {
+        val backup = writeState()
+        setPackageInstalled(false)
+        restoreState(backup)
+        `when`(packageManager.getInstalledPackages(anyInt())).thenReturn(emptyList())
+
+        restoreState(writeState())
+
+        assertThat(stagedFile.exists()).isFalse()
+        assertThat(BackupHelper(testContext, user).restoreDelayedState(OTHER_PACKAGE_NAME))
+            .isFalse()
+    }
+
+    @Test
+    fun restoreState_malformedBackup_keepsStagedPackages() {
+        val backup = writeState()
+        setPackageInstalled(false)
+        restoreState(backup)
+
+        assertThrows(XmlPullParserException::class.java) { restoreState(MALFORMED_BACKUP) }
+
+        assertThat(stagedFile.exists()).isTrue()
+        assertThat(BackupHelper(testContext, user).restoreDelayedState(OTHER_PACKAGE_NAME))
+            .isTrue()
+    }
+
+    @Test
+    fun restoreState_malformedAfterFirstPackage_restoresParsedPackages() {
+        val backup = writeState()
+        setPackageInstalled(false)
+        restoreState(backup)
+        setPackageInstalled(true)
+
+        assertThrows(XmlPullParserException::class.java) {
+            restoreState(MALFORMED_AFTER_FIRST_PACKAGE_BACKUP)
+        }
+
+        verify(packageManager).grantRuntimePermission(PACKAGE_NAME, PERMISSION, user)
+        assertThat(stagedFile.exists()).isFalse()
+    }
+
+    @Test
+    fun restoreDelayedState_legacyFile_migratesAndRestoresPermission() {
+        legacyFile.writeBytes(writeState())
+        setPackageInstalled(true)
+
+        val hasDelayedRestore = BackupHelper(testContext, user).restoreDelayedState(PACKAGE_NAME)
+
+        assertThat(hasDelayedRestore).isFalse()
+        verify(packageManager).grantRuntimePermission(PACKAGE_NAME, PERMISSION, user)
+        assertThat(legacyFile.exists()).isFalse()
+    }
+
+    @Test
+    fun restoreDelayedState_legacyFileOtherPackage_migratesPackage() {
+        legacyFile.writeBytes(writeState())
+
+        val hasDelayedRestore =
+            BackupHelper(testContext, user).restoreDelayedState(OTHER_PACKAGE_NAME)
+
+        assertThat(hasDelayedRestore).isTrue()
+        assertThat(stagedFile.exists()).isTrue()
+        assertThat(legacyFile.exists()).isFalse()
+    }
+
+    @Test
+    fun restoreDelayedState_malformedLegacyFile_keepsLegacyFile() {
+        legacyFile.writeBytes(MALFORMED_BACKUP)
+
+        BackupHelper(testContext, user).restoreDelayedState(PACKAGE_NAME)
+
+        assertThat(legacyFile.exists()).isTrue()
+        assertThat(legacyFile.readBytes()).isEqualTo(MALFORMED_BACKUP)
+    }
+
+    private fun writeState(): ByteArray {
+        val out = ByteArrayOutputStream()
+        val serializer = Xml.newSerializer()
+        serializer.setOutput(out, UTF_8.name())
+        BackupHelper(testContext, user).writeState(serializer)
+        serializer.flush()
+        return out.toByteArray()
+    }
+
+    private fun restoreState(backup: ByteArray) {
+        val parser = Xml.newPullParser()
+        parser.setInput(ByteArrayInputStream(backup), UTF_8.name())
+        BackupHelper(testContext, user).restoreState(parser)
+    }
+
+    private fun setPackageInstalled(installed: Boolean) {
+        if (installed) {
+            doReturn(packageInfo(granted = false))
+                .`when`(packageManager)
+                .getPackageInfo(eq(PACKAGE_NAME), anyInt())
+        } else {
+            doThrow(PackageManager.NameNotFoundException())
+                .`when`(packageManager)
+                .getPackageInfo(eq(PACKAGE_NAME), anyInt())
+        }
+    }
+
+    private fun packageInfo(granted: Boolean): PackageInfo =
+        PackageInfo().apply {
+            packageName = PACKAGE_NAME
+            requestedPermissions = arrayOf(PERMISSION)
+            requestedPermissionsFlags = intArrayOf(if (granted) REQUESTED_PERMISSION_GRANTED else 0)
+            applicationInfo =
+                ApplicationInfo().apply {
+                    packageName = PACKAGE_NAME
+                    nonLocalizedLabel = PACKAGE_NAME
+                    uid = user.getUid(APP_ID)
+                    targetSdkVersion = Build.VERSION_CODES.R
+                }
+        }
+
+    /** A context that keeps its files in a test directory and uses a fake [PackageManager] */
+    private class TestContext(
+        base: Context,
+        private val filesDir: File,
+        private val packageManager: PackageManager
+    ) : ContextWrapper(base) {
+        override fun getFilesDir(): File = filesDir
+
+        override fun getFileStreamPath(name: String): File = File(filesDir, name)
+
+        override fun getPackageManager(): PackageManager = packageManager
+
+        override fun createPackageContextAsUser(
+            packageName: String,
+            flags: Int,
+            user: UserHandle
+        ): Context = this
+    }
+
+    companion object {
+        private const val PACKAGE_NAME = "com.example.app"
+        private const val OTHER_PACKAGE_NAME = "com.example.other"
+        private const val DEFINING_PACKAGE_NAME = "com.example.definer"
+        private const val PERMISSION = "com.example.permission.TEST"
+        private const val APP_ID = 10123
+        private val MALFORMED_BACKUP =
+            "<perm-grant-backup version=\"29\"></rt-grants></perm-grant-backup>".toByteArray()
+        private val MALFORMED_AFTER_FIRST_PACKAGE_BACKUP =
+            ("<perm-grant-backup version=\"29\"><rt-grants>" +
+                    "<grant pkg=\"$PACKAGE_NAME\"><perm name=\"$PERMISSION\" g=\"true\"/>" +
+                    "</grant></not-rt-grants>")
+                .toByteArray()
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.service
+
+import android.permission.PermissionControllerManager.COUNT_ONLY_WHEN_GRANTED
+import android.permission.PermissionControllerManager.COUNT_WHEN_SYSTEM
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
+import com.android.permissioncontroller.permission.service.countPermissionAppsFromUiInfos
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class PermissionAppsCounterTest {
+
+    @Test
+    fun countPermissionAppsFromUiInfos_noPackages_returnsZero() {
+        assertThat(countPermissionAppsFromUiInfos(emptyList(), 0)).isEqualTo(0)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_grantedGroup_countsPackage() {
+        val uiInfosPerPackage = listOf(listOf(uiInfo(PermGrantState.PERMS_ALLOWED)))
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, COUNT_ONLY_WHEN_GRANTED))
+            .isEqualTo(1)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_severalGrantedGroups_countsEachGroup() {
+        val uiInfosPerPackage =
+            listOf(
+                listOf(
+                    uiInfo(PermGrantState.PERMS_ALLOWED),
+                    uiInfo(PermGrantState.PERMS_ALLOWED_ALWAYS)
+                )
+            )
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, 0)).isEqualTo(2)
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, COUNT_ONLY_WHEN_GRANTED))
+            .isEqualTo(2)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_severalDeniedGroups_countsPackageOnce() {
+        val uiInfosPerPackage =
+            listOf(listOf(uiInfo(PermGrantState.PERMS_DENIED), uiInfo(PermGrantState.PERMS_ASK)))
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, 0)).isEqualTo(1)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_deniedThenGrantedGroup_countsBoth() {
+        val uiInfosPerPackage =
+            listOf(
+                listOf(uiInfo(PermGrantState.PERMS_DENIED), uiInfo(PermGrantState.PERMS_ALLOWED))
+            )
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, 0)).isEqualTo(2)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_deniedGroupOnlyGranted_doesntCountPackage() {
+        val uiInfosPerPackage = listOf(listOf(uiInfo(PermGrantState.PERMS_DENIED)))
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, COUNT_ONLY_WHEN_GRANTED))
+            .isEqualTo(0)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_systemGroup_countsOnlyWhenSystem() {
+        val uiInfosPerPackage =
+            listOf(listOf(uiInfo(PermGrantState.PERMS_ALLOWED, isSystem = true)))
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, 0)).isEqualTo(0)
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, COUNT_WHEN_SYSTEM))
+            .isEqualTo(1)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_hiddenGroup_doesntCountPackage() {
+        val uiInfosPerPackage =
+            listOf(listOf(uiInfo(PermGrantState.PERMS_ALLOWED, shouldShow = false)))
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, COUNT_WHEN_SYSTEM))
+            .isEqualTo(0)
+    }
+
+    @Test
+    fun countPermissionAppsFromUiInfos_severalPackages_countsEachPackage() {
+        val uiInfosPerPackage =
+            listOf(
+                listOf(uiInfo(PermGrantState.PERMS_ALLOWED)),
+                listOf(uiInfo(PermGrantState.PERMS_DENIED)),
+                listOf(uiInfo(PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY))
+            )
+
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, 0)).isEqualTo(3)
+        assertThat(countPermissionAppsFromUiInfos(uiInfosPerPackage, COUNT_ONLY_WHEN_GRANTED))
+            .isEqualTo(2)
+    }
+
+    private fun uiInfo(
+        permGrantState: PermGrantState,
+        shouldShow: Boolean = true,
+        isSystem: Boolean = false
+    ) = AppPermGroupUiInfo(shouldShow, permGrantState, isSystem, false /* isUserSet */)
+}
@@ -29,6 +29,8 @@ import android.Manifest.permission.READ_MEDIA_VIDEO
 import android.Manifest.permission.READ_MEDIA_VISUAL_USER_SELECTED
 import android.Manifest.permission.SEND_SMS
 import android.Manifest.permission.WRITE_EXTERNAL_STORAGE
+import android.Manifest.permission_group.LOCATION
+import android.Manifest.permission_group.SENSORS
 import android.app.ActivityManager
 import android.app.AppOpsManager
 import android.app.job.JobScheduler
@@ -46,6 +48,7 @@ import android.content.pm.PermissionInfo
 import android.location.LocationManager
 import android.os.Build
 import android.os.Build.VERSION_CODES.R
+import android.os.Process.myUserHandle
 import android.os.UserManager
 import android.permission.PermissionManager
 import android.provider.Settings
@@ -56,9 +59,14 @@ import com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession
 import com.android.modules.utils.build.SdkLevel
 import com.android.permissioncontroller.DeviceUtils
 import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.LightAppPermGroupLiveData
+import com.android.permissioncontroller.permission.data.UserPackageInfosLiveData
+import com.android.permissioncontroller.permission.data.get
 import com.android.permissioncontroller.permission.service.RuntimePermissionsUpgradeController
 import com.android.permissioncontroller.tests.mocking.permission.data.dataRepositories
+import com.google.common.truth.Truth.assertThat
 import java.util.concurrent.CompletableFuture
+import kotlinx.coroutines.runBlocking
 import org.junit.After
 import org.junit.Assume
 import org.junit.Before
@@ -731,6 +739,37 @@ class RuntimePermissionsUpgradeControllerTest {
         verifyNotGranted(TEST_PKG_NAME, BODY_SENSORS_BACKGROUND)
     }
 
+    @Test
+    fun loadAppPermGroups_sameAsLightAppPermGroupLiveData() {
+        setPackages(
+            Package(
+                TEST_PKG_NAME,
+                Permission(
+                    ACCESS_FINE_LOCATION,
+                    isGranted = true,
+                    flags = FLAG_PERMISSION_USER_SET
+                ),
+                Permission(ACCESS_BACKGROUND_LOCATION),
+                Permission(BODY_SENSORS, isGranted = true),
+                Permission(BODY_SENSORS_BACKGROUND, flags = FLAG_PERMISSION_USER_SET)
+            )
+        )
+        val appPermGroups = setOf(TEST_PKG_NAME to LOCATION, TEST_PKG_NAME to SENSORS)
+        val pkgs = UserPackageInfosLiveData.loadPackageInfos(application, myUserHandle())
+
+        val loadedAppPermGroups = runBlocking {
+            RuntimePermissionsUpgradeController.loadAppPermGroups(application, pkgs, appPermGroups)
+        }
+
+        val liveDataAppPermGroups = runBlocking {
+            appPermGroups.map { (pkgName, permGroupName) ->
+                LightAppPermGroupLiveData[pkgName, permGroupName, myUserHandle()]
+                    .getInitializedValue()
+            }
+        }
+        assertThat(loadedAppPermGroups).containsExactlyElementsIn(liveDataAppPermGroups)
+    }
+
     @After
     fun resetSystem() {
         // Send low memory notifications for all data repositories which will clear cached data
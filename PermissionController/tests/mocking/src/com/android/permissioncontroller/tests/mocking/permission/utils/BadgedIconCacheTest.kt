@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.utils
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Drawable
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Process
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.utils.BadgedIconCache
+import com.android.permissioncontroller.permission.utils.Utils
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class BadgedIconCacheTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val packageName = context.packageName
+    private val user = Process.myUserHandle()
+    private val bgThread = HandlerThread(BadgedIconCacheTest::class.java.simpleName)
+
+    private lateinit var cache: BadgedIconCache
+
+    @Before
+    fun setUp() {
+        context.deleteDatabase(DB_FILE_NAME)
+        bgThread.start()
+        cache = newCache()
+    }
+
+    @After
+    fun tearDown() {
+        waitForBackgroundLooper()
+        bgThread.quitSafely()
+        context.deleteDatabase(DB_FILE_NAME)
+    }
+
+    @Test
+    fun getBadgedIcon_miss_rendersSameIconAsUtils() {
+        val appInfo = context.packageManager.getApplicationInfo(packageName, 0)
+
+        val icon = cache.getBadgedIcon(packageName, user)
+
+        assertThat(icon.bitmap.sameAs(Utils.getBadgedIcon(context, appInfo).bitmap)).isTrue()
+        assertThat(cache.isIconInMemory(packageName, user)).isTrue()
+    }
+
+    @Test
+    fun getBadgedIcon_hit_servesCachedIcon() {
+        val icon = cache.getBadgedIcon(packageName, user)
+
+        val cachedIcon = cache.getBadgedIcon(packageName, user)
+
+        assertThat(cachedIcon.bitmap).isSameInstanceAs(icon.bitmap)
+    }
+
+    @Test
+    fun getBadgedIcon_unknownPackage_returnsNull() {
+        assertThat(cache.getBadgedIcon(UNKNOWN_PACKAGE_NAME, user)).isNull()
+        assertThat(cache.isIconInMemory(UNKNOWN_PACKAGE_NAME, user)).isFalse()
+    }
+
+    @Test
+    fun onPackageUpdate_rendersIconAgain() {
+        val icon = cache.getBadgedIcon(packageName, user)
+
+        cache.onPackageUpdate(packageName)
+
+        assertThat(cache.isIconInMemory(packageName, user)).isFalse()
+        assertThat(cache.getBadgedIcon(packageName, user).bitmap).isNotSameInstanceAs(icon.bitmap)
+    }
+
+    @Test
+    fun onPackageUpdate_otherPackage_keepsIcon() {
+        cache.getBadgedIcon(packageName, user)
+
+        cache.onPackageUpdate(UNKNOWN_PACKAGE_NAME)
+
+        assertThat(cache.isIconInMemory(packageName, user)).isTrue()
+    }
+
+    @Test
+    fun loadPersistedIcons_iconPersistedByOtherCache_loadsIcon() {
+        cache.getBadgedIcon(packageName, user)
+        waitForBackgroundLooper()
+        val newCache = newCache()
+
+        newCache.loadPersistedIcons()
+        waitForBackgroundLooper()
+
+        assertThat(newCache.isIconInMemory(packageName, user)).isTrue()
+    }
+
+    @Test
+    fun loadPersistedIcons_nothingPersisted_doesntLoadIcon() {
+        cache.loadPersistedIcons()
+        waitForBackgroundLooper()
+
+        assertThat(cache.isIconInMemory(packageName, user)).isFalse()
+    }
+
+    @Test
+    fun removeIcons_dropsMemoryAndPersistedIcons() {
+        cache.getBadgedIcon(packageName, user)
+        waitForBackgroundLooper()
+
+        cache.removeIcons(packageName, user)
+        val newCache = newCache()
+        newCache.loadPersistedIcons()
+        waitForBackgroundLooper()
+
+        assertThat(cache.isIconInMemory(packageName, user)).isFalse()
+        assertThat(newCache.isIconInMemory(packageName, user)).isFalse()
+    }
+
+    private fun newCache() = BadgedIconCache(context, DB_FILE_NAME, bgThread.looper)
+
+    /** Waits for the icons to be persisted or loaded on the background looper. */
+    private fun waitForBackgroundLooper() {
+        val latch = CountDownLatch(1)
+        Handler(bgThread.looper).post { latch.countDown() }
+        assertThat(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue()
+    }
+
+    private val Drawable?.bitmap: Bitmap
+        get() = (this as BitmapDrawable).bitmap
+
+    companion object {
+        private const val DB_FILE_NAME = "badged_app_icons_test.db"
+        private const val UNKNOWN_PACKAGE_NAME = "com.android.permissioncontroller.unknown"
+        private const val TIMEOUT_SECONDS = 5L
+    }
+}
@@ -52,6 +52,7 @@ import com.android.permissioncontroller.permission.utils.ContextCompat
 import com.android.permissioncontroller.permission.utils.KotlinUtils
 import com.google.common.truth.Truth.assertThat
 import com.google.common.truth.Truth.assertWithMessage
+import org.junit.Assert.assertThrows
 import org.junit.Assume.assumeNotNull
 import org.junit.Assume.assumeTrue
 import org.junit.BeforeClass
@@ -62,8 +63,10 @@ import org.mockito.ArgumentMatchers.anyString
 import org.mockito.ArgumentMatchers.eq
 import org.mockito.ArgumentMatchers.nullable
 import org.mockito.Mock
+import org.mockito.Mockito.inOrder
 import org.mockito.Mockito.mock
 import org.mockito.Mockito.never
+import org.mockito.Mockito.times
 import org.mockito.Mockito.verify
 import org.mockito.Mockito.`when`
 
@@ -1308,4 +1311,232 @@ class GrantRevokeTests {
         val expectedState = mutableMapOf(FG_PERM_NAME to (false to newFlags))
         assertGroupPermState(newGroup, expectedState)
     }
+
+    /**
+     * Test granting a foreground and a background permission with the batch API. The result should
+     * be the same as granting them with the per-group API, but each permission flag and app op
+     * should only be written once.
+     */
+    @Test
+    fun batchGrantMatchesPerGroupGrantTest() {
+        val pkg = createMockPackage(mapOf(FG_PERM_NAME to false, BG_PERM_NAME to false))
+        val perms = mutableMapOf<String, LightPermission>()
+        perms[FG_PERM_NAME] = createMockPerm(pkg, FG_PERM_NAME, BG_PERM_NAME)
+        perms[BG_PERM_NAME] = createMockPerm(pkg, BG_PERM_NAME, null, listOf(FG_PERM_NAME))
+        val group = createMockGroup(pkg, perms)
+        resetMockAppState()
+        val perGroupGroup =
+            KotlinUtils.grantBackgroundRuntimePermissions(
+                app,
+                KotlinUtils.grantForegroundRuntimePermissions(app, group)
+            )
+        resetMockAppState()
+
+        val newGroups =
+            KotlinUtils.grantRuntimePermissions(app, mapOf(group to group.permissions.keys))
+
+        val newFlags = FLAG_PERMISSION_USER_SET
+        verifyPermissionState(
+            permName = FG_PERM_NAME,
+            expectPermChange = true,
+            expectPermGranted = true,
+            expectedFlags = newFlags
+        )
+        verifyPermissionState(
+            permName = BG_PERM_NAME,
+            expectPermChange = true,
+            expectPermGranted = true,
+            expectedFlags = newFlags
+        )
+        verifyAppOpState(appOpName = OP_NAME, expectAppOpSet = true, expectedMode = MODE_ALLOWED)
+        val aom = app.getSystemService(AppOpsManager::class.java)
+        verify(aom, never()).setUidMode(OP_NAME, TEST_UID, MODE_FOREGROUND)
+        verifyAppKillState(shouldBeKilled = false)
+
+        assertThat(newGroups).hasSize(1)
+        val expectedState =
+            perGroupGroup.permissions.mapValues { (_, perm) ->
+                perm.isGrantedIncludingAppOp to perm.flags
+            }
+        assertGroupPermState(newGroups[0], expectedState)
+    }
+
+    /**
+     * Test granting a foreground and a background permission with the batch API. Both permissions
+     * should be granted before the app op is allowed.
+     */
+    @Test
+    fun batchGrantAppliesPermissionsBeforeAppOpsTest() {
+        val pkg = createMockPackage(mapOf(FG_PERM_NAME to false, BG_PERM_NAME to false))
+        val perms = mutableMapOf<String, LightPermission>()
+        perms[FG_PERM_NAME] = createMockPerm(pkg, FG_PERM_NAME, BG_PERM_NAME)
+        perms[BG_PERM_NAME] = createMockPerm(pkg, BG_PERM_NAME, null, listOf(FG_PERM_NAME))
+        val group = createMockGroup(pkg, perms)
+        resetMockAppState()
+
+        KotlinUtils.grantRuntimePermissions(app, mapOf(group to group.permissions.keys))
+
+        val pm = context.packageManager
+        val aom = app.getSystemService(AppOpsManager::class.java)
+        for (permName in listOf(FG_PERM_NAME, BG_PERM_NAME)) {
+            val inOrder = inOrder(pm, aom)
+            inOrder.verify(pm).grantRuntimePermission(TEST_PACKAGE_NAME, permName, TEST_USER)
+            inOrder.verify(aom).setUidMode(OP_NAME, TEST_UID, MODE_ALLOWED)
+        }
+    }
+
+    /**
+     * Test granting a permission without its app op. The REVOKED_COMPAT flag should be set before
+     * the permission is granted, and the app op should be disallowed afterwards.
+     */
+    @Test
+    fun grantWithoutAppOpsSetsRevokedCompatBeforeGrantTest() {
+        val pkg = createMockPackage(mapOf(FG_PERM_NAME to false))
+        val perms = mutableMapOf<String, LightPermission>()
+        perms[FG_PERM_NAME] = createMockPerm(pkg, FG_PERM_NAME)
+        val group = createMockGroup(pkg, perms)
+        resetMockAppState()
+
+        val newGroup =
+            KotlinUtils.grantForegroundRuntimePermissions(app, group, withoutAppOps = true)
+
+        val newFlags = FLAG_PERMISSION_REVOKED_COMPAT
+        val pm = context.packageManager
+        val aom = app.getSystemService(AppOpsManager::class.java)
+        val inOrder = inOrder(pm, aom)
+        inOrder
+            .verify(pm)
+            .updatePermissionFlags(
+                FG_PERM_NAME,
+                TEST_PACKAGE_NAME,
+                PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
+                newFlags,
+                TEST_USER
+            )
+        inOrder.verify(pm).grantRuntimePermission(TEST_PACKAGE_NAME, FG_PERM_NAME, TEST_USER)
+        inOrder.verify(aom).setUidMode(OP_NAME, TEST_UID, MODE_IGNORED)
+
+        val expectedState = mutableMapOf(FG_PERM_NAME to (true to newFlags))
+        assertGroupPermState(newGroup, expectedState)
+    }
+
+    /**
+     * Test revoking a foreground and a background permission with the batch API. The result should
+     * be the same as revoking them with the per-group API, but the app op should only be written
+     * once.
+     */
+    @Test
+    fun batchRevokeMatchesPerGroupRevokeTest() {
+        val pkg = createMockPackage(mapOf(FG_PERM_NAME to true, BG_PERM_NAME to true))
+        val perms = mutableMapOf<String, LightPermission>()
+        perms[FG_PERM_NAME] = createMockPerm(pkg, FG_PERM_NAME, BG_PERM_NAME)
+        perms[BG_PERM_NAME] = createMockPerm(pkg, BG_PERM_NAME, null, listOf(FG_PERM_NAME))
+        val group = createMockGroup(pkg, perms)
+        resetMockAppState()
+        val perGroupGroup =
+            KotlinUtils.revokeForegroundRuntimePermissions(
+                app,
+                KotlinUtils.revokeBackgroundRuntimePermissions(app, group, true),
+                true
+            )
+        resetMockAppState()
+
+        val newGroups =
+            KotlinUtils.revokeRuntimePermissions(
+                app,
+                mapOf(group to group.permissions.keys),
+                userFixed = true
+            )
+
+        val newFlags = FLAG_PERMISSION_USER_SET or FLAG_PERMISSION_USER_FIXED
+        verifyPermissionState(
+            permName = FG_PERM_NAME,
+            expectPermChange = true,
+            expectPermGranted = false,
+            expectedFlags = newFlags
+        )
+        verifyPermissionState(
+            permName = BG_PERM_NAME,
+            expectPermChange = true,
+            expectPermGranted = false,
+            expectedFlags = newFlags
+        )
+        verifyAppOpState(appOpName = OP_NAME, expectAppOpSet = true, expectedMode = MODE_IGNORED)
+        val aom = app.getSystemService(AppOpsManager::class.java)
+        verify(aom, never()).setUidMode(OP_NAME, TEST_UID, MODE_FOREGROUND)
+
+        assertThat(newGroups).hasSize(1)
+        val expectedState =
+            perGroupGroup.permissions.mapValues { (_, perm) ->
+                perm.isGrantedIncludingAppOp to perm.flags
+            }
+        assertGroupPermState(newGroups[0], expectedState)
+    }
+
+    /**
+     * Test revoking a permission with additional flags to set and clear. The additional flags
+     * should be folded into the single flag update of the revocation.
+     */
+    @Test
+    fun batchRevokeWithAdditionalFlagsTest() {
+        val pkg = createMockPackage(mapOf(FG_PERM_NAME to true))
+        val perms = mutableMapOf<String, LightPermission>()
+        val oldFlags = FLAG_PERMISSION_USER_SET
+        perms[FG_PERM_NAME] = createMockPerm(pkg, FG_PERM_NAME, null, null, oldFlags)
+        val group = createMockGroup(pkg, perms)
+        resetMockAppState()
+
+        val newGroups =
+            KotlinUtils.revokeRuntimePermissions(
+                app,
+                mapOf(group to listOf(FG_PERM_NAME)),
+                flagsToSet = FLAG_PERMISSION_AUTO_REVOKED,
+                flagsToClear = FLAG_PERMISSION_USER_SET
+            )
+
+        val newFlags = FLAG_PERMISSION_AUTO_REVOKED
+        verifyPermissionState(
+            permName = FG_PERM_NAME,
+            expectPermChange = true,
+            expectPermGranted = false,
+            expectedFlags = newFlags,
+            originalFlags = oldFlags
+        )
+        verify(context.packageManager, times(1))
+            .updatePermissionFlags(
+                eq(FG_PERM_NAME),
+                eq(TEST_PACKAGE_NAME),
+                anyInt(),
+                anyInt(),
+                eq(TEST_USER)
+            )
+        verifyAppOpState(appOpName = OP_NAME, expectAppOpSet = true, expectedMode = MODE_IGNORED)
+
+        val expectedState = mutableMapOf(FG_PERM_NAME to (false to newFlags))
+        assertGroupPermState(newGroups[0], expectedState)
+    }
+
+    /**
+     * Test revoking a permission with additional flags the permission controller doesn't change.
+     * The revocation should be rejected instead of silently dropping the flags.
+     */
+    @Test
+    fun batchRevokeWithUnsupportedFlagsTest() {
+        val pkg = createMockPackage(mapOf(FG_PERM_NAME to true))
+        val perms = mutableMapOf<String, LightPermission>()
+        perms[FG_PERM_NAME] = createMockPerm(pkg, FG_PERM_NAME)
+        val group = createMockGroup(pkg, perms)
+        resetMockAppState()
+
+        assertThrows(IllegalArgumentException::class.java) {
+            KotlinUtils.revokeRuntimePermissions(
+                app,
+                mapOf(group to listOf(FG_PERM_NAME)),
+                flagsToSet = FLAG_PERMISSION_SYSTEM_FIXED
+            )
+        }
+
+        verifyPermissionState(permName = FG_PERM_NAME, expectPermChange = false)
+        verifyAppOpState(appOpName = OP_NAME, expectAppOpSet = false)
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.utils
+
+import android.content.pm.PackageManager
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED
+import android.os.Build
+import android.os.UserHandle
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.UidSensitivityState
+import com.android.permissioncontroller.permission.utils.ContextCompat
+import com.android.permissioncontroller.permission.utils.updateUserSensitiveForUidsInternal
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+@RunWith(AndroidJUnit4::class)
+class UserSensitiveFlagsUtilsTest {
+    private val packageManager = mock(PackageManager::class.java)
+
+    @Before
+    fun setup() {
+        `when`(packageManager.getPermissionFlags(anyString(), eq(PACKAGE_NAME), eq(USER)))
+            .thenReturn(0)
+    }
+
+    @Test
+    fun updateUserSensitiveForUidsInternal_updatesOnlyChangedFlags() {
+        `when`(packageManager.getPermissionFlags(eq(PERMISSION), eq(PACKAGE_NAME), eq(USER)))
+            .thenReturn(FLAGS_ALWAYS_USER_SENSITIVE)
+
+        update(uidStates())
+
+        verify(packageManager, never())
+            .updatePermissionFlags(eq(PERMISSION), anyString(), anyInt(), anyInt(), eq(USER))
+        verify(packageManager)
+            .updatePermissionFlags(
+                OTHER_PERMISSION,
+                PACKAGE_NAME,
+                FLAGS_ALWAYS_USER_SENSITIVE,
+                FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED,
+                USER
+            )
+    }
+
+    @Test
+    fun updateUserSensitiveForUidsInternal_calledTwice_reconcilesTwice() {
+        update(uidStates())
+
+        update(uidStates())
+
+        verifyPermissionFlagsReads(2)
+    }
+
+    @Test
+    fun updateUserSensitiveForUidsInternal_unknownPermission_updatesOtherPermissions() {
+        `when`(packageManager.getPermissionFlags(eq(PERMISSION), eq(PACKAGE_NAME), eq(USER)))
+            .thenThrow(IllegalArgumentException("Unknown permission: $PERMISSION"))
+
+        update(uidStates())
+
+        verify(packageManager)
+            .updatePermissionFlags(
+                OTHER_PERMISSION,
+                PACKAGE_NAME,
+                FLAGS_ALWAYS_USER_SENSITIVE,
+                FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED,
+                USER
+            )
+    }
+
+    @Test
+    fun updateUserSensitiveForUidsInternal_unexpectedError_updatesOtherPermissions() {
+        `when`(packageManager.getPermissionFlags(eq(PERMISSION), eq(PACKAGE_NAME), eq(USER)))
+            .thenThrow(IllegalArgumentException("Unexpected"))
+
+        update(uidStates())
+
+        verifyPermissionFlagsReads(1)
+        verify(packageManager)
+            .updatePermissionFlags(
+                OTHER_PERMISSION,
+                PACKAGE_NAME,
+                FLAGS_ALWAYS_USER_SENSITIVE,
+                FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED,
+                USER
+            )
+    }
+
+    private fun update(uidStates: Map<Int, UidSensitivityState>) {
+        updateUserSensitiveForUidsInternal(uidStates, USER, packageManager)
+    }
+
+    private fun verifyPermissionFlagsReads(count: Int) {
+        verify(packageManager, times(count)).getPermissionFlags(PERMISSION, PACKAGE_NAME, USER)
+        verify(packageManager, times(count))
+            .getPermissionFlags(OTHER_PERMISSION, PACKAGE_NAME, USER)
+    }
+
+    private fun uidStates(): Map<Int, UidSensitivityState> =
+        mapOf(
+            UID to
+                UidSensitivityState(
+                    mutableSetOf(makePackageInfo()),
+                    mutableMapOf(
+                        PERMISSION to FLAGS_ALWAYS_USER_SENSITIVE,
+                        OTHER_PERMISSION to FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED
+                    )
+                )
+        )
+
+    private fun makePackageInfo(): LightPackageInfo {
+        return LightPackageInfo(
+            PACKAGE_NAME,
+            emptyList(),
+            listOf(PERMISSION, OTHER_PERMISSION),
+            listOf(0, 0),
+            UID,
+            Build.VERSION_CODES.CUR_DEVELOPMENT,
+            false /* isInstantApp */,
+            true /* enabled */,
+            0 /* appFlags */,
+            0 /* firstInstallTime */,
+            0 /* lastUpdateTime */,
+            false /* areAttributionsUserVisible */,
+            emptyMap() /* attributionTagsToLabels */,
+            ContextCompat.DEVICE_ID_DEFAULT
+        )
+    }
+
+    companion object {
+        private const val PACKAGE_NAME = "com.example.app"
+        private const val PERMISSION = "android.permission.CAMERA"
+        private const val OTHER_PERMISSION = "android.permission.RECORD_AUDIO"
+        private const val UID = 10001
+        private const val FLAGS_ALWAYS_USER_SENSITIVE =
+            FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED or
+                FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED
+        private val USER = UserHandle.of(0)
+    }
+}
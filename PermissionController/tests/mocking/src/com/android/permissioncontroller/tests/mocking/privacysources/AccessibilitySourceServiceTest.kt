@@ -76,6 +76,7 @@ class AccessibilitySourceServiceTest {
         }
         sharedPref = accessibilitySourceService.getSharedPreference()
         sharedPref.edit().clear().apply()
+        accessibilitySourceService.getNotifiedServicesStore().clear()
     }
 
     @After
@@ -83,6 +84,7 @@ class AccessibilitySourceServiceTest {
         shouldCancel = false
         mockitoSession.finishMocking()
         sharedPref.edit().clear().apply()
+        accessibilitySourceService.getNotifiedServicesStore().clear()
     }
 
     @Test
@@ -208,11 +210,8 @@ class AccessibilitySourceServiceTest {
         assertThat(updatedComponents).isEmpty()
     }
 
-    private fun getNotifiedServices(): MutableSet<String> {
-        return sharedPref.getStringSet(
-            AccessibilitySourceService.KEY_ALREADY_NOTIFIED_SERVICES,
-            mutableSetOf<String>()
-        )!!
+    private fun getNotifiedServices(): Set<String> {
+        return accessibilitySourceService.getNotifiedServicesStore().getKeys()
     }
 
     private fun <R> runWithShellPermissionIdentity(block: () -> R): R {
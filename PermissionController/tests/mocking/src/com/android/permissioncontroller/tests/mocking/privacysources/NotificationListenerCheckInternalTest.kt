@@ -43,7 +43,9 @@ import com.android.permissioncontroller.privacysources.DisableNotificationListen
 import com.android.permissioncontroller.privacysources.NotificationListenerActionCardDismissalReceiver
 import com.android.permissioncontroller.privacysources.NotificationListenerCheckInternal
 import com.android.permissioncontroller.privacysources.NotificationListenerCheckInternal.Companion.NLS_PREFERENCE_FILE
+import com.android.permissioncontroller.privacysources.NotificationListenerCheckInternal.Companion.NOTIFIED_COMPONENTS_STORE_NAME
 import com.android.permissioncontroller.privacysources.NotificationListenerCheckJobService
+import com.android.permissioncontroller.privacysources.PrivacySourceStateStore
 import com.android.permissioncontroller.privacysources.SC_NLS_DISABLE_ACTION_ID
 import com.android.permissioncontroller.privacysources.SC_NLS_SOURCE_ID
 import com.google.common.truth.Truth.assertThat
@@ -572,6 +574,7 @@ class NotificationListenerCheckInternalTest {
             .edit()
             .clear()
             .apply()
+        PrivacySourceStateStore.forSource(context, NOTIFIED_COMPONENTS_STORE_NAME).clear()
     }
 
     private fun <R> runWithShellPermissionIdentity(block: () -> R): R {
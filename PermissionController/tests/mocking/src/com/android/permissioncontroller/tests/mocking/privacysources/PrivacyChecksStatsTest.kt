@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.privacysources
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.privacysources.PrivacyChecksProto.PrivacyChecksDayProto
+import com.android.permissioncontroller.privacysources.PrivacyChecksStats
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class PrivacyChecksStatsTest {
+
+    private val context: Context = ApplicationProvider.getApplicationContext()
+
+    @Test
+    fun dump_reportsCheckRuns() {
+        val before = getTodayStats()
+
+        PrivacyChecksStats.runCheck(context, CHECK_NAME) {}
+        PrivacyChecksStats.runCheck(context, OTHER_CHECK_NAME) {}
+        PrivacyChecksStats.runCheck(context, CHECK_NAME) {}
+
+        val after = getTodayStats()
+        assertThat(after.checkRuns - before.checkRuns).isEqualTo(3)
+        assertThat(after.processCpuTimeMillis).isAtLeast(before.processCpuTimeMillis)
+    }
+
+    @Test
+    fun runCheck_returnsResultOfBlock() {
+        assertThat(PrivacyChecksStats.runCheck(context, CHECK_NAME) { RESULT }).isEqualTo(RESULT)
+    }
+
+    @Test
+    fun dump_nestedChecks_countsEveryRun() {
+        val before = getTodayStats()
+
+        PrivacyChecksStats.runCheck(context, CHECK_NAME) {
+            PrivacyChecksStats.runCheck(context, OTHER_CHECK_NAME) {}
+        }
+
+        val after = getTodayStats()
+        assertThat(after.checkRuns - before.checkRuns).isEqualTo(2)
+    }
+
+    @Test
+    fun finishCheck_withoutStart_isIgnored() {
+        val before = getTodayStats()
+
+        PrivacyChecksStats.finishCheck(context, CHECK_NAME)
+
+        val after = getTodayStats()
+        assertThat(after.checkRuns).isEqualTo(before.checkRuns)
+        assertThat(after.processCpuTimeMillis).isEqualTo(before.processCpuTimeMillis)
+    }
+
+    private fun getTodayStats(): PrivacyChecksDayProto =
+        PrivacyChecksStats.dump(context).daysList.lastOrNull()
+            ?: PrivacyChecksDayProto.getDefaultInstance()
+
+    companion object {
+        private const val CHECK_NAME = "check"
+        private const val OTHER_CHECK_NAME = "other_check"
+        private const val RESULT = "result"
+    }
+}
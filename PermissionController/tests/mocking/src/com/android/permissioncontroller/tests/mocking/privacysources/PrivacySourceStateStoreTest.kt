@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.privacysources
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.privacysources.PrivacySourceData
+import com.android.permissioncontroller.privacysources.PrivacySourceStateStore
+import com.android.permissioncontroller.privacysources.PrivacySourceStorageRepository
+import com.android.permissioncontroller.privacysources.TextStorageRepository
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class PrivacySourceStateStoreTest {
+
+    private lateinit var context: Context
+    private lateinit var dataFile: File
+    private lateinit var repository: CountingStorageRepository
+
+    @Before
+    fun setup() {
+        context = ApplicationProvider.getApplicationContext()
+        dataFile = context.getFileStreamPath("testStateStore")
+        repository = CountingStorageRepository(TextStorageRepository(dataFile))
+    }
+
+    @After
+    fun cleanup() {
+        context.deleteFile("testStateStore")
+    }
+
+    @Test
+    fun upsert_isReadBackFromNewStore() {
+        PrivacySourceStateStore(repository).upsert("a", "1")
+
+        val store = PrivacySourceStateStore(TextStorageRepository(dataFile))
+        assertThat(store.getAll()).containsExactly("a", "1")
+    }
+
+    @Test
+    fun upsert_sameValue_doesNotWrite() {
+        val store = PrivacySourceStateStore(repository)
+        store.upsert("a", "1")
+        val writes = repository.writes
+
+        store.upsert("a", "1")
+
+        assertThat(repository.writes).isEqualTo(writes)
+    }
+
+    @Test
+    fun batch_writesOnce() {
+        val store = PrivacySourceStateStore(repository)
+        store.getKeys()
+        val writes = repository.writes
+
+        store.batch {
+            upsert("a")
+            upsert("b")
+            remove("a")
+        }
+
+        assertThat(repository.writes).isEqualTo(writes + 1)
+        assertThat(store.getKeys()).containsExactly("b")
+    }
+
+    @Test
+    fun removeIf_removesMatchingEntries() {
+        val store = PrivacySourceStateStore(repository)
+        store.upsert("pkg1/A")
+        store.upsert("pkg1/B")
+        store.upsert("pkg2/A")
+
+        store.removeIf { key, _ -> key.startsWith("pkg1/") }
+
+        assertThat(store.getKeys()).containsExactly("pkg2/A")
+    }
+
+    @Test
+    fun legacyImporter_onlyCalledOnFirstRun() {
+        var imports = 0
+        val importer = {
+            imports++
+            mapOf("legacy" to "true")
+        }
+
+        assertThat(PrivacySourceStateStore(repository, importer).getAll())
+            .containsExactly("legacy", "true")
+        assertThat(PrivacySourceStateStore(repository, importer).getAll())
+            .containsExactly("legacy", "true")
+        assertThat(imports).isEqualTo(1)
+    }
+
+    @Test
+    fun legacyImporter_emptyImport_notCalledAgain() {
+        var imports = 0
+        val importer = {
+            imports++
+            emptyMap<String, String>()
+        }
+
+        PrivacySourceStateStore(repository, importer).getKeys()
+        PrivacySourceStateStore(repository, importer).getKeys()
+
+        assertThat(imports).isEqualTo(1)
+    }
+
+    private class CountingStorageRepository(private val delegate: PrivacySourceStorageRepository) :
+        PrivacySourceStorageRepository by delegate {
+        var writes = 0
+
+        override fun persistData(dataList: List<PrivacySourceData>) {
+            writes++
+            delegate.persistData(dataList)
+        }
+    }
+}
@@ -79,7 +79,7 @@ class AppsSafetyLabelHistoryPersistenceTest {
 
     @After
     fun cleanup() {
-        context.deleteFile(TEST_FILE_NAME)
+        AppsSafetyLabelHistoryPersistence.clear(dataFile)
         mockitoSession.finishMocking()
     }
 
@@ -174,6 +174,84 @@ class AppsSafetyLabelHistoryPersistenceTest {
         assertThat(AppsSafetyLabelHistoryPersistence.read(dataFile).version).isEqualTo(5)
     }
 
+    @Test
+    fun read_legacyFile_migratesHistory() {
+        dataFile.writeText(LEGACY_FILE_CONTENT)
+
+        assertThat(AppsSafetyLabelHistoryPersistence.read(dataFile).appsSafetyLabelHistory)
+            .isEqualTo(
+                AppsSafetyLabelHistory(
+                    listOf(
+                        AppSafetyLabelHistory(
+                            AppInfo(PACKAGE_NAME_1),
+                            listOf(SAFETY_LABEL_PKG_1_V1)
+                        )
+                    )
+                )
+            )
+        assertThat(dataFile.exists()).isFalse()
+    }
+
+    @Test
+    fun read_legacyFileFailedWrite_keepsLegacyFile() {
+        dataFile.writeText(LEGACY_FILE_CONTENT)
+        // A read-only apps directory that cannot be deleted makes the per-app writes fail.
+        val appsDirectory = File(dataFile.parentFile, dataFile.name + ".d")
+        assertThat(appsDirectory.mkdirs()).isTrue()
+        File(appsDirectory, "app_$PACKAGE_NAME_2.xml").writeText("")
+        assertThat(appsDirectory.setWritable(false)).isTrue()
+
+        try {
+            assertThat(AppsSafetyLabelHistoryPersistence.read(dataFile).appsSafetyLabelHistory)
+                .isNull()
+        } finally {
+            appsDirectory.setWritable(true)
+        }
+
+        assertThat(dataFile.readText()).isEqualTo(LEGACY_FILE_CONTENT)
+        assertThat(AppsSafetyLabelHistoryPersistence.read(dataFile).appsSafetyLabelHistory)
+            .isEqualTo(
+                AppsSafetyLabelHistory(
+                    listOf(
+                        AppSafetyLabelHistory(
+                            AppInfo(PACKAGE_NAME_1),
+                            listOf(SAFETY_LABEL_PKG_1_V1)
+                        )
+                    )
+                )
+            )
+        assertThat(dataFile.exists()).isFalse()
+    }
+
+    @Test
+    fun recordSafetyLabel_unchangedSafetyLabel_doesNotNotifyListeners() {
+        AppsSafetyLabelHistoryPersistence.recordSafetyLabel(SAFETY_LABEL_PKG_1_V2, dataFile)
+        var onChangedCount = 0
+        val testChangeListener: ChangeListener =
+            object : ChangeListener {
+                override fun onSafetyLabelHistoryChanged() {
+                    onChangedCount++
+                }
+            }
+        AppsSafetyLabelHistoryPersistence.addListener(testChangeListener)
+
+        AppsSafetyLabelHistoryPersistence.recordSafetyLabel(SAFETY_LABEL_PKG_1_V3, dataFile)
+        AppsSafetyLabelHistoryPersistence.removeListener(testChangeListener)
+
+        assertThat(onChangedCount).isEqualTo(0)
+        assertThat(AppsSafetyLabelHistoryPersistence.read(dataFile).appsSafetyLabelHistory)
+            .isEqualTo(
+                AppsSafetyLabelHistory(
+                    listOf(
+                        AppSafetyLabelHistory(
+                            AppInfo(PACKAGE_NAME_1),
+                            listOf(SAFETY_LABEL_PKG_1_V2)
+                        )
+                    )
+                )
+            )
+    }
+
     @Test
     fun recordSafetyLabel_noAppsHistory_addsAppsHistory() {
         AppsSafetyLabelHistoryPersistence.clear(dataFile)
@@ -621,6 +699,23 @@ class AppsSafetyLabelHistoryPersistenceTest {
 
     companion object {
         private const val TEST_FILE_NAME = "test_safety_label_history_file"
+        private val LEGACY_FILE_CONTENT =
+            """
+            <?xml version='1.0' encoding='utf-8' standalone='yes' ?>
+            <apps-hstry vrs="0">
+              <app-hstry>
+                <app-info pkg-name="$PACKAGE_NAME_1" />
+                <sfty-lbl rcvd="${SAFETY_LABEL_PKG_1_V1.receivedAt.toEpochMilli()}">
+                  <data-lbl>
+                    <shared>
+                      <entry cat="location" ads="true" />
+                    </shared>
+                  </data-lbl>
+                </sfty-lbl>
+              </app-hstry>
+            </apps-hstry>
+            """
+                .trimIndent()
         private const val PROPERTY_MAX_SAFETY_LABELS_PERSISTED_PER_APP =
             "max_safety_labels_persisted_per_app"
 
@@ -24,6 +24,7 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.os.Build
+import android.os.UserHandle
 import android.os.UserManager
 import android.provider.DeviceConfig
 import android.safetylabel.SafetyLabelConstants
@@ -33,6 +34,7 @@ import com.android.dx.mockito.inline.extended.ExtendedMockito
 import com.android.permissioncontroller.Constants
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.service.v34.SafetyLabelChangesJobService
+import com.android.permissioncontroller.permission.service.v34.SafetyLabelChangesJobService.PackageChangeCursor
 import com.google.common.truth.Truth.assertThat
 import org.junit.After
 import org.junit.Before
@@ -72,6 +74,8 @@ class SafetyLabelChangesJobServiceTest {
 
     @Mock private lateinit var mockPackageManager: PackageManager
 
+    private val queriedSequenceNumbers = mutableMapOf<UserHandle, Int>()
+
     @Before
     fun setUp() {
         MockitoAnnotations.initMocks(this)
@@ -144,6 +148,84 @@ class SafetyLabelChangesJobServiceTest {
             .isEqualTo(Constants.SAFETY_LABEL_CHANGES_PERIODIC_NOTIFICATION_JOB_ID)
     }
 
+    @Test
+    fun getPackagesChangedSince_sameBootCount_returnsChangedPackagesOfAllProfiles() {
+        val lastCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 1, PROFILE to 2))
+        val currentCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 3, PROFILE to 4))
+
+        val changedPackages =
+            getPackagesChangedSince(
+                lastCursor,
+                currentCursor,
+                mapOf(USER to listOf(PACKAGE_NAME), PROFILE to listOf(OTHER_PACKAGE_NAME))
+            )
+
+        assertThat(changedPackages)
+            .containsExactly(Pair(PACKAGE_NAME, USER), Pair(OTHER_PACKAGE_NAME, PROFILE))
+        assertThat(queriedSequenceNumbers).containsExactly(USER, 1, PROFILE, 2)
+    }
+
+    @Test
+    fun getPackagesChangedSince_noChanges_returnsEmptySet() {
+        val lastCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 1))
+        val currentCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 1))
+
+        val changedPackages = getPackagesChangedSince(lastCursor, currentCursor, emptyMap())
+
+        assertThat(changedPackages).isEmpty()
+    }
+
+    @Test
+    fun getPackagesChangedSince_afterReboot_returnsNull() {
+        val lastCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 5))
+        val currentCursor = PackageChangeCursor(BOOT_COUNT + 1, mapOf(USER to 1))
+
+        val changedPackages =
+            getPackagesChangedSince(lastCursor, currentCursor, mapOf(USER to listOf(PACKAGE_NAME)))
+
+        assertThat(changedPackages).isNull()
+        assertThat(queriedSequenceNumbers).isEmpty()
+    }
+
+    @Test
+    fun getPackagesChangedSince_newProfile_returnsNull() {
+        val lastCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 1))
+        val currentCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 2, PROFILE to 1))
+
+        val changedPackages =
+            getPackagesChangedSince(lastCursor, currentCursor, mapOf(USER to listOf(PACKAGE_NAME)))
+
+        assertThat(changedPackages).isNull()
+    }
+
+    @Test
+    fun getPackagesChangedSince_removedProfile_ignoresRemovedProfile() {
+        val lastCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 1, PROFILE to 1))
+        val currentCursor = PackageChangeCursor(BOOT_COUNT, mapOf(USER to 2))
+
+        val changedPackages =
+            getPackagesChangedSince(
+                lastCursor,
+                currentCursor,
+                mapOf(USER to listOf(PACKAGE_NAME), PROFILE to listOf(OTHER_PACKAGE_NAME))
+            )
+
+        assertThat(changedPackages).containsExactly(Pair(PACKAGE_NAME, USER))
+        assertThat(queriedSequenceNumbers).containsExactly(USER, 1)
+    }
+
+    private fun getPackagesChangedSince(
+        lastCursor: PackageChangeCursor,
+        currentCursor: PackageChangeCursor,
+        changedPackageNames: Map<UserHandle, List<String>>
+    ): Set<Pair<String, UserHandle>>? =
+        SafetyLabelChangesJobService.getPackagesChangedSince(lastCursor, currentCursor) {
+            user,
+            sequenceNumber ->
+            queriedSequenceNumbers[user] = sequenceNumber
+            changedPackageNames[user]
+        }
+
     private fun mockJobParamsForJobId(jobId: Int): JobParameters {
         val jobParameters = mock(JobParameters::class.java)
         whenever(jobParameters.jobId).thenReturn(jobId)
@@ -160,4 +242,12 @@ class SafetyLabelChangesJobServiceTest {
             )
             .thenReturn(flagValue)
     }
+
+    companion object {
+        private const val BOOT_COUNT = 3
+        private const val PACKAGE_NAME = "com.example.app"
+        private const val OTHER_PACKAGE_NAME = "com.example.other"
+        private val USER = UserHandle.of(0)
+        private val PROFILE = UserHandle.of(10)
+    }
 }
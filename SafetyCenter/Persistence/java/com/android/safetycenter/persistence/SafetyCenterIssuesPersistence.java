@@ -37,6 +37,10 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlSerializer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -69,6 +73,14 @@ public final class SafetyCenterIssuesPersistence {
     private static final int CURRENT_VERSION = 2;
     private static final int MIN_COMPATIBLE_VERSION = 0;
 
+    /** The first bytes of a binary file, to tell it apart from anything else. */
+    private static final int BINARY_MAGIC = 0x53434953;
+
+    private static final int BINARY_CURRENT_VERSION = 1;
+
+    private static final int BINARY_FLAG_DISMISSED_AT = 1;
+    private static final int BINARY_FLAG_NOTIFICATION_DISMISSED_AT = 1 << 1;
+
     private SafetyCenterIssuesPersistence() {}
 
     /**
@@ -230,6 +242,148 @@ public final class SafetyCenterIssuesPersistence {
                 "Attribute value \"" + value + "\" for " + name + " invalid", ex);
     }
 
+    /**
+     * Read the issues state from persistence, in the binary format written by {@link
+     * #writeBinary}.
+     *
+     * <p>The binary format stores numbers as such, which makes it faster to read than the XML
+     * format written by {@link #write}.
+     *
+     * <p>This will perform I/O operations synchronously.
+     *
+     * @param file the file to read from
+     * @return the list of issue states read or an empty list if the file does not exist
+     * @throws PersistenceException if there is an unexpected error while reading the file
+     */
+    public static List<PersistedSafetyCenterIssue> readBinary(File file)
+            throws PersistenceException {
+        try (DataInputStream inputStream =
+                new DataInputStream(new BufferedInputStream(new AtomicFile(file).openRead()))) {
+            return unmodifiableList(parseBinary(inputStream));
+        } catch (FileNotFoundException e) {
+            Log.i(TAG, "File not found: " + file);
+            return unmodifiableList(new ArrayList<>());
+        } catch (IOException e) {
+            throw new PersistenceException("Failed to read file: " + file, e);
+        }
+    }
+
+    private static List<PersistedSafetyCenterIssue> parseBinary(DataInputStream inputStream)
+            throws IOException, PersistenceException {
+        if (inputStream.readInt() != BINARY_MAGIC) {
+            throw new PersistenceException("Unexpected file format");
+        }
+        int version = inputStream.readInt();
+        if (version != BINARY_CURRENT_VERSION) {
+            throw new PersistenceException("Unsupported version: " + version);
+        }
+        int issueCount = inputStream.readInt();
+        if (issueCount < 0) {
+            throw new PersistenceException("Invalid issue count: " + issueCount);
+        }
+
+        List<PersistedSafetyCenterIssue> persistedSafetyCenterIssues =
+                new ArrayList<>(issueCount);
+        for (int i = 0; i < issueCount; i++) {
+            PersistedSafetyCenterIssue.Builder builder =
+                    new PersistedSafetyCenterIssue.Builder()
+                            .setKey(inputStream.readUTF())
+                            .setFirstSeenAt(Instant.ofEpochMilli(inputStream.readLong()));
+            int flags = inputStream.readByte();
+            if ((flags & BINARY_FLAG_DISMISSED_AT) != 0) {
+                builder.setDismissedAt(Instant.ofEpochMilli(inputStream.readLong()));
+            }
+            try {
+                builder.setDismissCount(inputStream.readInt());
+            } catch (IllegalArgumentException e) {
+                throw new PersistenceException("Element issue invalid", e);
+            }
+            if ((flags & BINARY_FLAG_NOTIFICATION_DISMISSED_AT) != 0) {
+                builder.setNotificationDismissedAt(Instant.ofEpochMilli(inputStream.readLong()));
+            }
+            try {
+                persistedSafetyCenterIssues.add(builder.build());
+            } catch (IllegalStateException e) {
+                throw new PersistenceException("Element issue invalid", e);
+            }
+        }
+        if (inputStream.read() != -1) {
+            throw new PersistenceException("Unexpected extra data");
+        }
+        return persistedSafetyCenterIssues;
+    }
+
+    /**
+     * Write the issues state to persistence, in the binary format read by {@link #readBinary}.
+     *
+     * <p>This will perform I/O operations synchronously.
+     *
+     * @param persistedSafetyCenterIssues the issue states to write
+     * @param file the file to write to
+     * @return whether the file was written successfully
+     */
+    public static boolean writeBinary(
+            List<PersistedSafetyCenterIssue> persistedSafetyCenterIssues, File file) {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream outputStream = null;
+        try {
+            outputStream = atomicFile.startWrite();
+
+            DataOutputStream dataOutputStream =
+                    new DataOutputStream(new BufferedOutputStream(outputStream));
+            serializeIssuesBinary(dataOutputStream, persistedSafetyCenterIssues);
+            dataOutputStream.flush();
+
+            atomicFile.finishWrite(outputStream);
+            return true;
+        } catch (Exception e) {
+            Log.wtf(TAG, "Failed to write, restoring backup: " + file, e);
+            atomicFile.failWrite(outputStream);
+            return false;
+        } finally {
+            try {
+                outputStream.close();
+            } catch (Exception ignored) {
+                // Ignored.
+            }
+        }
+    }
+
+    private static void serializeIssuesBinary(
+            DataOutputStream outputStream,
+            List<PersistedSafetyCenterIssue> persistedSafetyCenterIssues)
+            throws IOException {
+        outputStream.writeInt(BINARY_MAGIC);
+        outputStream.writeInt(BINARY_CURRENT_VERSION);
+        outputStream.writeInt(persistedSafetyCenterIssues.size());
+
+        for (int i = 0; i < persistedSafetyCenterIssues.size(); i++) {
+            PersistedSafetyCenterIssue persistedSafetyCenterIssue =
+                    persistedSafetyCenterIssues.get(i);
+            Instant dismissedAt = persistedSafetyCenterIssue.getDismissedAt();
+            Instant notificationDismissedAt =
+                    persistedSafetyCenterIssue.getNotificationDismissedAt();
+            int flags = 0;
+            if (dismissedAt != null) {
+                flags |= BINARY_FLAG_DISMISSED_AT;
+            }
+            if (notificationDismissedAt != null) {
+                flags |= BINARY_FLAG_NOTIFICATION_DISMISSED_AT;
+            }
+
+            outputStream.writeUTF(persistedSafetyCenterIssue.getKey());
+            outputStream.writeLong(persistedSafetyCenterIssue.getFirstSeenAt().toEpochMilli());
+            outputStream.writeByte(flags);
+            if (dismissedAt != null) {
+                outputStream.writeLong(dismissedAt.toEpochMilli());
+            }
+            outputStream.writeInt(persistedSafetyCenterIssue.getDismissCount());
+            if (notificationDismissedAt != null) {
+                outputStream.writeLong(notificationDismissedAt.toEpochMilli());
+            }
+        }
+    }
+
     /**
      * Write the issues state to persistence.
      *
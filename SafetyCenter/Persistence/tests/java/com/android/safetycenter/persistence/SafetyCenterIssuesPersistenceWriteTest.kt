@@ -19,6 +19,7 @@ package com.android.safetycenter.persistence
 import com.google.common.truth.Truth.assertThat
 import java.io.File
 import java.time.Instant
+import org.junit.Assert.assertThrows
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.Parameterized
@@ -46,6 +47,32 @@ class SafetyCenterIssuesPersistenceWriteTest {
         assertThat(read).isEqualTo(params.original)
     }
 
+    @Test
+    fun writeBinaryRoundTrip_recreatesEqual() {
+        val file = File.createTempFile(params.fileName, "bin")
+        file.deleteOnExit()
+
+        val written = SafetyCenterIssuesPersistence.writeBinary(params.original, file)
+        val read = SafetyCenterIssuesPersistence.readBinary(file)
+
+        assertThat(written).isTrue()
+        assertThat(read).isEqualTo(params.original)
+    }
+
+    @Test
+    fun readBinary_withXmlFile_throws() {
+        val file = File.createTempFile(params.fileName, "xml")
+        file.deleteOnExit()
+        SafetyCenterIssuesPersistence.write(params.original, file)
+
+        val thrown =
+            assertThrows(PersistenceException::class.java) {
+                SafetyCenterIssuesPersistence.readBinary(file)
+            }
+
+        assertThat(thrown).hasMessageThat().isEqualTo("Unexpected file format")
+    }
+
     companion object {
         @JvmStatic
         @Parameterized.Parameters(name = "{0}")
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permission.safetylabel;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Unmodifiable {@link Map} view over a fixed array of keys and a parallel array of values, where
+ * a {@code null} value means that the key is absent.
+ *
+ * <p>Lookups use a precomputed key to index map shared by all instances with the same keys, so
+ * that instances only retain their values array.
+ */
+final class ArrayBackedMap<V> extends AbstractMap<String, V> {
+    @NonNull private final String[] mKeys;
+    @NonNull private final Map<String, Integer> mIndexes;
+    @NonNull private final V[] mValues;
+    private final int mSize;
+
+    ArrayBackedMap(
+            @NonNull String[] keys, @NonNull Map<String, Integer> indexes, @NonNull V[] values) {
+        mKeys = keys;
+        mIndexes = indexes;
+        mValues = values;
+        int size = 0;
+        for (V value : values) {
+            if (value != null) {
+                size++;
+            }
+        }
+        mSize = size;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @Nullable
+    public V get(@Nullable Object key) {
+        Integer index = mIndexes.get(key);
+        return index == null ? null : mValues[index];
+    }
+
+    @Override
+    @NonNull
+    public Set<Entry<String, V>> entrySet() {
+        return new AbstractSet<Entry<String, V>>() {
+            @Override
+            public int size() {
+                return mSize;
+            }
+
+            @Override
+            @NonNull
+            public Iterator<Entry<String, V>> iterator() {
+                return new Iterator<Entry<String, V>>() {
+                    private int mNext = advance(0);
+
+                    private int advance(int from) {
+                        int i = from;
+                        while (i < mValues.length && mValues[i] == null) {
+                            i++;
+                        }
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return mNext < mValues.length;
+                    }
+
+                    @Override
+                    public Entry<String, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, V> entry =
+                                new SimpleImmutableEntry<>(mKeys[mNext], mValues[mNext]);
+                        mNext = advance(mNext + 1);
+                        return entry;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -23,20 +23,27 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.permission.safetylabel.DataLabelConstants.DataUsage;
+import com.android.permission.safetylabel.DataPurposeConstants.Purpose;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Data usage category representation containing one or more {@link DataType}. Valid category keys
  * are defined in {@link DataCategoryConstants}, each category has a valid set of types {@link
  * DataType}, which are mapped in {@link DataTypeConstants}
+ *
+ * <p>Data types are stored in an array indexed by the dense type indexes of the category, see
+ * {@link SafetyLabelKeys}.
  */
 public class DataCategory {
-    private final Map<String, DataType> mDataTypes;
+    private final int mCategoryIndex;
+    @NonNull private final DataType[] mDataTypes;
+    @Nullable private Map<String, DataType> mDataTypeMap;
 
-    private DataCategory(@NonNull Map<String, DataType> dataTypes) {
+    private DataCategory(int categoryIndex, @NonNull DataType[] dataTypes) {
+        this.mCategoryIndex = categoryIndex;
         this.mDataTypes = dataTypes;
     }
 
@@ -48,23 +55,57 @@ public class DataCategory {
     @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
     static Map<String, DataCategory> getDataCategoryMap(
             @Nullable PersistableBundle dataLabelBundle, @DataUsage @NonNull String dataUsage) {
-        if (dataLabelBundle == null) {
+        DataCategory[] dataCategories = getDataCategories(dataLabelBundle, dataUsage);
+        if (dataCategories == null) {
             return Collections.emptyMap();
         }
+        return toDataCategoryMap(dataCategories);
+    }
+
+    /**
+     * Returns the {@link DataCategory}s created by parsing a {@link PersistableBundle}, indexed by
+     * {@link SafetyLabelKeys#getCategoryIndex}, or {@code null} if there are no valid categories.
+     */
+    @Nullable
+    static DataCategory[] getDataCategories(
+            @Nullable PersistableBundle dataLabelBundle, @DataUsage @NonNull String dataUsage) {
+        if (dataLabelBundle == null) {
+            return null;
+        }
 
         PersistableBundle dataCategoryMapBundle = dataLabelBundle.getPersistableBundle(dataUsage);
         if (dataCategoryMapBundle == null) {
-            return Collections.emptyMap();
+            return null;
         }
 
-        Map<String, DataCategory> dataCategoryMap = new HashMap<>();
-        for (String category : DataCategoryConstants.VALID_CATEGORIES) {
-            DataCategory dataCategory = getDataCategory(dataCategoryMapBundle, dataUsage, category);
+        DataCategory[] dataCategories = null;
+        for (String category : dataCategoryMapBundle.keySet()) {
+            int categoryIndex = SafetyLabelKeys.getCategoryIndex(category);
+            if (categoryIndex < 0) {
+                continue;
+            }
+            DataCategory dataCategory =
+                    getDataCategory(dataCategoryMapBundle, dataUsage, categoryIndex);
             if (dataCategory != null) {
-                dataCategoryMap.put(category, dataCategory);
+                if (dataCategories == null) {
+                    dataCategories = new DataCategory[SafetyLabelKeys.getCategoryCount()];
+                }
+                dataCategories[categoryIndex] = dataCategory;
             }
         }
-        return Collections.unmodifiableMap(dataCategoryMap);
+        return dataCategories;
+    }
+
+    /**
+     * Returns an unmodifiable {@link Map} view of {@link String} category to {@link DataCategory}
+     * over the provided categories, indexed by {@link SafetyLabelKeys#getCategoryIndex}.
+     */
+    @NonNull
+    static Map<String, DataCategory> toDataCategoryMap(@NonNull DataCategory[] dataCategories) {
+        return new ArrayBackedMap<>(
+                SafetyLabelKeys.getCategories(),
+                SafetyLabelKeys.getCategoryIndexes(),
+                dataCategories);
     }
 
     /**
@@ -77,24 +118,70 @@ public class DataCategory {
             @Nullable PersistableBundle dataCategoryMapBundle,
             @NonNull String dataUsage,
             @NonNull String category) {
+        int categoryIndex = SafetyLabelKeys.getCategoryIndex(category);
+        if (categoryIndex < 0) {
+            return null;
+        }
+        return getDataCategory(dataCategoryMapBundle, dataUsage, categoryIndex);
+    }
+
+    @Nullable
+    private static DataCategory getDataCategory(
+            @Nullable PersistableBundle dataCategoryMapBundle,
+            @NonNull String dataUsage,
+            int categoryIndex) {
         if (dataCategoryMapBundle == null) {
             return null;
         }
 
-        PersistableBundle dataCategoryBundle = dataCategoryMapBundle.getPersistableBundle(category);
+        PersistableBundle dataCategoryBundle =
+                dataCategoryMapBundle.getPersistableBundle(
+                        SafetyLabelKeys.getCategories()[categoryIndex]);
 
-        Map<String, DataType> dataTypeMap =
-                DataType.getDataTypeMap(dataCategoryBundle, dataUsage, category);
-        if (dataTypeMap.isEmpty()) {
+        DataType[] dataTypes = DataType.getDataTypes(dataCategoryBundle, dataUsage, categoryIndex);
+        if (dataTypes == null) {
             return null;
         }
 
-        return new DataCategory(dataTypeMap);
+        return new DataCategory(categoryIndex, dataTypes);
     }
 
     /** Return the type {@link Map} of String type key to {@link DataType} */
     @NonNull
     public Map<String, DataType> getDataTypes() {
-        return mDataTypes;
+        // Racing threads may create equal views, which is harmless.
+        Map<String, DataType> dataTypeMap = mDataTypeMap;
+        if (dataTypeMap == null) {
+            dataTypeMap =
+                    new ArrayBackedMap<>(
+                            SafetyLabelKeys.getTypes(mCategoryIndex),
+                            SafetyLabelKeys.getTypeIndexes(mCategoryIndex),
+                            mDataTypes);
+            mDataTypeMap = dataTypeMap;
+        }
+        return dataTypeMap;
+    }
+
+    /** Returns whether any {@link DataType} of this category has the provided purpose. */
+    public boolean hasPurpose(@Purpose int purpose) {
+        for (DataType dataType : mDataTypes) {
+            if (dataType != null && dataType.hasPurpose(purpose)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DataCategory)) return false;
+        DataCategory that = (DataCategory) o;
+        return mCategoryIndex == that.mCategoryIndex && Arrays.equals(mDataTypes, that.mDataTypes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mCategoryIndex + Arrays.hashCode(mDataTypes);
     }
 }
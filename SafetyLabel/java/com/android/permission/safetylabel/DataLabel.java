@@ -25,22 +25,41 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 
 /**
  * Data label representation with data shared and data collected maps containing zero or more
  * {@link DataCategory}
+ *
+ * <p>Categories are stored in arrays indexed by the dense category indexes, see {@link
+ * SafetyLabelKeys}, and the maps returned by the accessors are views over these arrays.
  */
 public class DataLabel {
     @VisibleForTesting static final String KEY_DATA_LABEL = "data_labels";
+    @Nullable private final DataCategory[] mDataCollectedCategories;
+    @Nullable private final DataCategory[] mDataSharedCategories;
     private final Map<String, DataCategory> mDataCollected;
     private final Map<String, DataCategory> mDataShared;
 
+    /**
+     * Creates a {@link DataLabel} from maps of category to {@link DataCategory}. Categories that
+     * are not defined in {@link DataCategoryConstants} are ignored.
+     */
     public DataLabel(
             @NonNull Map<String, DataCategory> dataCollected,
             @NonNull Map<String, DataCategory> dataShared) {
-        mDataCollected = dataCollected;
-        mDataShared = dataShared;
+        this(toDataCategoryArray(dataCollected), toDataCategoryArray(dataShared));
+    }
+
+    private DataLabel(
+            @Nullable DataCategory[] dataCollectedCategories,
+            @Nullable DataCategory[] dataSharedCategories) {
+        mDataCollectedCategories = dataCollectedCategories;
+        mDataSharedCategories = dataSharedCategories;
+        mDataCollected = toDataCategoryMap(dataCollectedCategories);
+        mDataShared = toDataCategoryMap(dataSharedCategories);
     }
 
     /** Returns a {@link DataLabel} created by parsing a SafetyLabel {@link PersistableBundle} */
@@ -56,11 +75,37 @@ public class DataLabel {
             return null;
         }
 
-        Map<String, DataCategory> dataCollectedCategoryMap =
-                DataCategory.getDataCategoryMap(dataLabelBundle, DATA_USAGE_COLLECTED);
-        Map<String, DataCategory> dataSharedCategoryMap =
-                DataCategory.getDataCategoryMap(dataLabelBundle, DATA_USAGE_SHARED);
-        return new DataLabel(dataCollectedCategoryMap, dataSharedCategoryMap);
+        DataCategory[] dataCollectedCategories =
+                DataCategory.getDataCategories(dataLabelBundle, DATA_USAGE_COLLECTED);
+        DataCategory[] dataSharedCategories =
+                DataCategory.getDataCategories(dataLabelBundle, DATA_USAGE_SHARED);
+        return new DataLabel(dataCollectedCategories, dataSharedCategories);
+    }
+
+    @Nullable
+    private static DataCategory[] toDataCategoryArray(
+            @NonNull Map<String, DataCategory> dataCategoryMap) {
+        DataCategory[] dataCategories = null;
+        for (Map.Entry<String, DataCategory> entry : dataCategoryMap.entrySet()) {
+            int categoryIndex = SafetyLabelKeys.getCategoryIndex(entry.getKey());
+            if (categoryIndex < 0 || entry.getValue() == null) {
+                continue;
+            }
+            if (dataCategories == null) {
+                dataCategories = new DataCategory[SafetyLabelKeys.getCategoryCount()];
+            }
+            dataCategories[categoryIndex] = entry.getValue();
+        }
+        return dataCategories;
+    }
+
+    @NonNull
+    private static Map<String, DataCategory> toDataCategoryMap(
+            @Nullable DataCategory[] dataCategories) {
+        if (dataCategories == null) {
+            return Collections.emptyMap();
+        }
+        return DataCategory.toDataCategoryMap(dataCategories);
     }
 
     /**
@@ -80,4 +125,19 @@ public class DataLabel {
     public Map<String, DataCategory> getDataShared() {
         return mDataShared;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DataLabel)) return false;
+        DataLabel that = (DataLabel) o;
+        return Arrays.equals(mDataCollectedCategories, that.mDataCollectedCategories)
+                && Arrays.equals(mDataSharedCategories, that.mDataSharedCategories);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mDataCollectedCategories)
+                + Arrays.hashCode(mDataSharedCategories);
+    }
 }
@@ -76,4 +76,41 @@ public class DataPurposeConstants {
     public static Set<Integer> getValidPurposes() {
         return VALID_PURPOSES;
     }
+
+    /** The highest valid purpose, used to size purpose masks. */
+    private static final int MAX_PURPOSE = PURPOSE_ACCOUNT_MANAGEMENT;
+
+    /** Interned unmodifiable purpose sets, indexed by purpose mask and lazily populated. */
+    @SuppressWarnings("unchecked")
+    private static final Set<Integer>[] PURPOSE_SETS = new Set[1 << (MAX_PURPOSE + 1)];
+
+    /**
+     * Returns the bit representing the provided purpose in a purpose mask, or {@code 0} if the
+     * purpose is not valid.
+     */
+    static int getPurposeMask(int purpose) {
+        return VALID_PURPOSES.contains(purpose) ? 1 << purpose : 0;
+    }
+
+    /**
+     * Returns the interned unmodifiable {@link Set} of purposes contained in the provided purpose
+     * mask.
+     */
+    @Purpose
+    static Set<Integer> getPurposeSet(int purposeMask) {
+        Set<Integer> purposeSet = PURPOSE_SETS[purposeMask];
+        if (purposeSet != null) {
+            return purposeSet;
+        }
+        Set<Integer> newPurposeSet = new HashSet<>();
+        for (int purpose = 0; purpose <= MAX_PURPOSE; purpose++) {
+            if ((purposeMask & (1 << purpose)) != 0) {
+                newPurposeSet.add(purpose);
+            }
+        }
+        // Racing threads may create equal sets, which is harmless.
+        purposeSet = Collections.unmodifiableSet(newPurposeSet);
+        PURPOSE_SETS[purposeMask] = purposeSet;
+        return purposeSet;
+    }
 }
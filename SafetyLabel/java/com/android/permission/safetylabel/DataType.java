@@ -25,29 +25,42 @@ import androidx.annotation.VisibleForTesting;
 import com.android.permission.safetylabel.DataPurposeConstants.Purpose;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * Data usage type representation. Types are specific to a {@link DataCategory} and contains
  * metadata related to the data usage purpose.
+ *
+ * <p>Instances are interned: parsing equal data types returns the same instance, and purposes are
+ * stored as a bit mask.
  */
 public class DataType {
     @VisibleForTesting static final String KEY_PURPOSES = "purposes";
     @VisibleForTesting static final String KEY_IS_COLLECTION_OPTIONAL = "is_collection_optional";
     @VisibleForTesting static final String KEY_EPHEMERAL = "ephemeral";
 
-    @Purpose private final Set<Integer> mPurposeSet;
+    /** Number of states of a nullable {@link Boolean}: {@code null}, false and true. */
+    private static final int NULLABLE_BOOLEAN_STATES = 3;
+
+    /**
+     * Interned instances, indexed by {@link #getInternIndex} and lazily populated.
+     *
+     * <p>Racing threads may create equal instances, which is harmless as equality doesn't rely on
+     * identity.
+     */
+    private static final DataType[] INTERNED_DATA_TYPES =
+            new DataType[(1 << (DataPurposeConstants.PURPOSE_ACCOUNT_MANAGEMENT + 1))
+                    * NULLABLE_BOOLEAN_STATES * NULLABLE_BOOLEAN_STATES];
+
+    private final int mPurposeMask;
     private final Boolean mIsCollectionOptional;
     private final Boolean mEphemeral;
 
     private DataType(
-            @NonNull @Purpose Set<Integer> purposeSet,
-            @Nullable Boolean isCollectionOptional,
-            @Nullable Boolean ephemeral) {
-        this.mPurposeSet = purposeSet;
+            int purposeMask, @Nullable Boolean isCollectionOptional, @Nullable Boolean ephemeral) {
+        this.mPurposeMask = purposeMask;
         this.mIsCollectionOptional = isCollectionOptional;
         this.mEphemeral = ephemeral;
     }
@@ -62,21 +75,49 @@ public class DataType {
             @Nullable PersistableBundle dataCategoryBundle,
             @NonNull String dataUsage,
             @NonNull String category) {
-        if (dataCategoryBundle == null || dataCategoryBundle.isEmpty()) {
+        int categoryIndex = SafetyLabelKeys.getCategoryIndex(category);
+        if (categoryIndex < 0) {
+            return Collections.emptyMap();
+        }
+        DataType[] dataTypes = getDataTypes(dataCategoryBundle, dataUsage, categoryIndex);
+        if (dataTypes == null) {
             return Collections.emptyMap();
         }
+        return new ArrayBackedMap<>(
+                SafetyLabelKeys.getTypes(categoryIndex),
+                SafetyLabelKeys.getTypeIndexes(categoryIndex),
+                dataTypes);
+    }
+
+    /**
+     * Returns the {@link DataType}s created by parsing a {@link PersistableBundle}, indexed by
+     * {@link SafetyLabelKeys#getTypeIndex}, or {@code null} if there are no valid data types.
+     */
+    @Nullable
+    static DataType[] getDataTypes(
+            @Nullable PersistableBundle dataCategoryBundle,
+            @NonNull String dataUsage,
+            int categoryIndex) {
+        if (dataCategoryBundle == null || dataCategoryBundle.isEmpty()) {
+            return null;
+        }
 
-        Map<String, DataType> dataTypeMap = new HashMap<>();
-        Set<String> validDataTypesForCategory =
-                DataTypeConstants.getValidDataTypesForCategory(category);
-        for (String type : validDataTypesForCategory) {
+        DataType[] dataTypes = null;
+        for (String type : dataCategoryBundle.keySet()) {
+            int typeIndex = SafetyLabelKeys.getTypeIndex(categoryIndex, type);
+            if (typeIndex < 0) {
+                continue;
+            }
             PersistableBundle dataTypeBundle = dataCategoryBundle.getPersistableBundle(type);
             DataType dataType = getDataType(dataTypeBundle, dataUsage);
             if (dataType != null) {
-                dataTypeMap.put(type, dataType);
+                if (dataTypes == null) {
+                    dataTypes = new DataType[SafetyLabelKeys.getTypes(categoryIndex).length];
+                }
+                dataTypes[typeIndex] = dataType;
             }
         }
-        return Collections.unmodifiableMap(dataTypeMap);
+        return dataTypes;
     }
 
     /**
@@ -98,13 +139,11 @@ public class DataType {
         }
 
         // Filter to set of valid purposes, and return invalid if empty
-        Set<Integer> purposeSet = new HashSet<>();
+        int purposeMask = 0;
         for (int purpose : purposeList) {
-            if (DataPurposeConstants.getValidPurposes().contains(purpose)) {
-                purposeSet.add(purpose);
-            }
+            purposeMask |= DataPurposeConstants.getPurposeMask(purpose);
         }
-        if (purposeSet.isEmpty()) {
+        if (purposeMask == 0) {
             return null;
         }
 
@@ -122,7 +161,33 @@ public class DataType {
                             : null;
         }
 
-        return new DataType(purposeSet, isCollectionOptional, ephemeral);
+        return intern(purposeMask, isCollectionOptional, ephemeral);
+    }
+
+    @NonNull
+    private static DataType intern(
+            int purposeMask, @Nullable Boolean isCollectionOptional, @Nullable Boolean ephemeral) {
+        int internIndex = getInternIndex(purposeMask, isCollectionOptional, ephemeral);
+        DataType dataType = INTERNED_DATA_TYPES[internIndex];
+        if (dataType == null) {
+            dataType = new DataType(purposeMask, isCollectionOptional, ephemeral);
+            INTERNED_DATA_TYPES[internIndex] = dataType;
+        }
+        return dataType;
+    }
+
+    private static int getInternIndex(
+            int purposeMask, @Nullable Boolean isCollectionOptional, @Nullable Boolean ephemeral) {
+        return (purposeMask * NULLABLE_BOOLEAN_STATES + getState(isCollectionOptional))
+                        * NULLABLE_BOOLEAN_STATES
+                + getState(ephemeral);
+    }
+
+    private static int getState(@Nullable Boolean value) {
+        if (value == null) {
+            return 0;
+        }
+        return value ? 2 : 1;
     }
 
     /**
@@ -130,8 +195,14 @@ public class DataType {
      * and type
      */
     @NonNull
+    @Purpose
     public Set<Integer> getPurposeSet() {
-        return mPurposeSet;
+        return DataPurposeConstants.getPurposeSet(mPurposeMask);
+    }
+
+    /** Returns whether the provided {@link Purpose} is one of the purposes of this data type. */
+    public boolean hasPurpose(@Purpose int purpose) {
+        return (mPurposeMask & DataPurposeConstants.getPurposeMask(purpose)) != 0;
     }
 
     /**
@@ -151,4 +222,19 @@ public class DataType {
     public Boolean getEphemeral() {
         return mEphemeral;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DataType)) return false;
+        DataType that = (DataType) o;
+        return mPurposeMask == that.mPurposeMask
+                && Objects.equals(mIsCollectionOptional, that.mIsCollectionOptional)
+                && Objects.equals(mEphemeral, that.mEphemeral);
+    }
+
+    @Override
+    public int hashCode() {
+        return getInternIndex(mPurposeMask, mIsCollectionOptional, mEphemeral);
+    }
 }
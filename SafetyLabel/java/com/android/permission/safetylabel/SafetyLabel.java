@@ -74,4 +74,17 @@ public class SafetyLabel {
     public DataLabel getDataLabel() {
         return mDataLabel;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SafetyLabel)) return false;
+        SafetyLabel that = (SafetyLabel) o;
+        return mDataLabel.equals(that.mDataLabel);
+    }
+
+    @Override
+    public int hashCode() {
+        return mDataLabel.hashCode();
+    }
 }
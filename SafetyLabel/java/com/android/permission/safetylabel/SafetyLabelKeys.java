@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2026 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permission.safetylabel;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Precomputed lookup tables mapping the {@link String} keys defined in {@link
+ * DataCategoryConstants} and {@link DataTypeConstants} to dense indexes.
+ *
+ * <p>The parsed safety label model stores its categories and types in arrays indexed by these
+ * tables, and only exposes the interned constant keys, so that the keys of parsed bundles are not
+ * retained.
+ */
+final class SafetyLabelKeys {
+
+    /** All valid categories, indexed by category index. */
+    private static final String[] CATEGORIES;
+    private static final Map<String, Integer> CATEGORY_INDEXES;
+
+    /** The valid types of each category, indexed by category index then type index. */
+    private static final String[][] TYPES;
+    private static final Map<String, Integer>[] TYPE_INDEXES;
+
+    static {
+        CATEGORIES = toSortedArray(DataCategoryConstants.getValidDataCategories());
+        CATEGORY_INDEXES = toIndexMap(CATEGORIES);
+
+        TYPES = new String[CATEGORIES.length][];
+        //noinspection unchecked
+        TYPE_INDEXES = new Map[CATEGORIES.length];
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            TYPES[i] = toSortedArray(DataTypeConstants.getValidDataTypesForCategory(CATEGORIES[i]));
+            TYPE_INDEXES[i] = toIndexMap(TYPES[i]);
+        }
+    }
+
+    private SafetyLabelKeys() {}
+
+    /** Returns the number of valid categories. */
+    static int getCategoryCount() {
+        return CATEGORIES.length;
+    }
+
+    /** Returns the interned category keys, indexed by category index. */
+    @NonNull
+    static String[] getCategories() {
+        return CATEGORIES;
+    }
+
+    /** Returns the index of the provided category, or {@code -1} if it isn't a valid category. */
+    static int getCategoryIndex(@NonNull String category) {
+        Integer index = CATEGORY_INDEXES.get(category);
+        return index == null ? -1 : index;
+    }
+
+    /** Returns the interned type keys of the category with the provided index. */
+    @NonNull
+    static String[] getTypes(int categoryIndex) {
+        return TYPES[categoryIndex];
+    }
+
+    /**
+     * Returns the index of the provided type within the category with the provided index, or
+     * {@code -1} if it isn't a valid type for this category.
+     */
+    static int getTypeIndex(int categoryIndex, @NonNull String type) {
+        Integer index = TYPE_INDEXES[categoryIndex].get(type);
+        return index == null ? -1 : index;
+    }
+
+    /** Returns the index of each category key, to be used by {@link ArrayBackedMap}. */
+    @NonNull
+    static Map<String, Integer> getCategoryIndexes() {
+        return CATEGORY_INDEXES;
+    }
+
+    /**
+     * Returns the index of each type key of the category with the provided index, to be used by
+     * {@link ArrayBackedMap}.
+     */
+    @NonNull
+    static Map<String, Integer> getTypeIndexes(int categoryIndex) {
+        return TYPE_INDEXES[categoryIndex];
+    }
+
+    private static String[] toSortedArray(Set<String> keys) {
+        String[] array = keys.toArray(new String[0]);
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static Map<String, Integer> toIndexMap(String[] keys) {
+        Map<String, Integer> indexes = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            indexes.put(keys[i], i);
+        }
+        return Collections.unmodifiableMap(indexes);
+    }
+}
@@ -277,4 +277,27 @@ class DataTypeTest {
         assertThat(dataType?.isCollectionOptional).isNull()
         assertThat(dataType?.ephemeral).isNull()
     }
+
+    @Test
+    fun getDataType_sameBundleContent_sameInternedDataType() {
+        val dataType =
+            DataType.getDataType(
+                createTypePersistableBundle(), DataLabelConstants.DATA_USAGE_COLLECTED)
+        val otherDataType =
+            DataType.getDataType(
+                createTypePersistableBundle(), DataLabelConstants.DATA_USAGE_COLLECTED)
+
+        assertThat(dataType).isSameInstanceAs(otherDataType)
+    }
+
+    @Test
+    fun hasPurpose_validDataType_matchesPurposeSet() {
+        val dataType =
+            DataType.getDataType(
+                createTypePersistableBundle(), DataLabelConstants.DATA_USAGE_SHARED)!!
+
+        assertThat(dataType.hasPurpose(PURPOSE_ADVERTISING)).isTrue()
+        assertThat(dataType.hasPurpose(PURPOSE_APP_FUNCTIONALITY)).isTrue()
+        assertThat(dataType.hasPurpose(DataPurposeConstants.PURPOSE_ANALYTICS)).isFalse()
+    }
 }
@@ -25,6 +25,7 @@ import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.crea
 import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createMetadataPersistableBundleWithInvalidSafetyLabel
 import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createMetadataPersistableBundleWithoutVersion
 import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createNonVersionedEmptyMetadataPersistableBundle
+import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createSafetyLabelPersistableBundleWithEmptyDataShared
 import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createSafetyLabelPersistableBundleWithInvalidVersion
 import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createSafetyLabelPersistableBundleWithoutVersion
 import com.android.permission.safetylabel.SafetyLabelTestPersistableBundles.createVersionedEmptyMetadataPersistableBundle
@@ -122,6 +123,27 @@ class SafetyLabelTest {
     assertThat(safetyLabel).isNull()
   }
 
+  @Test
+  fun getSafetyLabelFromMetadata_sameBundleContent_equalSafetyLabels() {
+    val safetyLabel = SafetyLabel.getSafetyLabelFromMetadata(createMetadataPersistableBundle())
+    val otherSafetyLabel =
+        SafetyLabel.getSafetyLabelFromMetadata(createMetadataPersistableBundle())
+
+    assertThat(safetyLabel).isEqualTo(otherSafetyLabel)
+    assertThat(safetyLabel.hashCode()).isEqualTo(otherSafetyLabel.hashCode())
+  }
+
+  @Test
+  fun getSafetyLabelFromMetadata_differentBundleContent_differentSafetyLabels() {
+    val safetyLabel = SafetyLabel.getSafetyLabelFromMetadata(createMetadataPersistableBundle())
+    val bundle = createVersionedEmptyMetadataPersistableBundle()
+    bundle.putPersistableBundle(
+        SafetyLabel.KEY_SAFETY_LABEL, createSafetyLabelPersistableBundleWithEmptyDataShared())
+    val otherSafetyLabel = SafetyLabel.getSafetyLabelFromMetadata(bundle)
+
+    assertThat(safetyLabel).isNotEqualTo(otherSafetyLabel)
+  }
+
   companion object {
     private const val TOP_LEVEL_VERSION = 3L
     private const val SAFETY_LABELS_VERSION = 2L
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.safetycenter;
+
+import android.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+
+/**
+ * Utility methods to compute the hash codes of the safety source parcelables.
+ *
+ * <p>These parcelables compare their {@link CharSequence}s using {@link TextUtils#equals}, which
+ * ignores spans. The hash codes must ignore them too, so that they can be used to tell apart
+ * unequal values without a deep comparison.
+ */
+final class ContentHashes {
+
+    private ContentHashes() {}
+
+    /**
+     * Returns a hash code for the given values, like {@link java.util.Objects#hash}, except that
+     * {@link CharSequence}s are hashed by their content only.
+     */
+    static int hash(@Nullable Object... values) {
+        if (values == null) {
+            return 0;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof CharSequence) {
+                values[i] = values[i].toString();
+            }
+        }
+        return Arrays.hashCode(values);
+    }
+}
@@ -22,6 +22,7 @@ import static android.Manifest.permission.SEND_SAFETY_CENTER_UPDATE;
 import static android.annotation.SdkConstant.SdkConstantType.BROADCAST_INTENT_ACTION;
 import static android.os.Build.VERSION_CODES.TIRAMISU;
 import static android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE;
+import static android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM;
 
 import static java.util.Objects.requireNonNull;
 
@@ -292,6 +293,45 @@ public final class SafetyCenterManager {
     @TargetApi(UPSIDE_DOWN_CAKE)
     public @interface RefreshReason {}
 
+    /** Indicates that a listener receives the full {@link SafetyCenterData}. */
+    @RequiresApi(VANILLA_ICE_CREAM)
+    public static final int DATA_PROJECTION_FULL = 0;
+
+    /**
+     * Indicates that a listener only receives the {@link SafetyCenterData#getStatus() status} of
+     * the {@link SafetyCenterData}, with all lists left empty.
+     *
+     * <p>The listener is only called when the status changes.
+     */
+    @RequiresApi(VANILLA_ICE_CREAM)
+    public static final int DATA_PROJECTION_STATUS = 1;
+
+    /**
+     * Indicates that a listener only receives the {@link SafetyCenterData#getStatus() status} and
+     * the active and dismissed issues of the {@link SafetyCenterData}, with the entries and static
+     * entries left empty.
+     *
+     * <p>The listener is only called when the status or the issues change.
+     */
+    @RequiresApi(VANILLA_ICE_CREAM)
+    public static final int DATA_PROJECTION_STATUS_AND_ISSUES = 2;
+
+    /**
+     * The parts of the {@link SafetyCenterData} a listener receives.
+     *
+     * @hide
+     */
+    @IntDef(
+            prefix = {"DATA_PROJECTION_"},
+            value = {
+                DATA_PROJECTION_FULL,
+                DATA_PROJECTION_STATUS,
+                DATA_PROJECTION_STATUS_AND_ISSUES,
+            })
+    @Retention(RetentionPolicy.SOURCE)
+    @TargetApi(VANILLA_ICE_CREAM)
+    public @interface DataProjection {}
+
     /** Listener for changes to {@link SafetyCenterData}. */
     public interface OnSafetyCenterDataChangedListener {
 
@@ -383,6 +423,46 @@ public final class SafetyCenterManager {
         }
     }
 
+    /**
+     * Set the latest {@link SafetySourceData} for several safety sources and users at once, to be
+     * displayed in Safety Center UI.
+     *
+     * <p>This is equivalent to calling {@link #setSafetySourceData} for each entry of the {@code
+     * safetySourceDataBatch}, except that the entries are validated together: if any entry is
+     * invalid, none of them is applied. Entries for users that don't exist, aren't supported by
+     * Safety Center, or don't have the calling package installed are skipped, and the other
+     * entries are still applied. Listeners and notifications are only updated once per affected
+     * profile group.
+     *
+     * <p>Setting data for a user other than the calling user requires the {@link
+     * android.Manifest.permission#INTERACT_ACROSS_USERS} permission.
+     *
+     * @param safetySourceDataBatch the latest safety data for the safety sources and users
+     * @param safetyEvent the event that triggered the safety sources to set safety data
+     * @throws UnsupportedOperationException if accessed from a version lower than {@link
+     *     VANILLA_ICE_CREAM}
+     */
+    @RequiresPermission(SEND_SAFETY_CENTER_UPDATE)
+    @RequiresApi(VANILLA_ICE_CREAM)
+    public void setSafetySourceDataBatch(
+            @NonNull SafetySourceDataBatch safetySourceDataBatch,
+            @NonNull SafetyEvent safetyEvent) {
+        if (!SdkLevel.isAtLeastV()) {
+            throw new UnsupportedOperationException(
+                    "Method not supported on versions lower than VANILLA_ICE_CREAM");
+        }
+
+        requireNonNull(safetySourceDataBatch, "safetySourceDataBatch cannot be null");
+        requireNonNull(safetyEvent, "safetyEvent cannot be null");
+
+        try {
+            mService.setSafetySourceDataBatch(
+                    safetySourceDataBatch, safetyEvent, mContext.getPackageName());
+        } catch (RemoteException e) {
+            throw e.rethrowFromSystemServer();
+        }
+    }
+
     /**
      * Returns the latest {@link SafetySourceData} set through {@link #setSafetySourceData} for the
      * given {@code safetySourceId} and calling user.
@@ -522,13 +602,54 @@ public final class SafetyCenterManager {
         requireNonNull(executor, "executor cannot be null");
         requireNonNull(listener, "listener cannot be null");
 
+        addListener(executor, listener, DATA_PROJECTION_FULL);
+    }
+
+    /**
+     * Adds a listener for changes to a projection of {@link SafetyCenterData}.
+     *
+     * <p>Listeners that only need a part of the {@link SafetyCenterData}, e.g. the status, should
+     * use this method: they receive smaller updates, and are only called when that part changes.
+     *
+     * @param dataProjection the parts of the {@link SafetyCenterData} the listener receives, one
+     *     of {@link #DATA_PROJECTION_FULL}, {@link #DATA_PROJECTION_STATUS} or {@link
+     *     #DATA_PROJECTION_STATUS_AND_ISSUES}
+     * @throws UnsupportedOperationException if accessed from a version lower than {@link
+     *     VANILLA_ICE_CREAM}
+     * @see #removeOnSafetyCenterDataChangedListener(OnSafetyCenterDataChangedListener)
+     */
+    @RequiresPermission(MANAGE_SAFETY_CENTER)
+    @RequiresApi(VANILLA_ICE_CREAM)
+    public void addOnSafetyCenterDataChangedListener(
+            @NonNull @CallbackExecutor Executor executor,
+            @NonNull OnSafetyCenterDataChangedListener listener,
+            @DataProjection int dataProjection) {
+        if (!SdkLevel.isAtLeastV()) {
+            throw new UnsupportedOperationException(
+                    "Method not supported on versions lower than VANILLA_ICE_CREAM");
+        }
+
+        requireNonNull(executor, "executor cannot be null");
+        requireNonNull(listener, "listener cannot be null");
+        validateDataProjection(dataProjection);
+
+        addListener(executor, listener, dataProjection);
+    }
+
+    private void addListener(
+            Executor executor,
+            OnSafetyCenterDataChangedListener listener,
+            @DataProjection int dataProjection) {
         synchronized (mListenersLock) {
             if (mListenersToDelegates.containsKey(listener)) return;
 
             ListenerDelegate delegate = new ListenerDelegate(executor, listener);
             try {
                 mService.addOnSafetyCenterDataChangedListener(
-                        delegate, mContext.getPackageName(), mContext.getUser().getIdentifier());
+                        delegate,
+                        mContext.getPackageName(),
+                        mContext.getUser().getIdentifier(),
+                        dataProjection);
             } catch (RemoteException e) {
                 throw e.rethrowFromSystemServer();
             }
@@ -657,6 +778,23 @@ public final class SafetyCenterManager {
         }
     }
 
+    /**
+     * Throws an {@link IllegalArgumentException} if the given {@code dataProjection} is not one of
+     * the {@link DataProjection} values.
+     *
+     * @hide
+     */
+    @DataProjection
+    public static int validateDataProjection(int dataProjection) {
+        switch (dataProjection) {
+            case DATA_PROJECTION_FULL:
+            case DATA_PROJECTION_STATUS:
+            case DATA_PROJECTION_STATUS_AND_ISSUES:
+                return dataProjection;
+        }
+        throw new IllegalArgumentException("Unexpected data projection: " + dataProjection);
+    }
+
     private static final class ListenerDelegate extends IOnSafetyCenterDataChangedListener.Stub {
         @NonNull private final Executor mExecutor;
         @NonNull private final OnSafetyCenterDataChangedListener mOriginalListener;
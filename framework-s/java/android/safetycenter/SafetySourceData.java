@@ -184,6 +184,7 @@ public final class SafetySourceData implements Parcelable {
     @Nullable private final SafetySourceStatus mStatus;
     @NonNull private final List<SafetySourceIssue> mIssues;
     @NonNull private final Bundle mExtras;
+    private final int mHashCode;
 
     private SafetySourceData(
             @Nullable SafetySourceStatus status,
@@ -192,6 +193,9 @@ public final class SafetySourceData implements Parcelable {
         this.mStatus = status;
         this.mIssues = issues;
         this.mExtras = extras;
+        // Computed once as sources often resend the same data, and this allows telling apart
+        // unequal data without comparing the issues one by one.
+        this.mHashCode = Objects.hash(mStatus, mIssues);
     }
 
     /** Returns the data for the {@link SafetySourceStatus} to be shown in UI. */
@@ -241,12 +245,13 @@ public final class SafetySourceData implements Parcelable {
         if (this == o) return true;
         if (!(o instanceof SafetySourceData)) return false;
         SafetySourceData that = (SafetySourceData) o;
+        if (mHashCode != that.mHashCode) return false;
         return Objects.equals(mStatus, that.mStatus) && mIssues.equals(that.mIssues);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(mStatus, mIssues);
+        return mHashCode;
     }
 
     @Override
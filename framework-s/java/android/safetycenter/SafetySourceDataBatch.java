@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.safetycenter;
+
+import static android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Objects.requireNonNull;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.annotation.SystemApi;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.UserHandle;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A batch of {@link SafetySourceData} to set for several safety sources and users with a single
+ * call to {@link SafetyCenterManager#setSafetySourceDataBatch}.
+ *
+ * @hide
+ */
+@SystemApi
+@RequiresApi(VANILLA_ICE_CREAM)
+public final class SafetySourceDataBatch implements Parcelable {
+
+    @NonNull
+    public static final Creator<SafetySourceDataBatch> CREATOR =
+            new Creator<SafetySourceDataBatch>() {
+                @Override
+                public SafetySourceDataBatch createFromParcel(Parcel in) {
+                    List<String> safetySourceIds = requireNonNull(in.createStringArrayList());
+                    List<UserHandle> users =
+                            requireNonNull(in.createTypedArrayList(UserHandle.CREATOR));
+                    List<SafetySourceData> safetySourceData =
+                            requireNonNull(in.createTypedArrayList(SafetySourceData.CREATOR));
+                    if (safetySourceIds.size() != users.size()
+                            || safetySourceIds.size() != safetySourceData.size()) {
+                        throw new IllegalArgumentException("Inconsistent SafetySourceDataBatch");
+                    }
+                    return new SafetySourceDataBatch(safetySourceIds, users, safetySourceData);
+                }
+
+                @Override
+                public SafetySourceDataBatch[] newArray(int size) {
+                    return new SafetySourceDataBatch[size];
+                }
+            };
+
+    @NonNull private final List<String> mSafetySourceIds;
+    @NonNull private final List<UserHandle> mUsers;
+    @NonNull private final List<SafetySourceData> mSafetySourceData;
+
+    private SafetySourceDataBatch(
+            @NonNull List<String> safetySourceIds,
+            @NonNull List<UserHandle> users,
+            @NonNull List<SafetySourceData> safetySourceData) {
+        mSafetySourceIds = unmodifiableList(safetySourceIds);
+        mUsers = unmodifiableList(users);
+        mSafetySourceData = unmodifiableList(safetySourceData);
+    }
+
+    /** Returns the number of entries in this batch. */
+    public int getSize() {
+        return mSafetySourceIds.size();
+    }
+
+    /** Returns the id of the safety source of the entry at the given {@code index}. */
+    @NonNull
+    public String getSafetySourceId(int index) {
+        return mSafetySourceIds.get(index);
+    }
+
+    /** Returns the user of the entry at the given {@code index}. */
+    @NonNull
+    public UserHandle getUser(int index) {
+        return mUsers.get(index);
+    }
+
+    /**
+     * Returns the {@link SafetySourceData} of the entry at the given {@code index}, or {@code null}
+     * if the data of that safety source and user should be cleared.
+     */
+    @Nullable
+    public SafetySourceData getSafetySourceData(int index) {
+        return mSafetySourceData.get(index);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SafetySourceDataBatch)) return false;
+        SafetySourceDataBatch that = (SafetySourceDataBatch) o;
+        return mSafetySourceIds.equals(that.mSafetySourceIds)
+                && mUsers.equals(that.mUsers)
+                && mSafetySourceData.equals(that.mSafetySourceData);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mSafetySourceIds, mUsers, mSafetySourceData);
+    }
+
+    @Override
+    public String toString() {
+        return "SafetySourceDataBatch{"
+                + "mSafetySourceIds="
+                + mSafetySourceIds
+                + ", mUsers="
+                + mUsers
+                + ", mSafetySourceData="
+                + mSafetySourceData
+                + '}';
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeStringList(mSafetySourceIds);
+        dest.writeTypedList(mUsers);
+        dest.writeTypedList(mSafetySourceData);
+    }
+
+    /** Builder class for {@link SafetySourceDataBatch}. */
+    public static final class Builder {
+
+        private final List<String> mSafetySourceIds = new ArrayList<>();
+        private final List<UserHandle> mUsers = new ArrayList<>();
+        private final List<SafetySourceData> mSafetySourceData = new ArrayList<>();
+
+        /** Creates a {@link Builder} for a {@link SafetySourceDataBatch}. */
+        public Builder() {}
+
+        /**
+         * Adds the latest {@link SafetySourceData} of a safety source for the given {@code user}.
+         *
+         * <p>A {@code null} {@link SafetySourceData} clears any existing {@link SafetySourceData}
+         * of the safety source for that user, like {@link SafetyCenterManager#setSafetySourceData}.
+         *
+         * @throws IllegalArgumentException if the batch already contains an entry for the given
+         *     {@code safetySourceId} and {@code user}
+         */
+        @NonNull
+        public Builder addSafetySourceData(
+                @NonNull String safetySourceId,
+                @NonNull UserHandle user,
+                @Nullable SafetySourceData safetySourceData) {
+            requireNonNull(safetySourceId);
+            requireNonNull(user);
+            for (int i = 0; i < mSafetySourceIds.size(); i++) {
+                if (mSafetySourceIds.get(i).equals(safetySourceId) && mUsers.get(i).equals(user)) {
+                    throw new IllegalArgumentException(
+                            "Duplicate entry for safety source: "
+                                    + safetySourceId
+                                    + ", and user: "
+                                    + user);
+                }
+            }
+            mSafetySourceIds.add(safetySourceId);
+            mUsers.add(user);
+            mSafetySourceData.add(safetySourceData);
+            return this;
+        }
+
+        /** Creates the {@link SafetySourceDataBatch} defined by this {@link Builder}. */
+        @NonNull
+        public SafetySourceDataBatch build() {
+            return new SafetySourceDataBatch(
+                    new ArrayList<>(mSafetySourceIds),
+                    new ArrayList<>(mUsers),
+                    new ArrayList<>(mSafetySourceData));
+        }
+    }
+}
@@ -262,6 +262,7 @@ public final class SafetySourceIssue implements Parcelable {
     @Nullable private final CharSequence mAttributionTitle;
     @Nullable private final String mDeduplicationId;
     @IssueActionability private final int mIssueActionability;
+    private final int mHashCode;
 
     private SafetySourceIssue(
             @NonNull String id,
@@ -292,6 +293,22 @@ public final class SafetySourceIssue implements Parcelable {
         this.mAttributionTitle = attributionTitle;
         this.mDeduplicationId = deduplicationId;
         this.mIssueActionability = issueActionability;
+        this.mHashCode =
+                ContentHashes.hash(
+                        mId,
+                        mTitle,
+                        mSubtitle,
+                        mSummary,
+                        mSeverityLevel,
+                        mIssueCategory,
+                        mActions,
+                        mOnDismissPendingIntent,
+                        mIssueTypeId,
+                        mCustomNotification,
+                        mNotificationBehavior,
+                        mAttributionTitle,
+                        mDeduplicationId,
+                        mIssueActionability);
     }
 
     /**
@@ -545,6 +562,7 @@ public final class SafetySourceIssue implements Parcelable {
         if (this == o) return true;
         if (!(o instanceof SafetySourceIssue)) return false;
         SafetySourceIssue that = (SafetySourceIssue) o;
+        if (mHashCode != that.mHashCode) return false;
         return mSeverityLevel == that.mSeverityLevel
                 && TextUtils.equals(mId, that.mId)
                 && TextUtils.equals(mTitle, that.mTitle)
@@ -563,21 +581,7 @@ public final class SafetySourceIssue implements Parcelable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(
-                mId,
-                mTitle,
-                mSubtitle,
-                mSummary,
-                mSeverityLevel,
-                mIssueCategory,
-                mActions,
-                mOnDismissPendingIntent,
-                mIssueTypeId,
-                mCustomNotification,
-                mNotificationBehavior,
-                mAttributionTitle,
-                mDeduplicationId,
-                mIssueActionability);
+        return mHashCode;
     }
 
     @Override
@@ -782,7 +786,7 @@ public final class SafetySourceIssue implements Parcelable {
 
         @Override
         public int hashCode() {
-            return Objects.hash(
+            return ContentHashes.hash(
                     mId,
                     mLabel,
                     mPendingIntent,
@@ -902,7 +906,7 @@ public final class SafetySourceIssue implements Parcelable {
 
             @Override
             public int hashCode() {
-                return Objects.hash(mTitle, mText, mAcceptButtonText, mDenyButtonText);
+                return ContentHashes.hash(mTitle, mText, mAcceptButtonText, mDenyButtonText);
             }
 
             @Override
@@ -1125,7 +1129,7 @@ public final class SafetySourceIssue implements Parcelable {
 
         @Override
         public int hashCode() {
-            return Objects.hash(mTitle, mText, mActions);
+            return ContentHashes.hash(mTitle, mText, mActions);
         }
 
         @Override
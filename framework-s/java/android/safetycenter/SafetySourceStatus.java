@@ -77,6 +77,7 @@ public final class SafetySourceStatus implements Parcelable {
     @Nullable private final PendingIntent mPendingIntent;
     @Nullable private final IconAction mIconAction;
     private final boolean mEnabled;
+    private final int mHashCode;
 
     private SafetySourceStatus(
             @NonNull CharSequence title,
@@ -91,6 +92,9 @@ public final class SafetySourceStatus implements Parcelable {
         this.mPendingIntent = pendingIntent;
         this.mIconAction = iconAction;
         this.mEnabled = enabled;
+        this.mHashCode =
+                ContentHashes.hash(
+                        mTitle, mSummary, mSeverityLevel, mPendingIntent, mIconAction, mEnabled);
     }
 
     /** Returns the localized title of the safety source status to be displayed in the UI. */
@@ -169,6 +173,7 @@ public final class SafetySourceStatus implements Parcelable {
         if (this == o) return true;
         if (!(o instanceof SafetySourceStatus)) return false;
         SafetySourceStatus that = (SafetySourceStatus) o;
+        if (mHashCode != that.mHashCode) return false;
         return mSeverityLevel == that.mSeverityLevel
                 && mEnabled == that.mEnabled
                 && TextUtils.equals(mTitle, that.mTitle)
@@ -179,8 +184,7 @@ public final class SafetySourceStatus implements Parcelable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(
-                mTitle, mSummary, mSeverityLevel, mPendingIntent, mIconAction, mEnabled);
+        return mHashCode;
     }
 
     @Override
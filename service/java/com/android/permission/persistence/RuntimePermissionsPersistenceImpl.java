@@ -75,6 +75,13 @@ public class RuntimePermissionsPersistenceImpl implements RuntimePermissionsPers
     @VisibleForTesting
     interface Injector {
         void enableFsVerity(@NonNull File file) throws IOException;
+
+        /** Get the directory in which the runtime permissions of the given user are stored. */
+        @NonNull
+        default File getDataDirectory(@NonNull UserHandle user) {
+            ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
+            return apexEnvironment.getDeviceProtectedDataDirForUser(user);
+        }
     }
 
     @NonNull
@@ -317,16 +324,13 @@ public class RuntimePermissionsPersistenceImpl implements RuntimePermissionsPers
 
     @VisibleForTesting
     @NonNull
-    static File getFile(@NonNull UserHandle user) {
-        ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
-        File dataDirectory = apexEnvironment.getDeviceProtectedDataDirForUser(user);
-        return new File(dataDirectory, RUNTIME_PERMISSIONS_FILE_NAME);
+    File getFile(@NonNull UserHandle user) {
+        return new File(mInjector.getDataDirectory(user), RUNTIME_PERMISSIONS_FILE_NAME);
     }
 
     @NonNull
-    private static File getReserveCopyFile(@NonNull UserHandle user) {
-        ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
-        File dataDirectory = apexEnvironment.getDeviceProtectedDataDirForUser(user);
-        return new File(dataDirectory, RUNTIME_PERMISSIONS_RESERVE_COPY_FILE_NAME);
+    private File getReserveCopyFile(@NonNull UserHandle user) {
+        return new File(mInjector.getDataDirectory(user),
+                RUNTIME_PERMISSIONS_RESERVE_COPY_FILE_NAME);
     }
 }
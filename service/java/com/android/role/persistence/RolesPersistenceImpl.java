@@ -72,6 +72,13 @@ public class RolesPersistenceImpl implements RolesPersistence {
     @VisibleForTesting
     interface Injector {
         void enableFsVerity(@NonNull File file) throws IOException;
+
+        /** Get the directory in which the roles of the given user are stored. */
+        @NonNull
+        default File getDataDirectory(@NonNull UserHandle user) {
+            ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
+            return apexEnvironment.getDeviceProtectedDataDirForUser(user);
+        }
     }
 
     @NonNull
@@ -278,16 +285,12 @@ public class RolesPersistenceImpl implements RolesPersistence {
 
     @VisibleForTesting
     @NonNull
-    static File getFile(@NonNull UserHandle user) {
-        ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
-        File dataDirectory = apexEnvironment.getDeviceProtectedDataDirForUser(user);
-        return new File(dataDirectory, ROLES_FILE_NAME);
+    File getFile(@NonNull UserHandle user) {
+        return new File(mInjector.getDataDirectory(user), ROLES_FILE_NAME);
     }
 
     @NonNull
-    private static File getReserveCopyFile(@NonNull UserHandle user) {
-        ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
-        File dataDirectory = apexEnvironment.getDeviceProtectedDataDirForUser(user);
-        return new File(dataDirectory, ROLES_RESERVE_COPY_FILE_NAME);
+    private File getReserveCopyFile(@NonNull UserHandle user) {
+        return new File(mInjector.getDataDirectory(user), ROLES_RESERVE_COPY_FILE_NAME);
     }
 }
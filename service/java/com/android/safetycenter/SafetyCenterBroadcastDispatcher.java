@@ -105,10 +105,17 @@ final class SafetyCenterBroadcastDispatcher {
                 mSafetyCenterRefreshTracker.reportRefreshInProgress(
                         refreshReason, userProfileGroup);
         boolean hasSentAtLeastOneBroadcast = false;
+        ArraySet<String> requiredSourceIds =
+                safetySourceIds != null ? new ArraySet<>(safetySourceIds) : null;
 
         for (int i = 0; i < broadcasts.size(); i++) {
             Broadcast broadcast = broadcasts.get(i);
 
+            if (requiredSourceIds != null
+                    && !hasAnyRequiredSource(broadcast.getPackageName(), requiredSourceIds)) {
+                continue;
+            }
+
             hasSentAtLeastOneBroadcast |=
                     sendRefreshSafetySourcesBroadcast(
                             broadcast,
@@ -116,7 +123,7 @@ final class SafetyCenterBroadcastDispatcher {
                             refreshReason,
                             userProfileGroup,
                             broadcastId,
-                            safetySourceIds);
+                            requiredSourceIds);
         }
 
         if (!hasSentAtLeastOneBroadcast) {
@@ -127,13 +134,29 @@ final class SafetyCenterBroadcastDispatcher {
         return broadcastId;
     }
 
+    /**
+     * Returns whether the given {@code packageName} owns any of the given {@code
+     * requiredSourceIds}, so that packages without any requested source can be skipped without
+     * computing their broadcasts.
+     */
+    private boolean hasAnyRequiredSource(String packageName, ArraySet<String> requiredSourceIds) {
+        List<String> packageSourceIds =
+                mSafetyCenterConfigReader.getExternalSafetySourceIdsForPackage(packageName);
+        for (int i = 0; i < packageSourceIds.size(); i++) {
+            if (requiredSourceIds.contains(packageSourceIds.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean sendRefreshSafetySourcesBroadcast(
             Broadcast broadcast,
             BroadcastOptions broadcastOptions,
             @RefreshReason int refreshReason,
             UserProfileGroup userProfileGroup,
             String broadcastId,
-            @Nullable List<String> requiredSourceIds) {
+            @Nullable ArraySet<String> requiredSourceIds) {
         boolean hasSentAtLeastOneBroadcast = false;
         String packageName = broadcast.getPackageName();
         Set<String> deniedSourceIds = getRefreshDeniedSourceIds(refreshReason);
@@ -16,6 +16,7 @@
 
 package com.android.safetycenter;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableList;
 import static java.util.Objects.requireNonNull;
 
@@ -27,6 +28,7 @@ import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.safetycenter.config.ParseException;
 import com.android.safetycenter.config.SafetyCenterConfigParser;
@@ -63,6 +65,19 @@ public final class SafetyCenterConfigReader {
         mSafetyCenterResourcesApk = safetyCenterResourcesApk;
     }
 
+    /**
+     * Creates a {@link SafetyCenterConfigReader} that behaves as if the given {@link
+     * SafetyCenterConfig} had been loaded from the XML file.
+     */
+    @VisibleForTesting
+    static SafetyCenterConfigReader fromConfigForTests(SafetyCenterConfig safetyCenterConfig) {
+        SafetyCenterConfigReader safetyCenterConfigReader =
+                new SafetyCenterConfigReader(/* safetyCenterResourcesApk= */ null);
+        safetyCenterConfigReader.mConfigInternalFromXml =
+                SafetyCenterConfigInternal.from(safetyCenterConfig);
+        return safetyCenterConfigReader;
+    }
+
     /**
      * Loads the {@link SafetyCenterConfig} from the XML file defined in {@code
      * safety_center_config.xml}; and returns whether this was successful.
@@ -212,6 +227,18 @@ public final class SafetyCenterConfigReader {
         return getCurrentConfigInternal().getBroadcasts();
     }
 
+    /**
+     * Returns the ids of the external {@link SafetySource}s of the given {@code packageName} in the
+     * current {@link SafetyCenterConfig}, or an empty list if there are none.
+     */
+    public List<String> getExternalSafetySourceIdsForPackage(String packageName) {
+        List<String> safetySourceIds =
+                getCurrentConfigInternal()
+                        .getPackageNamesToExternalSafetySourceIds()
+                        .get(packageName);
+        return safetySourceIds != null ? safetySourceIds : emptyList();
+    }
+
     private SafetyCenterConfigInternal getCurrentConfigInternal() {
         // We require the XML config must be loaded successfully for SafetyCenterManager APIs to
         // function, regardless of whether the config is subsequently overridden.
@@ -254,13 +281,20 @@ public final class SafetyCenterConfigReader {
         fout.println();
     }
 
-    /** A wrapper class around the parsed XML config. */
+    /**
+     * A wrapper class around the parsed XML config.
+     *
+     * <p>It indexes the external sources of the config by package once when it is loaded, so that
+     * refreshing specific sources doesn't require iterating over the whole config per package.
+     */
     private static final class SafetyCenterConfigInternal {
 
         private final SafetyCenterConfig mConfig;
         private final ArrayMap<String, ExternalSafetySource> mExternalSafetySources;
         private final List<SafetySourcesGroup> mLoggableSourcesGroups;
         private final List<Broadcast> mBroadcasts;
+        private final ArrayMap<String, List<String>> mPackageNamesToExternalSafetySourceIds =
+                new ArrayMap<>();
 
         private SafetyCenterConfigInternal(
                 SafetyCenterConfig safetyCenterConfig,
@@ -271,6 +305,33 @@ public final class SafetyCenterConfigReader {
             mExternalSafetySources = externalSafetySources;
             mLoggableSourcesGroups = loggableSourcesGroups;
             mBroadcasts = broadcasts;
+            indexExternalSafetySourcesByPackage();
+        }
+
+        private void indexExternalSafetySourcesByPackage() {
+            List<SafetySourcesGroup> safetySourcesGroups = mConfig.getSafetySourcesGroups();
+            for (int i = 0; i < safetySourcesGroups.size(); i++) {
+                List<SafetySource> safetySources = safetySourcesGroups.get(i).getSafetySources();
+                for (int j = 0; j < safetySources.size(); j++) {
+                    SafetySource safetySource = safetySources.get(j);
+                    if (!SafetySources.isExternal(safetySource)) {
+                        continue;
+                    }
+                    List<String> safetySourceIds =
+                            mPackageNamesToExternalSafetySourceIds.get(
+                                    safetySource.getPackageName());
+                    if (safetySourceIds == null) {
+                        safetySourceIds = new ArrayList<>();
+                        mPackageNamesToExternalSafetySourceIds.put(
+                                safetySource.getPackageName(), safetySourceIds);
+                    }
+                    safetySourceIds.add(safetySource.getId());
+                }
+            }
+            for (int i = 0; i < mPackageNamesToExternalSafetySourceIds.size(); i++) {
+                mPackageNamesToExternalSafetySourceIds.setValueAt(
+                        i, unmodifiableList(mPackageNamesToExternalSafetySourceIds.valueAt(i)));
+            }
         }
 
         private SafetyCenterConfig getSafetyCenterConfig() {
@@ -289,6 +350,10 @@ public final class SafetyCenterConfigReader {
             return mBroadcasts;
         }
 
+        private ArrayMap<String, List<String>> getPackageNamesToExternalSafetySourceIds() {
+            return mPackageNamesToExternalSafetySourceIds;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
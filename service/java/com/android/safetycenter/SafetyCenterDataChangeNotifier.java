@@ -17,6 +17,7 @@
 package com.android.safetycenter;
 
 import android.annotation.UserIdInt;
+import android.util.ArraySet;
 
 import com.android.safetycenter.notifications.SafetyCenterNotificationSender;
 
@@ -56,6 +57,22 @@ public final class SafetyCenterDataChangeNotifier {
         mSafetyCenterListeners.deliverDataForUserProfileGroup(userProfileGroup);
     }
 
+    /**
+     * Updates classes that depend on data changes (changes of state in the data subpackage), after
+     * a batch of changes to the given {@code userIds}.
+     *
+     * <p>Listeners are only called once per {@link UserProfileGroup}, and notifications are only
+     * updated for the users that changed.
+     */
+    void updateDataConsumers(List<UserProfileGroup> userProfileGroups, ArraySet<Integer> userIds) {
+        for (int i = 0; i < userIds.size(); i++) {
+            mSafetyCenterNotificationSender.updateNotifications(userIds.valueAt(i));
+        }
+        for (int i = 0; i < userProfileGroups.size(); i++) {
+            mSafetyCenterListeners.deliverDataForUserProfileGroup(userProfileGroups.get(i));
+        }
+    }
+
     /** Updates classes that depend on data changes (changes of state in the data subpackage). */
     void updateDataConsumers(List<UserProfileGroup> userProfileGroups) {
         for (int i = 0; i < userProfileGroups.size(); i++) {
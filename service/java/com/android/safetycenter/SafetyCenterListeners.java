@@ -16,19 +16,29 @@
 
 package com.android.safetycenter;
 
+import static android.safetycenter.SafetyCenterManager.DATA_PROJECTION_FULL;
+import static android.safetycenter.SafetyCenterManager.DATA_PROJECTION_STATUS;
+import static android.safetycenter.SafetyCenterManager.DATA_PROJECTION_STATUS_AND_ISSUES;
+
+import static java.util.Collections.emptyList;
+
 import android.annotation.UserIdInt;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteCallbackList;
 import android.os.RemoteException;
 import android.safetycenter.IOnSafetyCenterDataChangedListener;
 import android.safetycenter.SafetyCenterData;
 import android.safetycenter.SafetyCenterErrorDetails;
+import android.safetycenter.SafetyCenterManager.DataProjection;
 import android.util.ArrayMap;
 import android.util.Log;
 import android.util.SparseArray;
 
 import androidx.annotation.Nullable;
 
+import com.android.modules.utils.build.SdkLevel;
+
 import java.io.PrintWriter;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -50,6 +60,8 @@ final class SafetyCenterListeners {
     private final SparseArray<RemoteCallbackList<IOnSafetyCenterDataChangedListener>>
             mSafetyCenterDataChangedListeners = new SparseArray<>();
 
+    private final DeliveryStats mDeliveryStats = new DeliveryStats();
+
     SafetyCenterListeners(SafetyCenterDataFactory safetyCenterDataFactory) {
         mSafetyCenterDataFactory = safetyCenterDataFactory;
     }
@@ -118,7 +130,7 @@ final class SafetyCenterListeners {
 
     /**
      * Adds a {@link IOnSafetyCenterDataChangedListener} for the given {@code packageName} and
-     * {@code userId}.
+     * {@code userId}, receiving the given {@link DataProjection} of the {@link SafetyCenterData}.
      *
      * <p>Returns the registered {@link IOnSafetyCenterDataChangedListener} if this operation was
      * successful. Otherwise, returns {@code null}.
@@ -127,14 +139,16 @@ final class SafetyCenterListeners {
     IOnSafetyCenterDataChangedListener addListener(
             IOnSafetyCenterDataChangedListener listener,
             String packageName,
-            @UserIdInt int userId) {
+            @UserIdInt int userId,
+            @DataProjection int dataProjection) {
         RemoteCallbackList<IOnSafetyCenterDataChangedListener> listeners =
                 mSafetyCenterDataChangedListeners.get(userId);
         if (listeners == null) {
             listeners = new RemoteCallbackList<>();
         }
         OnSafetyCenterDataChangedListenerWrapper listenerWrapper =
-                new OnSafetyCenterDataChangedListenerWrapper(listener, packageName);
+                new OnSafetyCenterDataChangedListenerWrapper(
+                        listener, packageName, dataProjection, mDeliveryStats);
         boolean registered = listeners.register(listenerWrapper);
         if (!registered) {
             return null;
@@ -254,34 +268,141 @@ final class SafetyCenterListeners {
             }
         }
         fout.println();
+        mDeliveryStats.dump(fout);
+    }
+
+    /**
+     * Returns the parts of the given {@link SafetyCenterData} selected by the given {@link
+     * DataProjection}.
+     */
+    private static SafetyCenterData project(
+            SafetyCenterData safetyCenterData, @DataProjection int dataProjection) {
+        switch (dataProjection) {
+            case DATA_PROJECTION_STATUS:
+                return new SafetyCenterData(
+                        safetyCenterData.getStatus(), emptyList(), emptyList(), emptyList());
+            case DATA_PROJECTION_STATUS_AND_ISSUES:
+                if (SdkLevel.isAtLeastU()) {
+                    return new SafetyCenterData.Builder(safetyCenterData)
+                            .clearEntriesOrGroups()
+                            .clearStaticEntryGroups()
+                            .build();
+                }
+                return new SafetyCenterData(
+                        safetyCenterData.getStatus(),
+                        safetyCenterData.getIssues(),
+                        emptyList(),
+                        emptyList());
+            case DATA_PROJECTION_FULL:
+            default:
+                return safetyCenterData;
+        }
+    }
+
+    /** Returns the size in bytes of the given {@link SafetyCenterData} once parceled. */
+    private static int getParceledSize(SafetyCenterData safetyCenterData) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            safetyCenterData.writeToParcel(parcel, /* flags= */ 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Keeps track of the number and size of the {@link SafetyCenterData} deliveries, per {@link
+     * DataProjection}.
+     *
+     * <p>Parceling the data only to measure it is as expensive as the delivery itself, so the size
+     * is only measured for one delivery out of {@link #SIZE_SAMPLING_INTERVAL}.
+     */
+    private static final class DeliveryStats {
+
+        private static final int DATA_PROJECTION_COUNT = 3;
+        private static final int SIZE_SAMPLING_INTERVAL = 20;
+
+        private final long[] mDeliveryCounts = new long[DATA_PROJECTION_COUNT];
+        private final long[] mSkippedCounts = new long[DATA_PROJECTION_COUNT];
+        private final long[] mSampledCounts = new long[DATA_PROJECTION_COUNT];
+        private final long[] mSampledTotalBytes = new long[DATA_PROJECTION_COUNT];
+        private final int[] mSampledMaxBytes = new int[DATA_PROJECTION_COUNT];
+
+        void recordDelivery(@DataProjection int dataProjection, SafetyCenterData safetyCenterData) {
+            if (mDeliveryCounts[dataProjection]++ % SIZE_SAMPLING_INTERVAL != 0) {
+                return;
+            }
+            int bytes = getParceledSize(safetyCenterData);
+            mSampledCounts[dataProjection]++;
+            mSampledTotalBytes[dataProjection] += bytes;
+            mSampledMaxBytes[dataProjection] = Math.max(mSampledMaxBytes[dataProjection], bytes);
+        }
+
+        void recordSkipped(@DataProjection int dataProjection) {
+            mSkippedCounts[dataProjection]++;
+        }
+
+        void dump(PrintWriter fout) {
+            fout.println("DATA CHANGED DELIVERIES");
+            for (int i = 0; i < DATA_PROJECTION_COUNT; i++) {
+                long averageBytes =
+                        mSampledCounts[i] == 0 ? 0 : mSampledTotalBytes[i] / mSampledCounts[i];
+                fout.println(
+                        "\tprojection "
+                                + i
+                                + ": "
+                                + mDeliveryCounts[i]
+                                + " delivered, "
+                                + mSkippedCounts[i]
+                                + " unchanged, "
+                                + mSampledCounts[i]
+                                + " sampled, "
+                                + averageBytes
+                                + " bytes average, "
+                                + mSampledMaxBytes[i]
+                                + " bytes max");
+            }
+            fout.println();
+        }
     }
 
     /**
-     * A wrapper around an {@link IOnSafetyCenterDataChangedListener} to ensure it is only called
-     * when the {@link SafetyCenterData} actually changes.
+     * A wrapper around an {@link IOnSafetyCenterDataChangedListener} to ensure it only receives its
+     * {@link DataProjection} of the {@link SafetyCenterData}, and is only called when that
+     * projection actually changes.
      */
     private static final class OnSafetyCenterDataChangedListenerWrapper
             implements IOnSafetyCenterDataChangedListener {
 
         private final IOnSafetyCenterDataChangedListener mDelegate;
         private final String mPackageName;
+        @DataProjection private final int mDataProjection;
+        private final DeliveryStats mDeliveryStats;
 
         private final AtomicReference<SafetyCenterData> mLastSafetyCenterData =
                 new AtomicReference<>();
 
         OnSafetyCenterDataChangedListenerWrapper(
-                IOnSafetyCenterDataChangedListener delegate, String packageName) {
+                IOnSafetyCenterDataChangedListener delegate,
+                String packageName,
+                @DataProjection int dataProjection,
+                DeliveryStats deliveryStats) {
             mDelegate = delegate;
             mPackageName = packageName;
+            mDataProjection = dataProjection;
+            mDeliveryStats = deliveryStats;
         }
 
         @Override
         public void onSafetyCenterDataChanged(SafetyCenterData safetyCenterData)
                 throws RemoteException {
-            if (safetyCenterData.equals(mLastSafetyCenterData.getAndSet(safetyCenterData))) {
+            SafetyCenterData projectedData = project(safetyCenterData, mDataProjection);
+            if (projectedData.equals(mLastSafetyCenterData.getAndSet(projectedData))) {
+                mDeliveryStats.recordSkipped(mDataProjection);
                 return;
             }
-            mDelegate.onSafetyCenterDataChanged(safetyCenterData);
+            mDeliveryStats.recordDelivery(mDataProjection, projectedData);
+            mDelegate.onSafetyCenterDataChanged(projectedData);
         }
 
         @Override
@@ -307,6 +428,8 @@ final class SafetyCenterListeners {
                     + ", mPackageName='"
                     + mPackageName
                     + '\''
+                    + ", mDataProjection="
+                    + mDataProjection
                     + ", mLastSafetyCenterData="
                     + mLastSafetyCenterData
                     + '}';
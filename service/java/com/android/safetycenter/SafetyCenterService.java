@@ -47,6 +47,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.pm.PackageManager.PackageInfoFlags;
 import android.content.res.Resources;
+import android.net.Uri;
 import android.os.Binder;
 import android.os.ParcelFileDescriptor;
 import android.os.Process;
@@ -58,12 +59,15 @@ import android.safetycenter.ISafetyCenterManager;
 import android.safetycenter.SafetyCenterData;
 import android.safetycenter.SafetyCenterErrorDetails;
 import android.safetycenter.SafetyCenterManager;
+import android.safetycenter.SafetyCenterManager.DataProjection;
 import android.safetycenter.SafetyEvent;
 import android.safetycenter.SafetySourceData;
+import android.safetycenter.SafetySourceDataBatch;
 import android.safetycenter.SafetySourceErrorDetails;
 import android.safetycenter.SafetySourceIssue;
 import android.safetycenter.config.SafetyCenterConfig;
 import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Log;
 
@@ -93,6 +97,7 @@ import com.android.server.SystemService;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -224,6 +229,7 @@ public final class SafetyCenterService extends SystemService {
                             mApiLock)
                     .register(getContext());
             new LocaleBroadcastReceiver().register(getContext());
+            new PackageBroadcastReceiver().register(getContext());
         }
     }
 
@@ -342,6 +348,105 @@ public final class SafetyCenterService extends SystemService {
             }
         }
 
+        @Override
+        public void setSafetySourceDataBatch(
+                SafetySourceDataBatch safetySourceDataBatch,
+                SafetyEvent safetyEvent,
+                String packageName) {
+            requireNonNull(safetySourceDataBatch);
+            requireNonNull(safetyEvent);
+            requireNonNull(packageName);
+            getContext()
+                    .enforceCallingOrSelfPermission(
+                            SEND_SAFETY_CENTER_UPDATE, "setSafetySourceDataBatch");
+            if (!checkApiEnabled("setSafetySourceDataBatch")) {
+                return;
+            }
+
+            int size = safetySourceDataBatch.getSize();
+            int callingUid = Binder.getCallingUid();
+            ArrayMap<Integer, UserProfileGroup> userProfileGroups = new ArrayMap<>();
+            ArraySet<Integer> skippedUserIds = new ArraySet<>();
+            for (int i = 0; i < size; i++) {
+                int userId = safetySourceDataBatch.getUser(i).getIdentifier();
+                if (userProfileGroups.containsKey(userId) || skippedUserIds.contains(userId)) {
+                    continue;
+                }
+                // Entries for users that don't exist, aren't supported or don't have the package
+                // installed are skipped individually, as setSafetySourceData would ignore them.
+                if (!enforceCrossUserPermission("setSafetySourceDataBatch", userId)
+                        || !enforcePackage(callingUid, packageName, userId)) {
+                    skippedUserIds.add(userId);
+                    continue;
+                }
+                userProfileGroups.put(userId, UserProfileGroup.fromUser(getContext(), userId));
+            }
+
+            synchronized (mApiLock) {
+                // Validate every entry before applying any of them, so that an invalid entry
+                // leaves the state untouched.
+                SafetySourceData[] safetySourceDataToSet = new SafetySourceData[size];
+                SafetyEvent[] safetyEventsToSet = new SafetyEvent[size];
+                boolean[] shouldSet = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    String safetySourceId = safetySourceDataBatch.getSafetySourceId(i);
+                    int userId = safetySourceDataBatch.getUser(i).getIdentifier();
+                    if (skippedUserIds.contains(userId)) {
+                        continue;
+                    }
+                    safetySourceDataToSet[i] =
+                            mSafetySourceDataFix.maybeOverrideSafetySourceData(
+                                    safetySourceId,
+                                    safetySourceDataBatch.getSafetySourceData(i),
+                                    packageName,
+                                    userId);
+                    safetyEventsToSet[i] =
+                            SafetyEventFix.maybeOverrideSafetyEvent(
+                                    mSafetyCenterDataManager,
+                                    safetySourceId,
+                                    safetySourceDataToSet[i],
+                                    safetyEvent,
+                                    userId);
+                    shouldSet[i] =
+                            mSafetyCenterDataManager.validateSafetySourceDataRequest(
+                                    safetySourceDataToSet[i], safetySourceId, packageName, userId);
+                }
+
+                List<UserProfileGroup> changedUserProfileGroups = new ArrayList<>();
+                ArraySet<Integer> changedUserIds = new ArraySet<>();
+                for (int i = 0; i < size; i++) {
+                    if (!shouldSet[i]) {
+                        continue;
+                    }
+                    String safetySourceId = safetySourceDataBatch.getSafetySourceId(i);
+                    int userId = safetySourceDataBatch.getUser(i).getIdentifier();
+                    boolean hasUpdate =
+                            mSafetyCenterDataManager.setValidatedSafetySourceData(
+                                    safetySourceDataToSet[i],
+                                    safetySourceId,
+                                    safetyEventsToSet[i],
+                                    userId);
+                    if (!hasUpdate) {
+                        continue;
+                    }
+                    // See setSafetySourceData for why this must be called before
+                    // updateDataConsumers.
+                    if (safetyEventsToSet[i].getType()
+                            == SAFETY_EVENT_TYPE_RESOLVING_ACTION_SUCCEEDED) {
+                        mNotificationSender.notifyActionSuccess(
+                                safetySourceId, safetyEventsToSet[i], userId);
+                    }
+                    changedUserIds.add(userId);
+                    UserProfileGroup userProfileGroup = userProfileGroups.get(userId);
+                    if (!changedUserProfileGroups.contains(userProfileGroup)) {
+                        changedUserProfileGroups.add(userProfileGroup);
+                    }
+                }
+                mSafetyCenterDataChangeNotifier.updateDataConsumers(
+                        changedUserProfileGroups, changedUserIds);
+            }
+        }
+
         @Override
         @Nullable
         public SafetySourceData getSafetySourceData(
@@ -478,9 +583,11 @@ public final class SafetyCenterService extends SystemService {
         public void addOnSafetyCenterDataChangedListener(
                 IOnSafetyCenterDataChangedListener listener,
                 String packageName,
-                @UserIdInt int userId) {
+                @UserIdInt int userId,
+                @DataProjection int dataProjection) {
             requireNonNull(listener);
             requireNonNull(packageName);
+            SafetyCenterManager.validateDataProjection(dataProjection);
             getContext()
                     .enforceCallingOrSelfPermission(
                             MANAGE_SAFETY_CENTER, "addOnSafetyCenterDataChangedListener");
@@ -493,7 +600,8 @@ public final class SafetyCenterService extends SystemService {
             UserProfileGroup userProfileGroup = UserProfileGroup.fromUser(getContext(), userId);
             synchronized (mApiLock) {
                 IOnSafetyCenterDataChangedListener registeredListener =
-                        mSafetyCenterListeners.addListener(listener, packageName, userId);
+                        mSafetyCenterListeners.addListener(
+                                listener, packageName, userId, dataProjection);
                 if (registeredListener == null) {
                     return;
                 }
@@ -805,7 +913,7 @@ public final class SafetyCenterService extends SystemService {
                     mSafetyCenterConfigReader.dump(fout);
                 }
                 if (all || subjects.contains("data")) {
-                    mSafetyCenterDataManager.dump(fd, fout);
+                    mSafetyCenterDataManager.dump(fout);
                 }
                 if (all || subjects.contains("refresh")) {
                     mSafetyCenterRefreshTracker.dump(fout);
@@ -1064,6 +1172,44 @@ public final class SafetyCenterService extends SystemService {
         }
     }
 
+    /**
+     * {@link BroadcastReceiver} which handles packages being installed, updated or removed, so that
+     * the data cached for these packages is cleared.
+     */
+    private final class PackageBroadcastReceiver extends BroadcastReceiver {
+
+        private static final String TAG = "SafetyCenterPackageBro";
+
+        void register(Context context) {
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+            filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+            filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+            filter.addDataScheme("package");
+            context.registerReceiverForAllUsers(
+                    /* receiver= */ this,
+                    filter,
+                    /* broadcastPermission= */ null,
+                    /* scheduler= */ null);
+        }
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            String packageName = data == null ? null : data.getSchemeSpecificPart();
+            int uid = intent.getIntExtra(Intent.EXTRA_UID, Process.INVALID_UID);
+            if (packageName == null || uid == Process.INVALID_UID) {
+                Log.w(TAG, "Received broadcast with missing package or uid: " + intent);
+                return;
+            }
+
+            int userId = UserHandle.getUserHandleForUid(uid).getIdentifier();
+            synchronized (mApiLock) {
+                mSafetyCenterDataManager.onPackageChanged(packageName, userId);
+            }
+        }
+    }
+
     /**
      * {@link BroadcastReceiver} which handles user and work profile related broadcasts that Safety
      * Center is interested including quiet mode turning on/off and accounts being added/removed.
@@ -34,6 +34,7 @@ import android.util.ArraySet;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.safetycenter.ApiLock;
 import com.android.safetycenter.SafetyCenterConfigReader;
@@ -45,7 +46,7 @@ import com.android.safetycenter.internaldata.SafetyCenterIssueActionId;
 import com.android.safetycenter.internaldata.SafetyCenterIssueKey;
 import com.android.safetycenter.logging.SafetyCenterStatsdLogger;
 
-import java.io.FileDescriptor;
+import java.io.File;
 import java.io.PrintWriter;
 import java.time.Instant;
 import java.util.List;
@@ -82,12 +83,32 @@ public final class SafetyCenterDataManager {
             SafetyCenterConfigReader safetyCenterConfigReader,
             SafetyCenterRefreshTracker safetyCenterRefreshTracker,
             ApiLock apiLock) {
+        this(
+                context,
+                safetyCenterConfigReader,
+                safetyCenterRefreshTracker,
+                apiLock,
+                SafetyCenterIssueDismissalRepository.getDefaultDataDirectory());
+    }
+
+    /**
+     * Creates an instance of {@link SafetyCenterDataManager} that persists its state in the given
+     * {@code dataDirectory}.
+     */
+    @VisibleForTesting
+    public SafetyCenterDataManager(
+            Context context,
+            SafetyCenterConfigReader safetyCenterConfigReader,
+            SafetyCenterRefreshTracker safetyCenterRefreshTracker,
+            ApiLock apiLock,
+            File dataDirectory) {
         mContext = context;
         mSafetyCenterRefreshTracker = safetyCenterRefreshTracker;
         mSafetyCenterInFlightIssueActionRepository =
                 new SafetyCenterInFlightIssueActionRepository(context);
         mSafetyCenterIssueDismissalRepository =
-                new SafetyCenterIssueDismissalRepository(apiLock, safetyCenterConfigReader);
+                new SafetyCenterIssueDismissalRepository(
+                        apiLock, safetyCenterConfigReader, dataDirectory);
         mSafetySourceDataRepository =
                 new SafetySourceDataRepository(
                         mSafetyCenterInFlightIssueActionRepository,
@@ -134,14 +155,42 @@ public final class SafetyCenterDataManager {
             SafetyEvent safetyEvent,
             String packageName,
             @UserIdInt int userId) {
-        if (!mSafetySourceDataValidator.validateRequest(
+        if (!validateSafetySourceDataRequest(
+                safetySourceData, safetySourceId, packageName, userId)) {
+            return false;
+        }
+        return setValidatedSafetySourceData(safetySourceData, safetySourceId, safetyEvent, userId);
+    }
+
+    /**
+     * Validates a request to set the given {@link SafetySourceData} without changing any state,
+     * and returns {@code true} if the request should proceed.
+     *
+     * <p>Throws if the request is invalid, like {@link #setSafetySourceData}. This allows
+     * validating a batch of requests before applying any of them.
+     */
+    public boolean validateSafetySourceDataRequest(
+            @Nullable SafetySourceData safetySourceData,
+            String safetySourceId,
+            String packageName,
+            @UserIdInt int userId) {
+        return mSafetySourceDataValidator.validateRequest(
                 safetySourceData,
                 /* callerCanAccessAnySource= */ false,
                 safetySourceId,
                 packageName,
-                userId)) {
-            return false;
-        }
+                userId);
+    }
+
+    /**
+     * Sets the latest {@link SafetySourceData} like {@link #setSafetySourceData}, for a request
+     * that {@link #validateSafetySourceDataRequest} accepted.
+     */
+    public boolean setValidatedSafetySourceData(
+            @Nullable SafetySourceData safetySourceData,
+            String safetySourceId,
+            SafetyEvent safetyEvent,
+            @UserIdInt int userId) {
         SafetySourceKey safetySourceKey = SafetySourceKey.of(safetySourceId, userId);
 
         // Must fetch refresh reason before calling processSafetyEvent because the latter may
@@ -300,12 +349,21 @@ public final class SafetyCenterDataManager {
         return dataUpdated;
     }
 
+    /**
+     * Clears the data cached for the given {@code packageName} and {@code userId}, which must be
+     * called when that package is installed, updated or removed.
+     */
+    public void onPackageChanged(String packageName, @UserIdInt int userId) {
+        mSafetySourceDataValidator.onPackageChanged(packageName, userId);
+    }
+
     /** Clears all data related to the given {@code userId}. */
     public void clearForUser(@UserIdInt int userId) {
         mSafetySourceDataRepository.clearForUser(userId);
         mSafetyCenterInFlightIssueActionRepository.clearForUser(userId);
         mSafetyCenterIssueDismissalRepository.clearForUser(userId);
         mSafetyCenterIssueRepository.clearForUser(userId);
+        mSafetySourceDataValidator.clearForUser(userId);
     }
 
     /** Clears all stored data. */
@@ -314,6 +372,7 @@ public final class SafetyCenterDataManager {
         mSafetyCenterIssueDismissalRepository.clear();
         mSafetyCenterInFlightIssueActionRepository.clear();
         mSafetyCenterIssueRepository.clear();
+        mSafetySourceDataValidator.clear();
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////
@@ -502,11 +561,12 @@ public final class SafetyCenterDataManager {
     ///////////////////////////////////////////////////////////////////////////////////////////////
 
     /** Dumps state for debugging purposes. */
-    public void dump(FileDescriptor fd, PrintWriter fout) {
+    public void dump(PrintWriter fout) {
         mSafetySourceDataRepository.dump(fout);
-        mSafetyCenterIssueDismissalRepository.dump(fd, fout);
+        mSafetyCenterIssueDismissalRepository.dump(fout);
         mSafetyCenterInFlightIssueActionRepository.dump(fout);
         mSafetyCenterIssueRepository.dump(fout);
+        mSafetySourceDataValidator.dump(fout);
     }
 
     private boolean processSafetyEvent(
@@ -25,9 +25,11 @@ import android.os.Handler;
 import android.safetycenter.SafetySourceData;
 import android.util.ArrayMap;
 import android.util.ArraySet;
+import android.util.AtomicFile;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.modules.utils.BackgroundThread;
 import com.android.safetycenter.ApiLock;
@@ -40,12 +42,7 @@ import com.android.safetycenter.persistence.PersistenceException;
 import com.android.safetycenter.persistence.SafetyCenterIssuesPersistence;
 
 import java.io.File;
-import java.io.FileDescriptor;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -62,6 +59,12 @@ import javax.annotation.concurrent.NotThreadSafe;
  * SafetyCenterIssueDismissalRepository#loadStateFromFile()} to initialize the state with what was
  * stored in the file.
  *
+ * <p>The file is only written when the persisted state actually changed since it was last written.
+ * It uses the binary format of {@link SafetyCenterIssuesPersistence#writeBinary}. The file in the
+ * legacy XML format is no longer written, but it is kept so that a module rollback still finds the
+ * dismissals made up to the migration. When loading, the most recently modified of the two files
+ * wins, so that the dismissals made by a rolled back module are migrated again on roll-forward.
+ *
  * <p>This class isn't thread safe. Thread safety must be handled by the caller.
  */
 @NotThreadSafe
@@ -73,24 +76,64 @@ final class SafetyCenterIssueDismissalRepository {
     private static final String APEX_MODULE_NAME = "com.android.permission";
 
     /** The name of the file used to persist the {@link SafetyCenterIssueDismissalRepository}. */
-    private static final String ISSUE_DISMISSAL_REPOSITORY_FILE_NAME = "safety_center_issues.xml";
+    private static final String ISSUE_DISMISSAL_REPOSITORY_FILE_NAME = "safety_center_issues.bin";
+
+    /**
+     * The name of the file used to persist the {@link SafetyCenterIssueDismissalRepository} in the
+     * legacy XML format, which is migrated to {@link #ISSUE_DISMISSAL_REPOSITORY_FILE_NAME}.
+     */
+    private static final String LEGACY_ISSUE_DISMISSAL_REPOSITORY_FILE_NAME =
+            "safety_center_issues.xml";
 
     /** The time delay used to throttle and aggregate writes to disk. */
     private static final Duration WRITE_DELAY = Duration.ofMillis(500);
 
-    private final Handler mWriteHandler = BackgroundThread.getHandler();
+    private final Handler mWriteHandler;
 
     private final ApiLock mApiLock;
 
     private final SafetyCenterConfigReader mSafetyCenterConfigReader;
 
+    private final File mDataDirectory;
+
     private final ArrayMap<SafetyCenterIssueKey, IssueData> mIssues = new ArrayMap<>();
     private boolean mWriteStateToFileScheduled = false;
 
+    /**
+     * The state last handed to persistence, or {@code null} if the state of the file is unknown.
+     */
+    @Nullable private List<PersistedSafetyCenterIssue> mLastPersistedIssues = null;
+
+    private int mWriteCount = 0;
+    private int mSkippedWriteCount = 0;
+
+    SafetyCenterIssueDismissalRepository(
+            ApiLock apiLock,
+            SafetyCenterConfigReader safetyCenterConfigReader,
+            File dataDirectory) {
+        this(apiLock, safetyCenterConfigReader, BackgroundThread.getHandler(), dataDirectory);
+    }
+
+    @VisibleForTesting
     SafetyCenterIssueDismissalRepository(
-            ApiLock apiLock, SafetyCenterConfigReader safetyCenterConfigReader) {
+            ApiLock apiLock,
+            SafetyCenterConfigReader safetyCenterConfigReader,
+            Handler writeHandler,
+            File dataDirectory) {
         mApiLock = apiLock;
         mSafetyCenterConfigReader = safetyCenterConfigReader;
+        mWriteHandler = writeHandler;
+        mDataDirectory = dataDirectory;
+    }
+
+    /**
+     * Returns the directory in which the issue dismissal state is persisted on the device.
+     *
+     * <p>It should resolve to /data/misc/apexdata/com.android.permission
+     */
+    static File getDefaultDataDirectory() {
+        ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
+        return apexEnvironment.getDeviceProtectedDataDir();
     }
 
     /**
@@ -160,9 +203,11 @@ final class SafetyCenterIssueDismissalRepository {
             return;
         }
 
-        dataTo.setDismissedAt(dataFrom.getDismissedAt());
-        dataTo.setDismissCount(dataFrom.getDismissCount());
-        scheduleWriteStateToFile();
+        boolean someDataChanged = dataTo.setDismissedAt(dataFrom.getDismissedAt());
+        someDataChanged |= dataTo.setDismissCount(dataFrom.getDismissCount());
+        if (someDataChanged) {
+            scheduleWriteStateToFile();
+        }
     }
 
     /**
@@ -177,8 +222,9 @@ final class SafetyCenterIssueDismissalRepository {
             return;
         }
 
-        dataTo.setNotificationDismissedAt(dataFrom.getNotificationDismissedAt());
-        scheduleWriteStateToFile();
+        if (dataTo.setNotificationDismissedAt(dataFrom.getNotificationDismissedAt())) {
+            scheduleWriteStateToFile();
+        }
     }
 
     /**
@@ -409,13 +455,17 @@ final class SafetyCenterIssueDismissalRepository {
     }
 
     /** Dumps state for debugging purposes. */
-    void dump(FileDescriptor fd, PrintWriter fout) {
+    void dump(PrintWriter fout) {
         int issueRepositoryCount = mIssues.size();
         fout.println(
                 "ISSUE DISMISSAL REPOSITORY ("
                         + issueRepositoryCount
                         + ", mWriteStateToFileScheduled="
                         + mWriteStateToFileScheduled
+                        + ", mWriteCount="
+                        + mWriteCount
+                        + ", mSkippedWriteCount="
+                        + mSkippedWriteCount
                         + ")");
         for (int i = 0; i < issueRepositoryCount; i++) {
             SafetyCenterIssueKey key = mIssues.keyAt(i);
@@ -429,14 +479,18 @@ final class SafetyCenterIssueDismissalRepository {
                 "ISSUE DISMISSAL REPOSITORY FILE ("
                         + issueDismissalRepositoryFile.getAbsolutePath()
                         + ")");
-        fout.flush();
-        try {
-            Files.copy(issueDismissalRepositoryFile.toPath(), new FileOutputStream(fd));
-            fout.println();
-        } catch (NoSuchFileException e) {
+        if (!new AtomicFile(issueDismissalRepositoryFile).exists()) {
             fout.println("<No File> (equivalent to empty issue list)");
-        } catch (IOException e) {
-            printError(e, fout);
+        } else {
+            try {
+                List<PersistedSafetyCenterIssue> persistedIssues =
+                        SafetyCenterIssuesPersistence.readBinary(issueDismissalRepositoryFile);
+                for (int i = 0; i < persistedIssues.size(); i++) {
+                    fout.println("\t[" + i + "] " + persistedIssues.get(i));
+                }
+            } catch (PersistenceException e) {
+                printError(e, fout);
+            }
         }
         fout.println();
     }
@@ -478,36 +532,83 @@ final class SafetyCenterIssueDismissalRepository {
         synchronized (mApiLock) {
             mWriteStateToFileScheduled = false;
             persistedSafetyCenterIssues = snapshot();
+            // Changes may cancel each other out within the write delay, e.g. an issue that is
+            // reported and then cleared: only write if the persisted state actually differs.
+            if (persistedSafetyCenterIssues.equals(mLastPersistedIssues)) {
+                mSkippedWriteCount++;
+                return;
+            }
+            mLastPersistedIssues = persistedSafetyCenterIssues;
+            mWriteCount++;
             // Since all write operations are scheduled in the same background thread, we can safely
             // release the lock after creating a snapshot and know that all snapshots will be
             // written in the correct order even if we are not holding the lock.
         }
 
-        SafetyCenterIssuesPersistence.write(
-                persistedSafetyCenterIssues, getIssueDismissalRepositoryFile());
+        boolean written =
+                SafetyCenterIssuesPersistence.writeBinary(
+                        persistedSafetyCenterIssues, getIssueDismissalRepositoryFile());
+        if (!written) {
+            synchronized (mApiLock) {
+                mLastPersistedIssues = null;
+            }
+        }
     }
 
-    /** Read the contents of the file and load them into this class. */
+    /**
+     * Read the contents of the file and load them into this class.
+     *
+     * <p>If the file in the legacy XML format was modified more recently than the file in the
+     * binary format, e.g. because there is no binary file yet or because the module was rolled back
+     * in the meantime, the legacy file is read instead and the state is written back in the binary
+     * format.
+     */
     void loadStateFromFile() {
         List<PersistedSafetyCenterIssue> persistedSafetyCenterIssues = new ArrayList<>();
+        File file = getIssueDismissalRepositoryFile();
+        File legacyFile = getLegacyIssueDismissalRepositoryFile();
+        boolean isMigration = isNewer(new AtomicFile(legacyFile), new AtomicFile(file));
 
+        boolean readSuccessfully = false;
         try {
             persistedSafetyCenterIssues =
-                    SafetyCenterIssuesPersistence.read(getIssueDismissalRepositoryFile());
+                    isMigration
+                            ? SafetyCenterIssuesPersistence.read(legacyFile)
+                            : SafetyCenterIssuesPersistence.readBinary(file);
+            readSuccessfully = true;
             Log.d(TAG, "Safety Center persisted issues read successfully");
         } catch (PersistenceException e) {
             Log.w(TAG, "Cannot read Safety Center persisted issues", e);
         }
 
+        mLastPersistedIssues =
+                readSuccessfully && !isMigration ? persistedSafetyCenterIssues : null;
         load(persistedSafetyCenterIssues);
-        scheduleWriteStateToFile();
+        if (mLastPersistedIssues == null) {
+            scheduleWriteStateToFile();
+        }
     }
 
-    private static File getIssueDismissalRepositoryFile() {
-        ApexEnvironment apexEnvironment = ApexEnvironment.getApexEnvironment(APEX_MODULE_NAME);
-        File dataDirectory = apexEnvironment.getDeviceProtectedDataDir();
+    /**
+     * Returns whether {@code file} exists and was modified after {@code otherFile}, or {@code
+     * otherFile} doesn't exist.
+     */
+    private static boolean isNewer(AtomicFile file, AtomicFile otherFile) {
+        if (!file.exists()) {
+            return false;
+        }
+        return !otherFile.exists()
+                || file.getLastModifiedTime() > otherFile.getLastModifiedTime();
+    }
+
+    private File getIssueDismissalRepositoryFile() {
+        // It should resolve to /data/misc/apexdata/com.android.permission/safety_center_issues.bin
+        return new File(mDataDirectory, ISSUE_DISMISSAL_REPOSITORY_FILE_NAME);
+    }
+
+    private File getLegacyIssueDismissalRepositoryFile() {
         // It should resolve to /data/misc/apexdata/com.android.permission/safety_center_issues.xml
-        return new File(dataDirectory, ISSUE_DISMISSAL_REPOSITORY_FILE_NAME);
+        return new File(mDataDirectory, LEGACY_ISSUE_DISMISSAL_REPOSITORY_FILE_NAME);
     }
 
     /**
@@ -549,16 +650,22 @@ final class SafetyCenterIssueDismissalRepository {
             return mDismissedAt;
         }
 
-        private void setDismissedAt(@Nullable Instant dismissedAt) {
+        /** Returns whether the given value differs from the previous one. */
+        private boolean setDismissedAt(@Nullable Instant dismissedAt) {
+            boolean changed = !Objects.equals(mDismissedAt, dismissedAt);
             mDismissedAt = dismissedAt;
+            return changed;
         }
 
         private int getDismissCount() {
             return mDismissCount;
         }
 
-        private void setDismissCount(int dismissCount) {
+        /** Returns whether the given value differs from the previous one. */
+        private boolean setDismissCount(int dismissCount) {
+            boolean changed = mDismissCount != dismissCount;
             mDismissCount = dismissCount;
+            return changed;
         }
 
         @Nullable
@@ -566,8 +673,11 @@ final class SafetyCenterIssueDismissalRepository {
             return mNotificationDismissedAt;
         }
 
-        private void setNotificationDismissedAt(@Nullable Instant notificationDismissedAt) {
+        /** Returns whether the given value differs from the previous one. */
+        private boolean setNotificationDismissedAt(@Nullable Instant notificationDismissedAt) {
+            boolean changed = !Objects.equals(mNotificationDismissedAt, notificationDismissedAt);
             mNotificationDismissedAt = notificationDismissedAt;
+            return changed;
         }
 
         private boolean isHidden() {
@@ -62,6 +62,7 @@ final class SafetySourceDataRepository {
     private final ArraySet<SafetySourceKey> mSafetySourceErrors = new ArraySet<>();
     private final ArrayMap<SafetySourceKey, Long> mSafetySourceLastUpdated = new ArrayMap<>();
     private final ArrayMap<SafetySourceKey, Integer> mSourceStates = new ArrayMap<>();
+    private final ArrayMap<SafetySourceKey, Integer> mNoOpUpdateCounts = new ArrayMap<>();
 
     private final SafetyCenterInFlightIssueActionRepository
             mSafetyCenterInFlightIssueActionRepository;
@@ -96,6 +97,8 @@ final class SafetySourceDataRepository {
 
         if (sourceDataDiffers) {
             setSafetySourceDataInternal(safetySourceKey, safetySourceData);
+        } else {
+            incrementNoOpUpdateCount(safetySourceKey);
         }
 
         setLastUpdatedNow(safetySourceKey);
@@ -118,6 +121,15 @@ final class SafetySourceDataRepository {
                 issueIds, key.getSourceId(), key.getUserId());
     }
 
+    /**
+     * Keeps track of the updates that didn't change the {@link SafetySourceData} of a source, so
+     * that sources resending the same data can be identified in the dump.
+     */
+    private void incrementNoOpUpdateCount(SafetySourceKey key) {
+        Integer count = mNoOpUpdateCounts.get(key);
+        mNoOpUpdateCounts.put(key, count == null ? 1 : count + 1);
+    }
+
     /**
      * Returns the latest {@link SafetySourceData} that was set by {@link #setSafetySourceData} for
      * the given {@link SafetySourceKey}.
@@ -298,6 +310,7 @@ final class SafetySourceDataRepository {
         mSafetySourceErrors.clear();
         mSafetySourceLastUpdated.clear();
         mSourceStates.clear();
+        mNoOpUpdateCounts.clear();
     }
 
     /** Clears all data for the given user. */
@@ -327,6 +340,12 @@ final class SafetySourceDataRepository {
                 mSourceStates.removeAt(i);
             }
         }
+        for (int i = mNoOpUpdateCounts.size() - 1; i >= 0; i--) {
+            SafetySourceKey sourceKey = mNoOpUpdateCounts.keyAt(i);
+            if (sourceKey.getUserId() == userId) {
+                mNoOpUpdateCounts.removeAt(i);
+            }
+        }
     }
 
     /** Dumps state for debugging purposes. */
@@ -341,6 +360,7 @@ final class SafetySourceDataRepository {
         fout.println();
         dumpArrayMap(fout, mSafetySourceLastUpdated, "LAST UPDATED");
         dumpArrayMap(fout, mSourceStates, "SOURCE STATES");
+        dumpArrayMap(fout, mNoOpUpdateCounts, "NO-OP UPDATES");
     }
 
     private static <K, V> void dumpArrayMap(PrintWriter fout, ArrayMap<K, V> map, String label) {
@@ -24,6 +24,7 @@ import android.safetycenter.SafetySourceData;
 import android.safetycenter.SafetySourceIssue;
 import android.safetycenter.SafetySourceStatus;
 import android.safetycenter.config.SafetySource;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -34,7 +35,9 @@ import com.android.safetycenter.SafetyCenterConfigReader;
 import com.android.safetycenter.SafetyCenterFlags;
 import com.android.safetycenter.SafetySources;
 
+import java.io.PrintWriter;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import javax.annotation.concurrent.NotThreadSafe;
@@ -43,6 +46,11 @@ import javax.annotation.concurrent.NotThreadSafe;
  * Validates calls made to the Safety Center API to get, set or clear {@link SafetySourceData}, or
  * to report an error.
  *
+ * <p>The result of checking whether a package is signed with a given certificate is cached until
+ * the package is installed, updated or removed for that user, as sources may send updates
+ * frequently. Cached results are dropped through {@link #onPackageChanged}, so that validating a
+ * request doesn't require any {@link PackageManager} call in the steady state.
+ *
  * <p>This class isn't thread safe. Thread safety must be handled by the caller.
  */
 @NotThreadSafe
@@ -54,6 +62,11 @@ final class SafetySourceDataValidator {
     private final SafetyCenterConfigReader mSafetyCenterConfigReader;
     private final PackageManager mPackageManager;
 
+    private final ArrayMap<PackageKey, CertificateChecks> mCertificateChecks = new ArrayMap<>();
+
+    private long mCertificateCheckCacheHits = 0;
+    private long mCertificateCheckCacheMisses = 0;
+
     SafetySourceDataValidator(Context context, SafetyCenterConfigReader safetyCenterConfigReader) {
         mContext = context;
         mSafetyCenterConfigReader = safetyCenterConfigReader;
@@ -87,7 +100,7 @@ final class SafetySourceDataValidator {
 
         SafetySource safetySource = externalSafetySource.getSafetySource();
         if (!callerCanAccessAnySource) {
-            validateCallingPackage(safetySource, packageName, safetySourceId);
+            validateCallingPackage(safetySource, packageName, userId, safetySourceId);
         }
 
         if (UserUtils.isManagedProfile(userId, mContext)
@@ -181,8 +194,53 @@ final class SafetySourceDataValidator {
         return isActive;
     }
 
+    /**
+     * Clears the cached signing certificate checks of the given {@code packageName} and {@code
+     * userId}, which must be called when that package is installed, updated or removed.
+     */
+    void onPackageChanged(String packageName, @UserIdInt int userId) {
+        mCertificateChecks.remove(new PackageKey(packageName, userId));
+    }
+
+    /** Clears the cached signing certificate checks of the given {@code userId}. */
+    void clearForUser(@UserIdInt int userId) {
+        // Loop in reverse index order to be able to remove entries while iterating.
+        for (int i = mCertificateChecks.size() - 1; i >= 0; i--) {
+            if (mCertificateChecks.keyAt(i).mUserId == userId) {
+                mCertificateChecks.removeAt(i);
+            }
+        }
+    }
+
+    /** Clears all cached signing certificate checks. */
+    void clear() {
+        mCertificateChecks.clear();
+    }
+
+    /** Dumps state for debugging purposes. */
+    void dump(PrintWriter fout) {
+        int count = mCertificateChecks.size();
+        fout.println(
+                "CERTIFICATE CHECKS ("
+                        + count
+                        + ", hits="
+                        + mCertificateCheckCacheHits
+                        + ", misses="
+                        + mCertificateCheckCacheMisses
+                        + ")");
+        for (int i = 0; i < count; i++) {
+            PackageKey packageKey = mCertificateChecks.keyAt(i);
+            CertificateChecks certificateChecks = mCertificateChecks.valueAt(i);
+            fout.println("\t[" + i + "] " + packageKey + " -> " + certificateChecks);
+        }
+        fout.println();
+    }
+
     private void validateCallingPackage(
-            SafetySource safetySource, String packageName, String safetySourceId) {
+            SafetySource safetySource,
+            String packageName,
+            @UserIdInt int userId,
+            String safetySourceId) {
         if (!packageName.equals(safetySource.getPackageName())) {
             throw new IllegalArgumentException(
                     "Unexpected package name: "
@@ -202,9 +260,11 @@ final class SafetySourceDataValidator {
             return;
         }
 
-        if (!checkCerts(packageName, certificateHashes)
+        CertificateChecks certificateChecks = getCertificateChecks(packageName, userId);
+        if (!checkCerts(packageName, certificateChecks, certificateHashes)
                 && !checkCerts(
                         packageName,
+                        certificateChecks,
                         SafetyCenterFlags.getAdditionalAllowedPackageCerts(packageName))) {
             Log.w(
                     TAG,
@@ -217,13 +277,40 @@ final class SafetySourceDataValidator {
         }
     }
 
-    private boolean checkCerts(String packageName, Set<String> certificateHashes) {
+    /**
+     * Returns the cached signing certificate checks of the given {@code packageName} and {@code
+     * userId}.
+     */
+    private CertificateChecks getCertificateChecks(String packageName, @UserIdInt int userId) {
+        PackageKey packageKey = new PackageKey(packageName, userId);
+        CertificateChecks certificateChecks = mCertificateChecks.get(packageKey);
+        if (certificateChecks == null) {
+            certificateChecks = new CertificateChecks();
+            mCertificateChecks.put(packageKey, certificateChecks);
+        }
+        return certificateChecks;
+    }
+
+    private boolean checkCerts(
+            String packageName,
+            CertificateChecks certificateChecks,
+            Set<String> certificateHashes) {
         boolean hasMatchingCert = false;
         for (String certHash : certificateHashes) {
+            Boolean cachedHasCert = certificateChecks.mHasCertificate.get(certHash);
+            if (cachedHasCert != null) {
+                mCertificateCheckCacheHits++;
+                hasMatchingCert |= cachedHasCert;
+                continue;
+            }
+            mCertificateCheckCacheMisses++;
             try {
                 byte[] certificate = new Signature(certHash).toByteArray();
-                if (mPackageManager.hasSigningCertificate(
-                        packageName, certificate, PackageManager.CERT_INPUT_SHA256)) {
+                boolean hasCert =
+                        mPackageManager.hasSigningCertificate(
+                                packageName, certificate, PackageManager.CERT_INPUT_SHA256);
+                certificateChecks.mHasCertificate.put(certHash, hasCert);
+                if (hasCert) {
                     Log.v(TAG, "Package: " + packageName + " has expected signature");
                     hasMatchingCert = true;
                 }
@@ -235,4 +322,46 @@ final class SafetySourceDataValidator {
         }
         return hasMatchingCert;
     }
+
+    /** The signing certificate checks of a package. */
+    private static final class CertificateChecks {
+
+        /** Map<certificate hash, whether the package is signed with that certificate> */
+        private final ArrayMap<String, Boolean> mHasCertificate = new ArrayMap<>();
+
+        @Override
+        public String toString() {
+            return "CertificateChecks{" + "mHasCertificate=" + mHasCertificate + '}';
+        }
+    }
+
+    /** A key to identify a package installed for a given user. */
+    private static final class PackageKey {
+
+        private final String mPackageName;
+        @UserIdInt private final int mUserId;
+
+        private PackageKey(String packageName, @UserIdInt int userId) {
+            mPackageName = packageName;
+            mUserId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PackageKey)) return false;
+            PackageKey packageKey = (PackageKey) o;
+            return mPackageName.equals(packageKey.mPackageName) && mUserId == packageKey.mUserId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mPackageName, mUserId);
+        }
+
+        @Override
+        public String toString() {
+            return "PackageKey{" + "mPackageName='" + mPackageName + "', mUserId=" + mUserId + '}';
+        }
+    }
 }
@@ -94,7 +94,7 @@ class RuntimePermissionsPersistenceTest {
     fun testWriteCorruptReadFromReserveCopy() {
         persistence.writeForUser(state, user)
         // Corrupt the primary file.
-        RuntimePermissionsPersistenceImpl.getFile(user)
+        persistence.getFile(user)
             .writeText(
                 "<runtime-permissions version=\"10\"><package name=\"com.foo.bar\"><permission"
             )
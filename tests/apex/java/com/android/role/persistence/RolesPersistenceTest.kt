@@ -96,7 +96,7 @@ class RolesPersistenceTest {
     fun testWriteCorruptReadFromReserveCopy() {
         persistence.writeForUser(state, user)
         // Corrupt the primary file.
-        RolesPersistenceImpl.getFile(user)
+        persistence.getFile(user)
             .writeText("<roles version=\"-1\"><role name=\"com.foo.bar\"><holder")
         val persistedState = persistence.readForUser(user)
 
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter
+
+import android.os.Build.VERSION_CODES.TIRAMISU
+import android.safetycenter.config.SafetyCenterConfig
+import android.safetycenter.config.SafetySource
+import android.safetycenter.config.SafetySource.SAFETY_SOURCE_TYPE_DYNAMIC
+import android.safetycenter.config.SafetySource.SAFETY_SOURCE_TYPE_ISSUE_ONLY
+import android.safetycenter.config.SafetySource.SAFETY_SOURCE_TYPE_STATIC
+import android.safetycenter.config.SafetySourcesGroup
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SdkSuppress
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+@SdkSuppress(minSdkVersion = TIRAMISU)
+class SafetyCenterConfigReaderTest {
+    private val safetyCenterConfigReader =
+        SafetyCenterConfigReader.fromConfigForTests(
+            config(
+                group(
+                    "group_1",
+                    dynamicSource("dynamic_1", PACKAGE_NAME),
+                    staticSource("static_1"),
+                    issueOnlySource("issue_only_1", OTHER_PACKAGE_NAME)
+                ),
+                group("group_2", dynamicSource("dynamic_2", PACKAGE_NAME))
+            )
+        )
+
+    @Test
+    fun getExternalSafetySourceIdsForPackage_returnsSourcesOfAllGroupsInOrder() {
+        assertThat(safetyCenterConfigReader.getExternalSafetySourceIdsForPackage(PACKAGE_NAME))
+            .containsExactly("dynamic_1", "dynamic_2")
+            .inOrder()
+    }
+
+    @Test
+    fun getExternalSafetySourceIdsForPackage_includesIssueOnlySources() {
+        assertThat(
+                safetyCenterConfigReader.getExternalSafetySourceIdsForPackage(OTHER_PACKAGE_NAME)
+            )
+            .containsExactly("issue_only_1")
+    }
+
+    @Test
+    fun getExternalSafetySourceIdsForPackage_unknownPackage_returnsEmptyList() {
+        assertThat(safetyCenterConfigReader.getExternalSafetySourceIdsForPackage("com.unknown"))
+            .isEmpty()
+    }
+
+    @Test
+    fun getExternalSafetySourceIdsForPackage_withConfigOverride_usesOverride() {
+        safetyCenterConfigReader.setConfigOverrideForTests(
+            config(group("group_3", dynamicSource("dynamic_3", OTHER_PACKAGE_NAME)))
+        )
+
+        assertThat(safetyCenterConfigReader.getExternalSafetySourceIdsForPackage(PACKAGE_NAME))
+            .isEmpty()
+        assertThat(
+                safetyCenterConfigReader.getExternalSafetySourceIdsForPackage(OTHER_PACKAGE_NAME)
+            )
+            .containsExactly("dynamic_3")
+    }
+
+    @Test
+    fun getExternalSafetySourceIdsForPackage_afterClearingConfigOverride_usesXmlConfig() {
+        safetyCenterConfigReader.setConfigOverrideForTests(
+            config(group("group_3", dynamicSource("dynamic_3", OTHER_PACKAGE_NAME)))
+        )
+
+        safetyCenterConfigReader.clearConfigOverrideForTests()
+
+        assertThat(safetyCenterConfigReader.getExternalSafetySourceIdsForPackage(PACKAGE_NAME))
+            .containsExactly("dynamic_1", "dynamic_2")
+            .inOrder()
+    }
+
+    private fun config(vararg groups: SafetySourcesGroup): SafetyCenterConfig =
+        SafetyCenterConfig.Builder().apply { groups.forEach { addSafetySourcesGroup(it) } }.build()
+
+    private fun group(id: String, vararg sources: SafetySource): SafetySourcesGroup =
+        SafetySourcesGroup.Builder()
+            .setId(id)
+            .setTitleResId(RES_ID)
+            .apply { sources.forEach { addSafetySource(it) } }
+            .build()
+
+    private fun dynamicSource(id: String, packageName: String): SafetySource =
+        SafetySource.Builder(SAFETY_SOURCE_TYPE_DYNAMIC)
+            .setId(id)
+            .setPackageName(packageName)
+            .setTitleResId(RES_ID)
+            .setSummaryResId(RES_ID)
+            .setIntentAction(INTENT_ACTION)
+            .setProfile(SafetySource.PROFILE_PRIMARY)
+            .build()
+
+    private fun staticSource(id: String): SafetySource =
+        SafetySource.Builder(SAFETY_SOURCE_TYPE_STATIC)
+            .setId(id)
+            .setTitleResId(RES_ID)
+            .setIntentAction(INTENT_ACTION)
+            .setProfile(SafetySource.PROFILE_PRIMARY)
+            .build()
+
+    private fun issueOnlySource(id: String, packageName: String): SafetySource =
+        SafetySource.Builder(SAFETY_SOURCE_TYPE_ISSUE_ONLY)
+            .setId(id)
+            .setPackageName(packageName)
+            .setProfile(SafetySource.PROFILE_PRIMARY)
+            .build()
+
+    companion object {
+        private const val PACKAGE_NAME = "com.android.safetycenter.test.source"
+        private const val OTHER_PACKAGE_NAME = "com.android.safetycenter.test.other"
+        private const val INTENT_ACTION = "com.android.safetycenter.test.ACTION"
+        private const val RES_ID = 1
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter.data
+
+import android.content.Context
+import android.os.Build.VERSION_CODES.TIRAMISU
+import android.os.Handler
+import android.os.HandlerThread
+import android.util.ArraySet
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SdkSuppress
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.safetycenter.ApiLock
+import com.android.safetycenter.SafetyCenterConfigReader
+import com.android.safetycenter.persistence.PersistedSafetyCenterIssue
+import com.android.safetycenter.persistence.SafetyCenterIssuesPersistence
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+
+@RunWith(AndroidJUnit4::class)
+@SdkSuppress(minSdkVersion = TIRAMISU)
+class SafetyCenterIssueDismissalRepositoryTest {
+    private val context = InstrumentationRegistry.getInstrumentation().context
+    private val apiLock = mock(ApiLock::class.java)
+    private val safetyCenterConfigReader = mock(SafetyCenterConfigReader::class.java)
+    private val writeThread = HandlerThread(TAG)
+
+    private lateinit var writeHandler: Handler
+    private lateinit var dataDirectory: File
+
+    private val file: File
+        get() = File(dataDirectory, "safety_center_issues.bin")
+
+    private val legacyFile: File
+        get() = File(dataDirectory, "safety_center_issues.xml")
+
+    @Before
+    fun setUp() {
+        dataDirectory = context.getDir("mock_data", Context.MODE_PRIVATE)
+        dataDirectory.listFiles()!!.forEach { assertThat(it.deleteRecursively()).isTrue() }
+
+        `when`(safetyCenterConfigReader.isExternalSafetySourceFromRealConfig(anyString()))
+            .thenReturn(true)
+
+        writeThread.start()
+        writeHandler = Handler(writeThread.looper)
+    }
+
+    @After
+    fun tearDown() {
+        writeThread.quitSafely()
+        writeThread.join()
+    }
+
+    @Test
+    fun loadStateFromFile_legacyFileOnly_migratesToBinaryFile() {
+        val issues = writeLegacyFile(ISSUE_ID, OTHER_ISSUE_ID)
+
+        newRepository().loadStateFromFile()
+        waitForWrites()
+
+        assertThat(SafetyCenterIssuesPersistence.readBinary(file)).isEqualTo(issues)
+    }
+
+    @Test
+    fun loadStateFromFile_legacyFileOnly_keepsLegacyFile() {
+        val issues = writeLegacyFile(ISSUE_ID)
+
+        newRepository().loadStateFromFile()
+        waitForWrites()
+
+        assertThat(SafetyCenterIssuesPersistence.read(legacyFile)).isEqualTo(issues)
+    }
+
+    @Test
+    fun updateIssuesForSource_writesOnlyBinaryFile() {
+        val repository = newRepository()
+
+        repository.updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+
+        assertThat(SafetyCenterIssuesPersistence.readBinary(file)).hasSize(1)
+        assertThat(legacyFile.exists()).isFalse()
+    }
+
+    @Test
+    fun loadStateFromFile_binaryFileNewerThanLegacyFile_readsBinaryFile() {
+        val legacyIssues = writeLegacyFile(ISSUE_ID, OTHER_ISSUE_ID)
+        newRepository().updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+        val issues = SafetyCenterIssuesPersistence.readBinary(file)
+        val lastModified = setModifiedInThePast(file)
+        assertThat(legacyFile.setLastModified(lastModified - MODIFIED_TIME_DELTA_MILLIS)).isTrue()
+
+        newRepository().loadStateFromFile()
+        waitForWrites()
+
+        assertThat(file.lastModified()).isEqualTo(lastModified)
+        assertThat(SafetyCenterIssuesPersistence.readBinary(file)).isEqualTo(issues)
+        assertThat(SafetyCenterIssuesPersistence.read(legacyFile)).isEqualTo(legacyIssues)
+    }
+
+    @Test
+    fun loadStateFromFile_rollbackThenRollForward_readsLegacyFileWrittenDuringRollback() {
+        // The binary file is written before the rollback.
+        newRepository().updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+        val issuesBeforeRollback = SafetyCenterIssuesPersistence.readBinary(file)
+        // The rolled back module only writes the legacy file.
+        val rollbackIssues = writeLegacyFile(ISSUE_ID, OTHER_ISSUE_ID)
+        assertThat(SafetyCenterIssuesPersistence.writeBinary(issuesBeforeRollback, file)).isTrue()
+        setModifiedInThePast(file)
+
+        // The module is rolled forward.
+        newRepository().loadStateFromFile()
+        waitForWrites()
+
+        assertThat(SafetyCenterIssuesPersistence.readBinary(file)).isEqualTo(rollbackIssues)
+    }
+
+    @Test
+    fun loadStateFromFile_binaryFile_doesntWrite() {
+        newRepository().updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+        val lastModified = setModifiedInThePast(file)
+
+        newRepository().loadStateFromFile()
+        waitForWrites()
+
+        assertThat(file.lastModified()).isEqualTo(lastModified)
+        assertThat(legacyFile.exists()).isFalse()
+    }
+
+    @Test
+    fun updateIssuesForSource_changesCancelOut_doesntWrite() {
+        val repository = newRepository()
+        repository.updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+        assertThat(file.delete()).isTrue()
+
+        repository.updateIssuesForSource(ArraySet(listOf(ISSUE_ID, OTHER_ISSUE_ID)), SOURCE_ID, 0)
+        repository.updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+
+        assertThat(file.exists()).isFalse()
+    }
+
+    @Test
+    fun updateIssuesForSource_sameIssues_doesntWrite() {
+        val repository = newRepository()
+        repository.updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+        assertThat(file.delete()).isTrue()
+
+        repository.updateIssuesForSource(ArraySet(listOf(ISSUE_ID)), SOURCE_ID, 0)
+        waitForWrites()
+
+        assertThat(file.exists()).isFalse()
+    }
+
+    private fun newRepository() =
+        SafetyCenterIssueDismissalRepository(
+            apiLock,
+            safetyCenterConfigReader,
+            writeHandler,
+            dataDirectory
+        )
+
+    /** Waits for the writes scheduled so far to be done. */
+    private fun waitForWrites() {
+        val latch = CountDownLatch(1)
+        writeHandler.postDelayed({ latch.countDown() }, WRITE_DELAY_MILLIS * 2)
+        assertThat(latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue()
+    }
+
+    /** Moves the last modified time of the given file to the past, and returns it. */
+    private fun setModifiedInThePast(file: File): Long {
+        val lastModified = file.lastModified() - MODIFIED_TIME_DELTA_MILLIS
+        assertThat(file.setLastModified(lastModified)).isTrue()
+        return file.lastModified()
+    }
+
+    /**
+     * Writes the legacy file with the given issues like a module that only knows the legacy format
+     * would, and returns them.
+     */
+    private fun writeLegacyFile(vararg issueIds: String): List<PersistedSafetyCenterIssue> {
+        newRepository().updateIssuesForSource(ArraySet(issueIds.toList()), SOURCE_ID, 0)
+        waitForWrites()
+        val issues = SafetyCenterIssuesPersistence.readBinary(file)
+        assertThat(file.delete()).isTrue()
+        SafetyCenterIssuesPersistence.write(issues, legacyFile)
+        return issues
+    }
+
+    companion object {
+        private const val TAG = "SafetyCenterIssueDismissalRepositoryTest"
+        private const val WRITE_DELAY_MILLIS = 500L
+        private const val TIMEOUT_MILLIS = 5000L
+        private const val MODIFIED_TIME_DELTA_MILLIS = 60_000L
+        private const val SOURCE_ID = "source_id"
+        private const val ISSUE_ID = "issue_id"
+        private const val OTHER_ISSUE_ID = "other_issue_id"
+    }
+}
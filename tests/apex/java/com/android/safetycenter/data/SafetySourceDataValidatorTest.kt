@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter.data
+
+import android.content.Context
+import android.content.pm.PackageManager
+import android.content.pm.PackageManager.PackageInfoFlags
+import android.os.Build
+import android.os.UserManager
+import android.safetycenter.config.SafetySource
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.safetycenter.SafetyCenterConfigReader
+import com.android.safetycenter.SafetyCenterConfigReader.ExternalSafetySource
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assert.assertThrows
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+@RunWith(AndroidJUnit4::class)
+class SafetySourceDataValidatorTest {
+    private val packageManager = mock(PackageManager::class.java)
+    private val context = mock(Context::class.java)
+    private val safetyCenterConfigReader = mock(SafetyCenterConfigReader::class.java)
+
+    private lateinit var validator: SafetySourceDataValidator
+
+    @Before
+    fun setUp() {
+        // Signing certificates are only checked on U+.
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+
+        `when`(context.packageManager).thenReturn(packageManager)
+        `when`(context.getSystemService(UserManager::class.java))
+            .thenReturn(mock(UserManager::class.java))
+        `when`(packageManager.hasSigningCertificate(eq(PACKAGE_NAME), any(), anyInt()))
+            .thenReturn(true)
+
+        val safetySource =
+            SafetySource.Builder(SafetySource.SAFETY_SOURCE_TYPE_DYNAMIC)
+                .setId(SOURCE_ID)
+                .setPackageName(PACKAGE_NAME)
+                .setTitleResId(RES_ID)
+                .setSummaryResId(RES_ID)
+                .setIntentAction(INTENT_ACTION)
+                .setProfile(SafetySource.PROFILE_ALL)
+                .addPackageCertificateHash(CERTIFICATE_HASH)
+                .build()
+        val externalSafetySource = mock(ExternalSafetySource::class.java)
+        `when`(externalSafetySource.safetySource).thenReturn(safetySource)
+        `when`(safetyCenterConfigReader.getExternalSafetySource(SOURCE_ID, PACKAGE_NAME))
+            .thenReturn(externalSafetySource)
+        `when`(safetyCenterConfigReader.isExternalSafetySourceActive(SOURCE_ID, PACKAGE_NAME))
+            .thenReturn(true)
+
+        validator = SafetySourceDataValidator(context, safetyCenterConfigReader)
+    }
+
+    @Test
+    fun validateRequest_samePackageVersion_checksCertificateOnce() {
+        assertThat(validateRequest(USER_ID)).isTrue()
+        assertThat(validateRequest(USER_ID)).isTrue()
+
+        verifyCertificateChecks(1)
+    }
+
+    @Test
+    fun validateRequest_cachedCertificateCheck_doesntQueryPackageManager() {
+        validateRequest(USER_ID)
+
+        validateRequest(USER_ID)
+
+        verify(packageManager, never())
+            .getPackageInfo(anyString(), any(PackageInfoFlags::class.java))
+        verify(packageManager, never()).getPackageInfo(anyString(), anyInt())
+    }
+
+    @Test
+    fun onPackageChanged_usesNewCertificateCheck() {
+        validateRequest(USER_ID)
+        validator.onPackageChanged(PACKAGE_NAME, USER_ID)
+        `when`(packageManager.hasSigningCertificate(eq(PACKAGE_NAME), any(), anyInt()))
+            .thenReturn(false)
+
+        // The additional allowed certificates are read from DeviceConfig, and empty by default.
+        val uiAutomation = InstrumentationRegistry.getInstrumentation().uiAutomation
+        uiAutomation.adoptShellPermissionIdentity()
+        try {
+            assertThrows(IllegalArgumentException::class.java) { validateRequest(USER_ID) }
+        } finally {
+            uiAutomation.dropShellPermissionIdentity()
+        }
+    }
+
+    @Test
+    fun validateRequest_differentUsers_checksCertificatePerUser() {
+        validateRequest(USER_ID)
+
+        validateRequest(OTHER_USER_ID)
+
+        verifyCertificateChecks(2)
+    }
+
+    @Test
+    fun onPackageChanged_checksCertificateAgain() {
+        validateRequest(USER_ID)
+
+        validator.onPackageChanged(PACKAGE_NAME, USER_ID)
+        validateRequest(USER_ID)
+
+        verifyCertificateChecks(2)
+    }
+
+    @Test
+    fun onPackageChanged_otherUser_keepsCertificateCheck() {
+        validateRequest(USER_ID)
+
+        validator.onPackageChanged(PACKAGE_NAME, OTHER_USER_ID)
+        validateRequest(USER_ID)
+
+        verifyCertificateChecks(1)
+    }
+
+    @Test
+    fun clearForUser_checksCertificateAgain() {
+        validateRequest(USER_ID)
+
+        validator.clearForUser(USER_ID)
+        validateRequest(USER_ID)
+
+        verifyCertificateChecks(2)
+    }
+
+    @Test
+    fun clear_checksCertificateAgain() {
+        validateRequest(USER_ID)
+
+        validator.clear()
+        validateRequest(USER_ID)
+
+        verifyCertificateChecks(2)
+    }
+
+    private fun validateRequest(userId: Int): Boolean =
+        validator.validateRequest(
+            /* safetySourceData= */ null,
+            /* callerCanAccessAnySource= */ false,
+            SOURCE_ID,
+            PACKAGE_NAME,
+            userId
+        )
+
+    private fun verifyCertificateChecks(count: Int) {
+        verify(packageManager, times(count))
+            .hasSigningCertificate(eq(PACKAGE_NAME), any(), eq(PackageManager.CERT_INPUT_SHA256))
+    }
+
+    companion object {
+        private const val SOURCE_ID = "source_id"
+        private const val PACKAGE_NAME = "com.android.safetycenter.test.source"
+        private const val INTENT_ACTION = "com.android.safetycenter.test.ACTION"
+        private const val CERTIFICATE_HASH = "feed12"
+        private const val RES_ID = 1
+        private const val USER_ID = 0
+        private const val OTHER_USER_ID = 10
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permission.persistence
+
+import android.content.Context
+import android.os.Bundle
+import android.os.Process
+import android.os.UserHandle
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.permission.persistence.RuntimePermissionsState.PermissionState
+import java.io.File
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for the reads and writes of [RuntimePermissionsPersistenceImpl], with fs-verity
+ * disabled so that only the serialization and the file I/O are measured.
+ *
+ * The size of the written files is reported as the [BYTES_WRITTEN_PER_FILE] metric of
+ * [writeForUser], so that format changes can be compared too.
+ */
+@RunWith(Parameterized::class)
+class RuntimePermissionsPersistenceBenchmark(private val scenario: Scenario) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private val context = instrumentation.context
+
+    private lateinit var dataDirectory: File
+
+    private val persistence =
+        RuntimePermissionsPersistenceImpl(
+            object : RuntimePermissionsPersistenceImpl.Injector {
+                override fun enableFsVerity(file: File) {}
+
+                override fun getDataDirectory(user: UserHandle): File =
+                    File(dataDirectory, user.toString()).also { it.mkdirs() }
+            }
+        )
+    private val state = createState(scenario)
+    private val user = Process.myUserHandle()
+
+    @Before
+    fun setUp() {
+        dataDirectory = context.getDir("benchmark_data", Context.MODE_PRIVATE)
+        dataDirectory.listFiles()!!.forEach { it.deleteRecursively() }
+    }
+
+    @After
+    fun tearDown() {
+        dataDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun writeForUser() {
+        benchmarkRule.measureRepeated { persistence.writeForUser(state, user) }
+
+        // The reserve copy is written too, with the same size.
+        val fileSize = persistence.getFile(user).length()
+        instrumentation.sendStatus(
+            IN_PROGRESS_STATUS_CODE,
+            Bundle().apply { putLong(BYTES_WRITTEN_PER_FILE, fileSize) }
+        )
+    }
+
+    @Test
+    fun readForUser() {
+        persistence.writeForUser(state, user)
+
+        benchmarkRule.measureRepeated { persistence.readForUser(user) }
+    }
+
+    /**
+     * The size of a runtime permissions state.
+     *
+     * @param packageCount The number of packages, every tenth one being a shared user
+     * @param permissionsPerPackage The number of runtime permissions requested by every package
+     */
+    data class Scenario(val packageCount: Int, val permissionsPerPackage: Int) {
+        override fun toString() = "packages=$packageCount,permissions=$permissionsPerPackage"
+    }
+
+    companion object {
+        /** The metric of the size of the file written by [writeForUser], in bytes */
+        private const val BYTES_WRITTEN_PER_FILE = "bytes_written_per_file"
+
+        /** The status code of results reported while a test runs, recorded as its metrics */
+        private const val IN_PROGRESS_STATUS_CODE = 2
+
+        private const val SHARED_USER_INTERVAL = 10
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0}")
+        fun scenarios() =
+            listOf(
+                Scenario(packageCount = 100, permissionsPerPackage = 20),
+                Scenario(packageCount = 1000, permissionsPerPackage = 20)
+            )
+
+        private fun createState(scenario: Scenario): RuntimePermissionsState {
+            val packagePermissions = mutableMapOf<String, List<PermissionState>>()
+            val sharedUserPermissions = mutableMapOf<String, List<PermissionState>>()
+            for (i in 0 until scenario.packageCount) {
+                val permissions =
+                    List(scenario.permissionsPerPackage) {
+                        PermissionState(
+                            "android.permission.BENCHMARK_$it",
+                            (i + it) % 2 == 0,
+                            (i * it) % 0x4000
+                        )
+                    }
+                if (i % SHARED_USER_INTERVAL == 0) {
+                    sharedUserPermissions["com.android.benchmark.shareduser$i"] = permissions
+                } else {
+                    packagePermissions["com.android.benchmark.app$i"] = permissions
+                }
+            }
+            return RuntimePermissionsState(
+                RuntimePermissionsState.NO_VERSION,
+                "fingerprint",
+                packagePermissions,
+                sharedUserPermissions
+            )
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.role.persistence
+
+import android.content.Context
+import android.os.Bundle
+import android.os.Process
+import android.os.UserHandle
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import java.io.File
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for the reads and writes of [RolesPersistenceImpl], with fs-verity disabled so that
+ * only the serialization and the file I/O are measured.
+ *
+ * The size of the written files is reported as the [BYTES_WRITTEN_PER_FILE] metric of
+ * [writeForUser], so that format changes can be compared too.
+ */
+@RunWith(Parameterized::class)
+class RolesPersistenceBenchmark(private val scenario: Scenario) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private val context = instrumentation.context
+
+    private lateinit var dataDirectory: File
+
+    private val persistence =
+        RolesPersistenceImpl(
+            object : RolesPersistenceImpl.Injector {
+                override fun enableFsVerity(file: File) {}
+
+                override fun getDataDirectory(user: UserHandle): File =
+                    File(dataDirectory, user.toString()).also { it.mkdirs() }
+            }
+        )
+    private val state = createState(scenario)
+    private val user = Process.myUserHandle()
+
+    @Before
+    fun setUp() {
+        dataDirectory = context.getDir("benchmark_data", Context.MODE_PRIVATE)
+        dataDirectory.listFiles()!!.forEach { it.deleteRecursively() }
+    }
+
+    @After
+    fun tearDown() {
+        dataDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun writeForUser() {
+        benchmarkRule.measureRepeated { persistence.writeForUser(state, user) }
+
+        // The reserve copy is written too, with the same size.
+        val fileSize = persistence.getFile(user).length()
+        instrumentation.sendStatus(
+            IN_PROGRESS_STATUS_CODE,
+            Bundle().apply { putLong(BYTES_WRITTEN_PER_FILE, fileSize) }
+        )
+    }
+
+    @Test
+    fun readForUser() {
+        persistence.writeForUser(state, user)
+
+        benchmarkRule.measureRepeated { persistence.readForUser(user) }
+    }
+
+    /**
+     * The size of a roles state.
+     *
+     * @param roleCount The number of roles, every other one with fallback enabled
+     * @param holdersPerRole The number of holders of every role
+     */
+    data class Scenario(val roleCount: Int, val holdersPerRole: Int) {
+        override fun toString() = "roles=$roleCount,holders=$holdersPerRole"
+    }
+
+    companion object {
+        /** The metric of the size of the file written by [writeForUser], in bytes */
+        private const val BYTES_WRITTEN_PER_FILE = "bytes_written_per_file"
+
+        /** The status code of results reported while a test runs, recorded as its metrics */
+        private const val IN_PROGRESS_STATUS_CODE = 2
+
+        private const val VERSION_FALLBACK_MIGRATED = 1
+        private const val PACKAGES_HASH = "packagesHash"
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0}")
+        fun scenarios() =
+            listOf(
+                Scenario(roleCount = 10, holdersPerRole = 1),
+                Scenario(roleCount = 50, holdersPerRole = 5)
+            )
+
+        private fun createState(scenario: Scenario): RolesState {
+            val roles =
+                (0 until scenario.roleCount).associate { i ->
+                    "android.app.role.BENCHMARK_$i" to
+                        (0 until scenario.holdersPerRole)
+                            .map { "com.android.benchmark.app${i * scenario.holdersPerRole + it}" }
+                            .toSet()
+                }
+            val fallbackEnabledRoles = roles.keys.filterIndexed { i, _ -> i % 2 == 0 }.toSet()
+            return RolesState(VERSION_FALLBACK_MIGRATED, PACKAGES_HASH, roles, fallbackEnabledRoles)
+        }
+    }
+}
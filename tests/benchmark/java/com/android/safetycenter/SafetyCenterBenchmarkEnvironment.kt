@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter
+
+import android.app.PendingIntent
+import android.content.Context
+import android.content.ContextWrapper
+import android.content.Intent
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import android.content.pm.PackageManager.PackageInfoFlags
+import android.content.pm.PackageManager.ResolveInfoFlags
+import android.content.pm.ResolveInfo
+import android.os.Process
+import android.os.UserHandle
+import android.os.UserManager
+import android.safetycenter.SafetyEvent
+import android.safetycenter.SafetySourceData
+import android.safetycenter.SafetySourceIssue
+import android.safetycenter.SafetySourceStatus
+import android.safetycenter.config.SafetyCenterConfig
+import android.safetycenter.config.SafetySource
+import android.safetycenter.config.SafetySourcesGroup
+import android.test.mock.MockPackageManager
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.modules.utils.build.SdkLevel
+import com.android.permission.jarjar.com.android.safetycenter.resources.SafetyCenterResourcesApk
+import com.android.safetycenter.data.SafetyCenterDataManager
+import java.io.File
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.withSettings
+
+/**
+ * A Safety Center service set up with a synthetic [SafetyCenterConfig] and [SafetySourceData] for
+ * all its sources, for benchmarks of the Safety Center service internals.
+ *
+ * The [context] of the environment answers package queries from memory: every source package is
+ * installed, signed with the certificate of its source and never updated. [UserManager] has no
+ * public constructor, so it stays a stub only mock. The Safety Center resources are read from the
+ * real resources APK, only the [SafetyCenterConfig] is overridden.
+ *
+ * [start] must be called before using the environment, and [finish] once done with it.
+ *
+ * @param scenario The size of the synthetic [SafetyCenterConfig] and [SafetySourceData]
+ */
+class SafetyCenterBenchmarkEnvironment(val scenario: Scenario) {
+
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private val realContext = instrumentation.context
+
+    /** The [ApiLock] of the environment, to create service components outside of [start] */
+    val apiLock = ApiLock()
+
+    /** The user id of the profile parent of [userProfileGroup] */
+    val profileParentUserId = Process.myUserHandle().identifier
+
+    /** The user ids of the managed profiles of [userProfileGroup] */
+    val managedProfileUserIds =
+        IntArray(scenario.managedProfileCount) { profileParentUserId + FIRST_PROFILE_OFFSET + it }
+
+    /** A [Context] whose [PackageManager] and [UserManager] are faked */
+    val context: Context = createFakeContext()
+
+    /** The [SafetyCenterResourcesApk] used by the environment */
+    val safetyCenterResourcesApk = SafetyCenterResourcesApk(realContext)
+
+    /** The synthetic [SafetyCenterConfig] of the environment */
+    val safetyCenterConfig: SafetyCenterConfig = createSafetyCenterConfig()
+
+    /** The [SafetySourceData] set by every source of [safetyCenterConfig], by source and user */
+    val safetySourceData: Map<SafetySourceKey, SafetySourceData> = createSafetySourceData()
+
+    lateinit var safetyCenterConfigReader: SafetyCenterConfigReader
+        private set
+
+    lateinit var safetyCenterDataManager: SafetyCenterDataManager
+        private set
+
+    lateinit var userProfileGroup: UserProfileGroup
+        private set
+
+    /**
+     * Starts the environment, loading [safetyCenterConfig] and setting [safetySourceData] in a
+     * [SafetyCenterDataManager].
+     *
+     * This adopts the shell permission identity so that the Safety Center flags can be read from
+     * [android.provider.DeviceConfig], and persists the Safety Center state in the given
+     * [dataDirectory].
+     */
+    fun start(dataDirectory: File) {
+        instrumentation.uiAutomation.adoptShellPermissionIdentity()
+        safetyCenterConfigReader = createSafetyCenterConfigReader()
+        safetyCenterDataManager =
+            SafetyCenterDataManager(
+                context,
+                safetyCenterConfigReader,
+                SafetyCenterRefreshTracker(context),
+                apiLock,
+                dataDirectory
+            )
+        val safetyEvent =
+            SafetyEvent.Builder(SafetyEvent.SAFETY_EVENT_TYPE_SOURCE_STATE_CHANGED).build()
+        for ((key, data) in safetySourceData) {
+            safetyCenterDataManager.setValidatedSafetySourceData(
+                data,
+                key.sourceId,
+                safetyEvent,
+                key.userId
+            )
+        }
+        userProfileGroup = UserProfileGroup.fromUser(context, profileParentUserId)
+    }
+
+    /** Finishes the environment started with [start]. */
+    fun finish() {
+        instrumentation.uiAutomation.dropShellPermissionIdentity()
+    }
+
+    /** Creates a [SafetyCenterDataFactory] reading from the environment. */
+    fun createSafetyCenterDataFactory(): SafetyCenterDataFactory =
+        SafetyCenterDataFactory(
+            context,
+            safetyCenterResourcesApk,
+            safetyCenterConfigReader,
+            SafetyCenterRefreshTracker(context),
+            PendingIntentFactory(context, safetyCenterResourcesApk),
+            safetyCenterDataManager
+        )
+
+    /** Creates a [SafetyCenterConfigReader] whose config is overridden by [safetyCenterConfig]. */
+    fun createSafetyCenterConfigReader(): SafetyCenterConfigReader =
+        SafetyCenterConfigReader(safetyCenterResourcesApk).apply {
+            check(loadConfig()) { "Cannot load the fake Safety Center config" }
+            setConfigOverrideForTests(safetyCenterConfig)
+        }
+
+    private fun createFakeContext(): Context {
+        val userManager = mock(UserManager::class.java, withSettings().stubOnly())
+        val userProfiles =
+            (intArrayOf(profileParentUserId) + managedProfileUserIds).map { UserHandle.of(it) }
+        `when`(userManager.userProfiles).thenReturn(userProfiles)
+        `when`(userManager.getProfileParent(any(UserHandle::class.java))).thenAnswer {
+            val userHandle = it.getArgument<UserHandle>(0)
+            if (userHandle.identifier in managedProfileUserIds) {
+                UserHandle.of(profileParentUserId)
+            } else {
+                null
+            }
+        }
+        `when`(userManager.isManagedProfile(anyInt())).thenAnswer {
+            it.getArgument<Int>(0) in managedProfileUserIds
+        }
+        `when`(userManager.isUserRunning(any(UserHandle::class.java))).thenReturn(true)
+
+        return FakeContext(realContext, FakePackageManager(), userManager)
+    }
+
+    private fun createSafetyCenterConfig(): SafetyCenterConfig {
+        val builder = SafetyCenterConfig.Builder()
+        for (groupIndex in 0 until scenario.sourceCount / SOURCES_PER_GROUP) {
+            val groupBuilder =
+                SafetySourcesGroup.Builder()
+                    .setId("group_$groupIndex")
+                    .setTitleResId(FAKE_RES_ID)
+                    .setSummaryResId(FAKE_RES_ID)
+            for (i in 0 until SOURCES_PER_GROUP) {
+                groupBuilder.addSafetySource(
+                    createSafetySource(groupIndex, groupIndex * SOURCES_PER_GROUP + i)
+                )
+            }
+            builder.addSafetySourcesGroup(groupBuilder.build())
+        }
+        return builder.build()
+    }
+
+    private fun createSafetySource(groupIndex: Int, sourceIndex: Int): SafetySource {
+        val builder =
+            SafetySource.Builder(SafetySource.SAFETY_SOURCE_TYPE_DYNAMIC)
+                .setId(sourceId(sourceIndex))
+                .setPackageName(sourcePackageName(sourceIndex))
+                .setTitleResId(FAKE_RES_ID)
+                .setTitleForWorkResId(FAKE_RES_ID)
+                .setSummaryResId(FAKE_RES_ID)
+                .setIntentAction("$ACTION_PREFIX$sourceIndex")
+                .setProfile(SafetySource.PROFILE_ALL)
+        if (SdkLevel.isAtLeastU()) {
+            builder
+                .setDeduplicationGroup("deduplication_group_$groupIndex")
+                .addPackageCertificateHash(FAKE_CERTIFICATE_HASH)
+        }
+        return builder.build()
+    }
+
+    private fun createSafetySourceData(): Map<SafetySourceKey, SafetySourceData> {
+        val pendingIntent =
+            PendingIntent.getActivity(
+                realContext,
+                /* requestCode= */ 0,
+                Intent(ACTION_PREFIX),
+                PendingIntent.FLAG_IMMUTABLE
+            )
+        val userIds = intArrayOf(profileParentUserId) + managedProfileUserIds
+        val safetySourceData = LinkedHashMap<SafetySourceKey, SafetySourceData>()
+        for (sourceIndex in 0 until scenario.sourceCount) {
+            for (userId in userIds) {
+                val builder =
+                    SafetySourceData.Builder()
+                        .setStatus(
+                            SafetySourceStatus.Builder(
+                                    "Status title",
+                                    "Status summary",
+                                    SafetySourceData.SEVERITY_LEVEL_RECOMMENDATION
+                                )
+                                .setPendingIntent(pendingIntent)
+                                .build()
+                        )
+                for (issueIndex in 0 until scenario.issuesPerSource) {
+                    builder.addIssue(createSafetySourceIssue(issueIndex, pendingIntent))
+                }
+                safetySourceData[SafetySourceKey.of(sourceId(sourceIndex), userId)] =
+                    builder.build()
+            }
+        }
+        return safetySourceData
+    }
+
+    private fun createSafetySourceIssue(
+        issueIndex: Int,
+        pendingIntent: PendingIntent
+    ): SafetySourceIssue {
+        val severityLevel =
+            if (issueIndex % 2 == 0) {
+                SafetySourceData.SEVERITY_LEVEL_RECOMMENDATION
+            } else {
+                SafetySourceData.SEVERITY_LEVEL_INFORMATION
+            }
+        val builder =
+            SafetySourceIssue.Builder(
+                    "issue_$issueIndex",
+                    "Issue title $issueIndex",
+                    "Issue summary $issueIndex",
+                    severityLevel,
+                    "issue_type_$issueIndex"
+                )
+                .addAction(
+                    SafetySourceIssue.Action.Builder("action", "Action", pendingIntent).build()
+                )
+        if (SdkLevel.isAtLeastU()) {
+            // Issues with the same index are duplicates of each other within a group.
+            builder.setDeduplicationId("deduplication_$issueIndex")
+        }
+        return builder.build()
+    }
+
+    /**
+     * A [Context] of the benchmark APK that stands for every package and user, with a fake
+     * [PackageManager] and [UserManager].
+     */
+    private class FakeContext(
+        base: Context,
+        private val packageManager: PackageManager,
+        private val userManager: UserManager
+    ) : ContextWrapper(base) {
+        override fun getPackageManager(): PackageManager = packageManager
+
+        override fun getSystemService(name: String): Any? =
+            if (name == Context.USER_SERVICE) userManager else super.getSystemService(name)
+
+        override fun createPackageContextAsUser(
+            packageName: String,
+            flags: Int,
+            user: UserHandle
+        ): Context = this
+    }
+
+    /**
+     * A [PackageManager] for which every source package is installed and signed with the
+     * certificate of its source, and no intent resolves to an activity.
+     *
+     * Other calls throw [UnsupportedOperationException].
+     */
+    private class FakePackageManager : MockPackageManager() {
+        override fun getPackageInfo(packageName: String, flags: PackageInfoFlags): PackageInfo =
+            PackageInfo().also {
+                it.packageName = packageName
+                it.lastUpdateTime = LAST_UPDATE_TIME
+            }
+
+        override fun hasSigningCertificate(
+            packageName: String,
+            certificate: ByteArray,
+            type: Int
+        ): Boolean = true
+
+        override fun resolveActivity(intent: Intent, flags: ResolveInfoFlags): ResolveInfo? = null
+    }
+
+    /**
+     * The size of a [SafetyCenterBenchmarkEnvironment].
+     *
+     * @param sourceCount The number of safety sources in the config, a multiple of 10
+     * @param issuesPerSource The number of issues reported by every source for every user
+     * @param managedProfileCount The number of managed profiles of the profile group
+     */
+    data class Scenario(
+        val sourceCount: Int,
+        val issuesPerSource: Int,
+        val managedProfileCount: Int
+    ) {
+        override fun toString() =
+            "sources=$sourceCount,issues=$issuesPerSource,profiles=$managedProfileCount"
+    }
+
+    companion object {
+        /** The scenarios used by the Safety Center benchmarks */
+        val SCENARIOS =
+            listOf(
+                Scenario(sourceCount = 10, issuesPerSource = 0, managedProfileCount = 0),
+                Scenario(sourceCount = 10, issuesPerSource = 5, managedProfileCount = 0),
+                Scenario(sourceCount = 50, issuesPerSource = 5, managedProfileCount = 1),
+                Scenario(sourceCount = 200, issuesPerSource = 0, managedProfileCount = 0),
+                Scenario(sourceCount = 200, issuesPerSource = 5, managedProfileCount = 1),
+                Scenario(sourceCount = 200, issuesPerSource = 50, managedProfileCount = 2)
+            )
+
+        private const val SOURCES_PER_GROUP = 10
+        private const val FIRST_PROFILE_OFFSET = 10
+        // A framework string, so that it resolves in the resources APK context too.
+        private const val FAKE_RES_ID = android.R.string.ok
+        private const val SOURCE_PACKAGE_NAME_PREFIX = "com.android.safetycenter.benchmark.source"
+        private const val ACTION_PREFIX = "com.android.safetycenter.benchmark.ACTION"
+        private const val FAKE_CERTIFICATE_HASH = "feed12"
+        private const val LAST_UPDATE_TIME = 1_700_000_000_000L
+
+        private fun sourceId(sourceIndex: Int) = "source_$sourceIndex"
+
+        private fun sourcePackageName(sourceIndex: Int) = "$SOURCE_PACKAGE_NAME_PREFIX$sourceIndex"
+    }
+}
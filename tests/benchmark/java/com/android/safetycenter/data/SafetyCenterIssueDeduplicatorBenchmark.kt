@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter.data
+
+import android.content.Context
+import android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+import android.util.ArraySet
+import androidx.annotation.RequiresApi
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.modules.utils.build.SdkLevel
+import com.android.safetycenter.SafetyCenterBenchmarkEnvironment
+import com.android.safetycenter.SafetyCenterBenchmarkEnvironment.Scenario
+import com.android.safetycenter.SafetySourceIssueInfo
+import java.io.File
+import org.junit.After
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for [SafetyCenterIssueDeduplicator], deduplicating all the issues of a
+ * [SafetyCenterBenchmarkEnvironment] per iteration.
+ *
+ * Issues with the same index are duplicates within a group of sources, and some of them are
+ * dismissed so that dismissals have to be aligned across duplicates.
+ */
+@RequiresApi(UPSIDE_DOWN_CAKE)
+@RunWith(Parameterized::class)
+class SafetyCenterIssueDeduplicatorBenchmark(scenario: Scenario) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val context = InstrumentationRegistry.getInstrumentation().context
+    private val environment = SafetyCenterBenchmarkEnvironment(scenario)
+
+    private lateinit var dataDirectory: File
+    private lateinit var safetyCenterIssueDeduplicator: SafetyCenterIssueDeduplicator
+    private lateinit var sortedIssues: List<SafetySourceIssueInfo>
+
+    @Before
+    fun setUp() {
+        assumeTrue(SdkLevel.isAtLeastU())
+        dataDirectory = context.getDir("benchmark_data", Context.MODE_PRIVATE)
+        environment.start(dataDirectory)
+
+        val safetyCenterConfigReader = environment.safetyCenterConfigReader
+        val safetyCenterIssueDismissalRepository =
+            SafetyCenterIssueDismissalRepository(
+                environment.apiLock,
+                safetyCenterConfigReader,
+                dataDirectory
+            )
+        val sourcesAndGroups =
+            environment.safetyCenterConfig.safetySourcesGroups
+                .flatMap { group -> group.safetySources.map { it.id to Pair(it, group) } }
+                .toMap()
+        sortedIssues =
+            environment.safetySourceData
+                .flatMap { (key, data) ->
+                    val (safetySource, safetySourcesGroup) = sourcesAndGroups.getValue(key.sourceId)
+                    safetyCenterIssueDismissalRepository.updateIssuesForSource(
+                        ArraySet(data.issues.map { it.id }),
+                        key.sourceId,
+                        key.userId
+                    )
+                    data.issues.map {
+                        SafetySourceIssueInfo(it, safetySource, safetySourcesGroup, key.userId)
+                    }
+                }
+                .sortedByDescending { it.safetySourceIssue.severityLevel }
+        sortedIssues.forEachIndexed { i, issueInfo ->
+            if (i % DISMISSED_ISSUE_INTERVAL == 0) {
+                safetyCenterIssueDismissalRepository.dismissIssue(issueInfo.safetyCenterIssueKey)
+            }
+        }
+        safetyCenterIssueDeduplicator =
+            SafetyCenterIssueDeduplicator(safetyCenterIssueDismissalRepository)
+    }
+
+    @After
+    fun tearDown() {
+        if (!SdkLevel.isAtLeastU()) {
+            return
+        }
+        environment.finish()
+        dataDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun deduplicateIssues() {
+        benchmarkRule.measureRepeated {
+            safetyCenterIssueDeduplicator.deduplicateIssues(sortedIssues)
+        }
+    }
+
+    companion object {
+        private const val DISMISSED_ISSUE_INTERVAL = 7
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0}")
+        fun scenarios() = SafetyCenterBenchmarkEnvironment.SCENARIOS
+    }
+}
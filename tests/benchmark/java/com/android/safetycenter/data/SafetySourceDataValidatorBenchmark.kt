@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter.data
+
+import android.content.Context
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.safetycenter.SafetyCenterBenchmarkEnvironment
+import com.android.safetycenter.SafetyCenterBenchmarkEnvironment.Scenario
+import java.io.File
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for [SafetySourceDataValidator], validating the data of every source and user of a
+ * [SafetyCenterBenchmarkEnvironment] per iteration.
+ */
+@RunWith(Parameterized::class)
+class SafetySourceDataValidatorBenchmark(scenario: Scenario) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val context = InstrumentationRegistry.getInstrumentation().context
+    private val environment = SafetyCenterBenchmarkEnvironment(scenario)
+
+    private lateinit var dataDirectory: File
+    private lateinit var safetySourceDataValidator: SafetySourceDataValidator
+
+    @Before
+    fun setUp() {
+        dataDirectory = context.getDir("benchmark_data", Context.MODE_PRIVATE)
+        environment.start(dataDirectory)
+        safetySourceDataValidator =
+            SafetySourceDataValidator(environment.context, environment.safetyCenterConfigReader)
+    }
+
+    @After
+    fun tearDown() {
+        environment.finish()
+        dataDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun validateRequest_fromSourcePackage() {
+        val requests = environment.safetySourceData.entries.toList()
+        val packageNames =
+            requests.map {
+                environment.safetyCenterConfigReader.getSafetySource(it.key.sourceId)!!.packageName
+            }
+
+        benchmarkRule.measureRepeated {
+            for (i in requests.indices) {
+                val (key, data) = requests[i]
+                safetySourceDataValidator.validateRequest(
+                    data,
+                    /* callerCanAccessAnySource= */ false,
+                    key.sourceId,
+                    packageNames[i],
+                    key.userId
+                )
+            }
+        }
+    }
+
+    companion object {
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0}")
+        fun scenarios() = SafetyCenterBenchmarkEnvironment.SCENARIOS
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.safetycenter.persistence
+
+import android.content.Context
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.safetycenter.SafetyCenterBenchmarkEnvironment
+import com.android.safetycenter.SafetyCenterBenchmarkEnvironment.Scenario
+import java.io.File
+import java.time.Instant
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+
+/**
+ * Benchmarks for [SafetyCenterIssuesPersistence], in both the binary and the legacy XML formats,
+ * with one persisted issue per issue of a [SafetyCenterBenchmarkEnvironment].
+ */
+@RunWith(Parameterized::class)
+class SafetyCenterIssuesPersistenceBenchmark(private val scenario: Scenario) {
+
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private val context = InstrumentationRegistry.getInstrumentation().context
+
+    private lateinit var dataDirectory: File
+    private lateinit var persistedIssues: List<PersistedSafetyCenterIssue>
+
+    @Before
+    fun setUp() {
+        dataDirectory = context.getDir("benchmark_data", Context.MODE_PRIVATE)
+        val userCount = 1 + scenario.managedProfileCount
+        val issueCount = scenario.sourceCount * scenario.issuesPerSource * userCount
+        persistedIssues = List(issueCount) { createPersistedIssue(it) }
+    }
+
+    @After
+    fun tearDown() {
+        dataDirectory.deleteRecursively()
+    }
+
+    @Test
+    fun writeBinary() {
+        val file = File(dataDirectory, BINARY_FILE_NAME)
+
+        benchmarkRule.measureRepeated {
+            SafetyCenterIssuesPersistence.writeBinary(persistedIssues, file)
+        }
+    }
+
+    @Test
+    fun readBinary() {
+        val file = File(dataDirectory, BINARY_FILE_NAME)
+        check(SafetyCenterIssuesPersistence.writeBinary(persistedIssues, file))
+
+        benchmarkRule.measureRepeated { SafetyCenterIssuesPersistence.readBinary(file) }
+    }
+
+    @Test
+    fun write() {
+        val file = File(dataDirectory, XML_FILE_NAME)
+
+        benchmarkRule.measureRepeated { SafetyCenterIssuesPersistence.write(persistedIssues, file) }
+    }
+
+    @Test
+    fun read() {
+        val file = File(dataDirectory, XML_FILE_NAME)
+        SafetyCenterIssuesPersistence.write(persistedIssues, file)
+
+        benchmarkRule.measureRepeated { SafetyCenterIssuesPersistence.read(file) }
+    }
+
+    private fun createPersistedIssue(index: Int): PersistedSafetyCenterIssue {
+        val builder =
+            PersistedSafetyCenterIssue.Builder()
+                .setKey("issue_key_$index")
+                .setFirstSeenAt(FIRST_SEEN_AT.plusSeconds(index.toLong()))
+        // Dismiss some of the issues, so that all the optional fields are persisted.
+        if (index % DISMISSED_ISSUE_INTERVAL == 0) {
+            builder
+                .setDismissedAt(DISMISSED_AT)
+                .setDismissCount(1)
+                .setNotificationDismissedAt(DISMISSED_AT)
+        }
+        return builder.build()
+    }
+
+    companion object {
+        private const val BINARY_FILE_NAME = "safety_center_issues.bin"
+        private const val XML_FILE_NAME = "safety_center_issues.xml"
+        private const val DISMISSED_ISSUE_INTERVAL = 7
+        private val FIRST_SEEN_AT = Instant.parse("2024-01-01T00:00:00Z")
+        private val DISMISSED_AT = Instant.parse("2024-01-02T00:00:00Z")
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0}")
+        fun scenarios() = SafetyCenterBenchmarkEnvironment.SCENARIOS
+    }
+}
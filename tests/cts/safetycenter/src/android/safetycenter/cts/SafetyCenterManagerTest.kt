@@ -16,14 +16,20 @@
 
 package android.safetycenter.cts
 
+import android.Manifest.permission.INTERACT_ACROSS_USERS_FULL
+import android.Manifest.permission.SEND_SAFETY_CENTER_UPDATE
 import android.content.Context
 import android.os.Build.VERSION_CODES.TIRAMISU
 import android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+import android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM
+import android.os.UserHandle
 import android.os.UserHandle.USER_NULL
 import android.os.UserManager
 import android.safetycenter.SafetyCenterData
 import android.safetycenter.SafetyCenterErrorDetails
 import android.safetycenter.SafetyCenterManager
+import android.safetycenter.SafetyCenterManager.DATA_PROJECTION_STATUS
+import android.safetycenter.SafetyCenterManager.DATA_PROJECTION_STATUS_AND_ISSUES
 import android.safetycenter.SafetyCenterManager.OnSafetyCenterDataChangedListener
 import android.safetycenter.SafetyCenterManager.REFRESH_REASON_OTHER
 import android.safetycenter.SafetyCenterManager.REFRESH_REASON_PAGE_OPEN
@@ -31,6 +37,7 @@ import android.safetycenter.SafetyCenterManager.REFRESH_REASON_PERIODIC
 import android.safetycenter.SafetyCenterManager.REFRESH_REASON_RESCAN_BUTTON_CLICK
 import android.safetycenter.SafetySourceData
 import android.safetycenter.SafetySourceData.SEVERITY_LEVEL_INFORMATION
+import android.safetycenter.SafetySourceDataBatch
 import android.safetycenter.SafetySourceErrorDetails
 import android.safetycenter.SafetySourceIssue.ISSUE_CATEGORY_ACCOUNT
 import android.safetycenter.SafetySourceIssue.ISSUE_CATEGORY_DEVICE
@@ -55,6 +62,7 @@ import com.android.safetycenter.testing.SafetyCenterApisWithShellPermissions.ref
 import com.android.safetycenter.testing.SafetyCenterApisWithShellPermissions.removeOnSafetyCenterDataChangedListenerWithPermission
 import com.android.safetycenter.testing.SafetyCenterApisWithShellPermissions.reportSafetySourceErrorWithPermission
 import com.android.safetycenter.testing.SafetyCenterApisWithShellPermissions.setSafetyCenterConfigForTestsWithPermission
+import com.android.safetycenter.testing.SafetyCenterApisWithShellPermissions.setSafetySourceDataBatchWithPermission
 import com.android.safetycenter.testing.SafetyCenterApisWithShellPermissions.setSafetySourceDataWithPermission
 import com.android.safetycenter.testing.SafetyCenterEnabledChangedReceiver
 import com.android.safetycenter.testing.SafetyCenterFlags
@@ -88,6 +96,7 @@ import com.android.safetycenter.testing.SafetySourceTestData.Companion.CRITICAL_
 import com.android.safetycenter.testing.SafetySourceTestData.Companion.CRITICAL_ISSUE_ID
 import com.android.safetycenter.testing.SafetySourceTestData.Companion.EVENT_SOURCE_STATE_CHANGED
 import com.android.safetycenter.testing.SafetySourceTestData.Companion.RECOMMENDATION_ISSUE_ID
+import com.android.safetycenter.testing.ShellPermissions.callWithShellPermissionIdentity
 import com.android.safetycenter.testing.SupportsSafetyCenterRule
 import com.google.common.base.Preconditions.checkState
 import com.google.common.truth.Truth.assertThat
@@ -624,6 +633,129 @@ class SafetyCenterManagerTest {
         }
     }
 
+    @Test
+    @SdkSuppress(maxSdkVersion = UPSIDE_DOWN_CAKE)
+    fun setSafetySourceDataBatch_versionLessThanV_throws() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.multipleSourcesConfig)
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, context.user, safetySourceTestData.unspecified)
+                .build()
+
+        assertFailsWith(UnsupportedOperationException::class) {
+            safetyCenterManager.setSafetySourceDataBatchWithPermission(
+                batch,
+                EVENT_SOURCE_STATE_CHANGED
+            )
+        }
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun setSafetySourceDataBatch_validIds_setsAllValues() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.multipleSourcesConfig)
+
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, context.user, safetySourceTestData.unspecified)
+                .addSafetySourceData(SOURCE_ID_2, context.user, safetySourceTestData.information)
+                .build()
+        safetyCenterManager.setSafetySourceDataBatchWithPermission(
+            batch,
+            EVENT_SOURCE_STATE_CHANGED
+        )
+
+        assertThat(safetyCenterManager.getSafetySourceDataWithPermission(SOURCE_ID_1))
+            .isEqualTo(safetySourceTestData.unspecified)
+        assertThat(safetyCenterManager.getSafetySourceDataWithPermission(SOURCE_ID_2))
+            .isEqualTo(safetySourceTestData.information)
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun setSafetySourceDataBatch_withInvalidEntry_doesntSetAnyValue() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.multipleSourcesConfig)
+
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, context.user, safetySourceTestData.unspecified)
+                .addSafetySourceData(
+                    SINGLE_SOURCE_ID,
+                    context.user,
+                    safetySourceTestData.unspecified
+                )
+                .build()
+        val thrown =
+            assertFailsWith(IllegalArgumentException::class) {
+                safetyCenterManager.setSafetySourceDataBatchWithPermission(
+                    batch,
+                    EVENT_SOURCE_STATE_CHANGED
+                )
+            }
+
+        assertThat(thrown).hasMessageThat().isEqualTo("Unexpected safety source: $SINGLE_SOURCE_ID")
+        assertThat(safetyCenterManager.getSafetySourceDataWithPermission(SOURCE_ID_1)).isNull()
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun setSafetySourceDataBatch_withNonExistentUser_setsOtherValues() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.multipleSourcesConfig)
+        val nonExistentUser = UserHandle.of(NON_EXISTENT_USER_ID)
+
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, context.user, safetySourceTestData.unspecified)
+                .addSafetySourceData(SOURCE_ID_2, nonExistentUser, safetySourceTestData.information)
+                .build()
+        callWithShellPermissionIdentity(SEND_SAFETY_CENTER_UPDATE, INTERACT_ACROSS_USERS_FULL) {
+            safetyCenterManager.setSafetySourceDataBatch(batch, EVENT_SOURCE_STATE_CHANGED)
+        }
+
+        assertThat(safetyCenterManager.getSafetySourceDataWithPermission(SOURCE_ID_1))
+            .isEqualTo(safetySourceTestData.unspecified)
+        assertThat(safetyCenterManager.getSafetySourceDataWithPermission(SOURCE_ID_2)).isNull()
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun setSafetySourceDataBatch_deliversDataToListenerOnce() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.multipleSourcesConfig)
+        val listener = safetyCenterTestHelper.addListener()
+
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, context.user, safetySourceTestData.unspecified)
+                .addSafetySourceData(SOURCE_ID_2, context.user, safetySourceTestData.information)
+                .build()
+        safetyCenterManager.setSafetySourceDataBatchWithPermission(
+            batch,
+            EVENT_SOURCE_STATE_CHANGED
+        )
+
+        listener.receiveSafetyCenterData()
+        assertFailsWith(TimeoutCancellationException::class) {
+            listener.receiveSafetyCenterData(TIMEOUT_SHORT)
+        }
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun setSafetySourceDataBatch_withoutPermission_throwsSecurityException() {
+        assertFailsWith(SecurityException::class) {
+            safetyCenterManager.setSafetySourceDataBatch(
+                SafetySourceDataBatch.Builder()
+                    .addSafetySourceData(
+                        SINGLE_SOURCE_ID,
+                        context.user,
+                        safetySourceTestData.unspecified
+                    )
+                    .build(),
+                EVENT_SOURCE_STATE_CHANGED
+            )
+        }
+    }
+
     @Test
     fun getSafetySourceData_validId_noData_returnsNull() {
         safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.singleSourceConfig)
@@ -1676,6 +1808,75 @@ class SafetyCenterManagerTest {
         listener.receiveSafetyCenterData()
     }
 
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun addOnSafetyCenterDataChangedListener_withStatusProjection_receivesOnlyStatus() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.singleSourceConfig)
+        val listener = safetyCenterTestHelper.addListener(dataProjection = DATA_PROJECTION_STATUS)
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, safetySourceTestData.informationWithIssue)
+        val safetyCenterDataFromListener = listener.receiveSafetyCenterData()
+
+        val apiSafetyCenterData = safetyCenterManager.getSafetyCenterDataWithPermission()
+        assertThat(safetyCenterDataFromListener.status).isEqualTo(apiSafetyCenterData.status)
+        assertThat(safetyCenterDataFromListener.issues).isEmpty()
+        assertThat(safetyCenterDataFromListener.entriesOrGroups).isEmpty()
+        assertThat(safetyCenterDataFromListener.staticEntryGroups).isEmpty()
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun addOnSafetyCenterDataChangedListener_withStatusAndIssuesProjection_receivesIssues() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.singleSourceConfig)
+        val listener =
+            safetyCenterTestHelper.addListener(dataProjection = DATA_PROJECTION_STATUS_AND_ISSUES)
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, safetySourceTestData.informationWithIssue)
+        val safetyCenterDataFromListener = listener.receiveSafetyCenterData()
+
+        val apiSafetyCenterData = safetyCenterManager.getSafetyCenterDataWithPermission()
+        assertThat(safetyCenterDataFromListener.status).isEqualTo(apiSafetyCenterData.status)
+        assertThat(safetyCenterDataFromListener.issues).isEqualTo(apiSafetyCenterData.issues)
+        assertThat(safetyCenterDataFromListener.entriesOrGroups).isEmpty()
+        assertThat(safetyCenterDataFromListener.staticEntryGroups).isEmpty()
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun addOnSafetyCenterDataChangedListener_withStatusProjection_notCalledWhenOnlyEntryChanges() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.singleSourceConfig)
+        val listener = safetyCenterTestHelper.addListener(dataProjection = DATA_PROJECTION_STATUS)
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, safetySourceTestData.information)
+        // Receive update from #setSafetySourceData call.
+        listener.receiveSafetyCenterData()
+
+        safetyCenterTestHelper.setData(
+            SINGLE_SOURCE_ID,
+            safetySourceTestData.informationWithIconAction
+        )
+
+        assertFailsWith(TimeoutCancellationException::class) {
+            listener.receiveSafetyCenterData(TIMEOUT_SHORT)
+        }
+    }
+
+    @Test
+    @SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+    fun addOnSafetyCenterDataChangedListener_withInvalidProjection_throwsException() {
+        val listener = SafetyCenterTestListener()
+
+        val thrown =
+            assertFailsWith(IllegalArgumentException::class) {
+                safetyCenterManager.addOnSafetyCenterDataChangedListenerWithPermission(
+                    directExecutor(),
+                    listener,
+                    dataProjection = 42
+                )
+            }
+
+        assertThat(thrown).hasMessageThat().isEqualTo("Unexpected data projection: 42")
+    }
+
     @Test
     fun addOnSafetyCenterDataChangedListener_withFlagDisabled_listenerNotCalled() {
         safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.singleSourceConfig)
@@ -2309,4 +2510,8 @@ class SafetyCenterManagerTest {
             safetyCenterManager.clearSafetyCenterConfigForTests()
         }
     }
+
+    companion object {
+        private const val NON_EXISTENT_USER_ID = 9999
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.safetycenter.cts
+
+import android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM
+import android.os.UserHandle
+import android.safetycenter.SafetySourceData
+import android.safetycenter.SafetySourceData.SEVERITY_LEVEL_INFORMATION
+import android.safetycenter.SafetySourceDataBatch
+import android.safetycenter.SafetySourceStatus
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.ext.truth.os.ParcelableSubject.assertThat
+import androidx.test.filters.SdkSuppress
+import com.android.safetycenter.testing.EqualsHashCodeToStringTester
+import com.google.common.truth.Truth.assertThat
+import kotlin.test.assertFailsWith
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** CTS tests for [SafetySourceDataBatch]. */
+@RunWith(AndroidJUnit4::class)
+@SdkSuppress(minSdkVersion = VANILLA_ICE_CREAM, codeName = "VanillaIceCream")
+class SafetySourceDataBatchTest {
+    @Test
+    fun getters_returnEntriesInOrder() {
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, USER_0, SAFETY_SOURCE_DATA)
+                .addSafetySourceData(SOURCE_ID_1, USER_10, null)
+                .addSafetySourceData(SOURCE_ID_2, USER_0, SAFETY_SOURCE_DATA)
+                .build()
+
+        assertThat(batch.size).isEqualTo(3)
+        assertThat(batch.getSafetySourceId(0)).isEqualTo(SOURCE_ID_1)
+        assertThat(batch.getUser(0)).isEqualTo(USER_0)
+        assertThat(batch.getSafetySourceData(0)).isEqualTo(SAFETY_SOURCE_DATA)
+        assertThat(batch.getSafetySourceId(1)).isEqualTo(SOURCE_ID_1)
+        assertThat(batch.getUser(1)).isEqualTo(USER_10)
+        assertThat(batch.getSafetySourceData(1)).isNull()
+        assertThat(batch.getSafetySourceId(2)).isEqualTo(SOURCE_ID_2)
+    }
+
+    @Test
+    fun build_withNoEntries_returnsEmptyBatch() {
+        val batch = SafetySourceDataBatch.Builder().build()
+
+        assertThat(batch.size).isEqualTo(0)
+    }
+
+    @Test
+    fun addSafetySourceData_withDuplicateEntry_throwsIllegalArgumentException() {
+        val builder =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, USER_0, SAFETY_SOURCE_DATA)
+
+        val exception =
+            assertFailsWith(IllegalArgumentException::class) {
+                builder.addSafetySourceData(SOURCE_ID_1, USER_0, null)
+            }
+        assertThat(exception)
+            .hasMessageThat()
+            .isEqualTo("Duplicate entry for safety source: $SOURCE_ID_1, and user: $USER_0")
+    }
+
+    @Test
+    fun parcelRoundTrip_recreatesEqual() {
+        val batch =
+            SafetySourceDataBatch.Builder()
+                .addSafetySourceData(SOURCE_ID_1, USER_0, SAFETY_SOURCE_DATA)
+                .addSafetySourceData(SOURCE_ID_1, USER_10, null)
+                .build()
+
+        assertThat(batch).recreatesEqual(SafetySourceDataBatch.CREATOR)
+    }
+
+    @Test
+    fun equalsHashCodeToString_usingEqualsHashCodeToStringTester() {
+        EqualsHashCodeToStringTester.ofParcelable(
+                parcelableCreator = SafetySourceDataBatch.CREATOR
+            )
+            .addEqualityGroup(
+                SafetySourceDataBatch.Builder()
+                    .addSafetySourceData(SOURCE_ID_1, USER_0, SAFETY_SOURCE_DATA)
+                    .build(),
+                SafetySourceDataBatch.Builder()
+                    .addSafetySourceData(SOURCE_ID_1, USER_0, SAFETY_SOURCE_DATA)
+                    .build()
+            )
+            .addEqualityGroup(
+                SafetySourceDataBatch.Builder()
+                    .addSafetySourceData(SOURCE_ID_1, USER_0, null)
+                    .build()
+            )
+            .addEqualityGroup(
+                SafetySourceDataBatch.Builder()
+                    .addSafetySourceData(SOURCE_ID_1, USER_10, SAFETY_SOURCE_DATA)
+                    .build()
+            )
+            .addEqualityGroup(
+                SafetySourceDataBatch.Builder()
+                    .addSafetySourceData(SOURCE_ID_2, USER_0, SAFETY_SOURCE_DATA)
+                    .build()
+            )
+            .addEqualityGroup(SafetySourceDataBatch.Builder().build())
+            .test()
+    }
+
+    companion object {
+        private const val SOURCE_ID_1 = "source_id_1"
+        private const val SOURCE_ID_2 = "source_id_2"
+        private val USER_0 = UserHandle.of(0)
+        private val USER_10 = UserHandle.of(10)
+        private val SAFETY_SOURCE_DATA =
+            SafetySourceData.Builder()
+                .setStatus(
+                    SafetySourceStatus.Builder("Title", "Summary", SEVERITY_LEVEL_INFORMATION)
+                        .build()
+                )
+                .build()
+    }
+}
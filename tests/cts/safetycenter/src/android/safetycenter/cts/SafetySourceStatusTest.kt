@@ -20,6 +20,7 @@ import android.app.PendingIntent
 import android.app.PendingIntent.FLAG_IMMUTABLE
 import android.content.Context
 import android.content.Intent
+import android.graphics.Typeface
 import android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE
 import android.safetycenter.SafetySourceData.SEVERITY_LEVEL_CRITICAL_WARNING
 import android.safetycenter.SafetySourceData.SEVERITY_LEVEL_INFORMATION
@@ -29,6 +30,8 @@ import android.safetycenter.SafetySourceStatus.IconAction
 import android.safetycenter.SafetySourceStatus.IconAction.ICON_TYPE_GEAR
 import android.safetycenter.SafetySourceStatus.IconAction.ICON_TYPE_INFO
 import android.safetycenter.cts.testing.Generic
+import android.text.SpannableString
+import android.text.style.StyleSpan
 import androidx.test.core.app.ApplicationProvider.getApplicationContext
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import androidx.test.ext.truth.os.ParcelableSubject.assertThat
@@ -284,6 +287,21 @@ class SafetySourceStatusTest {
         newTiramisuEqualsHashCodeToStringTester().test()
     }
 
+    @Test
+    fun equalsHashCode_withSpannedTitle_ignoresSpans() {
+        val spannedTitle = SpannableString("Status title")
+        spannedTitle.setSpan(StyleSpan(Typeface.BOLD), 0, 6, 0)
+        val status =
+            SafetySourceStatus.Builder("Status title", "Status summary", SEVERITY_LEVEL_INFORMATION)
+                .build()
+        val spannedStatus =
+            SafetySourceStatus.Builder(spannedTitle, "Status summary", SEVERITY_LEVEL_INFORMATION)
+                .build()
+
+        assertThat(spannedStatus).isEqualTo(status)
+        assertThat(spannedStatus.hashCode()).isEqualTo(status.hashCode())
+    }
+
     @Test
     @SdkSuppress(minSdkVersion = UPSIDE_DOWN_CAKE)
     fun equalsHashCodeToString_usingEqualsHashCodeToStringTester_atLeastAndroidU() {
@@ -20,11 +20,13 @@ import android.Manifest.permission.MANAGE_SAFETY_CENTER
 import android.Manifest.permission.READ_SAFETY_CENTER_STATUS
 import android.Manifest.permission.SEND_SAFETY_CENTER_UPDATE
 import android.os.Build.VERSION_CODES.TIRAMISU
+import android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM
 import android.safetycenter.SafetyCenterData
 import android.safetycenter.SafetyCenterManager
 import android.safetycenter.SafetyCenterManager.OnSafetyCenterDataChangedListener
 import android.safetycenter.SafetyEvent
 import android.safetycenter.SafetySourceData
+import android.safetycenter.SafetySourceDataBatch
 import android.safetycenter.SafetySourceErrorDetails
 import android.safetycenter.config.SafetyCenterConfig
 import androidx.annotation.RequiresApi
@@ -59,6 +61,20 @@ object SafetyCenterApisWithShellPermissions {
         }
     }
 
+    /**
+     * Calls [SafetyCenterManager.setSafetySourceDataBatch] adopting Shell's
+     * [SEND_SAFETY_CENTER_UPDATE] permission.
+     */
+    @RequiresApi(VANILLA_ICE_CREAM)
+    fun SafetyCenterManager.setSafetySourceDataBatchWithPermission(
+        safetySourceDataBatch: SafetySourceDataBatch,
+        safetyEvent: SafetyEvent
+    ) {
+        callWithShellPermissionIdentity(SEND_SAFETY_CENTER_UPDATE) {
+            setSafetySourceDataBatch(safetySourceDataBatch, safetyEvent)
+        }
+    }
+
     /**
      * Calls [SafetyCenterManager.getSafetySourceData] adopting Shell's [SEND_SAFETY_CENTER_UPDATE]
      * permission.
@@ -123,6 +139,21 @@ object SafetyCenterApisWithShellPermissions {
         }
     }
 
+    /**
+     * Calls [SafetyCenterManager.addOnSafetyCenterDataChangedListener] with the given
+     * [dataProjection] adopting Shell's [MANAGE_SAFETY_CENTER] permission.
+     */
+    @RequiresApi(VANILLA_ICE_CREAM)
+    fun SafetyCenterManager.addOnSafetyCenterDataChangedListenerWithPermission(
+        executor: Executor,
+        listener: OnSafetyCenterDataChangedListener,
+        dataProjection: Int
+    ) {
+        callWithShellPermissionIdentity(MANAGE_SAFETY_CENTER) {
+            addOnSafetyCenterDataChangedListener(executor, listener, dataProjection)
+        }
+    }
+
     /**
      * Calls [SafetyCenterManager.removeOnSafetyCenterDataChangedListener] adopting Shell's
      * [MANAGE_SAFETY_CENTER] permission.
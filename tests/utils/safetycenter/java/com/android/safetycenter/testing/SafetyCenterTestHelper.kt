@@ -21,6 +21,7 @@ import android.Manifest.permission.SEND_SAFETY_CENTER_UPDATE
 import android.content.Context
 import android.os.Build.VERSION_CODES.TIRAMISU
 import android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+import android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM
 import android.os.UserManager
 import android.safetycenter.SafetyCenterManager
 import android.safetycenter.SafetyEvent
@@ -113,14 +114,42 @@ class SafetyCenterTestHelper(val context: Context) {
      * @param skipInitialData whether the returned [SafetyCenterTestListener] should receive the
      *   initial SafetyCenter update
      */
-    fun addListener(skipInitialData: Boolean = true): SafetyCenterTestListener {
+    fun addListener(skipInitialData: Boolean = true): SafetyCenterTestListener =
+        addListener(skipInitialData) {
+            safetyCenterManager.addOnSafetyCenterDataChangedListenerWithPermission(
+                directExecutor(),
+                it
+            )
+        }
+
+    /**
+     * Adds and returns a [SafetyCenterTestListener] to SafetyCenter, receiving the given
+     * [dataProjection] of the SafetyCenter data.
+     *
+     * @param skipInitialData whether the returned [SafetyCenterTestListener] should receive the
+     *   initial SafetyCenter update
+     */
+    @RequiresApi(VANILLA_ICE_CREAM)
+    fun addListener(
+        dataProjection: Int,
+        skipInitialData: Boolean = true
+    ): SafetyCenterTestListener =
+        addListener(skipInitialData) {
+            safetyCenterManager.addOnSafetyCenterDataChangedListenerWithPermission(
+                directExecutor(),
+                it,
+                dataProjection
+            )
+        }
+
+    private fun addListener(
+        skipInitialData: Boolean,
+        register: (SafetyCenterTestListener) -> Unit
+    ): SafetyCenterTestListener {
         Log.d(TAG, "addListener")
         require(isEnabled())
         val listener = SafetyCenterTestListener()
-        safetyCenterManager.addOnSafetyCenterDataChangedListenerWithPermission(
-            directExecutor(),
-            listener
-        )
+        register(listener)
         if (skipInitialData) {
             listener.receiveSafetyCenterData()
         }